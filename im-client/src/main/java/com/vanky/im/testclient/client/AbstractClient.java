@@ -44,6 +44,11 @@ public abstract class AbstractClient implements IMClient {
 
     private ScheduledExecutorService scheduler;
     private static final int RECONNECT_DELAY_SECONDS = 5;
+
+    /**
+     * 网关准入受限时下发的重连退避（毫秒，已含抖动），下一次重连使用后清零
+     */
+    private volatile long reconnectDelayHintMs;
     private static final int HEARTBEAT_INTERVAL_SECONDS = 30;
 
 
@@ -347,6 +352,16 @@ public abstract class AbstractClient implements IMClient {
             case MessageTypeConstants.HEARTBEAT_RESPONSE:
                 // 心跳响应，无需处理
                 break;
+            case MessageTypeConstants.SERVER_BUSY_NOTIFICATION:
+                // 网关准入受限，随后会关闭连接；按服务端给出的退避重连，避免重连风暴中集中重试
+                setReconnectDelayHint(chatMessage.getRetryAfterMs());
+                break;
+            case MessageTypeConstants.SYNC_REQUIRED_NOTIFICATION:
+                // 网关下行积压时被丢弃的推送不会重发，需主动拉取补齐
+                if (messageHandler != null) {
+                    messageHandler.onSyncRequired();
+                }
+                break;
             default:
                 System.out.println("收到未知类型的消息: " + chatMessage.getType());
                 break;
@@ -415,7 +430,8 @@ public abstract class AbstractClient implements IMClient {
             isLoggedIn.set(true);
             System.out.println("用户 " + userId + " 登录成功");
             if (messageHandler != null) {
-                messageHandler.onLoginSuccess();
+                // 重连风暴期间网关会给出延迟同步提示，错峰拉取离线消息
+                messageHandler.onLoginSuccess(Math.max(0, chatMessage.getSyncDelayMs()));
             }
         } else {
             String reason = "登录失败: " + chatMessage.getContent();
@@ -498,9 +514,24 @@ public abstract class AbstractClient implements IMClient {
         sendMessageInternal(heartbeatMsg);
     }
 
+    /**
+     * 记录网关给出的重连退避，下一次重连按该时长延迟
+     *
+     * @param retryAfterMs 退避时长（毫秒），不大于0时忽略
+     */
+    protected void setReconnectDelayHint(long retryAfterMs) {
+        if (retryAfterMs > 0) {
+            reconnectDelayHintMs = retryAfterMs;
+            System.out.println("服务繁忙，" + retryAfterMs + "ms后重连 - 用户: " + userId);
+        }
+    }
+
     private void scheduleReconnect() {
         if (scheduler.isShutdown()) return;
-        System.out.println(RECONNECT_DELAY_SECONDS + "秒后尝试重新连接...");
-        scheduler.schedule(this::connect, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+        long hinted = reconnectDelayHintMs;
+        reconnectDelayHintMs = 0;
+        long delayMs = hinted > 0 ? hinted : TimeUnit.SECONDS.toMillis(RECONNECT_DELAY_SECONDS);
+        System.out.println(delayMs + "ms后尝试重新连接...");
+        scheduler.schedule(this::connect, delayMs, TimeUnit.MILLISECONDS);
     }
 }
\ No newline at end of file
@@ -116,10 +116,20 @@ public interface IMClient {
     interface MessageHandler {
         void handleMessage(ChatMessage message);
 
-        void onLoginSuccess();
+        /**
+         * 登录成功。
+         *
+         * @param syncDelayMs 建议延迟多久再拉取离线消息（毫秒），0 表示立即同步
+         */
+        void onLoginSuccess(int syncDelayMs);
 
         void onLoginFailure(String reason);
 
         void onDisconnected();
+
+        /**
+         * 网关下行积压溢出，部分推送被合并为同步通知（SYNC_REQUIRED_NOTIFICATION），需要主动拉取同步。
+         */
+        void onSyncRequired();
     }
 }
\ No newline at end of file
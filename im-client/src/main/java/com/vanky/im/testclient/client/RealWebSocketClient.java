@@ -4,11 +4,15 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.vanky.im.common.protocol.ChatMessage;
 
 import java.net.URI;
+import java.net.http.HttpResponse;
 import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
 import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -59,10 +63,33 @@ public class RealWebSocketClient extends AbstractClient implements WebSocket.Lis
 
         } catch (Exception e) {
             System.err.println("WebSocket 连接失败 - 用户: " + userId + " - " + e.getMessage());
+            applyHandshakeRetryAfter(e);
             onDisconnected(); // 连接失败时触发重连
         }
     }
 
+    /**
+     * 握手被网关准入拒绝（503）时，按响应头 X-Retry-After-Ms（缺失时取 Retry-After 秒数）退避重连
+     */
+    private void applyHandshakeRetryAfter(Exception e) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        if (!(cause instanceof WebSocketHandshakeException)) {
+            return;
+        }
+        HttpResponse<?> response = ((WebSocketHandshakeException) cause).getResponse();
+        try {
+            Optional<String> retryAfterMs = response.headers().firstValue("X-Retry-After-Ms");
+            if (retryAfterMs.isPresent()) {
+                setReconnectDelayHint(Long.parseLong(retryAfterMs.get().trim()));
+                return;
+            }
+            response.headers().firstValue("Retry-After")
+                    .ifPresent(seconds -> setReconnectDelayHint(TimeUnit.SECONDS.toMillis(Long.parseLong(seconds.trim()))));
+        } catch (NumberFormatException ignored) {
+            // 退避提示格式错误时按默认间隔重连
+        }
+    }
+
 
 
     @Override
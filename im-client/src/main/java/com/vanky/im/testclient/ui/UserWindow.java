@@ -407,7 +407,7 @@ public class UserWindow extends JFrame implements IMClient.MessageHandler {
     }
 
     @Override
-    public void onLoginSuccess() {
+    public void onLoginSuccess(int syncDelayMs) {
         SwingUtilities.invokeLater(() -> {
             statusLabel.setText("状态: 已连接");
             statusLabel.setForeground(new Color(0, 128, 0)); // Dark Green
@@ -415,8 +415,15 @@ public class UserWindow extends JFrame implements IMClient.MessageHandler {
             sendGroupButton.setEnabled(true);
             appendMessage("[系统] 登录成功，连接已建立！");
 
-            // 启动消息同步
-            startMessageSync();
+            // 启动消息同步；网关繁忙时按提示延迟，错峰拉取离线消息
+            if (syncDelayMs > 0) {
+                appendMessage("[系统] 服务端繁忙，" + syncDelayMs + "ms后开始消息同步");
+                Timer syncTimer = new Timer(syncDelayMs, e -> startMessageSync());
+                syncTimer.setRepeats(false);
+                syncTimer.start();
+            } else {
+                startMessageSync();
+            }
         });
     }
 
@@ -435,6 +442,14 @@ public class UserWindow extends JFrame implements IMClient.MessageHandler {
         resetUIState();
     }
 
+    @Override
+    public void onSyncRequired() {
+        SwingUtilities.invokeLater(() -> {
+            appendMessage("[系统] 服务端消息积压，开始主动同步");
+            startMessageSync();
+        });
+    }
+
     /**
      * 格式化并显示一条聊天消息
      * @param message 聊天消息
@@ -26,5 +26,10 @@ public interface ChannelOptionConstant {
      * HTTP消息聚合最大长度
      */
     int MAX_CONTENT_LENGTH = 8192;
+
+    /**
+     * Protobuf帧最大长度（不含4字节长度头），超过即视为异常连接
+     */
+    int MAX_FRAME_LENGTH = 64 * 1024;
     
 } 
\ No newline at end of file
@@ -65,6 +65,12 @@ public class MessageTypeConstants {
 
     /** 消息已读通知 */
     public static final int MESSAGE_READ_NOTIFICATION = 1008;
+
+    /** 同步通知：下行积压溢出时部分消息未推送，客户端需主动拉取 */
+    public static final int SYNC_REQUIRED_NOTIFICATION = 1009;
+
+    /** 服务繁忙通知：网关准入受限时下发，携带 retryAfterMs，客户端按提示退避后重连 */
+    public static final int SERVER_BUSY_NOTIFICATION = 1010;
     
     // ==================== 客户端到客户端消息 (3000-3999) ====================
     
@@ -133,6 +139,8 @@ public class MessageTypeConstants {
             case MESSAGE_DELIVERY_FAILED: return "消息投递失败";
             case GROUP_MESSAGE_NOTIFICATION: return "群聊消息通知";
             case MESSAGE_READ_NOTIFICATION: return "消息已读通知";
+            case SYNC_REQUIRED_NOTIFICATION: return "同步通知";
+            case SERVER_BUSY_NOTIFICATION: return "服务繁忙通知";
             
             // 客户端到客户端消息
             case PRIVATE_CHAT_MESSAGE: return "私信聊天消息";
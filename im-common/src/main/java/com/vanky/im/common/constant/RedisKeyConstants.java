@@ -17,7 +17,7 @@ public class RedisKeyConstants {
 
     // ========== 会话管理相关 Redis Key ==========
 
-    /** 用户会话在Redis中的键前缀 */
+    /** 用户会话在Redis中的键前缀（Hash：deviceId -> UserSession，每个在线设备一个字段） */
     public static final String USER_SESSION_KEY_PREFIX = "im:session:user:";
 
     /** 在线用户集合的Redis键 */
@@ -28,6 +28,12 @@ public class RedisKeyConstants {
 
     /** 在线用户分片数量 */
     public static final int ONLINE_USERS_SHARD_COUNT = 16;
+
+    /** 网关在线用户集合前缀（每个网关一个集合，作为在线状态增量复制的全量快照） */
+    public static final String PRESENCE_GATEWAY_PREFIX = "im:presence:gateway:";
+
+    /** 在线状态增量/心跳发布频道 */
+    public static final String PRESENCE_CHANNEL = "im:presence:events";
     
     // ========== 消息相关 Redis Key ==========
     
@@ -88,6 +94,9 @@ public class RedisKeyConstants {
     
     /** 群组成员缓存前缀 */
     public static final String GROUP_MEMBERS_PREFIX = "group:members:";
+
+    /** 群组成员版本号前缀（成员变更时递增，用于校验本地成员快照） */
+    public static final String GROUP_MEMBERS_VERSION_PREFIX = "group:members_version:";
     
     // ========== 客户端存储相关 Redis Key ==========
 
@@ -220,7 +229,25 @@ public class RedisKeyConstants {
     public static String getGroupMembersKey(String groupId) {
         return GROUP_MEMBERS_PREFIX + groupId;
     }
+
+    /**
+     * 获取群组成员版本号键
+     * @param groupId 群组ID
+     * @return Redis键
+     */
+    public static String getGroupMembersVersionKey(String groupId) {
+        return GROUP_MEMBERS_VERSION_PREFIX + groupId;
+    }
     
+    /**
+     * 获取网关在线用户集合键
+     * @param gatewayId 网关实例ID
+     * @return Redis键
+     */
+    public static String getPresenceGatewayKey(String gatewayId) {
+        return PRESENCE_GATEWAY_PREFIX + gatewayId;
+    }
+
     /**
      * 获取用户群聊同步点键
      * @param userId 用户ID
@@ -27,6 +27,11 @@ public class TopicConstants {
      */
     public static final String TOPIC_MESSAGE_ACK = "TOPIC_MESSAGE_ACK";
 
+    /**
+     * ACK批量信封的消息标签，消息体为 AckBatch
+     */
+    public static final String TAG_ACK_BATCH = "ACK_BATCH";
+
     /**
      * 网关推送消息主题
      */
@@ -0,0 +1,66 @@
+package com.vanky.im.common.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在线状态复制事件
+ * 网关把本机连接用户的上下线合并为增量发布，并周期性发布心跳；
+ * 消息服务按 (gatewayId, epoch, seq) 判断是否漏收，漏收或网关重启时从网关在线集合全量重载。
+ *
+ * @author vanky
+ * @since 2025-09-04
+ */
+@Data
+@NoArgsConstructor
+public class PresenceEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 上下线增量 */
+    public static final String TYPE_DELTA = "DELTA";
+
+    /** 心跳，携带当前序号用于发现丢失的增量 */
+    public static final String TYPE_HEARTBEAT = "HEARTBEAT";
+
+    /** 网关正常下线，其用户全部离线 */
+    public static final String TYPE_LEAVE = "LEAVE";
+
+    private String type;
+
+    /**
+     * 网关实例ID
+     */
+    private String gatewayId;
+
+    /**
+     * 网关进程纪元（启动时间），变化表示网关重启，之前的状态全部作废
+     */
+    private long epoch;
+
+    /**
+     * 增量序号，同一纪元内从1开始连续递增；心跳携带最近一次增量的序号
+     */
+    private long seq;
+
+    /**
+     * 上线用户
+     */
+    private List<String> online = new ArrayList<>();
+
+    /**
+     * 下线用户
+     */
+    private List<String> offline = new ArrayList<>();
+
+    public PresenceEvent(String type, String gatewayId, long epoch, long seq) {
+        this.type = type;
+        this.gatewayId = gatewayId;
+        this.epoch = epoch;
+        this.seq = seq;
+    }
+}
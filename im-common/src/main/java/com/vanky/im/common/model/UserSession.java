@@ -20,6 +20,7 @@ public class UserSession implements Serializable {
     private String host;
     private int port;
     private String nodeId; // 服务节点标识（gateway_instance_id）
+    private String deviceId; // 设备ID，同一用户的多个设备各有一条会话
     private Integer clientType;
     private Integer version;
     
@@ -93,6 +94,14 @@ public class UserSession implements Serializable {
         this.nodeId = nodeId;
     }
 
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
     @JsonIgnore
     public Channel getChannel() {
         return channel;
@@ -126,6 +135,7 @@ public class UserSession implements Serializable {
                 ", host='" + host + '\'' +
                 ", port=" + port +
                 ", nodeId='" + nodeId + '\'' +
+                ", deviceId='" + deviceId + '\'' +
                 ", hasChannel=" + (channel != null) +
                 '}';
     }
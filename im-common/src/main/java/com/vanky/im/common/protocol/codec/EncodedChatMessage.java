@@ -0,0 +1,105 @@
+package com.vanky.im.common.protocol.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.vanky.im.common.protocol.ChatMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 已编码的下行消息：ChatMessage 的 protobuf 字节 + 路由/追踪所需的少量字段。
+ * 网关从推送信封中直接取得消息体字节，写出时只包装成 ByteBuf（不拷贝），
+ * 多端扇出和超时重发都复用同一份字节，不再反序列化和重新编码。
+ *
+ * @author vanky
+ * @since 2025-09-05
+ */
+public final class EncodedChatMessage {
+
+    private final int type;
+    private final String uid;
+    private final String fromId;
+    private final String toId;
+    private final String conversationId;
+    private final int flags;
+
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    public EncodedChatMessage(int type, String uid, String fromId, String toId, String conversationId, int flags,
+                              byte[] array, int offset, int length) {
+        this.type = type;
+        this.uid = uid;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.conversationId = conversationId;
+        this.flags = flags;
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 由已解析的消息和其原始字节构造（兼容未使用信封的旧消息体）
+     */
+    public static EncodedChatMessage of(ChatMessage message, byte[] encoded, int flags) {
+        return new EncodedChatMessage(message.getType(), message.getUid(), message.getFromId(), message.getToId(),
+                message.getConversationId(), flags, encoded, 0, encoded.length);
+    }
+
+    /**
+     * 消息体的包装（共享底层数组，不拷贝），每次写出都需要新的包装以保证读写指针独立
+     */
+    public ByteBuf payload() {
+        return Unpooled.wrappedBuffer(array, offset, length);
+    }
+
+    /**
+     * 按需解析为 ChatMessage（仅用于调试等冷路径）
+     */
+    public ChatMessage decode() throws InvalidProtocolBufferException {
+        return ChatMessage.parser().parseFrom(array, offset, length);
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getFromId() {
+        return fromId;
+    }
+
+    public String getToId() {
+        return toId;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedChatMessage{" +
+                "type=" + type +
+                ", uid='" + uid + '\'' +
+                ", toId='" + toId + '\'' +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.vanky.im.common.protocol.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * 已编码消息的帧编码器：4字节长度头 + 消息体，与 {@link ProtobufMessageEncoder} 输出的帧格式一致。
+ * 消息体直接包装原始字节，长度头和消息体组成复合缓冲区写出，不拷贝、不重新序列化。
+ */
+@ChannelHandler.Sharable
+public class EncodedMessageEncoder extends MessageToMessageEncoder<EncodedChatMessage> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, EncodedChatMessage msg, List<Object> out) throws Exception {
+        ByteBuf lengthPrefix = ctx.alloc().ioBuffer(4).writeInt(msg.getLength());
+        CompositeByteBuf frame = ctx.alloc().compositeBuffer(2);
+        frame.addComponents(true, lengthPrefix, msg.payload());
+        out.add(frame);
+    }
+}
@@ -1,8 +1,10 @@
 package com.vanky.im.common.protocol.codec;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import org.slf4j.Logger;
@@ -10,37 +12,70 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
+import static com.vanky.im.common.constant.ChannelOptionConstant.MAX_FRAME_LENGTH;
+
+/**
+ * Protobuf 帧解码器：4字节长度头 + 消息体。
+ * 直接在入站 ByteBuf 上解析（堆内存走数组偏移，直接内存走 ByteBuffer 视图），不再为每帧拷贝 byte[]；
+ * 长度头超过 maxFrameLength 或为负数时关闭连接。
+ */
 public class ProtobufMessageDecoder<T extends MessageLite> extends ByteToMessageDecoder {
     private static final Logger logger = LoggerFactory.getLogger(ProtobufMessageDecoder.class);
     private final Parser<T> parser;
+    private final int maxFrameLength;
 
     public ProtobufMessageDecoder(Parser<T> parser) {
+        this(parser, MAX_FRAME_LENGTH);
+    }
+
+    public ProtobufMessageDecoder(Parser<T> parser, int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength必须大于0: " + maxFrameLength);
+        }
         this.parser = parser;
+        this.maxFrameLength = maxFrameLength;
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        logger.debug("Protobuf解码器收到数据 - 可读字节数: {}, Channel: {}",
-                in.readableBytes(), ctx.channel().id().asShortText());
-
         if (in.readableBytes() < 4) {
-            logger.debug("数据不足4字节，等待更多数据");
             return;
         }
-        in.markReaderIndex();
-        int length = in.readInt();
-        logger.debug("读取消息长度: {}", length);
+        // 只窥视长度头，不移动读指针
+        int length = in.getInt(in.readerIndex());
+
+        if (length < 0 || length > maxFrameLength) {
+            logger.warn("Protobuf帧长度非法，关闭连接 - 长度: {}, 上限: {}, Channel: {}",
+                    length, maxFrameLength, ctx.channel().id().asShortText());
+            in.skipBytes(in.readableBytes());
+            ctx.close();
+            return;
+        }
 
-        if (in.readableBytes() < length) {
-            logger.debug("消息不完整，期望长度: {}, 实际可读: {}", length, in.readableBytes());
-            in.resetReaderIndex();
+        if (in.readableBytes() < 4 + length) {
             return;
         }
-        byte[] bytes = new byte[length];
-        in.readBytes(bytes);
-        T msg = parser.parseFrom(bytes);
-        logger.debug("成功解码Protobuf消息");
-        out.add(msg);
+        in.skipBytes(4);
+
+        ByteBuf frame = in.readSlice(length);
+        out.add(parseFrame(frame, length));
+    }
+
+    /**
+     * 在帧切片上原地解析，避免中间 byte[] 拷贝
+     */
+    private T parseFrame(ByteBuf frame, int length) throws Exception {
+        if (frame.hasArray()) {
+            return parser.parseFrom(frame.array(), frame.arrayOffset() + frame.readerIndex(), length);
+        }
+        if (frame.nioBufferCount() == 1) {
+            CodedInputStream input = CodedInputStream.newInstance(frame.nioBuffer(frame.readerIndex(), length));
+            return parser.parseFrom(input);
+        }
+        // 复合缓冲区等场景退化为流式读取
+        try (ByteBufInputStream input = new ByteBufInputStream(frame)) {
+            return parser.parseFrom(input);
+        }
     }
 
     @Override
@@ -49,4 +84,4 @@ public class ProtobufMessageDecoder<T extends MessageLite> extends ByteToMessage
                 ctx.channel().id().asShortText(), cause.getMessage(), cause);
         super.exceptionCaught(ctx, cause);
     }
-} 
\ No newline at end of file
+}
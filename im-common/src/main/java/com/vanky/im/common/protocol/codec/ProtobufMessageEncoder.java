@@ -1,15 +1,46 @@
 package com.vanky.im.common.protocol.codec;
 
+import com.google.protobuf.CodedOutputStream;
 import com.vanky.im.common.protocol.ChatMessage;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Protobuf 帧编码器：4字节长度头 + 消息体。
+ * 按 getSerializedSize() 预分配池化 IO 缓冲区，通过 CodedOutputStream 直接序列化进 ByteBuf，
+ * 不再经过 toByteArray() 的中间数组。
+ */
 public class ProtobufMessageEncoder extends MessageToByteEncoder<ChatMessage> {
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ChatMessage msg, boolean preferDirect) throws Exception {
+        // getSerializedSize() 结果会被消息对象缓存，encode 中再次调用无额外开销
+        int capacity = 4 + msg.getSerializedSize();
+        return preferDirect ? ctx.alloc().ioBuffer(capacity) : ctx.alloc().heapBuffer(capacity);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, ChatMessage msg, ByteBuf out) throws Exception {
-        byte[] bytes = msg.toByteArray();
-        out.writeInt(bytes.length);
-        out.writeBytes(bytes);
+        int size = msg.getSerializedSize();
+        out.writeInt(size);
+        out.ensureWritable(size);
+
+        int writerIndex = out.writerIndex();
+        if (out.nioBufferCount() == 1) {
+            ByteBuffer target = out.nioBuffer(writerIndex, size);
+            CodedOutputStream output = CodedOutputStream.newInstance(target);
+            msg.writeTo(output);
+            output.flush();
+            out.writerIndex(writerIndex + size);
+        } else {
+            // 复合缓冲区等场景退化为流式写入
+            try (ByteBufOutputStream output = new ByteBufOutputStream(out)) {
+                msg.writeTo(output);
+            }
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.vanky.im.common.protocol.codec;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.PushHeader;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 下行推送信封编解码
+ * 布局：[魔数 0x7E][版本][头长度 varint][PushHeader][已编码的 ChatMessage]。
+ * 消息服务编码一次；网关只解析头部做路由，消息体以 {@link EncodedChatMessage} 的形式原样写到连接上。
+ * 魔数 0x7E 在 protobuf 中对应非法的 wire type 6，不会与旧格式（直接是 ChatMessage 字节）混淆。
+ *
+ * @author vanky
+ * @since 2025-09-05
+ */
+public final class PushEnvelopeCodec {
+
+    public static final byte MAGIC = 0x7E;
+
+    public static final byte VERSION = 1;
+
+    /**
+     * 需要客户端ACK，网关为其登记超时重发
+     */
+    public static final int FLAG_ACK_REQUIRED = 1;
+
+    private PushEnvelopeCodec() {
+    }
+
+    /**
+     * 编码推送信封
+     *
+     * @param message 下行消息
+     * @param targetUserIds 目标用户，为空时网关使用 toId
+     * @param flags 标志位
+     * @return MQ消息体
+     */
+    public static byte[] encode(ChatMessage message, Collection<String> targetUserIds, int flags) {
+        PushHeader header = PushHeader.newBuilder()
+                .addAllTargetUserIds(targetUserIds)
+                .setMsgType(message.getType())
+                .setMsgId(message.getUid())
+                .setFromId(message.getFromId())
+                .setToId(message.getToId())
+                .setConversationId(message.getConversationId())
+                .setFlags(flags)
+                .build();
+
+        int headerSize = header.getSerializedSize();
+        int payloadSize = message.getSerializedSize();
+        byte[] body = new byte[2 + CodedOutputStream.computeUInt32SizeNoTag(headerSize) + headerSize + payloadSize];
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(body);
+            output.writeRawByte(MAGIC);
+            output.writeRawByte(VERSION);
+            output.writeUInt32NoTag(headerSize);
+            header.writeTo(output);
+            message.writeTo(output);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // 写入预分配的数组不会发生IO异常，出现即为大小计算错误
+            throw new IllegalStateException("推送信封编码失败", e);
+        }
+        return body;
+    }
+
+    /**
+     * 是否为推送信封格式
+     */
+    public static boolean isEnvelope(byte[] body) {
+        return body != null && body.length > 2 && body[0] == MAGIC;
+    }
+
+    /**
+     * 解码推送信封：只解析头部，消息体保持为原始字节
+     *
+     * @param body MQ消息体
+     * @return 信封
+     */
+    public static Envelope decode(byte[] body) throws InvalidProtocolBufferException {
+        if (!isEnvelope(body)) {
+            throw new InvalidProtocolBufferException("不是推送信封格式");
+        }
+        if (body[1] != VERSION) {
+            throw new InvalidProtocolBufferException("不支持的推送信封版本: " + body[1]);
+        }
+
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(body, 2, body.length - 2);
+            int headerSize = input.readRawVarint32();
+            int headerOffset = 2 + input.getTotalBytesRead();
+            if (headerSize < 0 || headerOffset + headerSize > body.length) {
+                throw new InvalidProtocolBufferException("推送信封头长度非法: " + headerSize);
+            }
+            PushHeader header = PushHeader.parser().parseFrom(body, headerOffset, headerSize);
+
+            int payloadOffset = headerOffset + headerSize;
+            EncodedChatMessage message = new EncodedChatMessage(header.getMsgType(), header.getMsgId(),
+                    header.getFromId(), header.getToId(), header.getConversationId(), header.getFlags(),
+                    body, payloadOffset, body.length - payloadOffset);
+            return new Envelope(header, message);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+    }
+
+    /**
+     * 解码后的推送信封
+     */
+    public static final class Envelope {
+
+        private final PushHeader header;
+
+        private final EncodedChatMessage message;
+
+        Envelope(PushHeader header, EncodedChatMessage message) {
+            this.header = header;
+            this.message = message;
+        }
+
+        public PushHeader getHeader() {
+            return header;
+        }
+
+        public EncodedChatMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * 目标用户：头部未指定时为消息的接收方
+         */
+        public List<String> getTargetUserIds() {
+            return header.getTargetUserIdsCount() > 0 ? header.getTargetUserIdsList() : List.of(header.getToId());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.vanky.im.common.service;
 
 import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.common.util.RedisBatch;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -91,6 +92,64 @@ public class PaginatedUserMessageManager {
         }
     }
 
+    /**
+     * 将用户消息元数据的读取加入批量操作，供 {@link #addMessage(RedisBatch, String, String, Long, int, RedisBatch.Result)} 使用
+     *
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @return 预取结果
+     */
+    public RedisBatch.Result<Object> prefetchMetadata(RedisBatch batch, String userId) {
+        return batch.get(getMetaKey(userId));
+    }
+
+    /**
+     * 将添加消息的写入（页面ZADD、页面过期、元数据）加入批量操作
+     * 元数据基于预取值计算，未成功预取时单独读取一次；预取须在该用户此前的写入执行之后进行，否则总数和最大seq会基于过期快照。
+     * 超过最大限制时需要在批量执行后调用 {@link #cleanupOldMessages}
+     *
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @param msgId 消息ID
+     * @param seq 序列号
+     * @param maxTotalSize 最大总消息数
+     * @param prefetchedMeta 预取的元数据
+     * @return 批量执行后是否需要清理旧页面
+     */
+    public boolean addMessage(RedisBatch batch, String userId, String msgId, Long seq, int maxTotalSize,
+                              RedisBatch.Result<Object> prefetchedMeta) {
+        if (userId == null || userId.trim().isEmpty() || msgId == null || seq == null) {
+            log.warn("参数无效，无法添加消息到用户消息链 - userId: {}, msgId: {}, seq: {}",
+                    userId, msgId, seq);
+            return false;
+        }
+
+        String pageKey = getPageKey(userId, calculatePageNumber(seq));
+        batch.zAdd(pageKey, msgId, seq.doubleValue());
+        batch.expire(pageKey, RedisKeyConstants.CONVERSATION_CACHE_TTL_SECONDS);
+
+        UserMessageMetadata metadata;
+        if (prefetchedMeta != null && prefetchedMeta.isDone()) {
+            Object metaObj = prefetchedMeta.get();
+            metadata = metaObj instanceof UserMessageMetadata ? (UserMessageMetadata) metaObj : null;
+        } else {
+            metadata = getUserMessageMetadata(userId);
+        }
+
+        if (metadata == null) {
+            metadata = new UserMessageMetadata();
+            metadata.setMinSeq(seq);
+            metadata.setMaxSeq(seq);
+            metadata.setTotalCount(1);
+        } else {
+            metadata.setMaxSeq(Math.max(metadata.getMaxSeq(), seq));
+            metadata.setTotalCount(metadata.getTotalCount() + 1);
+        }
+        batch.set(getMetaKey(userId), metadata, RedisKeyConstants.CONVERSATION_CACHE_TTL_SECONDS);
+
+        return metadata.getTotalCount() > maxTotalSize;
+    }
+
     /**
      * 获取用户消息链（支持分页查询）
      * 原则：KISS - 简单的范围查询实现
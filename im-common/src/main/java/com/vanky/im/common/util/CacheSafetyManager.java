@@ -1,23 +1,35 @@
 package com.vanky.im.common.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
  * 缓存安全管理器
  * 统一处理缓存穿透和缓存击穿问题
- * 
+ *
  * 设计原则：
- * - KISS: 使用简单的Redis命令实现分布式锁
+ * - KISS: 进程内L1 + Redis L2 两级缓存，L1未命中时同key并发请求合并为一次加载
  * - SRP: 专门负责缓存安全相关逻辑
  * - DRY: 避免在各个服务中重复实现缓存安全逻辑
- * 
+ *
+ * 一致性：L1的TTL不超过 cache.l1.ttl-seconds，删除/覆盖缓存时通过Redis发布订阅通知所有实例失效本地副本
+ *
  * @author vanky
  * @since 2025-01-17
  */
@@ -30,23 +42,95 @@ public class CacheSafetyManager {
 
     // 空值标记，用于防止缓存穿透
     private static final String NULL_VALUE_MARKER = "NULL_CACHE_MARKER";
-    
-    // 分布式锁前缀
-    private static final String LOCK_PREFIX = "cache:lock:";
-    
-    // 锁默认过期时间（秒）
-    private static final int DEFAULT_LOCK_EXPIRE_SECONDS = 30;
-    
+
     // 空值缓存默认TTL（秒）
     private static final int DEFAULT_NULL_VALUE_TTL_SECONDS = 300; // 5分钟
-    
-    // 锁获取重试参数
-    private static final int LOCK_RETRY_TIMES = 3;
-    private static final int LOCK_RETRY_INTERVAL_MS = 100;
+
+    // 等待同key合并加载的最长时间（毫秒），超时后自行加载
+    private static final long LOAD_WAIT_TIMEOUT_MS = 3000;
+
+    /**
+     * 是否启用进程内L1缓存
+     */
+    @Value("${cache.l1.enabled:true}")
+    private boolean l1Enabled;
+
+    /**
+     * 每个缓存分区的最大条目数
+     */
+    @Value("${cache.l1.max-size:50000}")
+    private int l1MaxSize;
+
+    /**
+     * L1最大TTL（秒），实际TTL取该值与Redis TTL的较小者
+     */
+    @Value("${cache.l1.ttl-seconds:30}")
+    private long l1TtlSeconds;
+
+    /**
+     * 条目存活超过TTL的该比例后，命中时异步提前刷新
+     */
+    @Value("${cache.l1.refresh-ahead-ratio:0.75}")
+    private double refreshAheadRatio;
+
+    /**
+     * 缓存失效通知频道
+     */
+    @Value("${cache.l1.invalidation-channel:cache:invalidate}")
+    private String invalidationChannel;
+
+    /**
+     * 缓存分区：按缓存键的第一段（如 user、friendship、group）划分，分别统计命中率
+     */
+    private final ConcurrentHashMap<String, LocalCache> regions = new ConcurrentHashMap<>();
+
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "cache-refresh-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RedisMessageListenerContainer invalidationListener;
+
+    @PostConstruct
+    public void init() {
+        if (!l1Enabled) {
+            log.info("本地L1缓存已禁用");
+            return;
+        }
+
+        try {
+            invalidationListener = new RedisMessageListenerContainer();
+            invalidationListener.setConnectionFactory(redisTemplate.getConnectionFactory());
+            invalidationListener.addMessageListener((message, pattern) -> onInvalidation(message),
+                    new ChannelTopic(invalidationChannel));
+            invalidationListener.afterPropertiesSet();
+            invalidationListener.start();
+            log.info("本地L1缓存启动 - 最大TTL: {}s, 分区容量: {}, 失效频道: {}",
+                    l1TtlSeconds, l1MaxSize, invalidationChannel);
+        } catch (Exception e) {
+            // 无法订阅失效通知时禁用L1，避免读到其他实例已删除的数据
+            l1Enabled = false;
+            log.error("订阅缓存失效频道失败，禁用本地L1缓存 - 频道: {}", invalidationChannel, e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+        if (invalidationListener != null) {
+            try {
+                invalidationListener.stop();
+                invalidationListener.destroy();
+            } catch (Exception e) {
+                log.warn("关闭缓存失效监听失败", e);
+            }
+        }
+    }
 
     /**
      * 安全获取缓存数据，带缓存穿透和缓存击穿保护
-     * 
+     *
      * @param <T> 返回数据类型
      * @param cacheKey 缓存键
      * @param dataLoader 数据加载函数（从数据库或其他数据源获取）
@@ -54,14 +138,15 @@ public class CacheSafetyManager {
      * @param resultClass 结果类型
      * @return 数据对象，如果不存在则返回null
      */
-    public <T> T safeGetFromCache(String cacheKey, Supplier<T> dataLoader, 
+    public <T> T safeGetFromCache(String cacheKey, Supplier<T> dataLoader,
                                  long cacheTtlSeconds, Class<T> resultClass) {
         return safeGetFromCache(cacheKey, dataLoader, cacheTtlSeconds, resultClass, null);
     }
 
     /**
      * 安全获取缓存数据，带缓存穿透和缓存击穿保护
-     * 
+     * 查找顺序：L1 -> Redis -> 数据源；同一实例内同key的并发未命中只会访问一次Redis/数据源
+     *
      * @param <T> 返回数据类型
      * @param cacheKey 缓存键
      * @param dataLoader 数据加载函数
@@ -70,95 +155,21 @@ public class CacheSafetyManager {
      * @param defaultValue 默认值（当数据不存在时返回）
      * @return 数据对象
      */
-    public <T> T safeGetFromCache(String cacheKey, Supplier<T> dataLoader, 
+    public <T> T safeGetFromCache(String cacheKey, Supplier<T> dataLoader,
                                  long cacheTtlSeconds, Class<T> resultClass, T defaultValue) {
         try {
-            // 1. 尝试从缓存获取数据
-            Object cached = redisTemplate.opsForValue().get(cacheKey);
-            
-            if (cached != null) {
-                // 检查是否是空值标记
-                if (NULL_VALUE_MARKER.equals(cached)) {
-                    log.debug("缓存命中空值标记 - key: {}", cacheKey);
-                    return defaultValue;
-                }
-                
-                // 正常缓存数据
-                if (resultClass.isInstance(cached)) {
-                    log.debug("缓存命中 - key: {}", cacheKey);
-                    return resultClass.cast(cached);
-                }
-            }
-            
-            // 2. 缓存未命中，使用分布式锁防止缓存击穿
-            String lockKey = LOCK_PREFIX + cacheKey;
-            String lockValue = String.valueOf(System.currentTimeMillis());
-            
-            boolean lockAcquired = acquireDistributedLock(lockKey, lockValue, DEFAULT_LOCK_EXPIRE_SECONDS);
-            
-            if (lockAcquired) {
-                try {
-                    // 获取锁成功，双重检查缓存（可能在等待锁期间其他线程已经加载了数据）
-                    cached = redisTemplate.opsForValue().get(cacheKey);
-                    if (cached != null) {
-                        if (NULL_VALUE_MARKER.equals(cached)) {
-                            return defaultValue;
-                        }
-                        if (resultClass.isInstance(cached)) {
-                            return resultClass.cast(cached);
-                        }
-                    }
-                    
-                    // 从数据源加载数据
-                    log.debug("从数据源加载数据 - key: {}", cacheKey);
-                    T data = dataLoader.get();
-                    
-                    if (data != null) {
-                        // 缓存正常数据
-                        redisTemplate.opsForValue().set(cacheKey, data, cacheTtlSeconds, TimeUnit.SECONDS);
-                        log.debug("缓存数据成功 - key: {}", cacheKey);
-                        return data;
-                    } else {
-                        // 缓存空值标记，防止缓存穿透
-                        redisTemplate.opsForValue().set(cacheKey, NULL_VALUE_MARKER, 
-                                                      DEFAULT_NULL_VALUE_TTL_SECONDS, TimeUnit.SECONDS);
-                        log.debug("缓存空值标记成功 - key: {}", cacheKey);
-                        return defaultValue;
-                    }
-                    
-                } finally {
-                    // 释放分布式锁
-                    releaseDistributedLock(lockKey, lockValue);
-                }
-            } else {
-                // 获取锁失败，等待一段时间后重试获取缓存
-                log.debug("获取分布式锁失败，等待后重试 - key: {}", cacheKey);
-                
-                for (int i = 0; i < LOCK_RETRY_TIMES; i++) {
-                    try {
-                        Thread.sleep(LOCK_RETRY_INTERVAL_MS);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                    
-                    cached = redisTemplate.opsForValue().get(cacheKey);
-                    if (cached != null) {
-                        if (NULL_VALUE_MARKER.equals(cached)) {
-                            return defaultValue;
-                        }
-                        if (resultClass.isInstance(cached)) {
-                            return resultClass.cast(cached);
-                        }
-                    }
-                }
-                
-                // 重试后仍无法获取缓存，直接调用数据加载器（降级处理）
-                log.warn("重试获取缓存失败，直接调用数据加载器 - key: {}", cacheKey);
-                T data = dataLoader.get();
-                return data != null ? data : defaultValue;
+            Supplier<Object> redisLoader = () -> loadThroughRedis(cacheKey, dataLoader, cacheTtlSeconds, resultClass);
+
+            Object value = l1Enabled
+                    ? regionOf(cacheKey).get(cacheKey, localTtlMillis(cacheTtlSeconds), redisLoader,
+                            refreshExecutor, LOAD_WAIT_TIMEOUT_MS)
+                    : redisLoader.get();
+
+            if (value == null || NULL_VALUE_MARKER.equals(value)) {
+                return defaultValue;
             }
-            
+            return resultClass.cast(value);
+
         } catch (Exception e) {
             log.error("缓存安全获取失败 - key: {}", cacheKey, e);
             // 异常降级，直接调用数据加载器
@@ -173,64 +184,101 @@ public class CacheSafetyManager {
     }
 
     /**
-     * 获取分布式锁
-     * 
-     * @param lockKey 锁键
-     * @param lockValue 锁值（用于释放时验证）
-     * @param expireSeconds 过期时间（秒）
-     * @return 是否获取成功
+     * 使用批量预取的Redis值获取缓存数据，查找顺序与 {@link #safeGetFromCache} 相同，
+     * 只是L1未命中时优先使用预取值，预取未命中或失败时才单独访问Redis/数据源
+     *
+     * @param <T> 返回数据类型
+     * @param cacheKey 缓存键
+     * @param prefetched 批量预取的Redis值（可为null）
+     * @param dataLoader 数据加载函数
+     * @param cacheTtlSeconds 缓存TTL（秒）
+     * @param resultClass 结果类型
+     * @param defaultValue 默认值（当数据不存在时返回）
+     * @return 数据对象
      */
-    private boolean acquireDistributedLock(String lockKey, String lockValue, int expireSeconds) {
+    public <T> T safeGetFromCache(String cacheKey, RedisBatch.Result<Object> prefetched, Supplier<T> dataLoader,
+                                  long cacheTtlSeconds, Class<T> resultClass, T defaultValue) {
+        if (prefetched == null || !prefetched.isDone()) {
+            return safeGetFromCache(cacheKey, dataLoader, cacheTtlSeconds, resultClass, defaultValue);
+        }
         try {
-            // 使用 SET NX EX 命令原子性地设置锁
-            Boolean result = redisTemplate.opsForValue().setIfAbsent(
-                    lockKey, lockValue, Duration.ofSeconds(expireSeconds));
-            
-            boolean acquired = Boolean.TRUE.equals(result);
-            if (acquired) {
-                log.debug("获取分布式锁成功 - lockKey: {}", lockKey);
-            } else {
-                log.debug("获取分布式锁失败 - lockKey: {}", lockKey);
+            Supplier<Object> redisLoader = () -> {
+                Object cached = prefetched.get();
+                if (cached != null && (NULL_VALUE_MARKER.equals(cached) || resultClass.isInstance(cached))) {
+                    return cached;
+                }
+                return loadThroughRedis(cacheKey, dataLoader, cacheTtlSeconds, resultClass);
+            };
+
+            Object value = l1Enabled
+                    ? regionOf(cacheKey).get(cacheKey, localTtlMillis(cacheTtlSeconds), redisLoader,
+                            refreshExecutor, LOAD_WAIT_TIMEOUT_MS)
+                    : redisLoader.get();
+
+            if (value == null || NULL_VALUE_MARKER.equals(value)) {
+                return defaultValue;
             }
-            
-            return acquired;
+            return resultClass.cast(value);
+
         } catch (Exception e) {
-            log.error("获取分布式锁异常 - lockKey: {}", lockKey, e);
-            return false;
+            log.error("缓存安全获取失败 - key: {}", cacheKey, e);
+            return safeGetFromCache(cacheKey, dataLoader, cacheTtlSeconds, resultClass, defaultValue);
         }
     }
 
     /**
-     * 释放分布式锁
-     * 
-     * @param lockKey 锁键
-     * @param lockValue 锁值（用于验证是否是自己的锁）
+     * 只经过本地L1缓存获取数据，用于Redis结构不是简单字符串的场景（如Set类型的群成员）
+     * 加载函数自行负责Redis读写，返回null时不缓存
+     *
+     * @param <T> 返回数据类型
+     * @param cacheKey 缓存键
+     * @param loader 加载函数
+     * @param cacheTtlSeconds 缓存TTL（秒）
+     * @return 数据对象
      */
-    private void releaseDistributedLock(String lockKey, String lockValue) {
-        try {
-            // 使用Lua脚本确保只释放自己的锁
-            String luaScript = 
-                "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
-                "    return redis.call('DEL', KEYS[1]) " +
-                "else " +
-                "    return 0 " +
-                "end";
-            
-            redisTemplate.execute((org.springframework.data.redis.core.RedisCallback<Object>) connection -> {
-                return connection.eval(luaScript.getBytes(), 
-                                     org.springframework.data.redis.connection.ReturnType.INTEGER, 
-                                     1, lockKey.getBytes(), lockValue.getBytes());
-            });
-            
-            log.debug("释放分布式锁成功 - lockKey: {}", lockKey);
-        } catch (Exception e) {
-            log.error("释放分布式锁异常 - lockKey: {}", lockKey, e);
+    @SuppressWarnings("unchecked")
+    public <T> T getWithLocalCache(String cacheKey, Supplier<T> loader, long cacheTtlSeconds) {
+        if (!l1Enabled) {
+            return loader.get();
+        }
+        return (T) regionOf(cacheKey).get(cacheKey, localTtlMillis(cacheTtlSeconds),
+                loader::get, refreshExecutor, LOAD_WAIT_TIMEOUT_MS);
+    }
+
+    /**
+     * 从Redis加载，未命中时调用数据加载器并回写Redis
+     *
+     * @return 数据对象或空值标记
+     */
+    private <T> Object loadThroughRedis(String cacheKey, Supplier<T> dataLoader,
+                                        long cacheTtlSeconds, Class<T> resultClass) {
+        Object cached = redisTemplate.opsForValue().get(cacheKey);
+        if (cached != null && (NULL_VALUE_MARKER.equals(cached) || resultClass.isInstance(cached))) {
+            log.debug("Redis缓存命中 - key: {}", cacheKey);
+            return cached;
+        }
+
+        // 从数据源加载数据
+        log.debug("从数据源加载数据 - key: {}", cacheKey);
+        T data = dataLoader.get();
+
+        if (data != null) {
+            // 缓存正常数据
+            redisTemplate.opsForValue().set(cacheKey, data, cacheTtlSeconds, TimeUnit.SECONDS);
+            log.debug("缓存数据成功 - key: {}", cacheKey);
+            return data;
         }
+
+        // 缓存空值标记，防止缓存穿透
+        redisTemplate.opsForValue().set(cacheKey, NULL_VALUE_MARKER,
+                DEFAULT_NULL_VALUE_TTL_SECONDS, TimeUnit.SECONDS);
+        log.debug("缓存空值标记成功 - key: {}", cacheKey);
+        return NULL_VALUE_MARKER;
     }
 
     /**
      * 手动设置空值缓存
-     * 
+     *
      * @param cacheKey 缓存键
      */
     public void setNullValueCache(String cacheKey) {
@@ -239,7 +287,7 @@ public class CacheSafetyManager {
 
     /**
      * 手动设置空值缓存
-     * 
+     *
      * @param cacheKey 缓存键
      * @param ttlSeconds TTL（秒）
      */
@@ -250,11 +298,12 @@ public class CacheSafetyManager {
         } catch (Exception e) {
             log.error("设置空值缓存失败 - key: {}", cacheKey, e);
         }
+        invalidateLocal(cacheKey);
     }
 
     /**
      * 删除缓存
-     * 
+     *
      * @param cacheKey 缓存键
      */
     public void deleteCache(String cacheKey) {
@@ -264,5 +313,84 @@ public class CacheSafetyManager {
         } catch (Exception e) {
             log.error("删除缓存失败 - key: {}", cacheKey, e);
         }
+        invalidateLocal(cacheKey);
+    }
+
+    /**
+     * 失效所有实例的本地缓存副本（Redis中的数据已被修改时调用）
+     *
+     * @param cacheKey 缓存键
+     */
+    public void invalidateLocal(String cacheKey) {
+        if (!l1Enabled) {
+            return;
+        }
+        LocalCache region = regions.get(regionName(cacheKey));
+        if (region != null) {
+            region.invalidate(cacheKey);
+        }
+        try {
+            redisTemplate.convertAndSend(invalidationChannel, cacheKey);
+        } catch (Exception e) {
+            log.error("发布缓存失效通知失败 - key: {}", cacheKey, e);
+        }
+    }
+
+    /**
+     * 只移除本实例的本地缓存副本，不通知其他实例（本实例自行发现数据过期时调用）
+     *
+     * @param cacheKey 缓存键
+     */
+    public void evictLocal(String cacheKey) {
+        LocalCache region = regions.get(regionName(cacheKey));
+        if (region != null) {
+            region.invalidate(cacheKey);
+        }
+    }
+
+    /**
+     * 获取各缓存分区的统计信息（含命中率）
+     */
+    public Map<String, Object> getLocalCacheStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", l1Enabled);
+        for (LocalCache region : regions.values()) {
+            statistics.put(region.getName(), region.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * 处理其他实例发布的失效通知
+     */
+    private void onInvalidation(Message message) {
+        try {
+            Object key = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if (key == null) {
+                return;
+            }
+            String cacheKey = key.toString();
+            LocalCache region = regions.get(regionName(cacheKey));
+            if (region != null) {
+                region.invalidate(cacheKey);
+            }
+            log.debug("收到缓存失效通知 - key: {}", cacheKey);
+        } catch (Exception e) {
+            log.warn("处理缓存失效通知失败", e);
+        }
+    }
+
+    private LocalCache regionOf(String cacheKey) {
+        return regions.computeIfAbsent(regionName(cacheKey),
+                name -> new LocalCache(name, l1MaxSize, refreshAheadRatio));
+    }
+
+    private String regionName(String cacheKey) {
+        int index = cacheKey.indexOf(':');
+        return index > 0 ? cacheKey.substring(0, index) : "default";
+    }
+
+    private long localTtlMillis(long cacheTtlSeconds) {
+        return TimeUnit.SECONDS.toMillis(Math.max(1, Math.min(l1TtlSeconds, cacheTtlSeconds)));
     }
 }
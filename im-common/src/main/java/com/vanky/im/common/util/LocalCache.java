@@ -0,0 +1,244 @@
+package com.vanky.im.common.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内一级缓存（L1）
+ * 有界容量 + TTL + 提前刷新（refresh-ahead）+ 同key并发加载合并
+ *
+ * 设计原则：
+ * - KISS: 基于ConcurrentHashMap，容量满时按过期优先、其次任意淘汰一小批
+ * - SRP: 只负责本地缓存与加载合并，不关心Redis/数据源细节
+ *
+ * @author vanky
+ * @since 2025-09-02
+ */
+@Slf4j
+public class LocalCache {
+
+    private final String name;
+    private final int maxSize;
+    private final double refreshAheadRatio;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载中的key，同key的并发未命中等待同一个Future；失效时一并移除，加载完成后据此判断结果是否已过期
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    // 统计指标
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public LocalCache(String name, int maxSize, double refreshAheadRatio) {
+        this.name = name;
+        this.maxSize = Math.max(1, maxSize);
+        this.refreshAheadRatio = refreshAheadRatio;
+    }
+
+    /**
+     * 获取缓存值，未命中时加载；同key的并发未命中只加载一次
+     *
+     * @param key 缓存键
+     * @param ttlMillis 本地TTL（毫秒）
+     * @param loader 加载函数，返回null表示不缓存
+     * @param refreshExecutor 提前刷新使用的线程池
+     * @param waitTimeoutMs 等待其他线程加载的最长时间，超时后自行加载
+     * @return 缓存值
+     */
+    public Object get(String key, long ttlMillis, Supplier<Object> loader,
+                      Executor refreshExecutor, long waitTimeoutMs) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+
+        if (entry != null && now < entry.expireAt) {
+            hits.increment();
+            if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+                try {
+                    refreshExecutor.execute(() -> refresh(key, ttlMillis, loader, entry));
+                } catch (Exception e) {
+                    entry.refreshing.set(false);
+                    log.debug("本地缓存提前刷新任务提交失败 - cache: {}, key: {}", name, key);
+                }
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        return loadCoalesced(key, ttlMillis, loader, waitTimeoutMs);
+    }
+
+    /**
+     * 失效单个key
+     * 先摘除进行中的加载再删除条目：加载可能在失效前读到了旧值，摘除后它不会再写入缓存
+     */
+    public void invalidate(String key) {
+        inflight.remove(key);
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        inflight.clear();
+        entries.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 命中率
+     */
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("hitRatio", hitRatio());
+        stats.put("loads", loads.sum());
+        stats.put("coalescedLoads", coalescedLoads.sum());
+        stats.put("refreshes", refreshes.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private Object loadCoalesced(String key, long ttlMillis, Supplier<Object> loader, long waitTimeoutMs) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            // 其他线程正在加载同一个key，等待其结果
+            coalescedLoads.increment();
+            try {
+                return existing.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException | ExecutionException e) {
+                log.debug("等待合并加载失败，自行加载 - cache: {}, key: {}", name, key);
+            }
+            return loader.get();
+        }
+
+        try {
+            loads.increment();
+            Object value = loader.get();
+            if (value != null) {
+                Entry loaded = put(key, value, ttlMillis);
+                // 加载期间key被失效：读到的可能是失效前的旧值，撤回写入（失效发生在写入之后时由失效自身删除）
+                if (inflight.get(key) != mine) {
+                    entries.remove(key, loaded);
+                }
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    private void refresh(String key, long ttlMillis, Supplier<Object> loader, Entry stale) {
+        try {
+            Object value = loader.get();
+            // 刷新期间key可能已被失效，只在原条目仍在时覆盖
+            if (value != null && entries.get(key) == stale) {
+                put(key, value, ttlMillis);
+                refreshes.increment();
+            }
+        } catch (Exception e) {
+            log.warn("本地缓存提前刷新失败 - cache: {}, key: {}", name, key, e);
+        } finally {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private Entry put(String key, Object value, long ttlMillis) {
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(value, now + ttlMillis, now + (long) (ttlMillis * refreshAheadRatio));
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * 淘汰一小批条目：优先淘汰已过期的，不足时淘汰遍历到的任意条目
+     */
+    private void evict() {
+        int target = Math.max(1, maxSize / 100);
+        long now = System.currentTimeMillis();
+        int removed = 0;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && removed < target) {
+            if (it.next().getValue().expireAt <= now) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        it = entries.entrySet().iterator();
+        while (it.hasNext() && removed < target) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+
+        evictions.add(removed);
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expireAt;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        Entry(Object value, long expireAt, long refreshAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -209,4 +209,23 @@ public class MsgGenerator {
                 .build();
     }
 
+    /**
+     * 生成同步通知消息（下行积压溢出时代替被丢弃的消息，客户端收到后主动拉取）
+     *
+     * @param userId 用户ID
+     * @return 同步通知消息
+     */
+    public static ChatMessage generateSyncRequiredMsg(String userId) {
+        return ChatMessage.newBuilder()
+                .setType(MessageTypeConstants.SYNC_REQUIRED_NOTIFICATION)
+                .setContent("消息积压，请主动同步")
+                .setFromId(ReceiveUserId.SYSTEM_ID)
+                .setToId(userId)
+                .setUid(UUID.randomUUID().toString())
+                .setSeq(String.valueOf(System.currentTimeMillis()))
+                .setTimestamp(System.currentTimeMillis())
+                .setRetry(0)
+                .build();
+    }
+
 }
@@ -0,0 +1,181 @@
+package com.vanky.im.common.util;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Redis批量操作：先把命令排队，执行时通过 Lettuce 管道一次往返全部发出
+ *
+ * 读命令总是排在写命令之前发出，结果按顺序回填到各自的 {@link Result}；写命令的返回值不关心
+ * （Spring 的管道会丢弃 OK 之类的状态回复，读写交错时无法按下标对应结果）。
+ * 执行失败时所有 {@link Result} 保持未完成状态，调用方应回退到逐条查询。
+ * 非线程安全，每个处理流程各自创建并只执行一次。
+ *
+ * @author vanky
+ * @create 2025/9/6
+ */
+public final class RedisBatch {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final List<Result<?>> reads = new ArrayList<>();
+
+    private final List<Consumer<RedisOperations<String, Object>>> writes = new ArrayList<>();
+
+    private boolean executed;
+
+    private RedisBatch(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public static RedisBatch of(RedisTemplate<String, Object> redisTemplate) {
+        return new RedisBatch(redisTemplate);
+    }
+
+    // ========== 读命令 ==========
+
+    /**
+     * GET
+     */
+    public Result<Object> get(String key) {
+        return addRead(ops -> ops.opsForValue().get(key));
+    }
+
+    /**
+     * HVALS
+     */
+    public Result<List<Object>> hashValues(String key) {
+        return addRead(ops -> ops.opsForHash().values(key));
+    }
+
+    /**
+     * SMEMBERS
+     */
+    public Result<Set<Object>> members(String key) {
+        return addRead(ops -> ops.opsForSet().members(key));
+    }
+
+    // ========== 写命令 ==========
+
+    /**
+     * SET key value EX ttl
+     */
+    public RedisBatch set(String key, Object value, long ttlSeconds) {
+        writes.add(ops -> ops.opsForValue().set(key, value, ttlSeconds, TimeUnit.SECONDS));
+        return this;
+    }
+
+    /**
+     * ZADD
+     */
+    public RedisBatch zAdd(String key, Object member, double score) {
+        writes.add(ops -> ops.opsForZSet().add(key, member, score));
+        return this;
+    }
+
+    /**
+     * EXPIRE
+     */
+    public RedisBatch expire(String key, long ttlSeconds) {
+        writes.add(ops -> ops.expire(key, ttlSeconds, TimeUnit.SECONDS));
+        return this;
+    }
+
+    /**
+     * 已排队的命令数
+     */
+    public int size() {
+        return reads.size() + writes.size();
+    }
+
+    public boolean isEmpty() {
+        return reads.isEmpty() && writes.isEmpty();
+    }
+
+    /**
+     * 在一次管道往返中发出全部命令，并回填读命令的结果
+     *
+     * @throws DataAccessException 管道执行失败（任一命令出错都会导致整体失败）
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("Redis批量操作已执行");
+        }
+        executed = true;
+        if (isEmpty()) {
+            return;
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (Result<?> read : reads) {
+                    read.command.accept(ops);
+                }
+                for (Consumer<RedisOperations<String, Object>> write : writes) {
+                    write.accept(ops);
+                }
+                return null;
+            }
+        });
+
+        for (int i = 0; i < reads.size(); i++) {
+            reads.get(i).complete(i < results.size() ? results.get(i) : null);
+        }
+    }
+
+    private <T> Result<T> addRead(Consumer<RedisOperations<String, Object>> command) {
+        if (executed) {
+            throw new IllegalStateException("Redis批量操作已执行");
+        }
+        Result<T> result = new Result<>(command);
+        reads.add(result);
+        return result;
+    }
+
+    /**
+     * 读命令的结果，批量执行成功后可用
+     */
+    public static final class Result<T> {
+
+        private final Consumer<RedisOperations<String, Object>> command;
+
+        private T value;
+
+        private boolean done;
+
+        private Result(Consumer<RedisOperations<String, Object>> command) {
+            this.command = command;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(Object value) {
+            this.value = (T) value;
+            this.done = true;
+        }
+
+        /**
+         * 是否已取得结果（批量执行失败或尚未执行时为false）
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("Redis批量操作尚未成功执行");
+            }
+            return value;
+        }
+    }
+}
@@ -1,116 +1,469 @@
 package com.vanky.im.common.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author vanky
  * @date 2025/5/28
  * @description Token工具类，用于生成和验证token
+ *
+ * 配置了签名密钥时签发无状态签名token：v1.{kid}.{base64url(userId)}.{签发时间ms}.{过期时间ms}.{HMAC-SHA256}，
+ * 网关本地验签即可得到userId，不再每个UDP包/WebSocket握手都访问Redis。
+ * 密钥轮换：新token使用 active-kid 签名，keys 中保留的旧 kid 继续可验签，移除后旧token失效。
+ * 吊销：吊销记录写入Redis有序集合（score为吊销时间），各实例定时增量同步 + 发布订阅实时通知，
+ * 镜像到本地布隆过滤器；只有布隆过滤器命中时才回查Redis确认。
+ * 未配置密钥时保持原有的随机token + Redis存储方式；存量随机token在迁移期内仍按Redis校验。
  */
+@Slf4j
 @Component
 public class TokenUtil {
 
     // token有效期，默认24小时（单位：秒）
     private static final long TOKEN_EXPIRE_TIME = 24 * 60 * 60;
-    
+
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
-    
+
     // Redis中token的key前缀
     private static final String TOKEN_PREFIX = "token:";
-    
+
+    // 签名token版本前缀
+    private static final String SIGNED_VERSION = "v1";
+
+    // 签名token的字段数：版本、kid、userId、签发时间、过期时间、签名
+    private static final int SIGNED_PARTS = 6;
+
+    // 吊销集合（有序集合，member为吊销项，score为吊销时间ms）
+    private static final String REVOKED_KEY = "token:revoked";
+
+    // 吊销单个token，member为 t:{签名}
+    private static final String REVOKE_TOKEN_PREFIX = "t:";
+
+    // 吊销用户此前签发的全部token，member为 u:{userId}
+    private static final String REVOKE_USER_PREFIX = "u:";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持的签名算法: " + HMAC_ALGORITHM, e);
+        }
+    });
+
+    /**
+     * 签名密钥，格式：kid1=secret1,kid2=secret2；为空时不启用签名token
+     */
+    @Value("${token.signing.keys:}")
+    private String signingKeys;
+
+    /**
+     * 当前签发使用的kid，为空时取第一个密钥
+     */
+    @Value("${token.signing.active-kid:}")
+    private String activeKid;
+
+    /**
+     * 吊销集合增量同步间隔（毫秒）
+     */
+    @Value("${token.revocation.sync-interval-ms:5000}")
+    private long syncIntervalMs;
+
+    /**
+     * 吊销集合全量重建间隔（毫秒），同时清理已过期的吊销项
+     */
+    @Value("${token.revocation.full-reload-interval-ms:600000}")
+    private long fullReloadIntervalMs;
+
+    /**
+     * 布隆过滤器预期容量
+     */
+    @Value("${token.revocation.expected-size:100000}")
+    private int expectedRevocations;
+
+    /**
+     * 布隆过滤器误判率，误判时多一次Redis回查
+     */
+    @Value("${token.revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    /**
+     * 吊销实时通知频道
+     */
+    @Value("${token.revocation.channel:token:revoke}")
+    private String revocationChannel;
+
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+
+    private volatile BloomFilter revokedFilter;
+
+    /**
+     * 上次同步吊销集合的时间，增量同步从该时间（减去重叠窗口）开始拉取
+     */
+    private volatile long lastSyncTime;
+
+    private ScheduledExecutorService revocationSyncer;
+
+    private RedisMessageListenerContainer revocationListener;
+
+    @PostConstruct
+    public void init() {
+        if (signingKeys == null || signingKeys.isBlank()) {
+            log.warn("未配置token签名密钥（token.signing.keys），使用Redis存储的随机token");
+            return;
+        }
+
+        for (String entry : signingKeys.split(",")) {
+            int idx = entry.indexOf('=');
+            if (idx <= 0 || idx == entry.length() - 1) {
+                throw new IllegalStateException("token签名密钥格式错误，应为 kid=secret");
+            }
+            String kid = entry.substring(0, idx).trim();
+            byte[] secret = entry.substring(idx + 1).trim().getBytes(StandardCharsets.UTF_8);
+            if (secret.length < 32) {
+                log.warn("token签名密钥长度不足32字节，建议使用更长的随机密钥 - kid: {}", kid);
+            }
+            keys.put(kid, new SecretKeySpec(secret, HMAC_ALGORITHM));
+            if (activeKid == null || activeKid.isBlank()) {
+                activeKid = kid;
+            }
+        }
+        if (!keys.containsKey(activeKid)) {
+            throw new IllegalStateException("token签名 active-kid 不在密钥列表中: " + activeKid);
+        }
+
+        revokedFilter = new BloomFilter(expectedRevocations, falsePositiveRate);
+        revocationSyncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-revocation-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        revocationSyncer.scheduleWithFixedDelay(this::reloadRevocationsSafely,
+                0, fullReloadIntervalMs, TimeUnit.MILLISECONDS);
+        revocationSyncer.scheduleWithFixedDelay(this::syncRevocationsSafely,
+                syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+
+        try {
+            revocationListener = new RedisMessageListenerContainer();
+            revocationListener.setConnectionFactory(redisTemplate.getConnectionFactory());
+            revocationListener.addMessageListener((message, pattern) -> onRevocation(message),
+                    new ChannelTopic(revocationChannel));
+            revocationListener.afterPropertiesSet();
+            revocationListener.start();
+        } catch (Exception e) {
+            // 实时通知不可用时仍有定时增量同步兜底
+            revocationListener = null;
+            log.error("订阅token吊销频道失败，吊销生效依赖定时同步 - 频道: {}", revocationChannel, e);
+        }
+
+        log.info("签名token已启用 - 当前kid: {}, 可验签kid: {}, 吊销同步间隔: {}ms",
+                activeKid, keys.keySet(), syncIntervalMs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (revocationSyncer != null) {
+            revocationSyncer.shutdownNow();
+        }
+        if (revocationListener != null) {
+            try {
+                revocationListener.stop();
+                revocationListener.destroy();
+            } catch (Exception e) {
+                log.warn("关闭token吊销监听失败", e);
+            }
+        }
+    }
+
     /**
      * 生成token
      * @param userId 用户ID
      * @return token
      */
     public String generateToken(String userId) {
+        if (!keys.isEmpty()) {
+            return generateSignedToken(userId);
+        }
+
         // 生成随机的UUID作为基础
         String base = UUID.randomUUID().toString();
         // 添加时间戳增加随机性
         String raw = base + ":" + userId + ":" + System.currentTimeMillis();
-        
+
         try {
             // 使用SHA-256对原始数据进行摘要
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hashBytes = digest.digest(raw.getBytes(StandardCharsets.UTF_8));
-            
+
             // 将hash转为Base64编码作为token
             String token = Base64.getUrlEncoder().withoutPadding().encodeToString(hashBytes);
-            
+
             // 存储token信息到Redis
             TokenInfo tokenInfo = new TokenInfo(userId, System.currentTimeMillis());
             redisTemplate.opsForValue().set(TOKEN_PREFIX + token, tokenInfo, TOKEN_EXPIRE_TIME, TimeUnit.SECONDS);
-            
+
             return token;
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Token生成失败", e);
         }
     }
-    
+
     /**
      * 验证token是否有效
      * @param token token
      * @return 如果有效返回用户ID，否则返回null
      */
     public String verifyToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        if (isSignedToken(token)) {
+            return verifySignedToken(token);
+        }
+
         TokenInfo tokenInfo = (TokenInfo) redisTemplate.opsForValue().get(TOKEN_PREFIX + token);
         if (tokenInfo == null) {
             return null;
         }
-        
+
         return tokenInfo.getUserId();
     }
-    
+
     /**
-     * 移除token
+     * 移除token，签名token写入吊销集合
      * @param token token
      */
     public void removeToken(String token) {
+        if (isSignedToken(token)) {
+            revoke(REVOKE_TOKEN_PREFIX + token.substring(token.lastIndexOf('.') + 1));
+            return;
+        }
         redisTemplate.delete(TOKEN_PREFIX + token);
     }
-    
+
+    /**
+     * 吊销用户在此之前签发的全部签名token（如封禁、修改密码、退出全部设备）
+     * @param userId 用户ID
+     */
+    public void revokeUserTokens(String userId) {
+        if (keys.isEmpty()) {
+            // 未启用签名token，随机token不涉及吊销集合
+            return;
+        }
+        revoke(REVOKE_USER_PREFIX + userId);
+    }
+
+    private boolean isSignedToken(String token) {
+        return token.startsWith(SIGNED_VERSION + ".");
+    }
+
+    private String generateSignedToken(String userId) {
+        long now = System.currentTimeMillis();
+        long expireAt = now + TimeUnit.SECONDS.toMillis(TOKEN_EXPIRE_TIME);
+        String payload = SIGNED_VERSION + "." + activeKid + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(userId.getBytes(StandardCharsets.UTF_8))
+                + "." + now + "." + expireAt;
+        String signature = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(sign(keys.get(activeKid), payload));
+        return payload + "." + signature;
+    }
+
+    private String verifySignedToken(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != SIGNED_PARTS) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(parts[1]);
+        if (key == null) {
+            // 未知或已下线的kid
+            return null;
+        }
+
+        try {
+            byte[] expected = sign(key, token.substring(0, token.lastIndexOf('.')));
+            byte[] actual = Base64.getUrlDecoder().decode(parts[5]);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+
+            long issuedAt = Long.parseLong(parts[3]);
+            long expireAt = Long.parseLong(parts[4]);
+            if (expireAt <= System.currentTimeMillis()) {
+                return null;
+            }
+
+            String userId = new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8);
+            if (isRevoked(userId, issuedAt, parts[5])) {
+                return null;
+            }
+            return userId;
+        } catch (IllegalArgumentException e) {
+            // Base64或数字格式错误
+            return null;
+        }
+    }
+
+    private byte[] sign(SecretKeySpec key, String payload) {
+        Mac mac = MAC.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("token签名密钥无效", e);
+        }
+        return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 布隆过滤器未命中时直接判定未吊销；命中时回查Redis排除误判，Redis不可用时按已吊销处理
+     */
+    private boolean isRevoked(String userId, long issuedAt, String signature) {
+        BloomFilter filter = revokedFilter;
+        String tokenMember = REVOKE_TOKEN_PREFIX + signature;
+        String userMember = REVOKE_USER_PREFIX + userId;
+        boolean tokenHit = filter.mightContain(tokenMember);
+        boolean userHit = filter.mightContain(userMember);
+        if (!tokenHit && !userHit) {
+            return false;
+        }
+
+        try {
+            if (tokenHit && redisTemplate.opsForZSet().score(REVOKED_KEY, tokenMember) != null) {
+                return true;
+            }
+            if (userHit) {
+                Double revokedAt = redisTemplate.opsForZSet().score(REVOKED_KEY, userMember);
+                return revokedAt != null && issuedAt <= revokedAt.longValue();
+            }
+            return false;
+        } catch (Exception e) {
+            log.warn("回查token吊销状态失败，按已吊销处理 - 用户: {}", userId, e);
+            return true;
+        }
+    }
+
+    private void revoke(String member) {
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForZSet().add(REVOKED_KEY, member, now);
+        BloomFilter filter = revokedFilter;
+        if (filter != null) {
+            filter.put(member);
+        }
+        try {
+            redisTemplate.convertAndSend(revocationChannel, member);
+        } catch (Exception e) {
+            log.warn("发布token吊销通知失败，等待定时同步 - member: {}", member, e);
+        }
+    }
+
+    private void onRevocation(Message message) {
+        try {
+            Object member = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if (member != null) {
+                revokedFilter.put(member.toString());
+            }
+        } catch (Exception e) {
+            log.warn("处理token吊销通知失败", e);
+        }
+    }
+
+    private void syncRevocationsSafely() {
+        try {
+            // 与上次同步保留一个重叠窗口，覆盖实例间时钟偏差和全量重建期间到达的通知
+            long now = System.currentTimeMillis();
+            long from = lastSyncTime - 2 * syncIntervalMs - 1000;
+            Set<Object> members = redisTemplate.opsForZSet().rangeByScore(REVOKED_KEY, from, Double.MAX_VALUE);
+            if (members != null) {
+                BloomFilter filter = revokedFilter;
+                for (Object member : members) {
+                    filter.put(member.toString());
+                }
+            }
+            lastSyncTime = now;
+        } catch (Exception e) {
+            log.warn("增量同步token吊销集合失败", e);
+        }
+    }
+
+    private void reloadRevocationsSafely() {
+        try {
+            long now = System.currentTimeMillis();
+            // 吊销时间早于一个token有效期的吊销项已无对应的有效token
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, 0,
+                    now - TimeUnit.SECONDS.toMillis(TOKEN_EXPIRE_TIME));
+            Set<Object> members = redisTemplate.opsForZSet().range(REVOKED_KEY, 0, -1);
+            int size = members == null ? 0 : members.size();
+
+            BloomFilter filter = new BloomFilter(Math.max(expectedRevocations, size * 2), falsePositiveRate);
+            if (members != null) {
+                for (Object member : members) {
+                    filter.put(member.toString());
+                }
+            }
+            revokedFilter = filter;
+            lastSyncTime = now;
+            log.info("token吊销集合全量重建完成 - 吊销项: {}", size);
+        } catch (Exception e) {
+            log.error("全量加载token吊销集合失败，保留当前本地镜像", e);
+        }
+    }
+
     /**
      * Token信息类
      */
     public static class TokenInfo implements Serializable {
         private static final long serialVersionUID = 1L;
-        
+
         private String userId;
         private long createTime;
-        
+
         public TokenInfo() {
         }
-        
+
         public TokenInfo(String userId, long createTime) {
             this.userId = userId;
             this.createTime = createTime;
         }
-        
+
         public String getUserId() {
             return userId;
         }
-        
+
         public void setUserId(String userId) {
             this.userId = userId;
         }
-        
+
         public long getCreateTime() {
             return createTime;
         }
-        
+
         public void setCreateTime(long createTime) {
             this.createTime = createTime;
         }
     }
-}
\ No newline at end of file
+}
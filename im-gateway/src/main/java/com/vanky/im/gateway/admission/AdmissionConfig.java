@@ -0,0 +1,63 @@
+package com.vanky.im.gateway.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 连接准入控制配置
+ *
+ * @author vanky
+ * @create 2025/9/6
+ * @description 网关重启后客户端集中重连时，对新连接限速、登录后台任务限流，并下发退避与延迟同步提示
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionConfig {
+
+    /**
+     * 是否启用准入控制，关闭时连接不限速（登录后台任务仍使用有界线程池）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每秒允许接入的新连接数（令牌桶补充速率）
+     */
+    private int acceptRatePerSecond = 2000;
+
+    /**
+     * 令牌桶容量，允许的瞬时突发连接数
+     */
+    private int acceptBurst = 4000;
+
+    /**
+     * 登录后台任务（会话写入Redis）线程数
+     */
+    private int loginThreads = 8;
+
+    /**
+     * 登录后台任务队列容量，写满后拒绝登录并下发退避提示
+     */
+    private int loginQueueCapacity = 10000;
+
+    /**
+     * 重连退避的最小值（毫秒）
+     */
+    private int backoffBaseMs = 1000;
+
+    /**
+     * 重连退避的最大值（毫秒）
+     */
+    private int backoffMaxMs = 60000;
+
+    /**
+     * 令牌桶消耗比例超过该值视为重连风暴，登录成功时下发延迟同步提示
+     */
+    private double syncLaterThreshold = 0.5;
+
+    /**
+     * 延迟同步的最大打散窗口（毫秒），实际延迟按负载比例在窗口内随机取值
+     */
+    private int syncSpreadMaxMs = 30000;
+}
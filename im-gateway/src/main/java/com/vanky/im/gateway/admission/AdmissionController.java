@@ -0,0 +1,198 @@
+package com.vanky.im.gateway.admission;
+
+import com.vanky.im.common.constant.MessageTypeConstants;
+import com.vanky.im.common.constant.ReceiveUserId;
+import com.vanky.im.common.protocol.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接准入控制器
+ * 网关重启时客户端会在同一时刻重连，每个登录都要写Redis会话、随后拉取离线消息。
+ * 准入控制分三层削峰：
+ * 1. 令牌桶限制新连接速率，超出的连接收到带抖动的退避提示后断开；
+ * 2. 登录的Redis写入放到有界线程池，队列满时同样拒绝并下发退避提示，不再占用公共 ForkJoin 池；
+ * 3. 风暴期间登录成功的客户端收到延迟同步提示，在打散窗口内错峰调用 /pull-batch。
+ *
+ * @author vanky
+ * @create 2025/9/6
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    @Autowired
+    private AdmissionConfig config;
+
+    private TokenBucket acceptBucket;
+
+    private ThreadPoolExecutor loginExecutor;
+
+    /**
+     * 当前秒内被拒绝的连接数，用于估算积压连接全部接入所需的时间（退避窗口）
+     */
+    private final AtomicInteger rejectedInWindow = new AtomicInteger(0);
+    private volatile long windowStartMillis = System.currentTimeMillis();
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong admittedConnections = new AtomicLong(0);
+    private final AtomicLong rejectedConnections = new AtomicLong(0);
+    private final AtomicLong rejectedLogins = new AtomicLong(0);
+    private final AtomicLong syncLaterHints = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        acceptBucket = new TokenBucket(config.getAcceptRatePerSecond(), config.getAcceptBurst());
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        loginExecutor = new ThreadPoolExecutor(config.getLoginThreads(), config.getLoginThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getLoginQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "login-worker-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        log.info("连接准入控制初始化 - 启用: {}, 接入速率: {}/s, 突发: {}, 登录线程: {}, 登录队列: {}",
+                config.isEnabled(), config.getAcceptRatePerSecond(), config.getAcceptBurst(),
+                config.getLoginThreads(), config.getLoginQueueCapacity());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        loginExecutor.shutdown();
+        try {
+            if (!loginExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                loginExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            loginExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 新连接准入判断
+     *
+     * @return 是否允许接入
+     */
+    public boolean tryAdmitConnection() {
+        if (!config.isEnabled() || acceptBucket.tryAcquire()) {
+            admittedConnections.incrementAndGet();
+            return true;
+        }
+        rejectedConnections.incrementAndGet();
+        recordRejection();
+        return false;
+    }
+
+    /**
+     * 提交登录后台任务（会话写入Redis等）
+     *
+     * @param task 登录任务
+     * @return 是否提交成功，队列已满时返回false，调用方应拒绝本次登录
+     */
+    public boolean submitLogin(Runnable task) {
+        try {
+            loginExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedLogins.incrementAndGet();
+            recordRejection();
+            return false;
+        }
+    }
+
+    /**
+     * 计算重连退避时间（毫秒）
+     * 退避窗口取"当前秒内被拒绝的连接数 / 接入速率"，即按当前速率接入这批连接所需的时间，
+     * 在 [base, base + 窗口] 内均匀随机，使被拒绝的客户端错开重连时刻而不是再次同时涌入。
+     */
+    public int nextBackoffMs() {
+        int base = config.getBackoffBaseMs();
+        long window = (long) rejectedInWindow.get() * 1000 / Math.max(1, config.getAcceptRatePerSecond());
+        long spread = Math.min(Math.max(window, base), (long) config.getBackoffMaxMs() - base);
+        return base + (spread > 0 ? (int) ThreadLocalRandom.current().nextLong(spread + 1) : 0);
+    }
+
+    /**
+     * 计算登录成功后的延迟同步时间（毫秒），0 表示立即同步
+     * 令牌桶消耗比例超过阈值时视为重连风暴，按负载比例在打散窗口内随机取值
+     */
+    public int nextSyncDelayMs() {
+        if (!config.isEnabled()) {
+            return 0;
+        }
+        double usage = acceptBucket.usage();
+        int pendingLogins = loginExecutor.getQueue().size();
+        double load = Math.max(usage, (double) pendingLogins / Math.max(1, config.getLoginQueueCapacity()));
+        if (load < config.getSyncLaterThreshold()) {
+            return 0;
+        }
+        syncLaterHints.incrementAndGet();
+        long spread = (long) (config.getSyncSpreadMaxMs() * Math.min(1.0, load));
+        return spread > 0 ? (int) ThreadLocalRandom.current().nextLong(spread + 1) : 0;
+    }
+
+    /**
+     * 生成服务繁忙通知（携带退避提示）
+     *
+     * @param userId 用户ID，连接未登录时为空
+     * @return 通知消息
+     */
+    public ChatMessage buildBusyMessage(String userId) {
+        long now = System.currentTimeMillis();
+        return ChatMessage.newBuilder()
+                .setType(MessageTypeConstants.SERVER_BUSY_NOTIFICATION)
+                .setContent("服务繁忙，请稍后重连")
+                .setFromId(ReceiveUserId.SYSTEM_ID)
+                .setToId(userId != null ? userId : "")
+                .setUid(UUID.randomUUID().toString())
+                .setSeq(String.valueOf(now))
+                .setTimestamp(now)
+                .setRetryAfterMs(nextBackoffMs())
+                .build();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("admittedConnections", admittedConnections.get());
+        stats.put("rejectedConnections", rejectedConnections.get());
+        stats.put("rejectedLogins", rejectedLogins.get());
+        stats.put("syncLaterHints", syncLaterHints.get());
+        stats.put("acceptBucketUsage", acceptBucket.usage());
+        stats.put("loginQueueSize", loginExecutor.getQueue().size());
+        stats.put("loginActiveThreads", loginExecutor.getActiveCount());
+        return stats;
+    }
+
+    private void recordRejection() {
+        long now = System.currentTimeMillis();
+        if (now - windowStartMillis >= 1000) {
+            windowStartMillis = now;
+            rejectedInWindow.set(0);
+        }
+        rejectedInWindow.incrementAndGet();
+    }
+}
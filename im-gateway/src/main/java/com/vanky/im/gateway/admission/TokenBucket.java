@@ -0,0 +1,58 @@
+package com.vanky.im.gateway.admission;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，桶满后不再累积；每个新连接消耗一个令牌。
+ * 获取令牌只在连接建立/握手时发生，竞争远低于消息路径，直接使用同步方法。
+ *
+ * @author vanky
+ * @create 2025/9/6
+ */
+public class TokenBucket {
+
+    private final double capacity;
+
+    private final double tokensPerNano;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(int ratePerSecond, int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerNano = Math.max(1, ratePerSecond) / 1_000_000_000.0;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 已消耗的比例：0 表示桶满（空闲），1 表示桶空（正在限速）
+     */
+    public synchronized double usage() {
+        refill();
+        return 1 - tokens / capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -118,6 +118,24 @@ public class GatewayInstanceManager {
         }
     }
     
+    /**
+     * 获取跨重启稳定的节点标识，用于需要长期存在的Broker侧资源（如网关独占的消费者组）
+     * 实例ID在自动生成时带随机后缀，每次重启都会变化，不能直接用来命名这类资源
+     * 优先级：配置的node-id > IP + 端口
+     *
+     * @return 节点标识
+     */
+    public String getStableNodeKey() {
+        if (configuredNodeId != null && !configuredNodeId.trim().isEmpty()) {
+            return configuredNodeId;
+        }
+        try {
+            return String.format("gateway-%s-%d", InetAddress.getLocalHost().getHostAddress(), serverPort);
+        } catch (Exception e) {
+            throw new IllegalStateException("获取本机IP失败，请配置 server.node-id 作为网关节点标识", e);
+        }
+    }
+
     /**
      * 检查是否启用了Nacos服务发现
      */
@@ -14,6 +14,8 @@ import org.springframework.context.annotation.Configuration;
 
 /**
  * Gateway推送消息消费者配置
+ * 每个网关实例使用独立的消费者组，并只订阅以自身实例ID为Tag的消息，
+ * 由Broker按Tag过滤，网关不再接收和反序列化其他网关用户的推送
  */
 @Slf4j
 @Configuration
@@ -31,6 +33,12 @@ public class GatewayPushConsumerConfig {
     @Value("${rocketmq.push-consumer.consume-thread-max:20}")
     private int consumeThreadMax;
     
+    /**
+     * 单次回调的最大消息数，同一接收方的多条消息在一次回调内合并flush
+     */
+    @Value("${rocketmq.push-consumer.consume-message-batch-max-size:32}")
+    private int consumeMessageBatchMaxSize;
+    
     @Value("${message.push.topic:TOPIC_PUSH_TO_GATEWAY}")
     private String pushToGatewayTopic;
     
@@ -45,27 +53,33 @@ public class GatewayPushConsumerConfig {
     
     @Bean(name = "pushConsumer", destroyMethod = "shutdown")
     public MQPushConsumer pushConsumer() throws MQClientException {
-        log.info("初始化Gateway推送消费者，服务节点ID: {}, 订阅主题: {}", gatewayNodeId, pushToGatewayTopic);
+        String gatewayInstanceId = gatewayInstanceManager.getGatewayInstanceId();
+        String instanceConsumerGroup = buildInstanceConsumerGroup(gatewayInstanceManager.getStableNodeKey());
+        log.info("初始化Gateway推送消费者，网关实例ID: {}, 消费者组: {}, 订阅主题: {}",
+                gatewayInstanceId, instanceConsumerGroup, pushToGatewayTopic);
         
-        DefaultMQPushConsumer consumer = new DefaultMQPushConsumer(consumerGroup);
+        DefaultMQPushConsumer consumer = new DefaultMQPushConsumer(instanceConsumerGroup);
         consumer.setNamesrvAddr(nameServer);
         consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
-        consumer.setMessageModel(MessageModel.BROADCASTING);
+        // 消费者组内只有当前网关一个实例，集群模式即可独占全部队列
+        consumer.setMessageModel(MessageModel.CLUSTERING);
 
         // 设置消费线程数
         consumer.setConsumeThreadMin(consumeThreadMin);
         consumer.setConsumeThreadMax(consumeThreadMax);
+        consumer.setConsumeMessageBatchMaxSize(Math.max(1, consumeMessageBatchMaxSize));
 
         try {
-            // 订阅固定的推送Topic
-            consumer.subscribe(com.vanky.im.common.constant.TopicConstants.TOPIC_PUSH_TO_GATEWAY, "*");
+            // 订阅推送Topic，只接收Tag为当前网关实例ID的消息
+            consumer.subscribe(com.vanky.im.common.constant.TopicConstants.TOPIC_PUSH_TO_GATEWAY, gatewayInstanceId);
 
             // 注册消息监听器
             consumer.registerMessageListener(messageConsumer);
 
             // 启动消费者
             consumer.start();
-            log.info("Gateway推送消费者启动成功，订阅主题: {}", com.vanky.im.common.constant.TopicConstants.TOPIC_PUSH_TO_GATEWAY);
+            log.info("Gateway推送消费者启动成功，订阅主题: {}, Tag: {}",
+                    com.vanky.im.common.constant.TopicConstants.TOPIC_PUSH_TO_GATEWAY, gatewayInstanceId);
 
         } catch (MQClientException e) {
             log.error("Gateway推送消费者启动失败", e);
@@ -74,4 +88,14 @@ public class GatewayPushConsumerConfig {
         
         return consumer;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 构建网关节点独占的消费者组名
+     * 使用跨重启稳定的节点标识而不是实例ID（自动生成的实例ID带随机后缀），重启后沿用同一个消费者组，
+     * 不会在Broker上每次重启遗留一个孤立的消费者组；旧实例ID的Tag消息由Tag过滤丢弃
+     * RocketMQ消费者组名只允许字母、数字、下划线、中划线、%和|，其余字符替换为下划线
+     */
+    private String buildInstanceConsumerGroup(String nodeKey) {
+        return consumerGroup + "-" + nodeKey.replaceAll("[^a-zA-Z0-9_%|-]", "_");
+    }
+}
@@ -1,5 +1,6 @@
 package com.vanky.im.gateway.config;
 
+import com.vanky.im.common.constant.ChannelOptionConstant;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,10 +13,85 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "netty.server")
 public class NettyServerConfig {
 
+    /**
+     * 传输层类型：auto（Linux下优先epoll，不可用时回退NIO）/ epoll / nio
+     */
+    private String transport = "auto";
+
+    /**
+     * Protobuf帧最大长度（字节），超过即关闭连接
+     */
+    private int maxFrameLength = ChannelOptionConstant.MAX_FRAME_LENGTH;
+
+    /**
+     * 连接写缓冲低水位（字节），待发送数据回落到该值以下时 Channel 重新变为可写
+     */
+    private int writeBufferLowWaterMark = 32 * 1024;
+
+    /**
+     * 连接写缓冲高水位（字节），待发送数据超过该值时 Channel 变为不可写
+     */
+    private int writeBufferHighWaterMark = 64 * 1024;
+
+    /**
+     * 合并flush：连续多少次flush后强制落一次socket，0 表示不启用 FlushConsolidationHandler
+     */
+    private int flushConsolidationAfterFlushes = 256;
+
+    private OutboundProperties outbound = new OutboundProperties();
+
     private ServerProperties tcp = new ServerProperties();
-    private ServerProperties udp = new ServerProperties();
+    private UdpServerProperties udp = new UdpServerProperties();
     private WebSocketServerProperties websocket = new WebSocketServerProperties();
 
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public int getFlushConsolidationAfterFlushes() {
+        return flushConsolidationAfterFlushes;
+    }
+
+    public void setFlushConsolidationAfterFlushes(int flushConsolidationAfterFlushes) {
+        this.flushConsolidationAfterFlushes = flushConsolidationAfterFlushes;
+    }
+
+    public OutboundProperties getOutbound() {
+        return outbound;
+    }
+
+    public void setOutbound(OutboundProperties outbound) {
+        this.outbound = outbound;
+    }
+
     public ServerProperties getTcp() {
         return tcp;
     }
@@ -24,11 +100,11 @@ public class NettyServerConfig {
         this.tcp = tcp;
     }
 
-    public ServerProperties getUdp() {
+    public UdpServerProperties getUdp() {
         return udp;
     }
 
-    public void setUdp(ServerProperties udp) {
+    public void setUdp(UdpServerProperties udp) {
         this.udp = udp;
     }
 
@@ -40,6 +116,37 @@ public class NettyServerConfig {
         this.websocket = websocket;
     }
 
+    /**
+     * 连接不可写时的下行积压队列属性
+     */
+    public static class OutboundProperties {
+        /**
+         * 每个连接最多积压的下行消息数
+         */
+        private int maxQueueSize = 256;
+
+        /**
+         * 积压队列溢出策略：sync-hint（丢弃积压的聊天消息，合并为一条同步通知）/ drop（丢弃新消息）/ disconnect（断开连接）
+         */
+        private String overflowPolicy = "sync-hint";
+
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        public void setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        public String getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(String overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
     /**
      * 通用服务器属性
      */
@@ -64,6 +171,142 @@ public class NettyServerConfig {
         }
     }
 
+    /**
+     * UDP 服务器特有属性（含可靠传输参数）
+     */
+    public static class UdpServerProperties extends ServerProperties {
+        /**
+         * 绑定同一端口的 Channel 数量（依赖 SO_REUSEPORT，仅 epoll 传输生效），
+         * 0 表示使用 CPU 核心数；NIO 传输下固定为 1
+         */
+        private int reusePortChannels = 0;
+
+        /**
+         * 单个数据报的最大长度（字节），多条小消息打包到不超过该长度
+         */
+        private int mtu = 1200;
+
+        /**
+         * 初始重传超时（毫秒），收到RTT采样后按 RFC 6298 估算
+         */
+        private long initialRtoMs = 300;
+
+        /**
+         * 重传超时下限（毫秒）
+         */
+        private long minRtoMs = 50;
+
+        /**
+         * 重传超时上限（毫秒），指数退避不超过该值
+         */
+        private long maxRtoMs = 3000;
+
+        /**
+         * 单条消息最大重传次数，超过后认为对端失联并关闭会话
+         */
+        private int maxRetransmits = 8;
+
+        /**
+         * 每个会话待发送（未进入发送窗口）的消息数上限，达到后会话变为不可写
+         */
+        private int maxPendingMessages = 256;
+
+        /**
+         * 每个绑定 Channel 的最大会话数
+         */
+        private int maxSessions = 100000;
+
+        /**
+         * 重传时间轮的tick间隔（毫秒）
+         */
+        private long retransmitTickMs = 10;
+
+        /**
+         * 本地丢包注入比例（0~1），仅用于测试弱网，生产必须为0
+         */
+        private double lossInjectionRate = 0;
+
+        public int getReusePortChannels() {
+            return reusePortChannels;
+        }
+
+        public void setReusePortChannels(int reusePortChannels) {
+            this.reusePortChannels = reusePortChannels;
+        }
+
+        public int getMtu() {
+            return mtu;
+        }
+
+        public void setMtu(int mtu) {
+            this.mtu = mtu;
+        }
+
+        public long getInitialRtoMs() {
+            return initialRtoMs;
+        }
+
+        public void setInitialRtoMs(long initialRtoMs) {
+            this.initialRtoMs = initialRtoMs;
+        }
+
+        public long getMinRtoMs() {
+            return minRtoMs;
+        }
+
+        public void setMinRtoMs(long minRtoMs) {
+            this.minRtoMs = minRtoMs;
+        }
+
+        public long getMaxRtoMs() {
+            return maxRtoMs;
+        }
+
+        public void setMaxRtoMs(long maxRtoMs) {
+            this.maxRtoMs = maxRtoMs;
+        }
+
+        public int getMaxRetransmits() {
+            return maxRetransmits;
+        }
+
+        public void setMaxRetransmits(int maxRetransmits) {
+            this.maxRetransmits = maxRetransmits;
+        }
+
+        public int getMaxPendingMessages() {
+            return maxPendingMessages;
+        }
+
+        public void setMaxPendingMessages(int maxPendingMessages) {
+            this.maxPendingMessages = maxPendingMessages;
+        }
+
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public long getRetransmitTickMs() {
+            return retransmitTickMs;
+        }
+
+        public void setRetransmitTickMs(long retransmitTickMs) {
+            this.retransmitTickMs = retransmitTickMs;
+        }
+
+        public double getLossInjectionRate() {
+            return lossInjectionRate;
+        }
+
+        public void setLossInjectionRate(double lossInjectionRate) {
+            this.lossInjectionRate = lossInjectionRate;
+        }
+    }
+
     /**
      * WebSocket 服务器特有属性
      */
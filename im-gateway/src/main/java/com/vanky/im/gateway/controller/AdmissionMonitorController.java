@@ -0,0 +1,45 @@
+package com.vanky.im.gateway.controller;
+
+import com.vanky.im.gateway.admission.AdmissionController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 连接准入监控接口
+ *
+ * @author vanky
+ * @create 2025/9/6
+ * @description 提供连接准入控制（接入限速、登录队列、退避与延迟同步提示）的统计信息
+ */
+@RestController
+@RequestMapping("/api/admission")
+public class AdmissionMonitorController {
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    /**
+     * 获取连接准入统计信息
+     *
+     * @return 统计信息
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("data", admissionController.getStats());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package com.vanky.im.gateway.controller;
+
+import com.vanky.im.gateway.trace.MessageTracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 消息追踪运维接口
+ *
+ * @author vanky
+ * @create 2025/9/3
+ * @description 运行期查看和调整消息追踪的开关、采样率及强制追踪名单
+ */
+@RestController
+@RequestMapping("/api/monitor/trace")
+public class TraceMonitorController {
+
+    @Autowired
+    private MessageTracer messageTracer;
+
+    /**
+     * 获取追踪状态
+     */
+    @GetMapping
+    public Map<String, Object> getStatus() {
+        return success(messageTracer.getStatus());
+    }
+
+    /**
+     * 开启/关闭追踪
+     */
+    @PutMapping("/enabled")
+    public Map<String, Object> setEnabled(@RequestParam boolean value) {
+        messageTracer.setEnabled(value);
+        return success(messageTracer.getStatus());
+    }
+
+    /**
+     * 调整采样率：每 oneIn 个会话追踪 1 个
+     */
+    @PutMapping("/sample")
+    public Map<String, Object> setSample(@RequestParam int oneIn) {
+        messageTracer.setSampleOneIn(oneIn);
+        return success(messageTracer.getStatus());
+    }
+
+    @PostMapping("/forced-users/{userId}")
+    public Map<String, Object> addForcedUser(@PathVariable String userId) {
+        return success(messageTracer.addForcedUser(userId));
+    }
+
+    @DeleteMapping("/forced-users/{userId}")
+    public Map<String, Object> removeForcedUser(@PathVariable String userId) {
+        return success(messageTracer.removeForcedUser(userId));
+    }
+
+    @PostMapping("/forced-conversations/{conversationId}")
+    public Map<String, Object> addForcedConversation(@PathVariable String conversationId) {
+        return success(messageTracer.addForcedConversation(conversationId));
+    }
+
+    @DeleteMapping("/forced-conversations/{conversationId}")
+    public Map<String, Object> removeForcedConversation(@PathVariable String conversationId) {
+        return success(messageTracer.removeForcedConversation(conversationId));
+    }
+
+    private Map<String, Object> success(Object data) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", data);
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+package com.vanky.im.gateway.controller;
+
+import com.vanky.im.gateway.netty.udp.UdpReliabilityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 可靠UDP监控接口
+ *
+ * @author vanky
+ * @create 2025/9/6
+ * @description 提供可靠UDP的会话数、收发数据报/消息数、重传与丢弃统计，用于对比打包效果和弱网下的重传开销
+ */
+@RestController
+@RequestMapping("/api/udp")
+public class UdpMonitorController {
+
+    @Autowired
+    private UdpReliabilityManager udpReliabilityManager;
+
+    /**
+     * 获取可靠UDP统计信息
+     *
+     * @return 统计信息
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("data", udpReliabilityManager.getStats());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package com.vanky.im.gateway.conversation;
+
+import java.util.ArrayDeque;
+
+/**
+ * 会话邮箱
+ *
+ * @author vanky
+ * @create 2025/9/2
+ * @description 单个会话的待处理消息队列（Actor邮箱）。
+ *              只有在从空变为非空时才被投递到所属工作线程的运行队列，
+ *              处理完毕且为空时由工作线程退役并从会话映射中移除。
+ */
+class ConversationMailbox {
+
+    /**
+     * 入队结果
+     */
+    enum OfferResult {
+        /** 入队成功，且邮箱需要被调度到运行队列 */
+        SCHEDULE,
+        /** 入队成功，邮箱已在运行队列中 */
+        ENQUEUED,
+        /** 邮箱已满 */
+        FULL,
+        /** 邮箱已退役，调用方需重新获取 */
+        RETIRED
+    }
+
+    private final String conversationId;
+    private final int workerIndex;
+    private final ArrayDeque<ConversationMessage> messages = new ArrayDeque<>();
+
+    /**
+     * 是否已在运行队列中（或正在被工作线程处理）
+     */
+    private boolean scheduled = false;
+
+    /**
+     * 是否已退役（已从会话映射中移除，不再接收消息）
+     */
+    private boolean retired = false;
+
+    ConversationMailbox(String conversationId, int workerIndex) {
+        this.conversationId = conversationId;
+        this.workerIndex = workerIndex;
+    }
+
+    String getConversationId() {
+        return conversationId;
+    }
+
+    int getWorkerIndex() {
+        return workerIndex;
+    }
+
+    /**
+     * 投递消息
+     *
+     * @param message 会话消息
+     * @param capacity 邮箱容量
+     * @return 入队结果
+     */
+    synchronized OfferResult offer(ConversationMessage message, int capacity) {
+        if (retired) {
+            return OfferResult.RETIRED;
+        }
+        if (messages.size() >= capacity) {
+            return OfferResult.FULL;
+        }
+        messages.addLast(message);
+        if (scheduled) {
+            return OfferResult.ENQUEUED;
+        }
+        scheduled = true;
+        return OfferResult.SCHEDULE;
+    }
+
+    /**
+     * 取出一条消息，仅由所属工作线程调用
+     */
+    synchronized ConversationMessage poll() {
+        return messages.pollFirst();
+    }
+
+    /**
+     * 一轮处理结束后的状态迁移，仅由所属工作线程调用
+     *
+     * @return true 表示仍有消息需要重新调度；false 表示邮箱已空并被退役
+     */
+    synchronized boolean finishBurst() {
+        if (!messages.isEmpty()) {
+            return true;
+        }
+        scheduled = false;
+        retired = true;
+        return false;
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+}
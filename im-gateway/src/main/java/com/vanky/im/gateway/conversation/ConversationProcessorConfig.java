@@ -37,6 +37,12 @@ public class ConversationProcessorConfig {
      */
     private int queueCapacity = 1000;
     
+    /**
+     * 工作线程单次处理同一会话的最大消息数
+     * 达到上限后该会话重新排队，避免热点会话饿死其他会话
+     */
+    private int drainBatchSize = 32;
+    
     /**
      * 队列空闲超时时间（毫秒）
      * 队列在此时间内无消息时会被回收
@@ -106,6 +112,9 @@ public class ConversationProcessorConfig {
         if (queueCapacity <= 0) {
             throw new IllegalArgumentException("queueCapacity must be positive");
         }
+        if (drainBatchSize <= 0) {
+            throw new IllegalArgumentException("drainBatchSize must be positive");
+        }
         if (idleTimeoutMs <= 0) {
             throw new IllegalArgumentException("idleTimeoutMs must be positive");
         }
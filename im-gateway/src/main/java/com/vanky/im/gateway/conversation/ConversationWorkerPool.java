@@ -19,12 +19,20 @@ import java.util.concurrent.atomic.AtomicLong;
  * 
  * @author vanky
  * @create 2025/8/7
- * @description 管理会话消息的串行化处理，每个工作线程处理多个会话的队列
+ * @description 管理会话消息的串行化处理。采用Actor式调度：每个会话对应一个邮箱，
+ *              邮箱只在从空变为非空时进入所属工作线程的运行队列；工作线程阻塞等待运行队列，
+ *              每次最多处理 drainBatchSize 条消息后把仍非空的邮箱放回队尾，保证会话间公平；
+ *              邮箱处理空后立即退役回收。
  */
 @Slf4j
 @Component
 public class ConversationWorkerPool {
     
+    /**
+     * 工作线程空闲时阻塞等待运行队列的最长时间（毫秒），超时仅用于刷新健康状态
+     */
+    private static final long IDLE_WAIT_MS = 1000L;
+    
     @Autowired
     private ConversationProcessorConfig config;
     
@@ -40,10 +48,15 @@ public class ConversationWorkerPool {
     private ExecutorService[] workers;
     
     /**
-     * 每个工作线程对应的会话队列映射
-     * workers[i] 对应 queueMaps[i]
+     * 每个工作线程的运行队列，只包含有待处理消息的会话邮箱
+     * workers[i] 对应 runQueues[i]
+     */
+    private LinkedBlockingQueue<ConversationMailbox>[] runQueues;
+    
+    /**
+     * 活跃会话邮箱映射
      */
-    private ConcurrentHashMap<String, BlockingQueue<ConversationMessage>>[] queueMaps;
+    private final ConcurrentHashMap<String, ConversationMailbox> mailboxes = new ConcurrentHashMap<>();
     
     /**
      * 线程池是否已启动
@@ -82,14 +95,14 @@ public class ConversationWorkerPool {
             
             // 初始化工作线程池
             workers = new ExecutorService[poolSize];
-            queueMaps = new ConcurrentHashMap[poolSize];
+            runQueues = new LinkedBlockingQueue[poolSize];
             
             // 初始化监控数组
             workerLastActiveTime = new AtomicLong[poolSize];
             workerProcessedCount = new AtomicLong[poolSize];
             
             for (int i = 0; i < poolSize; i++) {
-                queueMaps[i] = new ConcurrentHashMap<>();
+                runQueues[i] = new LinkedBlockingQueue<>();
                 workers[i] = createWorkerExecutor(i);
                 workerLastActiveTime[i] = new AtomicLong(System.currentTimeMillis());
                 workerProcessedCount[i] = new AtomicLong(0);
@@ -97,8 +110,8 @@ public class ConversationWorkerPool {
                 startWorkerThread(i);
             }
 
-            log.info("ConversationWorkerPool初始化完成 - 工作线程数: {}, 队列容量: {}",
-                    poolSize, config.getQueueCapacity());
+            log.info("ConversationWorkerPool初始化完成 - 工作线程数: {}, 队列容量: {}, 单次处理上限: {}",
+                    poolSize, config.getQueueCapacity(), config.getDrainBatchSize());
                     
         } catch (Exception e) {
             log.error("ConversationWorkerPool初始化失败", e);
@@ -161,27 +174,39 @@ public class ConversationWorkerPool {
         
         try {
             // 使用哈希算法分配到工作线程
-            int workerIndex = Math.abs(conversationId.hashCode()) % workers.length;
-            
-            // 获取或创建队列
-            BlockingQueue<ConversationMessage> queue = getOrCreateQueue(conversationId, workerIndex);
-            if (queue == null) {
-                log.warn("无法创建队列，消息提交失败 - 会话ID: {}", conversationId);
-                return false;
-            }
+            int workerIndex = Math.floorMod(conversationId.hashCode(), workers.length);
             
-            // 提交消息到队列
-            boolean offered = queue.offer(message);
-            if (offered) {
-                totalMessagesSubmitted.incrementAndGet();
-                log.info("消息已提交到工作线程 {} - 会话ID: {}, 队列长度: {}, 消息类型: {}",
-                         workerIndex, conversationId, queue.size(), message.getChatMessage().getType());
-            } else {
-                log.warn("队列已满，消息提交失败 - 会话ID: {}, 工作线程: {}", conversationId, workerIndex);
+            while (true) {
+                // 获取或创建邮箱
+                ConversationMailbox mailbox = getOrCreateMailbox(conversationId, workerIndex);
+                if (mailbox == null) {
+                    log.warn("无法创建会话邮箱，消息提交失败 - 会话ID: {}", conversationId);
+                    return false;
+                }
+                
+                switch (mailbox.offer(message, config.getQueueCapacity())) {
+                    case SCHEDULE:
+                        // 邮箱从空变为非空，投递到工作线程运行队列并唤醒工作线程
+                        runQueues[workerIndex].offer(mailbox);
+                        // fall through
+                    case ENQUEUED:
+                        totalMessagesSubmitted.incrementAndGet();
+                        if (config.isVerboseLogging()) {
+                            log.debug("消息已提交到工作线程 {} - 会话ID: {}, 消息类型: {}",
+                                    workerIndex, conversationId, message.getChatMessage().getType());
+                        }
+                        return true;
+                    case FULL:
+                        log.warn("队列已满，消息提交失败 - 会话ID: {}, 工作线程: {}", conversationId, workerIndex);
+                        return false;
+                    case RETIRED:
+                    default:
+                        // 邮箱刚被工作线程退役，移除后重新创建
+                        retireMailbox(mailbox);
+                        break;
+                }
             }
             
-            return offered;
-            
         } catch (Exception e) {
             log.error("提交消息异常 - 会话ID: {}", conversationId, e);
             return false;
@@ -189,16 +214,14 @@ public class ConversationWorkerPool {
     }
     
     /**
-     * 获取或创建指定会话的队列
+     * 获取或创建指定会话的邮箱
      * 
      * @param conversationId 会话ID
      * @param workerIndex 工作线程索引
-     * @return 队列，如果创建失败则返回null
+     * @return 邮箱，如果创建失败则返回null
      */
-    private BlockingQueue<ConversationMessage> getOrCreateQueue(String conversationId, int workerIndex) {
-        ConcurrentHashMap<String, BlockingQueue<ConversationMessage>> queueMap = queueMaps[workerIndex];
-        
-        return queueMap.computeIfAbsent(conversationId, k -> {
+    private ConversationMailbox getOrCreateMailbox(String conversationId, int workerIndex) {
+        return mailboxes.computeIfAbsent(conversationId, k -> {
             // 检查是否超过最大会话数限制
             if (activeConversations.get() >= config.getMaxConversations()) {
                 log.warn("已达到最大会话数限制 {}, 拒绝创建新队列 - 会话ID: {}", 
@@ -206,18 +229,26 @@ public class ConversationWorkerPool {
                 return null;
             }
             
-            BlockingQueue<ConversationMessage> newQueue = new LinkedBlockingQueue<>(config.getQueueCapacity());
             activeConversations.incrementAndGet();
             
             if (config.isVerboseLogging()) {
-                log.debug("为会话创建新队列 - 会话ID: {}, 工作线程: {}, 活跃会话数: {}", 
+                log.debug("为会话创建新邮箱 - 会话ID: {}, 工作线程: {}, 活跃会话数: {}", 
                          conversationId, workerIndex, activeConversations.get());
             }
             
-            return newQueue;
+            return new ConversationMailbox(conversationId, workerIndex);
         });
     }
     
+    /**
+     * 从映射中移除已退役的邮箱，只有真正移除的一方扣减活跃会话数
+     */
+    private void retireMailbox(ConversationMailbox mailbox) {
+        if (mailboxes.remove(mailbox.getConversationId(), mailbox)) {
+            activeConversations.decrementAndGet();
+        }
+    }
+    
     /**
      * 创建工作线程执行器
      *
@@ -238,83 +269,35 @@ public class ConversationWorkerPool {
      * @param workerIndex 工作线程索引
      */
     private void startWorkerThread(int workerIndex) {
-        log.info("正在启动工作线程 {} ...", workerIndex);
         workers[workerIndex].submit(() -> {
             try {
-                // 等待一小段时间确保初始化完成
-                Thread.sleep(100);
-                log.info("工作线程 {} 开始运行，started标志: {}", workerIndex, started);
                 runWorker(workerIndex);
-            } catch (InterruptedException e) {
-                log.warn("工作线程 {} 启动时被中断", workerIndex);
-                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                log.error("工作线程 {} 启动异常", workerIndex, e);
+                log.error("工作线程 {} 运行异常", workerIndex, e);
             }
         });
-        log.info("工作线程 {} 启动请求已发送", workerIndex);
     }
 
     /**
-     * 工作线程主循环
+     * 工作线程主循环：阻塞等待运行队列，无消息时不轮询
      *
      * @param workerIndex 工作线程索引
      */
     private void runWorker(int workerIndex) {
-        log.info("工作线程 {} 启动，started标志: {}", workerIndex, started);
-        
-        // 确保started标志已设置
-        if (!started) {
-            log.warn("工作线程 {} 启动时发现started标志为false，等待初始化完成", workerIndex);
-            // 等待started标志被设置
-            while (!started && !Thread.currentThread().isInterrupted()) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.warn("工作线程 {} 等待启动时被中断", workerIndex);
-                    return;
-                }
-            }
-        }
-        
-        ConcurrentHashMap<String, BlockingQueue<ConversationMessage>> queueMap = queueMaps[workerIndex];
-        log.info("工作线程 {} 正式开始处理消息", workerIndex);
+        LinkedBlockingQueue<ConversationMailbox> runQueue = runQueues[workerIndex];
+        log.info("工作线程 {} 开始处理消息", workerIndex);
 
         while (started && !Thread.currentThread().isInterrupted()) {
             try {
                 // 更新工作线程活动时间
-                if (workerLastActiveTime != null && workerIndex < workerLastActiveTime.length) {
-                    workerLastActiveTime[workerIndex].set(System.currentTimeMillis());
-                }
+                workerLastActiveTime[workerIndex].set(System.currentTimeMillis());
                 
-                // 轮询所有队列，处理消息
-                boolean hasMessage = false;
-
-                // 创建队列快照，避免并发修改问题
-                var queueSnapshot = new java.util.HashMap<>(queueMap);
-                if (config.isVerboseLogging()) {
-                    log.debug("工作线程 {} 轮询开始 - 当前队列数: {}", workerIndex, queueSnapshot.size());
-                }
-
-                for (var entry : queueSnapshot.entrySet()) {
-                    String conversationId = entry.getKey();
-                    BlockingQueue<ConversationMessage> queue = entry.getValue();
-
-                    // 处理队列中的所有消息
-                    ConversationMessage message;
-                    while ((message = queue.poll()) != null) {
-                        hasMessage = true;
-                        log.info("工作线程 {} 开始处理消息 - 会话ID: {}, 消息类型: {}, 队列剩余: {}",
-                                workerIndex, conversationId, message.getChatMessage().getType(), queue.size());
-                        processMessage(message, workerIndex);
-                    }
-                }
-
-                // 如果没有消息，短暂休眠避免CPU空转
-                if (!hasMessage) {
-                    Thread.sleep(50); // 减少CPU占用
+                ConversationMailbox mailbox = runQueue.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (mailbox == null) {
+                    continue;
                 }
+                
+                drainMailbox(mailbox, runQueue, workerIndex);
 
             } catch (InterruptedException e) {
                 log.info("工作线程 {} 被中断，准备退出", workerIndex);
@@ -322,19 +305,38 @@ public class ConversationWorkerPool {
                 break;
             } catch (Exception e) {
                 log.error("工作线程 {} 处理异常", workerIndex, e);
-                // 异常后短暂休眠，避免无限循环
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
             }
         }
 
         log.info("工作线程 {} 退出，started标志: {}", workerIndex, started);
     }
 
+    /**
+     * 处理一个会话邮箱，单次最多处理 drainBatchSize 条消息
+     *
+     * @param mailbox 会话邮箱
+     * @param runQueue 所属运行队列
+     * @param workerIndex 工作线程索引
+     */
+    private void drainMailbox(ConversationMailbox mailbox, LinkedBlockingQueue<ConversationMailbox> runQueue,
+                              int workerIndex) {
+        int burst = config.getDrainBatchSize();
+        for (int i = 0; i < burst; i++) {
+            ConversationMessage message = mailbox.poll();
+            if (message == null) {
+                break;
+            }
+            processMessage(message, workerIndex);
+        }
+
+        if (mailbox.finishBurst()) {
+            // 仍有积压，放回队尾让其他会话先执行
+            runQueue.offer(mailbox);
+        } else {
+            retireMailbox(mailbox);
+        }
+    }
+
     /**
      * 处理单个消息
      *
@@ -380,9 +382,11 @@ public class ConversationWorkerPool {
                 workerLastActiveTime[workerIndex].set(System.currentTimeMillis());
             }
 
-            long processingTime = System.currentTimeMillis() - startTime;
-            log.info("消息处理完成 - 会话ID: {}, 处理时间: {}ms, 工作线程: {}, 消息类型: {}",
-                     message.getConversationId(), processingTime, workerIndex, message.getChatMessage().getType());
+            if (log.isDebugEnabled()) {
+                long processingTime = System.currentTimeMillis() - startTime;
+                log.debug("消息处理完成 - 会话ID: {}, 处理时间: {}ms, 工作线程: {}, 消息类型: {}",
+                        message.getConversationId(), processingTime, workerIndex, messageType);
+            }
 
         } catch (Exception e) {
             log.error("消息处理异常 - 会话ID: {}, 工作线程: {}",
@@ -397,12 +401,26 @@ public class ConversationWorkerPool {
      */
     public String getStatistics() {
         return String.format(
-            "ConversationWorkerPool[submitted=%d, processed=%d, activeConversations=%d, workers=%d]",
+            "ConversationWorkerPool[submitted=%d, processed=%d, activeConversations=%d, workers=%d, scheduled=%d]",
             totalMessagesSubmitted.get(), totalMessagesProcessed.get(),
-            activeConversations.get(), workers != null ? workers.length : 0
+            activeConversations.get(), workers != null ? workers.length : 0, getScheduledCount()
         );
     }
     
+    /**
+     * 获取所有运行队列中待调度的会话数
+     */
+    private int getScheduledCount() {
+        if (runQueues == null) {
+            return 0;
+        }
+        int total = 0;
+        for (LinkedBlockingQueue<ConversationMailbox> runQueue : runQueues) {
+            total += runQueue.size();
+        }
+        return total;
+    }
+    
     /**
      * 获取工作线程健康状态
      * 
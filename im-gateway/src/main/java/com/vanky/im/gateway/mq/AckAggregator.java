@@ -0,0 +1,219 @@
+package com.vanky.im.gateway.mq;
+
+import com.vanky.im.common.constant.TopicConstants;
+import com.vanky.im.common.protocol.AckBatch;
+import com.vanky.im.common.protocol.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ACK聚合器
+ *
+ * @author vanky
+ * @create 2025/9/2
+ * @description 将客户端ACK、群聊会话ACK、已读回执按用户ID哈希分片聚合，
+ *              在窗口到期或达到单批上限时封装为一条 AckBatch 投递到 TOPIC_MESSAGE_ACK。
+ *              每个分片固定投递到同一个ACK队列，只为让同一用户的ACK集中成批；
+ *              MessageAckConsumer 为并发消费，不保证顺序，ACK处理本身与顺序无关：
+ *              已读序列号与群会话seq只向前推进，送达状态更新是幂等的。
+ */
+@Slf4j
+@Component
+public class AckAggregator {
+
+    private final DefaultMQProducer producer;
+
+    @Autowired
+    private AckAggregatorConfig config;
+
+    @Value("${server.node-id:}")
+    private String nodeId;
+
+    private Shard[] shards;
+
+    /**
+     * 队列偏移，不同网关实例的分片落到不同队列上
+     */
+    private int queueOffset;
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * 队列选择器：arg 为分片下标
+     */
+    private final MessageQueueSelector shardSelector = (mqs, msg, arg) ->
+            mqs.get(Math.floorMod((Integer) arg + queueOffset, mqs.size()));
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong submittedAcks = new AtomicLong(0);
+    private final AtomicLong sentBatches = new AtomicLong(0);
+    private final AtomicLong failedBatches = new AtomicLong(0);
+
+    @Autowired
+    public AckAggregator(@Qualifier("defaultMQProducer") DefaultMQProducer producer) {
+        this.producer = producer;
+    }
+
+    @PostConstruct
+    public void init() {
+        int shardCount = Math.max(1, config.getShards());
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        queueOffset = nodeId == null ? 0 : Math.floorMod(nodeId.hashCode(), 1024);
+
+        if (!config.isEnabled()) {
+            log.info("ACK批量投递已禁用，ACK将逐条投递");
+            return;
+        }
+
+        long windowMs = Math.max(1L, config.getWindowMs());
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ack-aggregator-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flushAll, windowMs, windowMs, TimeUnit.MILLISECONDS);
+
+        log.info("ACK聚合器启动 - 分片数: {}, 窗口: {}ms, 单批上限: {}", shardCount, windowMs, config.getMaxBatchSize());
+    }
+
+    /**
+     * 是否启用批量投递
+     */
+    public boolean isEnabled() {
+        return config.isEnabled() && flusher != null;
+    }
+
+    /**
+     * 提交一条ACK，达到单批上限时由调用线程直接投递
+     *
+     * @param ack ACK消息
+     */
+    public void submit(ChatMessage ack) {
+        Shard shard = shards[Math.floorMod(ack.getFromId().hashCode(), shards.length)];
+        submittedAcks.incrementAndGet();
+
+        List<ChatMessage> full = shard.add(ack, config.getMaxBatchSize());
+        if (full != null) {
+            send(shard.index, full);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public String getStatistics() {
+        return String.format("AckAggregator[submitted=%d, batches=%d, failedBatches=%d]",
+                submittedAcks.get(), sentBatches.get(), failedBatches.get());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        // 停机前投递剩余ACK
+        flushAll();
+        log.info("ACK聚合器已关闭 - {}", getStatistics());
+    }
+
+    private void flushAll() {
+        for (Shard shard : shards) {
+            try {
+                List<ChatMessage> pending = shard.drain();
+                if (pending != null) {
+                    send(shard.index, pending);
+                }
+            } catch (Exception e) {
+                log.error("ACK分片投递异常 - 分片: {}", shard.index, e);
+            }
+        }
+    }
+
+    private void send(int shardIndex, List<ChatMessage> acks) {
+        AckBatch batch = AckBatch.newBuilder()
+                .addAllAcks(acks)
+                .setGatewayId(nodeId == null ? "" : nodeId)
+                .setCreateTime(System.currentTimeMillis())
+                .build();
+
+        Message message = new Message(TopicConstants.TOPIC_MESSAGE_ACK, TopicConstants.TAG_ACK_BATCH, batch.toByteArray());
+        int size = acks.size();
+
+        try {
+            producer.send(message, shardSelector, shardIndex, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    sentBatches.incrementAndGet();
+                    log.debug("ACK批次发送成功 - 分片: {}, 条数: {}, MQ消息ID: {}",
+                            shardIndex, size, sendResult.getMsgId());
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    failedBatches.incrementAndGet();
+                    log.error("ACK批次发送失败 - 分片: {}, 条数: {}", shardIndex, size, e);
+                }
+            });
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            log.error("ACK批次投递到消息队列失败 - 分片: {}, 条数: {}", shardIndex, size, e);
+        }
+    }
+
+    /**
+     * 单个分片的待投递ACK
+     */
+    private static class Shard {
+
+        private final int index;
+
+        private List<ChatMessage> pending = new ArrayList<>();
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        /**
+         * 追加ACK，达到单批上限时返回需要投递的批次
+         */
+        synchronized List<ChatMessage> add(ChatMessage ack, int maxBatchSize) {
+            pending.add(ack);
+            if (pending.size() >= maxBatchSize) {
+                return swap();
+            }
+            return null;
+        }
+
+        synchronized List<ChatMessage> drain() {
+            return pending.isEmpty() ? null : swap();
+        }
+
+        private List<ChatMessage> swap() {
+            List<ChatMessage> out = pending;
+            pending = new ArrayList<>(out.size());
+            return out;
+        }
+    }
+}
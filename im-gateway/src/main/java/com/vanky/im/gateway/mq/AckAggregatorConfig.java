@@ -0,0 +1,38 @@
+package com.vanky.im.gateway.mq;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * ACK聚合配置
+ *
+ * @author vanky
+ * @create 2025/9/2
+ * @description 网关侧ACK批量投递的窗口与分片参数
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "message.ack-batch")
+public class AckAggregatorConfig {
+
+    /**
+     * 是否启用ACK批量投递，关闭时逐条投递
+     */
+    private boolean enabled = true;
+
+    /**
+     * 聚合窗口（毫秒），窗口到期后强制投递
+     */
+    private long windowMs = 10L;
+
+    /**
+     * 单批最大ACK条数，达到后立即投递
+     */
+    private int maxBatchSize = 256;
+
+    /**
+     * 分片数，按用户ID哈希分片，每个分片投递到固定的ACK队列
+     */
+    private int shards = 4;
+}
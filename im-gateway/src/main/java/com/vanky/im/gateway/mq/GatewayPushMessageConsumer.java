@@ -3,9 +3,12 @@ package com.vanky.im.gateway.mq;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
+import com.vanky.im.common.protocol.codec.PushEnvelopeCodec;
 import com.vanky.im.gateway.session.MsgSender;
 import com.vanky.im.gateway.session.UserChannelManager;
 import com.vanky.im.gateway.timeout.TimeoutManager;
+import com.vanky.im.gateway.trace.MessageTracer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
@@ -14,10 +17,15 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Gateway推送消息消费者，负责接收并处理发送到当前网关的消息
+ * 消息体为推送信封时只解析信封头做路由，已编码的 ChatMessage 原样写到连接上，不反序列化、不重新编码
+ * 群聊通知按网关批量下发：一条信封携带本网关的全部目标用户，在这里展开为各用户连接的写出，共用同一份消息体字节
  */
 @Slf4j
 @Component
@@ -31,9 +39,15 @@ public class GatewayPushMessageConsumer implements MessageListenerConcurrently {
 
     @Autowired
     private TimeoutManager timeoutManager;
+
+    @Autowired
+    private MessageTracer messageTracer;
     
     @Override
     public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        // 按接收方分组（保持消息顺序），同一连接的多条消息合并为一次flush
+        Map<String, List<EncodedChatMessage>> messagesByUser = new LinkedHashMap<>();
+
         for (MessageExt msg : msgs) {
             String topic = msg.getTopic();
             String tags = msg.getTags();
@@ -44,10 +58,6 @@ public class GatewayPushMessageConsumer implements MessageListenerConcurrently {
                     topic, tags, keys, msg.getMsgId(), msg.getQueueId());
             
             try {
-                // {{CHENGQI:
-                // Action: Modified; Timestamp: 2025-08-03 13:55:00 +08:00; Reason: 增强Protobuf解析错误处理，避免损坏消息导致无限重试;
-                // }}
-                // {{START MODIFICATIONS}}
                 // 消息完整性检查
                 if (body == null || body.length == 0) {
                     log.warn("收到空消息体 - MsgId: {}, Topic: {}, Tags: {}", msg.getMsgId(), topic, tags);
@@ -59,38 +69,23 @@ public class GatewayPushMessageConsumer implements MessageListenerConcurrently {
                     continue; // 跳过过大消息
                 }
 
-                log.debug("准备解析消息 - MsgId: {}, 消息体大小: {} bytes, 前8字节: {}",
-                        msg.getMsgId(), body.length, bytesToHex(body, 8));
+                if (PushEnvelopeCodec.isEnvelope(body)) {
+                    // 推送信封：只解析头部路由，消息体原样写出；多个目标用户（群聊批量通知）共用同一个已编码消息
+                    PushEnvelopeCodec.Envelope envelope = PushEnvelopeCodec.decode(body);
+                    for (String toUserId : envelope.getTargetUserIds()) {
+                        messagesByUser.computeIfAbsent(toUserId, k -> new ArrayList<>()).add(envelope.getMessage());
+                    }
+                    continue;
+                }
 
-                // 解析消息体为ChatMessage对象
+                // 兼容旧格式（消息体直接是ChatMessage）：解析一次取路由字段，写出时仍复用原始字节
                 ChatMessage chatMessage = ChatMessage.parseFrom(body);
-                // {{END MODIFICATIONS}}
-
-                // 获取接收方用户ID，优先从消息属性中获取targetUserId（群聊场景）
                 String targetUserId = msg.getUserProperty("targetUserId");
                 String toUserId = targetUserId != null ? targetUserId : chatMessage.getToId();
-
-                log.debug("消息推送处理 - 原始接收方: {}, 目标用户: {}, 会话ID: {}",
-                        chatMessage.getToId(), toUserId, chatMessage.getConversationId());
-
-                // 检查用户是否在当前网关在线
-                if (userChannelManager.isUserOnline(toUserId)) {
-                    // 发送消息给用户
-                    boolean success = msgSender.sendToUser(toUserId, chatMessage);
-
-                    if (success) {
-                        log.info("消息推送成功 - 接收方: {}, 消息ID: {}", toUserId, chatMessage.getUid());
-
-                        // 只有真正推送给客户端的聊天消息才需要超时重发机制
-                        addTimeoutTaskForChatMessage(chatMessage, toUserId);
-                    } else {
-                        log.warn("消息推送失败 - 接收方: {}, 消息ID: {}", toUserId, chatMessage.getUid());
-                    }
-                } else {
-                    // 用户不在线，记录日志
-                    log.info("接收方不在当前网关在线，跳过推送 - 接收方: {}, 消息ID: {}",
-                            toUserId, chatMessage.getUid());
-                }
+                int flags = MessageTypeConstants.isChatMessage(chatMessage.getType())
+                        ? PushEnvelopeCodec.FLAG_ACK_REQUIRED : 0;
+                messagesByUser.computeIfAbsent(toUserId, k -> new ArrayList<>())
+                        .add(EncodedChatMessage.of(chatMessage, body, flags));
 
             } catch (InvalidProtocolBufferException e) {
                 // {{CHENGQI:
@@ -114,32 +109,78 @@ public class GatewayPushMessageConsumer implements MessageListenerConcurrently {
                 return ConsumeConcurrentlyStatus.RECONSUME_LATER;
             }
         }
-        
+
+        // 按用户隔离推送异常：整批重投会让此前已推送成功的用户重复收到消息并重复登记超时任务，
+        // 单个用户推送失败只记录日志，已登记的消息由超时重发补推，未送达的由客户端拉取补齐
+        for (Map.Entry<String, List<EncodedChatMessage>> entry : messagesByUser.entrySet()) {
+            try {
+                pushToUser(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.error("推送消息异常 - 接收方: {}, 消息数: {}, 批次大小: {}",
+                        entry.getKey(), entry.getValue().size(), msgs.size(), e);
+            }
+        }
+
         return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
     }
 
     /**
-     * 为聊天消息添加超时重发任务
-     * 只有真正推送给客户端的私聊、群聊消息才需要超时重发机制
+     * 推送一个接收方在本批次中的全部消息
      *
-     * @param chatMessage 聊天消息
      * @param toUserId 接收方用户ID
+     * @param messages 该接收方的消息（按消费顺序）
      */
-    private void addTimeoutTaskForChatMessage(ChatMessage chatMessage, String toUserId) {
-        try {
-            // 只为聊天消息添加超时任务，不为系统消息添加
-            int messageType = chatMessage.getType();
-            if (messageType == MessageTypeConstants.PRIVATE_CHAT_MESSAGE ||
-                messageType == MessageTypeConstants.GROUP_CHAT_MESSAGE) {
+    private void pushToUser(String toUserId, List<EncodedChatMessage> messages) {
+        // 检查用户是否在当前网关在线
+        if (!userChannelManager.isUserOnline(toUserId)) {
+            // 用户不在线，记录日志
+            log.debug("接收方不在当前网关在线，跳过推送 - 接收方: {}, 消息数: {}", toUserId, messages.size());
+            return;
+        }
 
-                String ackId = chatMessage.getUid();
+        // 逐条write，每个设备flush一次；单条消息同样走批量路径，一次遍历扇出到全部设备
+        Map<String, List<EncodedChatMessage>> acceptedByDevice = msgSender.sendBatchToUser(toUserId, messages);
+        if (acceptedByDevice.isEmpty()) {
+            log.warn("消息推送失败 - 接收方: {}, 消息数: {}", toUserId, messages.size());
+            return;
+        }
 
-                // 添加超时任务
-                timeoutManager.addTask(ackId, chatMessage, toUserId);
+        for (Map.Entry<String, List<EncodedChatMessage>> entry : acceptedByDevice.entrySet()) {
+            String deviceId = entry.getKey();
+            List<EncodedChatMessage> accepted = entry.getValue();
+            for (EncodedChatMessage chatMessage : accepted) {
+                messageTracer.trace("gateway.push", chatMessage, toUserId);
+                // 只有真正推送给客户端的聊天消息才需要超时重发机制，每个设备分别确认
+                addTimeoutTaskForChatMessage(chatMessage, toUserId, deviceId);
+            }
 
-                log.debug("为下行消息添加超时任务 - 消息ID: {}, 接收方: {}, 消息类型: {}",
-                        ackId, toUserId, messageType);
+            if (accepted.size() < messages.size()) {
+                log.warn("批量消息部分推送失败 - 接收方: {}, 设备: {}, 成功: {}/{}",
+                        toUserId, deviceId, accepted.size(), messages.size());
             }
+        }
+    }
+
+    /**
+     * 为需要ACK的消息添加超时重发任务
+     * 是否需要ACK由消息服务在信封头的标志位中给出（私聊、群聊消息），网关不再按类型判断
+     *
+     * @param chatMessage 已编码的消息
+     * @param toUserId 接收方用户ID
+     * @param deviceId 接收设备ID
+     */
+    private void addTimeoutTaskForChatMessage(EncodedChatMessage chatMessage, String toUserId, String deviceId) {
+        if (!chatMessage.hasFlag(PushEnvelopeCodec.FLAG_ACK_REQUIRED)) {
+            return;
+        }
+        try {
+            String ackId = chatMessage.getUid();
+
+            // 添加超时任务，重发时复用同一份已编码字节
+            timeoutManager.addTask(ackId, chatMessage, toUserId, deviceId);
+
+            log.debug("为下行消息添加超时任务 - 消息ID: {}, 接收方: {}, 设备: {}, 消息类型: {}",
+                    ackId, toUserId, deviceId, chatMessage.getType());
         } catch (Exception e) {
             log.error("添加超时任务失败 - 消息ID: {}, 接收方: {}, 消息类型: {}",
                     chatMessage.getUid(), toUserId, chatMessage.getType(), e);
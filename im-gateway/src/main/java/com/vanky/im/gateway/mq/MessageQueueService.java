@@ -4,6 +4,7 @@ import com.vanky.im.common.constant.TopicConstants;
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.common.util.MsgGenerator;
+import com.vanky.im.gateway.trace.MessageTracer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.SendCallback;
@@ -28,6 +29,15 @@ public class MessageQueueService {
      */
     private final DefaultMQProducer producer;
 
+    /**
+     * ACK聚合器，启用时ACK类消息合并为批次投递
+     */
+    @Autowired
+    private AckAggregator ackAggregator;
+
+    @Autowired
+    private MessageTracer messageTracer;
+
     @Autowired
     public MessageQueueService(@Qualifier("defaultMQProducer") DefaultMQProducer producer) {
         this.producer = producer;
@@ -77,8 +87,7 @@ public class MessageQueueService {
             producer.send(message, new SendCallback() {
                 @Override
                 public void onSuccess(SendResult sendResult) {
-                    log.info("{}消息发送成功 - 会话ID: {}, 消息ID: {}, 发送结果: {}",
-                            messageTag, conversationId, chatMessage.getUid(), sendResult);
+                    messageTracer.trace("gateway.mq.sent", chatMessage, sendResult.getMsgId());
 
                     // 网关层不再向客户端发送即时成功回执
                     // 成功投递到MQ的消息，将由message-server处理后，再由网关推送给客户端
@@ -130,6 +139,11 @@ public class MessageQueueService {
                     .setTimestamp(System.currentTimeMillis())
                     .build();
 
+            if (ackAggregator.isEnabled()) {
+                ackAggregator.submit(ackMessage);
+                return;
+            }
+
             // 序列化消息
             byte[] messageBody = ackMessage.toByteArray();
 
@@ -147,8 +161,8 @@ public class MessageQueueService {
             producer.send(message, new SendCallback() {
                 @Override
                 public void onSuccess(SendResult sendResult) {
-                    log.info("ACK消息发送成功 - 消息ID: {}, 序列号: {}, 用户: {}, Topic: {}, MQ消息ID: {}",
-                            msgId, seq, userId, TopicConstants.TOPIC_MESSAGE_ACK, sendResult.getMsgId());
+                    log.debug("ACK消息发送成功 - 消息ID: {}, 序列号: {}, 用户: {}, MQ消息ID: {}",
+                            msgId, seq, userId, sendResult.getMsgId());
                 }
 
                 @Override
@@ -175,6 +189,11 @@ public class MessageQueueService {
             log.debug("发送群聊会话ACK到消息队列 - 用户: {}, 内容: {}, Topic: {}",
                     userId, content, TopicConstants.TOPIC_MESSAGE_ACK);
 
+            if (ackAggregator.isEnabled()) {
+                ackAggregator.submit(ackMessage);
+                return;
+            }
+
             // 将群聊会话ACK消息发送到专门的ACK消息Topic
             Message message = new Message(TopicConstants.TOPIC_MESSAGE_ACK, ackMessage.toByteArray());
 
@@ -216,6 +235,11 @@ public class MessageQueueService {
             log.debug("发送消息已读回执到消息队列 - 用户: {}, 会话: {}, 已读序列号: {}, Topic: {}",
                     userId, conversationId, lastReadSeq, TopicConstants.TOPIC_MESSAGE_ACK);
 
+            if (ackAggregator.isEnabled()) {
+                ackAggregator.submit(readReceiptMessage);
+                return;
+            }
+
             // 将已读回执消息发送到专门的ACK消息Topic
             Message message = new Message(TopicConstants.TOPIC_MESSAGE_ACK, readReceiptMessage.toByteArray());
 
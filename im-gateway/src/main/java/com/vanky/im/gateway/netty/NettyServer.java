@@ -1,14 +1,17 @@
 package com.vanky.im.gateway.netty;
 
+import com.vanky.im.gateway.config.NettyServerConfig;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -23,6 +26,10 @@ public abstract class NettyServer {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyServer.class);
 
+    @Autowired
+    protected NettyServerConfig nettyServerConfig;
+
+    protected NettyTransport transport;
     protected EventLoopGroup bossGroup;
     protected EventLoopGroup workerGroup;
     protected ServerBootstrap bootstrap;
@@ -31,17 +38,59 @@ public abstract class NettyServer {
     protected volatile boolean isRunning = false;
 
     /**
-     * 构造函数，初始化 Boss 和 Worker线程组。
+     * 构造函数，初始化启动引导类。
+     * 线程组依赖传输层配置，延迟到 {@link #initEventLoopGroups()} 中创建。
      */
     public NettyServer() {
+        this.bootstrap = new ServerBootstrap();
+    }
+
+    /**
+     * 根据配置解析传输层类型（epoll / nio）
+     *
+     * @return 实际使用的传输层类型
+     */
+    protected NettyTransport resolveTransport() {
+        String configured = nettyServerConfig != null ? nettyServerConfig.getTransport() : null;
+        return NettyTransport.resolve(configured);
+    }
+
+    /**
+     * 按传输层类型初始化 Boss 和 Worker 线程组，子类在 init() 中调用。
+     */
+    protected void initEventLoopGroups() {
+        this.transport = resolveTransport();
         // 负责处理客户端连接请求的线程组
-        this.bossGroup = new NioEventLoopGroup(1); // BossGroup通常设置为1
+        this.bossGroup = transport.newEventLoopGroup(1); // BossGroup通常设置为1
         // 负责处理网络IO操作的线程组
-        this.workerGroup = new NioEventLoopGroup(); // 默认线程数是 CPU核心数 * 2
-        this.bootstrap = new ServerBootstrap();
+        this.workerGroup = transport.newEventLoopGroup(0); // 默认线程数是 CPU核心数 * 2
 
-        logger.info("创建NettyServer实例 - BossGroup线程数: 1, WorkerGroup线程数: {}",
-                Runtime.getRuntime().availableProcessors() * 2);
+        logger.info("创建{}服务器线程组 - 传输层: {}, BossGroup线程数: 1, WorkerGroup线程数: {}",
+                getServerType(), transport, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * 连接写缓冲水位：超过高水位后 Channel 不可写，下行消息进入积压队列，回落到低水位后恢复
+     *
+     * @return 写缓冲水位
+     */
+    protected WriteBufferWaterMark writeBufferWaterMark() {
+        int low = nettyServerConfig.getWriteBufferLowWaterMark();
+        int high = Math.max(low, nettyServerConfig.getWriteBufferHighWaterMark());
+        return new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * 在 pipeline 最前面添加flush合并处理器：读事件处理期间的多次flush合并到读完成时执行，
+     * 非读期间的flush推迟到 EventLoop 本轮任务结束，每个连接每个tick最多一次系统调用
+     *
+     * @param channel 新建立的连接
+     */
+    protected void addFlushConsolidation(SocketChannel channel) {
+        int afterFlushes = nettyServerConfig.getFlushConsolidationAfterFlushes();
+        if (afterFlushes > 0) {
+            channel.pipeline().addLast(new FlushConsolidationHandler(afterFlushes, true));
+        }
     }
 
     /**
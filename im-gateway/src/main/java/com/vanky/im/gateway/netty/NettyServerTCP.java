@@ -1,19 +1,19 @@
 package com.vanky.im.gateway.netty;
 
 import com.vanky.im.gateway.netty.handler.CommonHeartbeatHandler;
+import com.vanky.im.gateway.netty.handler.ConnectionAdmissionHandler;
+import com.vanky.im.gateway.netty.handler.OutboundBackpressureHandler;
 import com.vanky.im.gateway.netty.tcp.TcpServerHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.logging.LogLevel;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedMessageEncoder;
 import com.vanky.im.common.protocol.codec.ProtobufMessageDecoder;
 import com.vanky.im.common.protocol.codec.ProtobufMessageEncoder;
 
@@ -34,6 +34,12 @@ public class NettyServerTCP extends NettyServer {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyServerTCP.class);
     
+    @Autowired
+    private OutboundBackpressureHandler outboundBackpressureHandler;
+
+    @Autowired
+    private ConnectionAdmissionHandler connectionAdmissionHandler;
+
     @Autowired
     private TcpServerHandler tcpServerHandler;
 
@@ -43,12 +49,13 @@ public class NettyServerTCP extends NettyServer {
     @Override
     public void init() {
         // 配置服务器启动引导类
+        initEventLoopGroups();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .option(ChannelOption.SO_BACKLOG, SO_BACKLOG)
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark())
                 .childOption(ChannelOption.TCP_NODELAY, true)
-                .handler(new LoggingHandler(LogLevel.INFO))
                 .childHandler(getChannelInitializer());
     }
 
@@ -72,15 +79,21 @@ public class NettyServerTCP extends NettyServer {
         return new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
-                // 添加日志处理器（放在最前面，记录所有事件）
-                ch.pipeline().addLast(new LoggingHandler(LogLevel.DEBUG));
+                // 合并flush，减少系统调用（必须最靠近socket）
+                addFlushConsolidation(ch);
+                // 连接准入控制：超出接入速率的连接下发退避提示后关闭
+                ch.pipeline().addLast(connectionAdmissionHandler);
+                // 添加下行背压处理器，Channel 恢复可写时排空积压队列
+                ch.pipeline().addLast(outboundBackpressureHandler);
                 // 添加空闲状态处理器，设置读空闲超时时间
                 ch.pipeline().addLast(new IdleStateHandler(SERVER_READ_IDLE_TIMEOUT, IDLE_TIME_DISABLE, IDLE_TIME_DISABLE, TimeUnit.SECONDS));
                 // 添加通用心跳处理器
                 ch.pipeline().addLast(new CommonHeartbeatHandler(TCP_PROTOCOL));
                 // 添加通用Protobuf编解码器
-                ch.pipeline().addLast(new ProtobufMessageDecoder<>(ChatMessage.parser()));
+                ch.pipeline().addLast(new ProtobufMessageDecoder<>(ChatMessage.parser(), nettyServerConfig.getMaxFrameLength()));
                 ch.pipeline().addLast(new ProtobufMessageEncoder());
+                // 已编码的下行消息（推送信封中的消息体）直接加长度头写出
+                ch.pipeline().addLast(new EncodedMessageEncoder());
                 // 添加业务处理器 - 使用Spring管理的实例
                 ch.pipeline().addLast(tcpServerHandler);
             }
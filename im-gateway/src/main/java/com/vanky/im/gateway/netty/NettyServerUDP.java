@@ -1,39 +1,33 @@
 package com.vanky.im.gateway.netty;
 
-import com.vanky.im.common.protocol.codec.ProtobufMessageDecoder;
-import com.vanky.im.common.protocol.codec.ProtobufMessageEncoder;
-import com.vanky.im.gateway.netty.handler.CommonHeartbeatHandler;
-import com.vanky.im.gateway.netty.udp.UdpServerHandler;
+import com.vanky.im.gateway.netty.udp.ReliableUdpHandler;
+import com.vanky.im.gateway.netty.udp.UdpLossInjectionHandler;
+import com.vanky.im.gateway.netty.udp.UdpReliabilityManager;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.vanky.im.common.protocol.ChatMessage;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.vanky.im.common.constant.ChannelOptionConstant.SO_RCVBUF;
 import static com.vanky.im.common.constant.ChannelOptionConstant.SO_SNDBUF;
-import static com.vanky.im.common.constant.CommonConstant.UDP_PROTOCOL;
-import static com.vanky.im.common.constant.TimeConstant.IDLE_TIME_DISABLE;
-import static com.vanky.im.common.constant.TimeConstant.SERVER_READ_IDLE_TIMEOUT;
 
 /**
  * @author vanky
  * @create 2025/5/13 22:41
- * @description UDP 服务端实现。
+ * @description UDP 服务端实现。绑定端口的 DatagramChannel 上只做可靠传输（会话、选择性确认、打包、重传），
+ *              每个对端会话是一个子 Channel，与 TCP 连接共用登录、推送和下线逻辑。
  */
 @Component
 public class NettyServerUDP extends NettyServer {
@@ -42,12 +36,23 @@ public class NettyServerUDP extends NettyServer {
     private EventLoopGroup group;
     private Bootstrap udpBootstrap;
 
+    @Autowired
+    private UdpReliabilityManager udpReliabilityManager;
+
+    /**
+     * 绑定到同一端口的 Channel 数量（SO_REUSEPORT 时大于1）
+     */
+    private int bindChannelCount = 1;
+
+    /**
+     * 已绑定的全部 Channel，serverChannel 指向其中第一个
+     */
+    private final List<Channel> boundChannels = new ArrayList<>();
+
     /**
      * 构造函数，初始化UDP服务器所需的资源
      */
     public NettyServerUDP() {
-        // UDP不需要使用父类的bossGroup和workerGroup，只需要一个EventLoopGroup
-        this.group = new NioEventLoopGroup();
         this.udpBootstrap = new Bootstrap();
     }
     
@@ -56,14 +61,27 @@ public class NettyServerUDP extends NettyServer {
      */
     @Override
     public void init() {
+        // UDP不需要使用父类的bossGroup和workerGroup，只需要一个EventLoopGroup
+        this.transport = resolveTransport();
+        if (transport.supportsReusePort()) {
+            int configured = nettyServerConfig != null ? nettyServerConfig.getUdp().getReusePortChannels() : 0;
+            this.bindChannelCount = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        }
+        // 每个绑定的Channel独占一个EventLoop，由内核按四元组哈希分发数据报
+        this.group = transport.newEventLoopGroup(bindChannelCount);
+
         // 配置UDP服务器
         udpBootstrap.group(group)
-                .channel(NioDatagramChannel.class)
+                .channel(transport.datagramChannelClass())
                 .option(ChannelOption.SO_BROADCAST, true)
                 .option(ChannelOption.SO_RCVBUF, SO_RCVBUF) // 设置接收缓冲区大小
                 .option(ChannelOption.SO_SNDBUF, SO_SNDBUF) // 设置发送缓冲区大小
-                .handler(new LoggingHandler(LogLevel.INFO))
                 .handler(new UDPChannelInitializer());
+        if (bindChannelCount > 1) {
+            udpBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        logger.info("初始化UDP服务器 - 传输层: {}, 绑定Channel数: {}", transport, bindChannelCount);
     }
 
     /**
@@ -82,17 +100,28 @@ public class NettyServerUDP extends NettyServer {
         
         new Thread(() -> {
             try {
-                // 绑定端口，开始接收进来的连接
-                ChannelFuture future = udpBootstrap.bind(port).sync();
-                serverChannel = future.channel();
+                // 绑定端口，开启SO_REUSEPORT时多个Channel绑定同一端口
+                List<Channel> channels = new ArrayList<>(bindChannelCount);
+                for (int i = 0; i < bindChannelCount; i++) {
+                    ChannelFuture future = udpBootstrap.bind(port).sync();
+                    channels.add(future.channel());
+                    synchronized (boundChannels) {
+                        boundChannels.add(future.channel());
+                    }
+                }
+                serverChannel = channels.get(0);
                 isRunning = true;
-                logger.info("UDP server started on port: {}", port);
+                logger.info("UDP server started on port: {}, channels: {}", port, bindChannelCount);
                 
-                // 等待服务器 socket 关闭
-                serverChannel.closeFuture().sync();
+                // 等待全部服务器 socket 关闭
+                for (Channel channel : channels) {
+                    channel.closeFuture().sync();
+                }
             } catch (InterruptedException e) {
                 logger.error("UDP server startup failed.", e);
                 Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("UDP server startup failed with exception.", e);
             } finally {
                 // 优雅地关闭服务器
                 stop();
@@ -111,10 +140,13 @@ public class NettyServerUDP extends NettyServer {
         
         isRunning = false;
         
-        if (serverChannel != null) {
-            serverChannel.close();
-            serverChannel = null;
+        synchronized (boundChannels) {
+            for (Channel channel : boundChannels) {
+                channel.close();
+            }
+            boundChannels.clear();
         }
+        serverChannel = null;
         
         if (group != null) {
             group.shutdownGracefully();
@@ -148,17 +180,14 @@ public class NettyServerUDP extends NettyServer {
     private class UDPChannelInitializer extends ChannelInitializer<DatagramChannel> {
         @Override
         protected void initChannel(DatagramChannel ch) throws Exception {
-            // 添加空闲状态处理器，设置读空闲超时时间
-            ch.pipeline().addLast(new IdleStateHandler(SERVER_READ_IDLE_TIMEOUT, IDLE_TIME_DISABLE, IDLE_TIME_DISABLE, TimeUnit.SECONDS));
-            // 添加通用心跳处理器
-            ch.pipeline().addLast(new CommonHeartbeatHandler(UDP_PROTOCOL));
-            // 添加日志处理器
-            ch.pipeline().addLast(new LoggingHandler(LogLevel.INFO));
-            // 添加通用Protobuf编解码器
-            ch.pipeline().addLast(new ProtobufMessageDecoder<>(ChatMessage.parser()));
-            ch.pipeline().addLast(new ProtobufMessageEncoder());
-            // 添加UDP业务处理器
-            ch.pipeline().addLast(new UdpServerHandler());
+            // 本地丢包注入（仅测试弱网时开启）
+            double lossRate = udpReliabilityManager.getProperties().getLossInjectionRate();
+            if (lossRate > 0) {
+                logger.warn("UDP丢包注入已开启 - 丢包率: {}", lossRate);
+                ch.pipeline().addLast(new UdpLossInjectionHandler(lossRate));
+            }
+            // 可靠UDP：按对端会话拆分为子 Channel，空闲检测、编解码与业务处理都在子 Channel 上进行
+            ch.pipeline().addLast(new ReliableUdpHandler(udpReliabilityManager));
         }
     }
 }
@@ -3,6 +3,7 @@ package com.vanky.im.gateway.netty;
 import com.vanky.im.common.protocol.codec.ProtobufMessageDecoder;
 import com.vanky.im.common.protocol.codec.ProtobufMessageEncoder;
 import com.vanky.im.gateway.netty.handler.CommonHeartbeatHandler;
+import com.vanky.im.gateway.netty.handler.OutboundBackpressureHandler;
 import com.vanky.im.gateway.netty.websocket.WebSocketFrameEncoder;
 import com.vanky.im.gateway.netty.handler.HttpAuthHandler;
 import com.vanky.im.gateway.netty.websocket.WebSocketServerHandler;
@@ -10,12 +11,9 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
@@ -46,6 +44,9 @@ public class NettyServerWebSocket extends NettyServer {
     @Value("${netty.server.websocket.path:/}")
     private String websocketPath;
     
+    @Autowired
+    private OutboundBackpressureHandler outboundBackpressureHandler;
+
     @Autowired
     private WebSocketServerHandler webSocketServerHandler;
 
@@ -64,11 +65,12 @@ public class NettyServerWebSocket extends NettyServer {
      */
     @Override
     public void init() {
+        initEventLoopGroups();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .option(ChannelOption.SO_BACKLOG, SO_BACKLOG)
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
-                .handler(new LoggingHandler(LogLevel.INFO))
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark())
                 .childHandler(getChannelInitializer());
     }
 
@@ -116,8 +118,10 @@ public class NettyServerWebSocket extends NettyServer {
         return new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
-                // 添加日志处理器（放在最前面，记录所有事件）
-                ch.pipeline().addLast(new LoggingHandler(LogLevel.DEBUG));
+                // 合并flush，减少系统调用（必须最靠近socket）
+                addFlushConsolidation(ch);
+                // 添加下行背压处理器，Channel 恢复可写时排空积压队列
+                ch.pipeline().addLast(outboundBackpressureHandler);
                 // WebSocket 协议本身是基于 http 协议的，所以这边也要使用 http 解编码器
                 ch.pipeline().addLast(new HttpServerCodec());
                 // 以块的方式来写的处理器
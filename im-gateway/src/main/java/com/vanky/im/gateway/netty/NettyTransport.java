@@ -0,0 +1,95 @@
+package com.vanky.im.gateway.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author vanky
+ * @create 2025/9/2
+ * @description Netty 传输层类型，统一封装 EventLoopGroup 与 Channel 类型的选择。
+ *              Linux 下优先使用 epoll 原生传输（边缘触发、无 selectedKeys 垃圾、支持 SO_REUSEPORT），
+ *              其他平台或原生库不可用时回退到 JDK NIO。
+ */
+public enum NettyTransport {
+
+    /**
+     * Linux epoll 原生传输
+     */
+    EPOLL,
+
+    /**
+     * JDK NIO 传输（跨平台兜底）
+     */
+    NIO;
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyTransport.class);
+
+    /**
+     * 根据配置解析传输类型
+     *
+     * @param configured 配置值：auto / epoll / nio，为空时按 auto 处理
+     * @return 实际可用的传输类型
+     */
+    public static NettyTransport resolve(String configured) {
+        String mode = configured == null ? "auto" : configured.trim().toLowerCase();
+
+        switch (mode) {
+            case "nio":
+                return NIO;
+            case "epoll":
+                if (Epoll.isAvailable()) {
+                    return EPOLL;
+                }
+                logger.warn("配置要求使用epoll传输，但当前环境不可用，回退到NIO - 原因: {}",
+                        Epoll.unavailabilityCause() != null ? Epoll.unavailabilityCause().getMessage() : "unknown");
+                return NIO;
+            case "auto":
+            case "":
+                return Epoll.isAvailable() ? EPOLL : NIO;
+            default:
+                logger.warn("未知的Netty传输类型配置: {}，按auto处理", configured);
+                return Epoll.isAvailable() ? EPOLL : NIO;
+        }
+    }
+
+    /**
+     * 创建 EventLoopGroup
+     *
+     * @param nThreads 线程数，0 表示使用 Netty 默认值（CPU核心数 * 2）
+     * @return EventLoopGroup
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return this == EPOLL ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+    }
+
+    /**
+     * 获取 TCP 服务端 Channel 类型
+     */
+    public Class<? extends ServerSocketChannel> serverChannelClass() {
+        return this == EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * 获取 UDP Channel 类型
+     */
+    public Class<? extends DatagramChannel> datagramChannelClass() {
+        return this == EPOLL ? EpollDatagramChannel.class : NioDatagramChannel.class;
+    }
+
+    /**
+     * 是否支持 SO_REUSEPORT（多个 Channel 绑定同一端口，由内核做负载分发）
+     */
+    public boolean supportsReusePort() {
+        return this == EPOLL;
+    }
+}
@@ -0,0 +1,39 @@
+package com.vanky.im.gateway.netty.handler;
+
+import com.vanky.im.gateway.admission.AdmissionController;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description 连接准入处理器（TCP），连接建立时向令牌桶申请准入，超出接入速率的连接收到带退避提示的服务繁忙通知后关闭；
+ * 准入后从 pipeline 中移除自身，不再参与后续读写
+ */
+@Slf4j
+@Component
+@ChannelHandler.Sharable
+public class ConnectionAdmissionHandler extends ChannelInboundHandlerAdapter {
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (admissionController.tryAdmitConnection()) {
+            ctx.pipeline().remove(this);
+            super.channelActive(ctx);
+            return;
+        }
+
+        // 从 Channel 写出以经过完整的编码器链；不向后传播 channelActive，业务处理器不会感知该连接
+        log.debug("连接准入受限，下发退避提示后关闭 - 远程地址: {}", ctx.channel().remoteAddress());
+        ctx.channel().writeAndFlush(admissionController.buildBusyMessage(null))
+                .addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -1,7 +1,9 @@
 package com.vanky.im.gateway.netty.handler;
 
 import com.vanky.im.common.util.TokenUtil;
+import com.vanky.im.gateway.admission.AdmissionController;
 import com.vanky.im.gateway.session.UserChannelManager;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -26,6 +28,9 @@ public class HttpAuthHandler extends SimpleChannelInboundHandler<FullHttpRequest
     @Autowired
     private UserChannelManager userChannelManager;
 
+    @Autowired
+    private AdmissionController admissionController;
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
         if (!request.decoderResult().isSuccess() || !"websocket".equals(request.headers().get("Upgrade"))) {
@@ -34,10 +39,17 @@ public class HttpAuthHandler extends SimpleChannelInboundHandler<FullHttpRequest
             return;
         }
 
+        // 连接准入控制：超出接入速率时返回503并通过 Retry-After 下发退避提示
+        if (!admissionController.tryAdmitConnection()) {
+            sendBusyResponse(ctx);
+            return;
+        }
+
         QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
         Map<String, List<String>> parameters = decoder.parameters();
         String token = getParameter(parameters, "token");
         String userId = getParameter(parameters, "userId");
+        String deviceId = getParameter(parameters, "deviceId");
 
         if (token == null || userId == null) {
             sendAuthFailedResponse(ctx, "Missing token or userId");
@@ -52,7 +64,7 @@ public class HttpAuthHandler extends SimpleChannelInboundHandler<FullHttpRequest
 
         // 认证成功，将 userId 存入 channel 属性
         ctx.channel().attr(UserChannelManager.USER_ID_ATTR).set(userId);
-        userChannelManager.bindChannel(userId, ctx.channel());
+        userChannelManager.bindChannel(userId, deviceId, ctx.channel());
 
         // 将 URI 重写为不带参数的路径，以便 WebSocketServerProtocolHandler 匹配
         request.setUri(decoder.path());
@@ -68,6 +80,17 @@ public class HttpAuthHandler extends SimpleChannelInboundHandler<FullHttpRequest
         ctx.close();
     }
 
+    private void sendBusyResponse(ChannelHandlerContext ctx) {
+        int retryAfterMs = admissionController.nextBackoffMs();
+        logger.debug("WebSocket握手准入受限，退避: {}ms", retryAfterMs);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        // Retry-After 只支持秒，毫秒级退避通过自定义头下发
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, (retryAfterMs + 999) / 1000);
+        response.headers().set("X-Retry-After-Ms", retryAfterMs);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
     private String getParameter(Map<String, List<String>> parameters, String name) {
         List<String> values = parameters.get(name);
         if (values != null && !values.isEmpty()) {
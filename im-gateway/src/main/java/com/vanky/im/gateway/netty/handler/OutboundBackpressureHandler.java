@@ -0,0 +1,35 @@
+package com.vanky.im.gateway.netty.handler;
+
+import com.vanky.im.gateway.session.MsgSender;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author vanky
+ * @create 2025/9/3
+ * @description 下行背压处理器，Channel 写缓冲回落到低水位以下时排空积压队列，连接断开时丢弃积压
+ */
+@ChannelHandler.Sharable
+@Component
+public class OutboundBackpressureHandler extends ChannelInboundHandlerAdapter {
+
+    @Autowired
+    private MsgSender msgSender;
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            msgSender.drain(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        msgSender.discardQueue(ctx.channel());
+        super.channelInactive(ctx);
+    }
+}
@@ -1,6 +1,5 @@
 package com.vanky.im.gateway.netty.tcp;
 
-import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.gateway.server.processor.IMServiceHandler;
 import com.vanky.im.gateway.session.UserChannelManager;
@@ -35,11 +34,6 @@ public class TcpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ChatMessage msg) throws Exception {
-        if(msg.getType() != MessageTypeConstants.HEARTBEAT) {
-            log.info("TCP接收到消息 - 类型: {}, 发送方: {}, 接收方: {}, 消息ID: {}",
-                    msg.getType(), msg.getFromId(), msg.getToId(), msg.getUid());
-        }
-
         // 委托给统一消息分发器处理
         imServiceHandler.handleMessage(msg, ctx.channel());
     }
@@ -61,7 +55,7 @@ public class TcpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
 
         // 连接断开时，处理用户下线逻辑
         if (userId != null) {
-            userOfflineService.handleUserOffline(userId, "TCP连接断开");
+            userOfflineService.handleChannelOffline(ctx.channel(), "TCP连接断开");
         }
 
         super.channelInactive(ctx);
@@ -74,7 +68,7 @@ public class TcpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
         // 处理用户下线逻辑
         String userId = userChannelManager.getUserId(ctx.channel());
         if (userId != null) {
-            userOfflineService.handleUserOffline(userId, "TCP连接异常: " + cause.getMessage());
+            userOfflineService.handleChannelOffline(ctx.channel(), "TCP连接异常: " + cause.getMessage());
         }
 
         ctx.close();
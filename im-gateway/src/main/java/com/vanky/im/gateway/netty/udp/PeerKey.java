@@ -0,0 +1,51 @@
+package com.vanky.im.gateway.netty.udp;
+
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description UDP对端会话键：源地址 + 登录token摘要，同一地址换token登录视为新会话
+ */
+final class PeerKey {
+
+    private final InetSocketAddress address;
+
+    private final int tokenHash;
+
+    PeerKey(InetSocketAddress address, int tokenHash) {
+        this.address = address;
+        this.tokenHash = tokenHash;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    int getTokenHash() {
+        return tokenHash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PeerKey)) {
+            return false;
+        }
+        PeerKey other = (PeerKey) obj;
+        return tokenHash == other.tokenHash && address.equals(other.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, tokenHash);
+    }
+
+    @Override
+    public String toString() {
+        return address + "#" + Integer.toHexString(tokenHash);
+    }
+}
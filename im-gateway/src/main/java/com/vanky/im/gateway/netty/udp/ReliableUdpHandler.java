@@ -0,0 +1,170 @@
+package com.vanky.im.gateway.netty.udp;
+
+import com.vanky.im.common.protocol.ChatMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description 可靠UDP数据报处理器，每个绑定端口的 DatagramChannel 一个实例（只在其 EventLoop 上运行，无需加锁）：
+ *              解析数据报头，按 源地址+tokenHash 找到或创建对端会话，处理捎带的ACK和打包的消息；
+ *              本轮读取结束时统一发出各会话的ACK和待发送数据，再 flush 一次。
+ */
+@Slf4j
+public class ReliableUdpHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private final UdpReliabilityManager manager;
+
+    private final Map<PeerKey, UdpPeerSession> sessions = new HashMap<>();
+
+    /**
+     * 本轮读取中收到数据报的会话
+     */
+    private final List<UdpPeerSession> dirtySessions = new ArrayList<>();
+
+    public ReliableUdpHandler(UdpReliabilityManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+        ByteBuf in = packet.content();
+        manager.recordDatagramIn();
+        if (!UdpFrameCodec.isValidHeader(in)) {
+            manager.recordMalformed();
+            return;
+        }
+        in.skipBytes(2);
+        int flags = in.readUnsignedByte();
+        int tokenHash = in.readInt();
+
+        PeerKey key = new PeerKey(packet.sender(), tokenHash);
+        UdpPeerSession session = sessions.get(key);
+        if (session == null) {
+            if ((flags & UdpFrameCodec.FLAG_DATA) == 0) {
+                // 未知会话的纯ACK（会话已关闭），忽略
+                return;
+            }
+            session = openSession(ctx, key);
+            if (session == null) {
+                return;
+            }
+        }
+
+        try {
+            if ((flags & UdpFrameCodec.FLAG_ACK) != 0) {
+                if (in.readableBytes() < UdpFrameCodec.ACK_SIZE) {
+                    manager.recordMalformed();
+                    return;
+                }
+                session.onAck(in.readInt(), in.readLong());
+            }
+            if ((flags & UdpFrameCodec.FLAG_DATA) != 0) {
+                readData(in, session);
+            }
+        } finally {
+            markDirty(session);
+        }
+    }
+
+    private void readData(ByteBuf in, UdpPeerSession session) {
+        if (in.readableBytes() < 1) {
+            manager.recordMalformed();
+            return;
+        }
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            if (in.readableBytes() < UdpFrameCodec.ENTRY_HEADER_SIZE) {
+                manager.recordMalformed();
+                return;
+            }
+            int seq = in.readInt();
+            int length = in.readUnsignedShort();
+            if (in.readableBytes() < length) {
+                manager.recordMalformed();
+                return;
+            }
+            ChatMessage message = null;
+            try {
+                message = ChatMessage.parseFrom(in.nioBuffer(in.readerIndex(), length));
+            } catch (Exception e) {
+                log.warn("UDP消息解析失败，跳过 - 对端: {}, seq: {}, 长度: {}", session.getKey(), seq, length);
+                manager.recordMalformed();
+            }
+            in.skipBytes(length);
+            session.onData(seq, message);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        if (!dirtySessions.isEmpty()) {
+            // 交付过程中会话可能被关闭并从列表移除，遍历副本
+            List<UdpPeerSession> flushing = new ArrayList<>(dirtySessions);
+            dirtySessions.clear();
+            for (UdpPeerSession session : flushing) {
+                session.fireReadComplete();
+                session.flush();
+            }
+            ctx.flush();
+        }
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 绑定端口关闭时关闭全部对端会话，触发各自的下线清理
+        for (UdpPeerSession session : new ArrayList<>(sessions.values())) {
+            session.getChannel().close();
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // UDP 端口为所有对端共用，单个数据报的异常不能关闭 Channel
+        log.error("UDP数据报处理异常 - 本地地址: {}", ctx.channel().localAddress(), cause);
+    }
+
+    private UdpPeerSession openSession(ChannelHandlerContext ctx, PeerKey key) {
+        if (sessions.size() >= manager.getProperties().getMaxSessions()) {
+            manager.recordSessionRejected();
+            log.warn("UDP会话数已达上限，丢弃新对端数据报 - 对端: {}, 上限: {}", key, manager.getProperties().getMaxSessions());
+            return null;
+        }
+        DatagramChannel parent = (DatagramChannel) ctx.channel();
+        UdpPeerSession session = new UdpPeerSession(key, parent, manager, this::onSessionClosed);
+        UdpPeerChannel channel = new UdpPeerChannel(parent, session);
+        session.attach(channel);
+        sessions.put(key, session);
+
+        manager.initPeerPipeline(channel);
+        parent.eventLoop().register(channel);
+        manager.onSessionOpened();
+        log.debug("UDP会话建立 - 对端: {}, 当前会话数: {}", key, sessions.size());
+        return session;
+    }
+
+    private void markDirty(UdpPeerSession session) {
+        if (!dirtySessions.contains(session)) {
+            dirtySessions.add(session);
+        }
+    }
+
+    private void onSessionClosed(UdpPeerSession session) {
+        sessions.remove(session.getKey(), session);
+        dirtySessions.remove(session);
+        manager.onSessionClosed();
+        log.debug("UDP会话关闭 - 对端: {}, 当前会话数: {}", session.getKey(), sessions.size());
+    }
+}
@@ -0,0 +1,80 @@
+package com.vanky.im.gateway.netty.udp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description 可靠UDP数据报格式（大端序）：
+ *              [魔数 0xA7][版本][标志位][tokenHash int32]
+ *              [ACK（标志位含 FLAG_ACK 时）：cumAck int32 + sack int64]
+ *              [DATA（标志位含 FLAG_DATA 时）：count uint8 + count × (seq int32 + len uint16 + ChatMessage字节)]
+ *              - tokenHash 为登录token的 String.hashCode()，与源地址一起确定对端会话，token只在登录时校验一次；
+ *              - 序列号按消息编号，每个方向独立从0开始；一个数据报可打包多条小消息，总长不超过MTU；
+ *              - cumAck 为期望收到的下一个序列号，sack 的第 i 位表示已收到 cumAck + 1 + i（选择性确认）；
+ *              - 服务端发出的每个数据报都携带 ACK。
+ */
+public final class UdpFrameCodec {
+
+    public static final byte MAGIC = (byte) 0xA7;
+
+    public static final byte VERSION = 1;
+
+    public static final int FLAG_DATA = 1;
+
+    public static final int FLAG_ACK = 2;
+
+    /**
+     * 固定头长度：魔数 + 版本 + 标志位 + tokenHash
+     */
+    public static final int HEADER_SIZE = 7;
+
+    /**
+     * ACK段长度：cumAck + sack位图
+     */
+    public static final int ACK_SIZE = 12;
+
+    /**
+     * 每条消息的头长度：seq + len
+     */
+    public static final int ENTRY_HEADER_SIZE = 6;
+
+    /**
+     * 选择性确认位图的位数，同时也是收发窗口大小
+     */
+    public static final int SACK_BITS = 64;
+
+    /**
+     * 单个数据报最多打包的消息数（count 为 uint8）
+     */
+    public static final int MAX_ENTRIES_PER_DATAGRAM = 255;
+
+    /**
+     * 单条消息最大长度（len 为 uint16）
+     */
+    public static final int MAX_ENTRY_LENGTH = 0xFFFF;
+
+    private UdpFrameCodec() {
+    }
+
+    /**
+     * 写入固定头和ACK段
+     */
+    public static void writeHeader(ByteBuf out, int flags, int tokenHash, int cumAck, long sack) {
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(flags | FLAG_ACK);
+        out.writeInt(tokenHash);
+        out.writeInt(cumAck);
+        out.writeLong(sack);
+    }
+
+    /**
+     * 校验魔数和版本（不移动读指针）
+     */
+    public static boolean isValidHeader(ByteBuf in) {
+        return in.readableBytes() >= HEADER_SIZE
+                && in.getByte(in.readerIndex()) == MAGIC
+                && in.getByte(in.readerIndex() + 1) == VERSION;
+    }
+}
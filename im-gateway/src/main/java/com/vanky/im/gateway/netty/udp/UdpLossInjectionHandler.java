@@ -0,0 +1,47 @@
+package com.vanky.im.gateway.netty.udp;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description 本地丢包注入：按比例随机丢弃收发的数据报，用于在本机模拟弱网下验证重传和对比吞吐，
+ *              仅在 netty.server.udp.loss-injection-rate 大于0时加入 pipeline
+ */
+public class UdpLossInjectionHandler extends ChannelDuplexHandler {
+
+    private final double lossRate;
+
+    public UdpLossInjectionHandler(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof DatagramPacket && shouldDrop()) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof DatagramPacket && shouldDrop()) {
+            ReferenceCountUtil.release(msg);
+            promise.setSuccess();
+            return;
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private boolean shouldDrop() {
+        return ThreadLocalRandom.current().nextDouble() < lossRate;
+    }
+}
@@ -0,0 +1,165 @@
+package com.vanky.im.gateway.netty.udp;
+
+import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.DatagramChannel;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description UDP对端虚拟连接：每个对端会话对应一个子 Channel，父 Channel 为绑定端口的 DatagramChannel。
+ *              子 Channel 注册在父 Channel 的 EventLoop 上，拥有独立的 pipeline 和属性，
+ *              因此登录绑定、下行推送、背压、空闲检测与下线清理都与 TCP 连接走同一套逻辑；
+ *              写出的消息交给 {@link UdpPeerSession} 打包、编号并负责重传。
+ */
+public class UdpPeerChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    /**
+     * 用户自定义可写性位：会话待发送消息过多时置为不可写
+     */
+    private static final int SESSION_WRITABILITY_INDEX = 1;
+
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+
+    private final UdpPeerSession session;
+
+    private volatile boolean open = true;
+
+    UdpPeerChannel(DatagramChannel parent, UdpPeerSession session) {
+        super(parent);
+        this.session = session;
+    }
+
+    @Override
+    public DatagramChannel parent() {
+        return (DatagramChannel) super.parent();
+    }
+
+    UdpPeerSession session() {
+        return session;
+    }
+
+    /**
+     * 会话待发送队列的背压信号，触发 channelWritabilityChanged 由 MsgSender 排空积压
+     */
+    void setSessionWritable(boolean writable) {
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.setUserDefinedWritability(SESSION_WRITABILITY_INDEX, writable);
+        }
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new PeerUnsafe();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return true;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return parent().localAddress();
+    }
+
+    @Override
+    protected InetSocketAddress remoteAddress0() {
+        return session.getAddress();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException("UDP对端连接不支持bind");
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+        session.close();
+    }
+
+    @Override
+    protected void doBeginRead() {
+        // 数据报由父 Channel 读入后按会话分发，子 Channel 无需主动读
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                break;
+            }
+            ByteBuf payload = toPayload(msg);
+            if (payload == null) {
+                in.remove(new UnsupportedOperationException("UDP对端连接不支持的消息类型: " + msg.getClass().getName()));
+                continue;
+            }
+            session.enqueue(payload);
+            in.remove();
+        }
+        session.flush();
+        parent().flush();
+    }
+
+    /**
+     * 下行消息转为 ChatMessage 字节：已编码消息直接包装原始字节，不重新序列化
+     */
+    private static ByteBuf toPayload(Object msg) {
+        if (msg instanceof EncodedChatMessage) {
+            return ((EncodedChatMessage) msg).payload();
+        }
+        if (msg instanceof ChatMessage) {
+            return Unpooled.wrappedBuffer(((ChatMessage) msg).toByteArray());
+        }
+        return null;
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    private final class PeerUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            promise.setFailure(new UnsupportedOperationException("UDP对端连接不支持connect"));
+        }
+    }
+}
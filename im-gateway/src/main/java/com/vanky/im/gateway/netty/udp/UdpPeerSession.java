@@ -0,0 +1,484 @@
+package com.vanky.im.gateway.netty.udp;
+
+import com.vanky.im.common.constant.MessageTypeConstants;
+import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.gateway.config.NettyServerConfig;
+import com.vanky.im.gateway.timeout.TimerTask;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description UDP对端可靠传输状态，所有方法只在父 Channel 的 EventLoop 上调用（重传定时器回调也会切回该线程）：
+ *              - 接收：按序列号去重、在 64 条窗口内乱序缓存、按序交付，回复累计确认 + 选择性确认位图；
+ *              - 发送：窗口内的消息按 MTU 打包成数据报，每个数据报捎带 ACK；
+ *              - 重传：RTO 按 RFC 6298 估算，超时后指数退避，由时间轮驱动；被后续 3 条消息越过的缺口快速重传；
+ *              - 准入：token 只在登录时与 tokenHash 比对一次，之后的数据报按会话放行，不再逐包校验。
+ */
+@Slf4j
+final class UdpPeerSession {
+
+    private static final int WINDOW = UdpFrameCodec.SACK_BITS;
+
+    /**
+     * 被后续多少条已确认消息越过时快速重传
+     */
+    private static final int FAST_RETRANSMIT_THRESHOLD = 3;
+
+    private final PeerKey key;
+    private final DatagramChannel parent;
+    private final UdpReliabilityManager manager;
+    private final NettyServerConfig.UdpServerProperties props;
+    private final Consumer<UdpPeerSession> onClosed;
+
+    private UdpPeerChannel channel;
+    private boolean authenticated;
+    private boolean closed;
+
+    // ==================== 接收状态 ====================
+
+    private int nextExpectedSeq;
+    private long receivedAhead;
+    private final ChatMessage[] reorderBuffer = new ChatMessage[WINDOW];
+    private boolean ackPending;
+
+    // ==================== 发送状态 ====================
+
+    private int nextSendSeq;
+    private final ArrayDeque<ByteBuf> pending = new ArrayDeque<>();
+    private final ArrayDeque<OutboundEntry> inflight = new ArrayDeque<>();
+    private final List<OutboundEntry> retransmitQueue = new ArrayList<>();
+    private boolean writable = true;
+
+    private long srtt;
+    private long rttVar;
+    private long rto;
+
+    private RetransmitTask retransmitTask;
+    private boolean timerArmed;
+
+    UdpPeerSession(PeerKey key, DatagramChannel parent, UdpReliabilityManager manager,
+                   Consumer<UdpPeerSession> onClosed) {
+        this.key = key;
+        this.parent = parent;
+        this.manager = manager;
+        this.props = manager.getProperties();
+        this.onClosed = onClosed;
+        this.rto = props.getInitialRtoMs();
+    }
+
+    void attach(UdpPeerChannel channel) {
+        this.channel = channel;
+    }
+
+    UdpPeerChannel getChannel() {
+        return channel;
+    }
+
+    PeerKey getKey() {
+        return key;
+    }
+
+    InetSocketAddress getAddress() {
+        return key.getAddress();
+    }
+
+    // ==================== 接收 ====================
+
+    /**
+     * 处理对端的确认：移除已确认消息、更新RTT，被越过的缺口加入快速重传（在本轮 flush 时发出）
+     */
+    void onAck(int cumAck, long sack) {
+        long now = System.currentTimeMillis();
+
+        Iterator<OutboundEntry> iterator = inflight.iterator();
+        while (iterator.hasNext()) {
+            OutboundEntry entry = iterator.next();
+            if (isAcked(entry.seq, cumAck, sack)) {
+                if (entry.transmissions == 1) {
+                    // Karn算法：只用未重传过的消息采样RTT
+                    updateRtt(now - entry.sentAt);
+                }
+                entry.acked = true;
+                entry.payload.release();
+                iterator.remove();
+            }
+        }
+
+        if (sack != 0 && !inflight.isEmpty()) {
+            int highestSacked = cumAck + UdpFrameCodec.SACK_BITS - Long.numberOfLeadingZeros(sack);
+            for (OutboundEntry entry : inflight) {
+                if (!entry.fastRetransmitted && highestSacked - entry.seq >= FAST_RETRANSMIT_THRESHOLD) {
+                    entry.fastRetransmitted = true;
+                    if (queueRetransmit(entry)) {
+                        manager.recordFastRetransmit();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理对端的一条数据消息
+     *
+     * @param seq 序列号
+     * @param message 消息，解析失败时为null（视为已接收，避免阻塞后续消息的按序交付）
+     */
+    void onData(int seq, ChatMessage message) {
+        int distance = seq - nextExpectedSeq;
+        if (distance < 0) {
+            ackPending = true;
+            manager.recordDuplicate();
+            return;
+        }
+        if (distance == 0) {
+            // 先推进接收状态再交付：交付过程中的下行写出会捎带ACK，必须反映最新的接收状态
+            List<ChatMessage> ready = new ArrayList<>();
+            ready.add(message);
+            nextExpectedSeq++;
+            while (true) {
+                boolean buffered = (receivedAhead & 1) != 0;
+                receivedAhead >>>= 1;
+                if (!buffered) {
+                    break;
+                }
+                int index = nextExpectedSeq & (WINDOW - 1);
+                ready.add(reorderBuffer[index]);
+                reorderBuffer[index] = null;
+                nextExpectedSeq++;
+            }
+            ackPending = true;
+            for (ChatMessage next : ready) {
+                deliver(next);
+            }
+            return;
+        }
+        if (distance > WINDOW) {
+            // 超出接收窗口，不确认，等待对端重传
+            return;
+        }
+        ackPending = true;
+        long bit = 1L << (distance - 1);
+        if ((receivedAhead & bit) != 0) {
+            manager.recordDuplicate();
+            return;
+        }
+        receivedAhead |= bit;
+        reorderBuffer[seq & (WINDOW - 1)] = message;
+    }
+
+    /**
+     * 交付给子 Channel 的 pipeline；登录前只放行token与会话键一致的登录请求
+     */
+    private void deliver(ChatMessage message) {
+        if (message == null || closed) {
+            return;
+        }
+        if (!authenticated) {
+            if (message.getType() != MessageTypeConstants.LOGIN_REQUEST
+                    || message.getToken().hashCode() != key.getTokenHash()) {
+                log.debug("UDP会话未登录，丢弃消息 - 对端: {}, 消息类型: {}", key, message.getType());
+                manager.recordUnauthenticatedDrop();
+                return;
+            }
+            authenticated = true;
+        }
+        manager.recordMessageIn();
+        channel.pipeline().fireChannelRead(message);
+    }
+
+    /**
+     * 本轮读取结束后交付 channelReadComplete
+     */
+    void fireReadComplete() {
+        if (!closed) {
+            channel.pipeline().fireChannelReadComplete();
+        }
+    }
+
+    // ==================== 发送 ====================
+
+    /**
+     * 下行消息入队，flush 时按窗口编号发送
+     */
+    void enqueue(ByteBuf payload) {
+        if (closed) {
+            payload.release();
+            return;
+        }
+        if (payload.readableBytes() > UdpFrameCodec.MAX_ENTRY_LENGTH) {
+            log.warn("UDP下行消息超过单条上限，丢弃 - 对端: {}, 长度: {}", key, payload.readableBytes());
+            payload.release();
+            return;
+        }
+        pending.add(payload);
+        if (writable && pending.size() >= props.getMaxPendingMessages()) {
+            writable = false;
+            channel.setSessionWritable(false);
+        }
+    }
+
+    /**
+     * 发送窗口内的新消息和待确认的ACK（不 flush 父 Channel）
+     */
+    void flush() {
+        transmit(System.currentTimeMillis());
+    }
+
+    /**
+     * 重传定时器到期（已切回 EventLoop）
+     */
+    void onRetransmitTimer() {
+        timerArmed = false;
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (OutboundEntry entry : inflight) {
+            if (entry.deadline <= now) {
+                if (entry.transmissions > props.getMaxRetransmits()) {
+                    log.info("UDP消息重传次数超限，关闭会话 - 对端: {}, seq: {}, 重传次数: {}",
+                            key, entry.seq, entry.transmissions - 1);
+                    channel.close();
+                    return;
+                }
+                queueRetransmit(entry);
+            }
+        }
+        transmit(now);
+        parent.flush();
+    }
+
+    /**
+     * 把重传消息和窗口内的新消息按MTU打包发送，没有数据但有待确认时单独发送ACK
+     */
+    private void transmit(long now) {
+        if (closed) {
+            return;
+        }
+        List<OutboundEntry> batch = new ArrayList<>();
+        for (OutboundEntry entry : retransmitQueue) {
+            entry.retransmitQueued = false;
+            if (!entry.acked) {
+                batch.add(entry);
+            }
+        }
+        retransmitQueue.clear();
+        int retransmitCount = batch.size();
+        // 按序号跨度而非在途条数限制窗口：SACK确认的条目从中间移除后，最早的缺口未补上时，
+        // 新序号不能超出对端接收窗口和SACK位图的覆盖范围，否则对端直接丢弃、只能等超时重传
+        while (!pending.isEmpty() && (inflight.isEmpty() || nextSendSeq - inflight.peekFirst().seq < WINDOW)) {
+            OutboundEntry entry = new OutboundEntry(nextSendSeq++, pending.poll());
+            inflight.add(entry);
+            batch.add(entry);
+        }
+
+        if (!batch.isEmpty()) {
+            sendPacked(batch, retransmitCount, now);
+        } else if (ackPending) {
+            ByteBuf packet = parent.alloc().ioBuffer(UdpFrameCodec.HEADER_SIZE + UdpFrameCodec.ACK_SIZE);
+            UdpFrameCodec.writeHeader(packet, 0, key.getTokenHash(), nextExpectedSeq, receivedAhead);
+            writePacket(packet);
+            manager.recordAckOnly();
+        }
+
+        if (!writable && pending.size() <= props.getMaxPendingMessages() / 2) {
+            writable = true;
+            channel.setSessionWritable(true);
+        }
+        armTimer(now);
+    }
+
+    private void sendPacked(List<OutboundEntry> batch, int retransmitCount, long now) {
+        int mtu = props.getMtu();
+        ByteBuf packet = null;
+        int countIndex = 0;
+        int count = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundEntry entry = batch.get(i);
+            int length = entry.payload.readableBytes();
+            int entrySize = UdpFrameCodec.ENTRY_HEADER_SIZE + length;
+
+            if (packet != null && (packet.writerIndex() + entrySize > mtu
+                    || count == UdpFrameCodec.MAX_ENTRIES_PER_DATAGRAM)) {
+                packet.setByte(countIndex, count);
+                writePacket(packet);
+                packet = null;
+            }
+            if (packet == null) {
+                // 单条超过MTU的消息单独成包（依赖IP分片）
+                int headerSize = UdpFrameCodec.HEADER_SIZE + UdpFrameCodec.ACK_SIZE + 1;
+                packet = parent.alloc().ioBuffer(Math.max(mtu, headerSize + entrySize));
+                UdpFrameCodec.writeHeader(packet, UdpFrameCodec.FLAG_DATA, key.getTokenHash(),
+                        nextExpectedSeq, receivedAhead);
+                countIndex = packet.writerIndex();
+                packet.writeByte(0);
+                count = 0;
+            }
+
+            packet.writeInt(entry.seq);
+            packet.writeShort(length);
+            packet.writeBytes(entry.payload, entry.payload.readerIndex(), length);
+            count++;
+
+            entry.transmissions++;
+            entry.sentAt = now;
+            entry.deadline = now + backoff(entry.transmissions);
+            if (i < retransmitCount) {
+                manager.recordRetransmit();
+            } else {
+                manager.recordMessageOut();
+            }
+        }
+
+        if (packet != null) {
+            packet.setByte(countIndex, count);
+            writePacket(packet);
+        }
+    }
+
+    /**
+     * 加入重传队列，同一条消息在一轮发送中只重传一次
+     */
+    private boolean queueRetransmit(OutboundEntry entry) {
+        if (entry.retransmitQueued) {
+            return false;
+        }
+        entry.retransmitQueued = true;
+        retransmitQueue.add(entry);
+        return true;
+    }
+
+    private void writePacket(ByteBuf packet) {
+        ackPending = false;
+        manager.recordDatagramOut();
+        parent.write(new DatagramPacket(packet, key.getAddress()));
+    }
+
+    // ==================== 重传定时 ====================
+
+    private void armTimer(long now) {
+        if (timerArmed || closed || inflight.isEmpty()) {
+            return;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (OutboundEntry entry : inflight) {
+            earliest = Math.min(earliest, entry.deadline);
+        }
+        if (retransmitTask == null) {
+            retransmitTask = new RetransmitTask(this);
+        } else if (!retransmitTask.rearm()) {
+            return;
+        }
+        timerArmed = true;
+        manager.scheduleRetransmit(retransmitTask, Math.max(1, earliest - now));
+    }
+
+    /**
+     * 第 n 次发送的重传超时：RTO 指数退避，不超过上限
+     */
+    private long backoff(int transmissions) {
+        int shift = Math.min(transmissions - 1, 10);
+        return Math.min(props.getMaxRtoMs(), rto << shift);
+    }
+
+    /**
+     * RFC 6298 RTT 估算
+     */
+    private void updateRtt(long sample) {
+        if (sample < 0) {
+            return;
+        }
+        if (srtt == 0) {
+            srtt = Math.max(1, sample);
+            rttVar = sample / 2;
+        } else {
+            rttVar = (3 * rttVar + Math.abs(srtt - sample)) / 4;
+            srtt = (7 * srtt + sample) / 8;
+        }
+        rto = Math.max(props.getMinRtoMs(), Math.min(props.getMaxRtoMs(), srtt + Math.max(1, 4 * rttVar)));
+    }
+
+    // ==================== 关闭 ====================
+
+    /**
+     * 关闭会话（由子 Channel 关闭时调用），释放未发送的消息
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (retransmitTask != null && retransmitTask.cancel()) {
+            manager.onRetransmitCancelled();
+        }
+        ByteBuf payload;
+        while ((payload = pending.poll()) != null) {
+            payload.release();
+        }
+        for (OutboundEntry entry : inflight) {
+            entry.payload.release();
+        }
+        inflight.clear();
+        retransmitQueue.clear();
+        for (int i = 0; i < reorderBuffer.length; i++) {
+            reorderBuffer[i] = null;
+        }
+        onClosed.accept(this);
+    }
+
+    private static boolean isAcked(int seq, int cumAck, long sack) {
+        int distance = seq - cumAck;
+        if (distance < 0) {
+            return true;
+        }
+        return distance >= 1 && distance <= UdpFrameCodec.SACK_BITS && ((sack >>> (distance - 1)) & 1) != 0;
+    }
+
+    /**
+     * 已编号、等待确认的下行消息
+     */
+    private static final class OutboundEntry {
+        final int seq;
+        final ByteBuf payload;
+        int transmissions;
+        long sentAt;
+        long deadline;
+        boolean fastRetransmitted;
+        boolean retransmitQueued;
+        boolean acked;
+
+        OutboundEntry(int seq, ByteBuf payload) {
+            this.seq = seq;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 会话的重传定时任务：复用网关时间轮，每个会话同时最多一个任务，到期后切回会话所在 EventLoop 处理
+     */
+    static final class RetransmitTask extends TimerTask {
+
+        private final UdpPeerSession session;
+
+        RetransmitTask(UdpPeerSession session) {
+            super("udp#" + session.getKey(), null, null, null);
+            this.session = session;
+        }
+
+        void fire() {
+            session.parent.eventLoop().execute(session::onRetransmitTimer);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.vanky.im.gateway.netty.udp;
+
+import com.vanky.im.gateway.config.NettyServerConfig;
+import com.vanky.im.gateway.netty.handler.CommonHeartbeatHandler;
+import com.vanky.im.gateway.netty.handler.OutboundBackpressureHandler;
+import com.vanky.im.gateway.timeout.TimerTask;
+import com.vanky.im.gateway.timeout.TimingWheel;
+import com.vanky.im.gateway.timeout.config.TimeoutConfig;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.vanky.im.common.constant.CommonConstant.UDP_PROTOCOL;
+import static com.vanky.im.common.constant.TimeConstant.IDLE_TIME_DISABLE;
+import static com.vanky.im.common.constant.TimeConstant.SERVER_READ_IDLE_TIMEOUT;
+
+/**
+ * @author vanky
+ * @create 2025/9/6
+ * @description 可靠UDP公共组件：重传时间轮（复用网关 TimingWheel，独立实例以使用更细的tick）、
+ *              对端子 Channel 的 pipeline 初始化和传输统计
+ */
+@Slf4j
+@Component
+public class UdpReliabilityManager {
+
+    @Autowired
+    private NettyServerConfig nettyServerConfig;
+
+    @Autowired
+    private OutboundBackpressureHandler outboundBackpressureHandler;
+
+    @Autowired
+    private UdpServerHandler udpServerHandler;
+
+    private TimingWheel retransmitWheel;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicInteger activeSessions = new AtomicInteger(0);
+    private final AtomicLong datagramsIn = new AtomicLong(0);
+    private final AtomicLong datagramsOut = new AtomicLong(0);
+    private final AtomicLong messagesIn = new AtomicLong(0);
+    private final AtomicLong messagesOut = new AtomicLong(0);
+    private final AtomicLong retransmits = new AtomicLong(0);
+    private final AtomicLong fastRetransmits = new AtomicLong(0);
+    private final AtomicLong ackOnlyDatagrams = new AtomicLong(0);
+    private final AtomicLong duplicates = new AtomicLong(0);
+    private final AtomicLong malformed = new AtomicLong(0);
+    private final AtomicLong unauthenticatedDrops = new AtomicLong(0);
+    private final AtomicLong rejectedSessions = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        TimeoutConfig wheelConfig = new TimeoutConfig();
+        wheelConfig.setWheelSize(512);
+        wheelConfig.setTickDuration(getProperties().getRetransmitTickMs());
+        wheelConfig.setTickerThreadName("udp-retransmit-ticker");
+        retransmitWheel = new TimingWheel(wheelConfig,
+                task -> ((UdpPeerSession.RetransmitTask) task).fire());
+        retransmitWheel.start();
+
+        NettyServerConfig.UdpServerProperties props = getProperties();
+        log.info("可靠UDP初始化 - MTU: {}, 初始RTO: {}ms, RTO范围: [{}, {}]ms, 最大重传: {}, 丢包注入: {}",
+                props.getMtu(), props.getInitialRtoMs(), props.getMinRtoMs(), props.getMaxRtoMs(),
+                props.getMaxRetransmits(), props.getLossInjectionRate());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        retransmitWheel.stop();
+    }
+
+    public NettyServerConfig.UdpServerProperties getProperties() {
+        return nettyServerConfig.getUdp();
+    }
+
+    /**
+     * 初始化对端子 Channel 的 pipeline：与 TCP 连接一致的空闲检测、背压和业务处理
+     */
+    void initPeerPipeline(UdpPeerChannel channel) {
+        channel.pipeline().addLast(new IdleStateHandler(SERVER_READ_IDLE_TIMEOUT, IDLE_TIME_DISABLE, IDLE_TIME_DISABLE, TimeUnit.SECONDS));
+        channel.pipeline().addLast(new CommonHeartbeatHandler(UDP_PROTOCOL));
+        channel.pipeline().addLast(outboundBackpressureHandler);
+        channel.pipeline().addLast(udpServerHandler);
+    }
+
+    void scheduleRetransmit(TimerTask task, long delayMs) {
+        retransmitWheel.addTask(task, delayMs);
+    }
+
+    void onRetransmitCancelled() {
+        retransmitWheel.onTaskCancelled();
+    }
+
+    void onSessionOpened() {
+        activeSessions.incrementAndGet();
+    }
+
+    void onSessionClosed() {
+        activeSessions.decrementAndGet();
+    }
+
+    void recordDatagramIn() {
+        datagramsIn.incrementAndGet();
+    }
+
+    void recordDatagramOut() {
+        datagramsOut.incrementAndGet();
+    }
+
+    void recordMessageIn() {
+        messagesIn.incrementAndGet();
+    }
+
+    void recordMessageOut() {
+        messagesOut.incrementAndGet();
+    }
+
+    void recordRetransmit() {
+        retransmits.incrementAndGet();
+    }
+
+    void recordFastRetransmit() {
+        fastRetransmits.incrementAndGet();
+    }
+
+    void recordAckOnly() {
+        ackOnlyDatagrams.incrementAndGet();
+    }
+
+    void recordDuplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    void recordMalformed() {
+        malformed.incrementAndGet();
+    }
+
+    void recordUnauthenticatedDrop() {
+        unauthenticatedDrops.incrementAndGet();
+    }
+
+    void recordSessionRejected() {
+        rejectedSessions.incrementAndGet();
+    }
+
+    /**
+     * 获取统计信息
+     * 每数据报消息数 = messagesOut / (datagramsOut - ackOnlyDatagrams) 反映打包效果，
+     * retransmits / messagesOut 反映链路丢包下的重传开销
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeSessions", activeSessions.get());
+        stats.put("datagramsIn", datagramsIn.get());
+        stats.put("datagramsOut", datagramsOut.get());
+        stats.put("messagesIn", messagesIn.get());
+        stats.put("messagesOut", messagesOut.get());
+        stats.put("retransmits", retransmits.get());
+        stats.put("fastRetransmits", fastRetransmits.get());
+        stats.put("ackOnlyDatagrams", ackOnlyDatagrams.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("malformed", malformed.get());
+        stats.put("unauthenticatedDrops", unauthenticatedDrops.get());
+        stats.put("rejectedSessions", rejectedSessions.get());
+        stats.put("pendingRetransmitTimers", retransmitWheel.getStats().getCurrentPendingTasks());
+        return stats;
+    }
+}
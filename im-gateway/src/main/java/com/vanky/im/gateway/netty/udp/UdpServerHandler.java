@@ -2,8 +2,8 @@ package com.vanky.im.gateway.netty.udp;
 
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.gateway.server.processor.IMServiceHandler;
-import com.vanky.im.gateway.session.UserChannelManager;
 import com.vanky.im.gateway.service.UserOfflineService;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
@@ -14,8 +14,10 @@ import org.springframework.stereotype.Component;
 /**
  * @author vanky
  * @create 2025/5/22 21:17
- * @description UDP服务器消息处理器
+ * @description UDP服务器消息处理器，位于每个对端会话的子 Channel（{@link UdpPeerChannel}）上，
+ *              收到的已是去重、按序交付的 ChatMessage
  */
+@ChannelHandler.Sharable
 @Component
 public class UdpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
 
@@ -24,9 +26,6 @@ public class UdpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
     @Autowired
     private IMServiceHandler imServiceHandler;
 
-    @Autowired
-    private UserChannelManager userChannelManager;
-
     @Autowired
     private UserOfflineService userOfflineService;
 
@@ -41,20 +40,17 @@ public class UdpServerHandler extends SimpleChannelInboundHandler<ChatMessage> {
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        logger.info("UDP客户端连接建立: {}", ctx.channel().remoteAddress());
+        logger.info("UDP客户端会话建立: {}", ctx.channel().remoteAddress());
         super.channelActive(ctx);
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        logger.info("UDP客户端连接断开: {}", ctx.channel().remoteAddress());
+        logger.info("UDP客户端会话断开: {}", ctx.channel().remoteAddress());
         
-        // 连接断开时，处理用户下线逻辑
-        String userId = userChannelManager.getUserId(ctx.channel());
-        if (userId != null) {
-            userOfflineService.handleUserOffline(userId, "UDP连接断开");
-        }
+        // 会话关闭时只清理该设备，其他设备不受影响
+        userOfflineService.handleChannelOffline(ctx.channel(), "UDP会话断开");
 
         super.channelInactive(ctx);
     }
-}
\ No newline at end of file
+}
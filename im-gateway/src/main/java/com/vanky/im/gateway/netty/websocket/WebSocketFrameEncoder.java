@@ -1,6 +1,7 @@
 package com.vanky.im.gateway.netty.websocket;
 
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -14,27 +15,42 @@ import java.util.List;
 
 /**
  * @author vanky
- * @description 将 ChatMessage 对象编码为 BinaryWebSocketFrame
+ * @description 将 ChatMessage 对象编码为 BinaryWebSocketFrame；已编码的消息（EncodedChatMessage）直接包装字节，不重新序列化
  */
 @Component
 @ChannelHandler.Sharable
-public class WebSocketFrameEncoder extends MessageToMessageEncoder<ChatMessage> {
+public class WebSocketFrameEncoder extends MessageToMessageEncoder<Object> {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameEncoder.class);
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, ChatMessage msg, List<Object> out) throws Exception {
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof ChatMessage || msg instanceof EncodedChatMessage;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
         try {
+            if (msg instanceof EncodedChatMessage) {
+                // 已编码的消息体直接包装成 BinaryWebSocketFrame
+                EncodedChatMessage encoded = (EncodedChatMessage) msg;
+                out.add(new BinaryWebSocketFrame(encoded.payload()));
+                logger.debug("已编码消息写出为BinaryWebSocketFrame - Type: {}, To: {}, Channel: {}",
+                        encoded.getType(), encoded.getToId(), ctx.channel().id().asShortText());
+                return;
+            }
+
+            ChatMessage chatMessage = (ChatMessage) msg;
             // 将 ChatMessage 转换为 byte[]
-            byte[] bytes = msg.toByteArray();
+            byte[] bytes = chatMessage.toByteArray();
             // 将 byte[] 包装成 BinaryWebSocketFrame
             BinaryWebSocketFrame frame = new BinaryWebSocketFrame(Unpooled.wrappedBuffer(bytes));
             // 将 frame 添加到输出列表，传递给下一个 handler
             out.add(frame);
             logger.debug("ChatMessage编码为BinaryWebSocketFrame成功 - Type: {}, To: {}, Channel: {}",
-                    msg.getType(), msg.getToId(), ctx.channel().id().asShortText());
+                    chatMessage.getType(), chatMessage.getToId(), ctx.channel().id().asShortText());
         } catch (Exception e) {
             logger.error("ChatMessage编码为BinaryWebSocketFrame失败 - Channel: {}", ctx.channel().id().asShortText(), e);
         }
     }
-}
\ No newline at end of file
+}
@@ -58,9 +58,6 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<BinaryWe
             // 解析成ChatMessage对象
             ChatMessage msg = ChatMessage.parseFrom(msgBytes);
 
-            logger.info("WebSocket接收到消息 - 类型: {}, 发送方: {}, 接收方: {}, 消息ID: {}, Channel: {}",
-                    msg.getType(), msg.getFromId(), msg.getToId(), msg.getUid(), ctx.channel().id().asShortText());
-
             // 委托给统一消息分发器处理
             imServiceHandler.handleMessage(msg, ctx.channel());
         } catch (Exception e) {
@@ -82,7 +79,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<BinaryWe
         // 连接断开时，处理用户下线逻辑
         String userId = userChannelManager.getUserId(ctx.channel());
         if (userId != null) {
-            userOfflineService.handleUserOffline(userId, "WebSocket连接断开");
+            userOfflineService.handleChannelOffline(ctx.channel(), "WebSocket连接断开");
         }
 
         super.channelInactive(ctx);
@@ -95,7 +92,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<BinaryWe
         // 处理用户下线逻辑
         String userId = userChannelManager.getUserId(ctx.channel());
         if (userId != null) {
-            userOfflineService.handleUserOffline(userId, "WebSocket连接异常: " + cause.getMessage());
+            userOfflineService.handleChannelOffline(ctx.channel(), "WebSocket连接异常: " + cause.getMessage());
         }
 
         ctx.close();
@@ -12,21 +12,24 @@ import com.vanky.im.common.service.ShardedOnlineUserManager;
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.common.util.MsgGenerator;
 import com.vanky.im.common.util.TokenUtil;
+import com.vanky.im.gateway.admission.AdmissionController;
 import com.vanky.im.gateway.conversation.ConversationDispatcher;
+import com.vanky.im.gateway.service.UserOfflineService;
+import com.vanky.im.gateway.session.SessionLeaseRefresher;
 import com.vanky.im.gateway.session.UserChannelManager;
 import com.vanky.im.gateway.server.processor.client.PrivateMsgProcessor;
 import com.vanky.im.gateway.server.processor.client.GroupMsgProcessor;
 import com.vanky.im.gateway.timeout.TimeoutManager;
+import com.vanky.im.gateway.trace.MessageTracer;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.socket.DatagramChannel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DataType;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -65,6 +68,18 @@ public class IMServiceHandler {
     @Autowired
     private TimeoutManager timeoutManager;
 
+    @Autowired
+    private MessageTracer messageTracer;
+
+    @Autowired
+    private SessionLeaseRefresher sessionLeaseRefresher;
+
+    @Autowired
+    private UserOfflineService userOfflineService;
+
+    @Autowired
+    private AdmissionController admissionController;
+
     @Autowired
     private com.vanky.im.gateway.config.GatewayInstanceManager gatewayInstanceManager;
 
@@ -83,9 +98,8 @@ public class IMServiceHandler {
         long startTime = System.currentTimeMillis();
         try {
             int messageType = msg.getType();
-            if(messageType != MessageTypeConstants.HEARTBEAT) {
-                log.info("收到消息 - 类型: {}, 发送方: {}, 接收方: {}, 消息ID: {}, Channel: {}",
-                        messageType, msg.getFromId(), msg.getToId(), msg.getUid(), channel.id().asShortText());
+            if (messageType != MessageTypeConstants.HEARTBEAT) {
+                messageTracer.trace("gateway.inbound", msg);
             }
             
             // 客户端到服务端消息处理
@@ -112,14 +126,6 @@ public class IMServiceHandler {
             else if (messageType == MessageTypeConstants.PRIVATE_CHAT_MESSAGE ||
                      messageType == MessageTypeConstants.GROUP_CHAT_MESSAGE) {
                 
-                // 对于UDP连接，需要额外的Token验证
-                if (isUdpChannel(channel)) {
-                    if (!validateToken(msg.getFromId(), msg.getToken())) {
-                        log.warn("UDP消息Token验证失败 - 用户: {}, 消息类型: {}", msg.getFromId(), messageType);
-                        return;
-                    }
-                }
-                
                 // 尝试使用会话级串行化处理
                 boolean dispatched = conversationDispatcher.dispatch(msg, channel);
 
@@ -184,24 +190,12 @@ public class IMServiceHandler {
         
         log.info("用户登录 - 用户: {}, Channel: {}", userId, channel.id().asShortText());
         
-        try {
-            // 1. 绑定用户ID和Channel
-            userChannelManager.bindChannel(userId, channel);
+        String deviceId = UserChannelManager.normalizeDeviceId(msg.getDeviceId());
 
-            // 2. 立即发送登录成功消息（不等待Redis操作完成）
-            ChatMessage loginSuccessMsg = MsgGenerator.generateLoginSuccessMsg(userId);
-            channel.writeAndFlush(loginSuccessMsg).addListener((ChannelFutureListener) future -> {
-                if (future.isSuccess()) {
-                    log.info("登录成功响应已发送 - 用户: {}, Channel: {}", userId, channel.id().asShortText());
-                } else {
-                    log.error("登录成功响应发送失败 - 用户: {}, Channel: {}", userId, channel.id().asShortText(), future.cause());
-                }
-            });
-
-            log.info("用户登录成功 - 用户: {}, 网关: {}", userId, gatewayNodeId);
-
-            // 3. 异步处理Redis操作（不阻塞EventLoop）
-            CompletableFuture.runAsync(() -> {
+        try {
+            // 1. 会话写入Redis放到有界登录线程池（不阻塞EventLoop，也不占用公共 ForkJoin 池）；
+            //    重连风暴下队列写满时拒绝本次登录，下发退避提示，避免Redis被集中登录压垮
+            boolean submitted = admissionController.submitLogin(() -> {
                 try {
                     // 获取动态网关实例ID
                     String currentGatewayId = gatewayInstanceManager.getGatewayInstanceId();
@@ -209,22 +203,53 @@ public class IMServiceHandler {
                     // 创建用户会话
                     UserSession userSession = new UserSession(userId, channel.localAddress().toString(),
                             0, currentGatewayId, channel);
+                    userSession.setDeviceId(deviceId);
 
-                    // 将用户会话存入Redis
+                    // 将设备会话写入用户会话Hash（deviceId -> UserSession）
                     String sessionKey = SessionConstants.getUserSessionKey(userId);
-                    log.info("DIAGNOSE: Storing session in Redis. Key: [{}], Session: [{}]", sessionKey, userSession.toString());
-                    redisTemplate.opsForValue().set(sessionKey, userSession,
-                            RedisKeyConstants.SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
+                    if (DataType.STRING.equals(redisTemplate.type(sessionKey))) {
+                        // 旧版本写入的单会话字符串，先删除再按Hash写入
+                        redisTemplate.delete(sessionKey);
+                    }
+                    redisTemplate.opsForHash().put(sessionKey, deviceId, userSession);
+                    redisTemplate.expire(sessionKey, RedisKeyConstants.SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
+                    sessionLeaseRefresher.register(userId);
 
                     // 将用户ID添加到在线用户集合（使用分片管理器）
                     shardedOnlineUserManager.addOnlineUser(userId);
 
-                    log.debug("用户会话Redis存储完成 - 用户: {}, 网关ID: {}", userId, currentGatewayId);
+                    log.debug("用户会话Redis存储完成 - 用户: {}, 设备: {}, 网关ID: {}", userId, deviceId, currentGatewayId);
                 } catch (Exception e) {
                     log.error("用户会话Redis存储异常 - 用户: {}", userId, e);
                 }
             });
 
+            if (!submitted) {
+                log.warn("登录队列已满，拒绝登录并下发退避提示 - 用户: {}, Channel: {}", userId, channel.id().asShortText());
+                channel.writeAndFlush(admissionController.buildBusyMessage(userId))
+                        .addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+
+            // 2. 绑定用户设备和Channel（同一设备的旧连接会被关闭，其他设备不受影响）
+            userChannelManager.bindChannel(userId, deviceId, channel);
+
+            // 3. 立即发送登录成功消息（不等待Redis操作完成）；重连风暴期间携带延迟同步提示，客户端错峰拉取离线消息
+            ChatMessage loginSuccessMsg = MsgGenerator.generateLoginSuccessMsg(userId);
+            int syncDelayMs = admissionController.nextSyncDelayMs();
+            if (syncDelayMs > 0) {
+                loginSuccessMsg = loginSuccessMsg.toBuilder().setSyncDelayMs(syncDelayMs).build();
+            }
+            channel.writeAndFlush(loginSuccessMsg).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    log.info("登录成功响应已发送 - 用户: {}, Channel: {}", userId, channel.id().asShortText());
+                } else {
+                    log.error("登录成功响应发送失败 - 用户: {}, Channel: {}", userId, channel.id().asShortText(), future.cause());
+                }
+            });
+
+            log.info("用户登录成功 - 用户: {}, 网关: {}, 延迟同步: {}ms", userId, gatewayNodeId, syncDelayMs);
+
         } catch (Exception e) {
             log.error("用户登录处理异常 - 用户: {}", userId, e);
         }
@@ -235,18 +260,11 @@ public class IMServiceHandler {
      */
     private void handleLogout(ChatMessage msg, Channel channel) {
         String userId = msg.getFromId();
-        log.info("用户登出 - 用户: {}", userId);
+        log.info("用户登出 - 用户: {}, 设备: {}", userId, userChannelManager.getDeviceId(channel));
         
         try {
-            // 1. 解绑用户ID和Channel
-            userChannelManager.unbindChannel(userId);
-            
-            // 2. 从Redis删除用户会话
-            String sessionKey = SessionConstants.getUserSessionKey(userId);
-            redisTemplate.delete(sessionKey);
-            
-            // 3. 将用户ID从在线用户集合中移除（使用分片管理器）
-            shardedOnlineUserManager.removeOnlineUser(userId);
+            // 只登出当前设备：解绑连接、删除该设备的会话字段，最后一个设备登出时清理用户级状态
+            userOfflineService.handleChannelOffline(channel, "用户登出");
             
             log.info("用户登出成功 - 用户: {}", userId);
         } catch (Exception e) {
@@ -260,16 +278,9 @@ public class IMServiceHandler {
     private void handleHeartbeat(ChatMessage msg, Channel channel) {
         String userId = msg.getFromId();
         
-        // 对于UDP连接，需要额外的Token验证
-        if (isUdpChannel(channel) && !validateToken(userId, msg.getToken())) {
-            log.warn("UDP心跳消息Token验证失败 - 用户: {}", userId);
-            return;
-        }
-        
         try {
-            // 1. 刷新Redis中用户会话的过期时间
-            String sessionKey = SessionConstants.getUserSessionKey(userId);
-            redisTemplate.expire(sessionKey, RedisKeyConstants.SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
+            // 1. 记录心跳，Redis会话TTL由租约续期器批量刷新
+            sessionLeaseRefresher.onHeartbeat(userId);
             
             // 2. 发送心跳响应
             ChatMessage heartbeatResponse = MsgGenerator.generateHeartbeatResponseMsg(userId);
@@ -281,15 +292,6 @@ public class IMServiceHandler {
         }
     }
     
-    /**
-     * 判断是否为UDP通道
-     * @param channel 通道
-     * @return 如果是UDP通道则返回true
-     */
-    private boolean isUdpChannel(Channel channel) {
-        return channel instanceof DatagramChannel;
-    }
-    
     /**
      * 验证用户Token
      * @param userId 用户ID
@@ -297,8 +299,6 @@ public class IMServiceHandler {
      * @return 如果验证成功则返回true
      */
     private boolean validateToken(String userId, String token) {
-        log.info("开始验证Token - 用户: {}, Token: {}", userId, token);
-
         // 如果token为空，则验证失败
         if (token == null || token.isEmpty()) {
             log.warn("Token验证失败 - 用户: {}, 原因: Token为空", userId);
@@ -306,15 +306,15 @@ public class IMServiceHandler {
         }
 
         try {
-            // 使用TokenUtil验证token
+            // 签名token在本地验签，不访问Redis
             String tokenUserId = tokenUtil.verifyToken(token);
-            log.info("Token解析结果 - 用户: {}, Token中的用户ID: {}", userId, tokenUserId);
-
             boolean isValid = userId != null && userId.equals(tokenUserId);
-            log.info("Token验证结果 - 用户: {}, 验证结果: {}", userId, isValid);
+            if (!isValid) {
+                log.warn("Token验证失败 - 用户: {}, Token中的用户ID: {}", userId, tokenUserId);
+            }
             return isValid;
         } catch (Exception e) {
-            log.error("Token验证异常 - 用户: {}, Token: {}", userId, token, e);
+            log.error("Token验证异常 - 用户: {}", userId, e);
             return false;
         }
     }
@@ -329,16 +329,17 @@ public class IMServiceHandler {
         String msgId = msg.getUid();
         String seq = msg.getSeq();
 
-        log.info("收到消息确认 - 用户: {}, 消息ID: {}, 序列号: {}, Channel: {}",
-                userId, msgId, seq, channel.id().asShortText());
+        log.debug("收到消息确认 - 用户: {}, 消息ID: {}, 序列号: {}", userId, msgId, seq);
 
         try {
-            // 取消超时重发任务
-            boolean cancelled = timeoutManager.cancelTask(msgId);
+            // 取消该设备的超时重发任务，其他设备仍等待各自的ACK；
+            // 设备以连接登录时绑定的为准，忽略客户端携带的deviceId，避免一个连接替其他设备确认
+            String deviceId = userChannelManager.getDeviceId(channel);
+            boolean cancelled = timeoutManager.cancelTask(msgId, deviceId);
             if (cancelled) {
-                log.debug("取消超时任务成功 - 消息ID: {}, 用户: {}", msgId, userId);
+                log.debug("取消超时任务成功 - 消息ID: {}, 用户: {}, 设备: {}", msgId, userId, deviceId);
             } else {
-                log.debug("取消超时任务失败，任务可能不存在 - 消息ID: {}, 用户: {}", msgId, userId);
+                log.debug("取消超时任务失败，任务可能不存在 - 消息ID: {}, 用户: {}, 设备: {}", msgId, userId, deviceId);
             }
 
             // 将ACK消息发送到消息队列，由im-message-server处理
@@ -360,8 +361,7 @@ public class IMServiceHandler {
         String userId = msg.getFromId();
         String content = msg.getContent(); // conversationId1:seq1,conversationId2:seq2
 
-        log.info("收到群聊会话ACK确认 - 用户: {}, 内容: {}, Channel: {}",
-                userId, content, channel.id().asShortText());
+        log.debug("收到群聊会话ACK确认 - 用户: {}, 内容: {}", userId, content);
 
         try {
             // 将群聊会话ACK消息发送到消息队列，由im-message-server处理
@@ -384,18 +384,9 @@ public class IMServiceHandler {
         String conversationId = msg.hasReadReceipt() ? msg.getReadReceipt().getConversationId() : "unknown";
         long lastReadSeq = msg.hasReadReceipt() ? msg.getReadReceipt().getLastReadSeq() : 0;
 
-        log.info("收到消息已读回执 - 用户: {}, 会话: {}, 已读序列号: {}, Channel: {}",
-                userId, conversationId, lastReadSeq, channel.id().asShortText());
+        log.debug("收到消息已读回执 - 用户: {}, 会话: {}, 已读序列号: {}", userId, conversationId, lastReadSeq);
 
         try {
-            // 对于UDP连接，需要额外的Token验证
-            if (isUdpChannel(channel)) {
-                if (!validateToken(userId, msg.getToken())) {
-                    log.warn("UDP已读回执Token验证失败 - 用户: {}", userId);
-                    return;
-                }
-            }
-
             // 将已读回执消息发送到消息队列，由im-message-server处理
             messageQueueService.sendReadReceiptToMessageServer(msg);
 
@@ -3,6 +3,7 @@ package com.vanky.im.gateway.server.processor.client;
 import com.vanky.im.common.protocol.ChatMessage;
 
 import com.vanky.im.gateway.mq.MessageQueueService;
+import com.vanky.im.gateway.trace.MessageTracer;
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +20,9 @@ public class GroupMsgProcessor {
     
     @Autowired
     private MessageQueueService messageQueueService;
+
+    @Autowired
+    private MessageTracer messageTracer;
     
 
     
@@ -29,7 +33,7 @@ public class GroupMsgProcessor {
      */
     public void process(ChatMessage msg, Channel senderChannel) {
         try {
-            log.info("处理群聊消息 - 发送方: {}, 群组: {}, 客户端序列号: {}",
+            log.debug("处理群聊消息 - 发送方: {}, 群组: {}, 客户端序列号: {}",
                     msg.getFromId(), msg.getToId(), msg.getClientSeq());
 
             // 1. 使用客户端传入的会话ID，如果为空则作为兜底生成
@@ -47,7 +51,7 @@ public class GroupMsgProcessor {
             // 3. 投递消息到RocketMQ
             messageQueueService.sendMessageToGroup(conversationId, msg, senderChannel);
 
-            log.info("群聊消息转发完成 - 会话ID: {}, 客户端序列号: {}", conversationId, msg.getClientSeq());
+            messageTracer.trace("gateway.forward", msg, conversationId);
 
         } catch (Exception e) {
             log.error("处理群聊消息失败 - 发送方: {}, 群组ID: {}, 客户端序列号: {}, 错误: {}",
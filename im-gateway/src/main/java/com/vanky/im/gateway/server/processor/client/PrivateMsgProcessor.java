@@ -3,6 +3,7 @@ package com.vanky.im.gateway.server.processor.client;
 import com.vanky.im.common.protocol.ChatMessage;
 
 import com.vanky.im.gateway.mq.MessageQueueService;
+import com.vanky.im.gateway.trace.MessageTracer;
 import com.vanky.im.gateway.session.MsgSender;
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
@@ -23,6 +24,9 @@ public class PrivateMsgProcessor {
     
     @Autowired
     private MsgSender msgSender;
+
+    @Autowired
+    private MessageTracer messageTracer;
     
 
 
@@ -33,7 +37,7 @@ public class PrivateMsgProcessor {
      */
     public void process(ChatMessage msg, Channel senderChannel) {
         try {
-            log.info("处理私聊消息 - 发送方: {}, 接收方: {}, 客户端序列号: {}",
+            log.debug("处理私聊消息 - 发送方: {}, 接收方: {}, 客户端序列号: {}",
                     msg.getFromId(), msg.getToId(), msg.getClientSeq());
 
             // 1. 使用客户端传入的会话ID，如果为空则作为兜底生成
@@ -51,7 +55,7 @@ public class PrivateMsgProcessor {
             // 3. 投递消息到RocketMQ
             messageQueueService.sendMessageToPrivate(conversationId, msg, senderChannel);
 
-            log.info("私聊消息转发完成 - 会话ID: {}, 客户端序列号: {}", conversationId, msg.getClientSeq());
+            messageTracer.trace("gateway.forward", msg, conversationId);
 
         } catch (Exception e) {
             log.error("处理私聊消息失败 - 发送方: {}, 接收方: {}, 客户端序列号: {}, 错误: {}",
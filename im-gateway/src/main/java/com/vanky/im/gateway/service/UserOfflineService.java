@@ -3,7 +3,9 @@ package com.vanky.im.gateway.service;
 import com.vanky.im.common.constant.RedisKeyConstants;
 import com.vanky.im.common.constant.SessionConstants;
 import com.vanky.im.common.service.ShardedOnlineUserManager;
+import com.vanky.im.gateway.session.SessionLeaseRefresher;
 import com.vanky.im.gateway.session.UserChannelManager;
+import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -13,6 +15,7 @@ import org.springframework.stereotype.Service;
  * 用户下线处理服务
  * 统一处理用户下线时的内存清理和Redis清理逻辑
  * 确保无论是正常登出、异常断开还是心跳超时，都能正确清理用户状态
+ * 多端登录时单个连接断开只清理该设备，用户的最后一个设备下线后才清理用户级状态
  */
 @Slf4j
 @Service
@@ -27,8 +30,50 @@ public class UserOfflineService {
     @Autowired
     private ShardedOnlineUserManager shardedOnlineUserManager;
 
+    @Autowired
+    private SessionLeaseRefresher sessionLeaseRefresher;
+
+    /**
+     * 处理单个设备连接下线
+     * 只有映射仍指向该连接时才清理，避免同一设备重连后旧连接的断开事件误删新会话
+     *
+     * @param channel 断开的连接
+     * @param reason 下线原因（用于日志记录）
+     */
+    public void handleChannelOffline(Channel channel, String reason) {
+        String userId = userChannelManager.getUserId(channel);
+        if (userId == null) {
+            return;
+        }
+        String deviceId = userChannelManager.getDeviceId(channel);
+
+        try {
+            if (!userChannelManager.unbindChannel(channel)) {
+                log.debug("设备连接已被替换，跳过下线处理 - 用户ID: {}, 设备: {}, 原因: {}", userId, deviceId, reason);
+                return;
+            }
+
+            String sessionKey = SessionConstants.getUserSessionKey(userId);
+            redisTemplate.opsForHash().delete(sessionKey, deviceId);
+
+            if (!userChannelManager.isUserOnline(userId)) {
+                sessionLeaseRefresher.remove(userId);
+                // 用户可能还有设备连在其他网关，会话Hash为空才从在线集合移除
+                Long remaining = redisTemplate.opsForHash().size(sessionKey);
+                if (remaining == null || remaining == 0) {
+                    shardedOnlineUserManager.removeOnlineUser(userId);
+                }
+            }
+
+            log.info("设备下线处理完成 - 用户ID: {}, 设备: {}, 原因: {}, 当前在线用户数: {}",
+                    userId, deviceId, reason, userChannelManager.getOnlineUserCount());
+        } catch (Exception e) {
+            log.error("设备下线处理异常 - 用户ID: {}, 设备: {}, 原因: {}", userId, deviceId, reason, e);
+        }
+    }
+
     /**
-     * 处理用户下线
+     * 处理用户下线（全部设备）
      * 包含内存清理和Redis清理，确保状态一致性
      * 
      * @param userId 下线用户ID
@@ -46,8 +91,9 @@ public class UserOfflineService {
             // 1. 检查用户是否真的在线（避免重复处理）
             boolean wasOnline = userChannelManager.isUserOnline(userId);
             
-            // 2. 清理内存中的连接映射
+            // 2. 清理内存中的连接映射和会话租约
             userChannelManager.unbindChannel(userId);
+            sessionLeaseRefresher.remove(userId);
             
             // 3. 清理Redis中的用户状态
             cleanupRedisUserState(userId);
@@ -1,67 +1,318 @@
 package com.vanky.im.gateway.session;
 
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
+import com.vanky.im.common.util.MsgGenerator;
+import com.vanky.im.gateway.config.NettyServerConfig;
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * 消息发送者, 封装了发送消息的方法
+ * Channel 可写时直接写出；不可写（写缓冲超过高水位）时进入连接级有界积压队列，
+ * 由 channelWritabilityChanged 驱动排空，队列溢出时按配置的策略处理，避免慢客户端拖垮网关堆内存。
+ * 发往用户的消息一次遍历扇出到该用户在本网关的全部设备连接。
+ * 下行消息可以是 ChatMessage（网关自己生成的系统消息）或 EncodedChatMessage（推送信封中已编码的消息体，原样写出）。
  */
 @Slf4j
 @Component
 public class MsgSender {
-    
+
+    private static final AttributeKey<OutboundQueue> OUTBOUND_QUEUE_ATTR = AttributeKey.valueOf("outboundQueue");
+
+    private static final String POLICY_DROP = "drop";
+    private static final String POLICY_DISCONNECT = "disconnect";
+
     @Autowired
     private UserChannelManager userChannelManager;
-    
+
+    @Autowired
+    private NettyServerConfig nettyServerConfig;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong queuedMessages = new AtomicLong(0);
+    private final AtomicLong droppedMessages = new AtomicLong(0);
+    private final AtomicLong syncHints = new AtomicLong(0);
+    private final AtomicLong overflowDisconnects = new AtomicLong(0);
+
     /**
-     * 发送消息到指定用户
-     * 
+     * 发送消息到指定用户的全部设备
+     *
      * @param userId 用户ID
      * @param message 消息内容
-     * @return 是否发送成功
+     * @return 是否至少有一个设备发送成功
      */
     public boolean sendToUser(String userId, ChatMessage message) {
-        Channel channel = userChannelManager.getChannel(userId);
+        boolean sent = false;
+        for (Channel channel : userChannelManager.getDeviceChannels(userId).values()) {
+            sent |= send(channel, message);
+        }
+        if (!sent) {
+            log.debug("用户 {} 不在线，消息发送失败", userId);
+        }
+        return sent;
+    }
+
+    /**
+     * 发送消息到指定用户的指定设备（用于按设备重发）
+     *
+     * @param userId 用户ID
+     * @param deviceId 设备ID
+     * @param message 已编码的消息
+     * @return 是否发送成功
+     */
+    public boolean sendToDevice(String userId, String deviceId, EncodedChatMessage message) {
+        Channel channel = userChannelManager.getChannel(userId, deviceId);
         if (channel == null || !channel.isActive()) {
-            log.info("用户 {} 不在线，消息发送失败", userId);
+            log.debug("用户 {} 设备 {} 不在线，消息发送失败", userId, deviceId);
             return false;
         }
-        
-        return sendToChannel(channel, message);
+
+        return send(channel, message);
     }
-    
+
     /**
      * 发送消息到指定Channel
-     * 
+     *
      * @param channel 目标Channel
      * @param message 消息内容
-     * @return 是否发送成功
+     * @return 是否发送成功（进入积压队列也视为成功，因溢出被丢弃时返回false）
      */
     public boolean sendToChannel(Channel channel, ChatMessage message) {
+        return send(channel, message);
+    }
+
+    private boolean send(Channel channel, Object message) {
         if (channel == null || !channel.isActive()) {
-            log.info("Channel不可用，消息发送失败");
+            log.debug("Channel不可用，消息发送失败");
             return false;
         }
-        
+
         try {
-            // 使用writeAndFlush发送消息，并且为异步操作添加监听器
-            channel.writeAndFlush(message).addListener(future -> {
-                if (future.isSuccess()) {
-                    log.debug("消息发送成功 - 消息ID: {}, 接收方: {}", 
-                            message.getUid(), message.getToId());
-                } else {
-                    log.warn("消息发送失败 - 消息ID: {}, 接收方: {}, 原因: {}", 
-                            message.getUid(), message.getToId(), future.cause().getMessage());
+            OutboundQueue queue = channel.attr(OUTBOUND_QUEUE_ATTR).get();
+            if (channel.isWritable() && (queue == null || queue.isEmpty())) {
+                // 使用writeAndFlush发送消息，并且为异步操作添加监听器
+                write(channel, message, true);
+                return true;
+            }
+            return enqueue(channel, message);
+        } catch (Exception e) {
+            log.error("发送消息异常 - 消息ID: {}, 接收方: {}",
+                    uidOf(message), toIdOf(message), e);
+            return false;
+        }
+    }
+
+    /**
+     * 批量发送消息到指定用户的全部设备，每个设备一次flush
+     *
+     * @param userId 用户ID
+     * @param messages 已编码的消息列表（按顺序发送，各设备共享同一份字节）
+     * @return 设备ID -> 该设备接受的消息（已写出或进入积压队列），用户不在线时为空
+     */
+    public Map<String, List<EncodedChatMessage>> sendBatchToUser(String userId, List<EncodedChatMessage> messages) {
+        Map<String, Channel> devices = userChannelManager.getDeviceChannels(userId);
+        if (devices.isEmpty()) {
+            log.debug("用户 {} 不在线，批量消息发送失败 - 数量: {}", userId, messages.size());
+            return Collections.emptyMap();
+        }
+
+        Map<String, List<EncodedChatMessage>> accepted = new HashMap<>(devices.size() * 2);
+        devices.forEach((deviceId, channel) -> {
+            List<EncodedChatMessage> deviceAccepted = sendBatchToChannel(channel, messages);
+            if (!deviceAccepted.isEmpty()) {
+                accepted.put(deviceId, deviceAccepted);
+            }
+        });
+        return accepted;
+    }
+
+    /**
+     * 批量发送消息到指定Channel：逐条write，最后只flush一次，同一批消息合并为一次系统调用
+     * 非EventLoop线程调用时，write/flush 会按顺序作为任务提交到 EventLoop，在同一个tick内执行
+     *
+     * @param channel 目标Channel
+     * @param messages 消息列表（ChatMessage 或 EncodedChatMessage，按顺序发送）
+     * @return 被接受的消息（已写出或进入积压队列）
+     */
+    public <T> List<T> sendBatchToChannel(Channel channel, List<T> messages) {
+        if (channel == null || !channel.isActive()) {
+            log.debug("Channel不可用，批量消息发送失败");
+            return Collections.emptyList();
+        }
+
+        List<T> accepted = new ArrayList<>(messages.size());
+        boolean written = false;
+        try {
+            for (T message : messages) {
+                OutboundQueue queue = channel.attr(OUTBOUND_QUEUE_ATTR).get();
+                if (channel.isWritable() && (queue == null || queue.isEmpty())) {
+                    write(channel, message, false);
+                    written = true;
+                    accepted.add(message);
+                } else if (enqueue(channel, message)) {
+                    accepted.add(message);
                 }
-            });
-            return true;
+            }
         } catch (Exception e) {
-            log.error("发送消息异常 - 消息ID: {}, 接收方: {}", 
-                    message.getUid(), message.getToId(), e);
+            log.error("批量发送消息异常 - Channel: {}, 已接受: {}/{}",
+                    channel.id().asShortText(), accepted.size(), messages.size(), e);
+        } finally {
+            if (written) {
+                channel.flush();
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 排空积压队列，在 Channel 重新变为可写时由 EventLoop 调用
+     *
+     * @param channel 目标Channel
+     */
+    public void drain(Channel channel) {
+        OutboundQueue queue = channel.attr(OUTBOUND_QUEUE_ATTR).get();
+        if (queue == null) {
+            return;
+        }
+
+        boolean written = false;
+        while (channel.isActive() && channel.isWritable()) {
+            Object message = queue.poll();
+            if (message == null) {
+                break;
+            }
+            write(channel, message, false);
+            written = true;
+        }
+        if (written) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * 连接断开时丢弃积压队列（聊天消息已持久化，重连后同步拉取）
+     *
+     * @param channel 目标Channel
+     */
+    public void discardQueue(Channel channel) {
+        OutboundQueue queue = channel.attr(OUTBOUND_QUEUE_ATTR).getAndSet(null);
+        if (queue == null) {
+            return;
+        }
+        int dropped = queue.clear();
+        if (dropped > 0) {
+            droppedMessages.addAndGet(dropped);
+            log.debug("连接断开，丢弃积压消息 - Channel: {}, 数量: {}", channel.id().asShortText(), dropped);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queuedMessages", queuedMessages.get());
+        stats.put("droppedMessages", droppedMessages.get());
+        stats.put("syncHints", syncHints.get());
+        stats.put("overflowDisconnects", overflowDisconnects.get());
+        stats.put("maxQueueSize", nettyServerConfig.getOutbound().getMaxQueueSize());
+        stats.put("overflowPolicy", nettyServerConfig.getOutbound().getOverflowPolicy());
+        return stats;
+    }
+
+    private boolean enqueue(Channel channel, Object message) {
+        OutboundQueue queue = channel.attr(OUTBOUND_QUEUE_ATTR).get();
+        if (queue == null) {
+            OutboundQueue created = new OutboundQueue();
+            queue = channel.attr(OUTBOUND_QUEUE_ATTR).setIfAbsent(created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+
+        NettyServerConfig.OutboundProperties outbound = nettyServerConfig.getOutbound();
+        boolean accepted = queue.offer(message, outbound.getMaxQueueSize())
+                || handleOverflow(channel, queue, message, outbound.getOverflowPolicy());
+
+        if (accepted) {
+            queuedMessages.incrementAndGet();
+        }
+
+        // 入队期间 Channel 可能已恢复可写且排空结束，补一次排空
+        if (channel.isWritable()) {
+            channel.eventLoop().execute(() -> drain(channel));
+        }
+        return accepted;
+    }
+
+    /**
+     * 积压队列溢出处理
+     *
+     * @return true 表示当前消息最终被接受
+     */
+    private boolean handleOverflow(Channel channel, OutboundQueue queue, Object message, String policy) {
+        if (POLICY_DISCONNECT.equalsIgnoreCase(policy)) {
+            overflowDisconnects.incrementAndGet();
+            droppedMessages.addAndGet(queue.clear() + 1);
+            log.warn("下行积压溢出，断开慢连接 - Channel: {}, 用户: {}",
+                    channel.id().asShortText(), userChannelManager.getUserId(channel));
+            channel.close();
+            return false;
+        }
+
+        if (POLICY_DROP.equalsIgnoreCase(policy)) {
+            droppedMessages.incrementAndGet();
+            log.debug("下行积压溢出，丢弃消息 - 消息ID: {}, 接收方: {}", uidOf(message), toIdOf(message));
             return false;
         }
+
+        // sync-hint：已持久化的消息合并为一条同步通知，客户端收到后主动拉取
+        String userId = userChannelManager.getUserId(channel);
+        int dropped = queue.collapseToSyncHint(MsgGenerator.generateSyncRequiredMsg(userId));
+        syncHints.incrementAndGet();
+        log.debug("下行积压溢出，合并为同步通知 - 用户: {}, 丢弃积压: {}", userId, dropped);
+
+        if (!OutboundQueue.isSyncRecoverable(OutboundQueue.typeOf(message))
+                && queue.offer(message, nettyServerConfig.getOutbound().getMaxQueueSize())) {
+            droppedMessages.addAndGet(dropped);
+            return true;
+        }
+        droppedMessages.addAndGet(dropped + 1);
+        return false;
+    }
+
+    private void write(Channel channel, Object message, boolean flush) {
+        (flush ? channel.writeAndFlush(message) : channel.write(message)).addListener(future -> {
+            if (future.isSuccess()) {
+                log.debug("消息发送成功 - 消息ID: {}, 接收方: {}",
+                        uidOf(message), toIdOf(message));
+            } else {
+                log.warn("消息发送失败 - 消息ID: {}, 接收方: {}, 原因: {}",
+                        uidOf(message), toIdOf(message), future.cause().getMessage());
+            }
+        });
+    }
+
+    private static String uidOf(Object message) {
+        return message instanceof EncodedChatMessage
+                ? ((EncodedChatMessage) message).getUid() : ((ChatMessage) message).getUid();
+    }
+
+    private static String toIdOf(Object message) {
+        return message instanceof EncodedChatMessage
+                ? ((EncodedChatMessage) message).getToId() : ((ChatMessage) message).getToId();
     }
 }
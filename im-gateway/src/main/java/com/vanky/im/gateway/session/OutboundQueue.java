@@ -0,0 +1,101 @@
+package com.vanky.im.gateway.session;
+
+import com.vanky.im.common.constant.MessageTypeConstants;
+import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 连接级下行积压队列
+ *
+ * @author vanky
+ * @create 2025/9/3
+ * @description Channel 不可写期间暂存待推送的消息，由 channelWritabilityChanged 在 EventLoop 中排空。
+ *              生产者为MQ消费线程和超时重发线程，消费者为 EventLoop，竞争很低，直接用对象锁保护。
+ *              元素为 ChatMessage 或 EncodedChatMessage。
+ */
+class OutboundQueue {
+
+    private final ArrayDeque<Object> messages = new ArrayDeque<>();
+
+    /**
+     * 队列中是否已有一条未发出的同步通知（同步通知只保留一条）
+     */
+    private boolean syncHintQueued = false;
+
+    synchronized boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * 入队
+     *
+     * @return false 表示队列已满
+     */
+    synchronized boolean offer(Object message, int maxSize) {
+        if (messages.size() >= maxSize) {
+            return false;
+        }
+        messages.addLast(message);
+        return true;
+    }
+
+    synchronized Object poll() {
+        Object message = messages.pollFirst();
+        if (message != null && typeOf(message) == MessageTypeConstants.SYNC_REQUIRED_NOTIFICATION) {
+            syncHintQueued = false;
+        }
+        return message;
+    }
+
+    /**
+     * 丢弃队列中可通过同步拉取恢复的消息，并追加一条同步通知（已有则不重复追加）
+     *
+     * @param syncHint 同步通知消息
+     * @return 丢弃的消息数
+     */
+    synchronized int collapseToSyncHint(ChatMessage syncHint) {
+        int dropped = 0;
+        Iterator<Object> it = messages.iterator();
+        while (it.hasNext()) {
+            if (isSyncRecoverable(typeOf(it.next()))) {
+                it.remove();
+                dropped++;
+            }
+        }
+        if (!syncHintQueued) {
+            messages.addLast(syncHint);
+            syncHintQueued = true;
+        }
+        return dropped;
+    }
+
+    synchronized int clear() {
+        int size = messages.size();
+        messages.clear();
+        syncHintQueued = false;
+        return size;
+    }
+
+    /**
+     * 下行消息的类型
+     */
+    static int typeOf(Object message) {
+        return message instanceof EncodedChatMessage
+                ? ((EncodedChatMessage) message).getType() : ((ChatMessage) message).getType();
+    }
+
+    /**
+     * 已持久化、客户端可通过同步接口重新拉取的消息类型
+     */
+    static boolean isSyncRecoverable(int messageType) {
+        return MessageTypeConstants.isChatMessage(messageType)
+                || messageType == MessageTypeConstants.GROUP_MESSAGE_NOTIFICATION;
+    }
+}
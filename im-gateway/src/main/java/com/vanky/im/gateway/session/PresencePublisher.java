@@ -0,0 +1,206 @@
+package com.vanky.im.gateway.session;
+
+import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.common.model.PresenceEvent;
+import com.vanky.im.gateway.config.GatewayInstanceManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在线状态增量发布器
+ * 本网关的在线用户以 UserChannelManager 为准，上下线只进入本地队列；
+ * 后台线程按 flush-interval 合并（同一用户只保留最后一次变化），写入本网关的在线集合后发布一条增量，
+ * 并周期性发布心跳供消息服务做故障检测。
+ *
+ * @author vanky
+ * @create 2025/9/4
+ */
+@Slf4j
+@Component
+public class PresencePublisher {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private GatewayInstanceManager gatewayInstanceManager;
+
+    /**
+     * 增量合并发布间隔（毫秒）
+     */
+    @Value("${presence.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    /**
+     * 心跳间隔（毫秒）
+     */
+    @Value("${presence.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * 待发布的变化：true 上线，false 下线
+     */
+    private final Queue<Map.Entry<String, Boolean>> changes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 上次写入失败的变化，下次发布时先于新变化合并，仅由发布线程访问
+     */
+    private final Map<String, Boolean> retry = new LinkedHashMap<>();
+
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "presence-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 进程纪元，每次启动不同
+     */
+    private final long epoch = System.currentTimeMillis();
+
+    /**
+     * 已发布的增量序号，仅由发布线程修改
+     */
+    private volatile long seq = 0;
+
+    private String gatewayId;
+
+    private String presenceKey;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong publishedDeltas = new AtomicLong(0);
+    private final AtomicLong publishFailures = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        gatewayId = gatewayInstanceManager.getGatewayInstanceId();
+        presenceKey = RedisKeyConstants.getPresenceGatewayKey(gatewayId);
+        try {
+            // 新纪元从空集合开始，上一个进程遗留的在线用户全部作废
+            redisTemplate.delete(presenceKey);
+        } catch (Exception e) {
+            log.error("清理网关在线集合失败 - 网关: {}", gatewayId, e);
+        }
+
+        publisher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        publisher.scheduleWithFixedDelay(this::heartbeatSafely, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("在线状态发布器启动 - 网关: {}, 纪元: {}, 合并间隔: {}ms, 心跳间隔: {}ms",
+                gatewayId, epoch, flushIntervalMs, heartbeatIntervalMs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        publisher.shutdownNow();
+        try {
+            redisTemplate.delete(presenceKey);
+            redisTemplate.convertAndSend(RedisKeyConstants.PRESENCE_CHANNEL,
+                    new PresenceEvent(PresenceEvent.TYPE_LEAVE, gatewayId, epoch, seq));
+        } catch (Exception e) {
+            log.warn("发布网关下线事件失败，等待消息服务心跳超时检测 - 网关: {}", gatewayId, e);
+        }
+    }
+
+    /**
+     * 用户在本网关上线
+     */
+    public void online(String userId) {
+        changes.offer(Map.entry(userId, Boolean.TRUE));
+    }
+
+    /**
+     * 用户从本网关下线
+     */
+    public void offline(String userId) {
+        changes.offer(Map.entry(userId, Boolean.FALSE));
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("gatewayId", gatewayId);
+        stats.put("epoch", epoch);
+        stats.put("seq", seq);
+        stats.put("pendingChanges", changes.size() + retry.size());
+        stats.put("publishedDeltas", publishedDeltas.get());
+        stats.put("publishFailures", publishFailures.get());
+        return stats;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("在线状态增量发布异常", e);
+        }
+    }
+
+    private void flush() {
+        Map<String, Boolean> merged = new LinkedHashMap<>(retry);
+        retry.clear();
+        Map.Entry<String, Boolean> change;
+        while ((change = changes.poll()) != null) {
+            // 同一用户只保留最后一次变化
+            merged.remove(change.getKey());
+            merged.put(change.getKey(), change.getValue());
+        }
+        if (merged.isEmpty()) {
+            return;
+        }
+
+        List<String> online = new ArrayList<>();
+        List<String> offline = new ArrayList<>();
+        merged.forEach((userId, isOnline) -> (isOnline ? online : offline).add(userId));
+
+        try {
+            // 先更新全量快照再发布增量，消息服务重载快照后重放后续增量即可收敛
+            if (!online.isEmpty()) {
+                redisTemplate.opsForSet().add(presenceKey, online.toArray());
+            }
+            if (!offline.isEmpty()) {
+                redisTemplate.opsForSet().remove(presenceKey, offline.toArray());
+            }
+
+            PresenceEvent event = new PresenceEvent(PresenceEvent.TYPE_DELTA, gatewayId, epoch, seq + 1);
+            event.setOnline(online);
+            event.setOffline(offline);
+            redisTemplate.convertAndSend(RedisKeyConstants.PRESENCE_CHANNEL, event);
+            seq++;
+            publishedDeltas.incrementAndGet();
+        } catch (Exception e) {
+            // 保留本批变化下次重试，集合操作幂等，重复写入快照无副作用
+            merged.forEach(retry::putIfAbsent);
+            publishFailures.incrementAndGet();
+            log.error("在线状态增量发布失败，等待重试 - 网关: {}, 上线: {}, 下线: {}",
+                    gatewayId, online.size(), offline.size(), e);
+        }
+    }
+
+    private void heartbeatSafely() {
+        try {
+            redisTemplate.convertAndSend(RedisKeyConstants.PRESENCE_CHANNEL,
+                    new PresenceEvent(PresenceEvent.TYPE_HEARTBEAT, gatewayId, epoch, seq));
+        } catch (Exception e) {
+            log.warn("在线状态心跳发布失败 - 网关: {}", gatewayId, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.vanky.im.gateway.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话租约续期配置
+ *
+ * @author vanky
+ * @create 2025/9/4
+ * @description 心跳只在本地记录时间，由后台任务按租约批量续期Redis会话TTL
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "session.lease")
+public class SessionLeaseConfig {
+
+    /**
+     * 是否启用合并续期，关闭时每次心跳直接执行一次 EXPIRE
+     */
+    private boolean enabled = true;
+
+    /**
+     * 扫描租约的间隔（毫秒）
+     */
+    private long scanIntervalMs = 5000;
+
+    /**
+     * 续期间隔（秒），距上次续期超过该值且期间收到过心跳才续期；0 表示取会话TTL的1/3
+     */
+    private long refreshIntervalSeconds = 0;
+
+    /**
+     * 单次pipeline包含的 EXPIRE 数量
+     */
+    private int batchSize = 300;
+}
@@ -0,0 +1,220 @@
+package com.vanky.im.gateway.session;
+
+import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.common.constant.SessionConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话租约续期器
+ * 心跳不再逐条 EXPIRE Redis 会话，只在本地租约上记录心跳时间；后台任务定时扫描，
+ * 对距上次续期超过 refreshInterval（默认TTL的1/3）且期间有心跳的会话，按批 pipeline 执行 EXPIRE。
+ * 租约按用户ID登记：会话记录是按用户的Hash（多端共用一个key），心跳时间放在 Channel 属性上也无法
+ * 对应到单个 key；任一设备的心跳都会续期整个用户会话。
+ *
+ * @author vanky
+ * @create 2025/9/4
+ */
+@Slf4j
+@Component
+public class SessionLeaseRefresher {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private SessionLeaseConfig config;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scanner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-lease-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong heartbeats = new AtomicLong(0);
+    private final AtomicLong refreshedSessions = new AtomicLong(0);
+    private final AtomicLong pipelines = new AtomicLong(0);
+    private final AtomicLong refreshFailures = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            log.info("会话租约合并续期已禁用，心跳逐条续期");
+            return;
+        }
+        scanner.scheduleWithFixedDelay(this::scanSafely,
+                config.getScanIntervalMs(), config.getScanIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("会话租约续期器启动 - 扫描间隔: {}ms, 续期间隔: {}s, 批大小: {}",
+                config.getScanIntervalMs(), refreshIntervalSeconds(), config.getBatchSize());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scanner.shutdownNow();
+    }
+
+    /**
+     * 登录时登记租约，会话刚以完整TTL写入Redis，视为刚续期
+     *
+     * @param userId 用户ID
+     */
+    public void register(String userId) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.putIfAbsent(userId, new Lease(now, now));
+        if (lease != null) {
+            // 其他设备已登记，新设备登录同样以完整TTL重写了会话
+            lease.lastHeartbeatTime = now;
+            lease.lastRefreshTime = now;
+        }
+    }
+
+    /**
+     * 记录一次心跳
+     *
+     * @param userId 用户ID
+     */
+    public void onHeartbeat(String userId) {
+        heartbeats.incrementAndGet();
+        long now = System.currentTimeMillis();
+
+        if (!config.isEnabled()) {
+            redisTemplate.expire(SessionConstants.getUserSessionKey(userId),
+                    RedisKeyConstants.SESSION_EXPIRE_TIME, TimeUnit.SECONDS);
+            return;
+        }
+
+        // 网关重启或未经登录登记的用户，下一轮扫描时立即续期
+        Lease lease = leases.computeIfAbsent(userId, k -> new Lease(now, 0));
+        lease.lastHeartbeatTime = now;
+    }
+
+    /**
+     * 用户最后一个设备下线时移除租约
+     *
+     * @param userId 用户ID
+     */
+    public void remove(String userId) {
+        leases.remove(userId);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("leases", leases.size());
+        stats.put("heartbeats", heartbeats.get());
+        stats.put("refreshedSessions", refreshedSessions.get());
+        stats.put("pipelines", pipelines.get());
+        stats.put("refreshFailures", refreshFailures.get());
+        return stats;
+    }
+
+    private void scanSafely() {
+        try {
+            scan();
+        } catch (Exception e) {
+            log.error("会话租约扫描异常", e);
+        }
+    }
+
+    private void scan() {
+        long now = System.currentTimeMillis();
+        long refreshIntervalMs = TimeUnit.SECONDS.toMillis(refreshIntervalSeconds());
+        long sessionTtlMs = TimeUnit.SECONDS.toMillis(RedisKeyConstants.SESSION_EXPIRE_TIME);
+
+        List<String> batchUsers = new ArrayList<>(config.getBatchSize());
+        List<Lease> batchLeases = new ArrayList<>(config.getBatchSize());
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (now - lease.lastHeartbeatTime > sessionTtlMs) {
+                // 全部设备长时间无心跳，会话早已过期，由下线流程/自然过期处理
+                leases.remove(entry.getKey(), lease);
+                continue;
+            }
+            if (now - lease.lastRefreshTime < refreshIntervalMs
+                    || lease.lastHeartbeatTime <= lease.lastRefreshTime) {
+                continue;
+            }
+
+            batchUsers.add(entry.getKey());
+            batchLeases.add(lease);
+            if (batchUsers.size() >= config.getBatchSize()) {
+                refresh(batchUsers, batchLeases, now);
+                batchUsers.clear();
+                batchLeases.clear();
+            }
+        }
+        if (!batchUsers.isEmpty()) {
+            refresh(batchUsers, batchLeases, now);
+        }
+    }
+
+    /**
+     * 一次pipeline续期一批会话，失败时保留租约状态，下一轮扫描重试
+     */
+    @SuppressWarnings("unchecked")
+    private void refresh(List<String> userIds, List<Lease> batchLeases, long now) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+                for (String userId : userIds) {
+                    connection.keyCommands().expire(keySerializer.serialize(SessionConstants.getUserSessionKey(userId)),
+                            RedisKeyConstants.SESSION_EXPIRE_TIME);
+                }
+                return null;
+            });
+            for (Lease lease : batchLeases) {
+                lease.lastRefreshTime = now;
+            }
+            pipelines.incrementAndGet();
+            refreshedSessions.addAndGet(userIds.size());
+        } catch (Exception e) {
+            refreshFailures.incrementAndGet();
+            log.error("会话租约批量续期失败 - 数量: {}", userIds.size(), e);
+        }
+    }
+
+    private long refreshIntervalSeconds() {
+        long configured = config.getRefreshIntervalSeconds();
+        return configured > 0 ? configured : RedisKeyConstants.SESSION_EXPIRE_TIME / 3;
+    }
+
+    /**
+     * 会话租约
+     */
+    private static final class Lease {
+
+        private volatile long lastHeartbeatTime;
+
+        private volatile long lastRefreshTime;
+
+        Lease(long lastHeartbeatTime, long lastRefreshTime) {
+            this.lastHeartbeatTime = lastHeartbeatTime;
+            this.lastRefreshTime = lastRefreshTime;
+        }
+    }
+}
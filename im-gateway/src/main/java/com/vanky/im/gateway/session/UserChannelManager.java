@@ -3,12 +3,18 @@ package com.vanky.im.gateway.session;
 import io.netty.channel.Channel;
 import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 用户Channel管理器，维护用户ID与Channel的映射关系
+ * 用户Channel管理器，维护用户ID -> (设备ID -> Channel) 的映射关系
+ * 同一用户可以多端同时在线，每个设备一条连接；同一设备重复登录时关闭旧连接，不同设备互不影响。
+ * 本网关在线用户以此为准，用户的第一个设备上线/最后一个设备下线时通过 PresencePublisher 复制到消息服务。
+ * 上下线事件在 compute 回调内（持有该用户的桶锁）入队，保证同一用户的事件顺序与映射变化顺序一致。
  */
 @Slf4j
 @Component
@@ -16,90 +22,172 @@ public class UserChannelManager {
 
     // 用于在Channel中存储用户ID的属性键
     public static final AttributeKey<String> USER_ID_ATTR = AttributeKey.valueOf("userId");
-    
-    // 存储用户ID到Channel的映射
-    private final ConcurrentHashMap<String, Channel> userChannelMap = new ConcurrentHashMap<>();
-    
+
+    // 用于在Channel中存储设备ID的属性键
+    public static final AttributeKey<String> DEVICE_ID_ATTR = AttributeKey.valueOf("deviceId");
+
+    // 客户端未携带设备ID时使用的默认设备
+    public static final String DEFAULT_DEVICE_ID = "default";
+
+    // 存储用户ID到各设备Channel的映射
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Channel>> userChannelMap = new ConcurrentHashMap<>();
+
+    @Autowired
+    private PresencePublisher presencePublisher;
+
     /**
-     * 绑定用户与Channel
-     * 
+     * 绑定用户与Channel（默认设备）
+     *
      * @param userId 用户ID
      * @param channel 用户的Channel
      */
     public void bindChannel(String userId, Channel channel) {
-        log.info("开始绑定用户 {} 到Channel {}, 当前在线用户数: {}", userId, channel.id().asShortText(), userChannelMap.size());
+        bindChannel(userId, DEFAULT_DEVICE_ID, channel);
+    }
 
-        // 先检查该用户是否已经有绑定的channel
-        Channel oldChannel = userChannelMap.put(userId, channel);
+    /**
+     * 绑定用户设备与Channel
+     *
+     * @param userId 用户ID
+     * @param deviceId 设备ID，为空时使用默认设备
+     * @param channel 该设备的Channel
+     */
+    public void bindChannel(String userId, String deviceId, Channel channel) {
+        String device = normalizeDeviceId(deviceId);
+        Channel[] oldChannel = new Channel[1];
 
-        // 在channel中存储用户ID
+        // 在channel中存储用户ID和设备ID
         channel.attr(USER_ID_ATTR).set(userId);
+        channel.attr(DEVICE_ID_ATTR).set(device);
+
+        userChannelMap.compute(userId, (key, devices) -> {
+            if (devices == null) {
+                devices = new ConcurrentHashMap<>(4);
+                presencePublisher.online(userId);
+            }
+            oldChannel[0] = devices.put(device, channel);
+            return devices;
+        });
 
-        if (oldChannel != null && oldChannel != channel && oldChannel.isActive()) {
-            log.info("用户 {} 在新的连接登录，关闭旧连接 {}", userId, oldChannel.id().asShortText());
-            // 关闭旧的连接
-            oldChannel.close();
+        if (oldChannel[0] != null && oldChannel[0] != channel && oldChannel[0].isActive()) {
+            log.info("用户 {} 设备 {} 在新的连接登录，关闭旧连接 {}", userId, device, oldChannel[0].id().asShortText());
+            // 只关闭同一设备的旧连接
+            oldChannel[0].close();
         }
 
-        log.info("用户 {} 成功绑定到Channel {}, 当前在线用户数: {}", userId, channel.id().asShortText(), userChannelMap.size());
+        log.info("用户 {} 设备 {} 成功绑定到Channel {}, 当前在线用户数: {}",
+                userId, device, channel.id().asShortText(), userChannelMap.size());
     }
-    
+
     /**
-     * 解绑用户与Channel
-     * 
+     * 解绑用户的全部设备
+     *
      * @param userId 用户ID
      */
     public void unbindChannel(String userId) {
-        Channel channel = userChannelMap.remove(userId);
-        if (channel != null) {
-            // 移除channel中的用户ID属性
-            channel.attr(USER_ID_ATTR).set(null);
-            log.info("用户 {} 解除与Channel {} 的绑定, 当前在线用户数: {}", userId, channel.id().asShortText(), userChannelMap.size());
+        // 映射中不保留空的设备表，解绑到的设备数大于0即表示用户存在
+        int[] removedDevices = new int[1];
+        userChannelMap.computeIfPresent(userId, (key, devices) -> {
+            removedDevices[0] = devices.size();
+            presencePublisher.offline(userId);
+            return null;
+        });
+        if (removedDevices[0] > 0) {
+            log.info("用户 {} 解除全部 {} 个设备的绑定, 当前在线用户数: {}", userId, removedDevices[0], userChannelMap.size());
         } else {
             log.warn("尝试解绑用户 {} 但未找到对应的Channel", userId);
         }
     }
-    
+
     /**
-     * 根据Channel解绑用户
-     * 
-     * @param channel 用户的Channel
+     * 解绑单个设备的Channel，只有映射仍指向该Channel时才移除（避免旧连接断开时误解绑同设备的新连接）
+     *
+     * @param channel 设备的Channel
+     * @return 是否解绑成功
      */
-    public void unbindChannel(Channel channel) {
+    public boolean unbindChannel(Channel channel) {
         if (channel == null) {
-            return;
+            return false;
         }
-        
+
         String userId = getUserId(channel);
-        if (userId != null) {
-            unbindChannel(userId);
+        if (userId == null) {
+            return false;
+        }
+        String device = getDeviceId(channel);
+        boolean[] removed = new boolean[1];
+
+        userChannelMap.computeIfPresent(userId, (key, devices) -> {
+            removed[0] = devices.remove(device, channel);
+            if (devices.isEmpty()) {
+                presencePublisher.offline(userId);
+                return null;
+            }
+            return devices;
+        });
+
+        if (removed[0]) {
+            log.info("用户 {} 设备 {} 解除与Channel {} 的绑定, 当前在线用户数: {}",
+                    userId, device, channel.id().asShortText(), userChannelMap.size());
         }
+        return removed[0];
     }
-    
+
     /**
-     * 获取用户的Channel
-     * 
+     * 获取用户的任一活跃Channel
+     *
      * @param userId 用户ID
      * @return 用户的Channel，如果不存在则返回null
      */
     public Channel getChannel(String userId) {
-        return userChannelMap.get(userId);
+        Map<String, Channel> devices = userChannelMap.get(userId);
+        if (devices == null) {
+            return null;
+        }
+        for (Channel channel : devices.values()) {
+            if (channel.isActive()) {
+                return channel;
+            }
+        }
+        return null;
     }
-    
+
     /**
-     * 判断用户是否在线
-     * 
+     * 获取用户指定设备的Channel
+     *
+     * @param userId 用户ID
+     * @param deviceId 设备ID
+     * @return 设备的Channel，如果不存在则返回null
+     */
+    public Channel getChannel(String userId, String deviceId) {
+        Map<String, Channel> devices = userChannelMap.get(userId);
+        return devices == null ? null : devices.get(normalizeDeviceId(deviceId));
+    }
+
+    /**
+     * 获取用户在本网关的全部设备Channel
+     *
+     * @param userId 用户ID
+     * @return 设备ID -> Channel 的只读视图，用户不在线时为空
+     */
+    public Map<String, Channel> getDeviceChannels(String userId) {
+        Map<String, Channel> devices = userChannelMap.get(userId);
+        return devices == null ? Collections.emptyMap() : Collections.unmodifiableMap(devices);
+    }
+
+    /**
+     * 判断用户是否在线（任一设备在线即可）
+     *
      * @param userId 用户ID
      * @return 如果用户在线则返回true，否则返回false
      */
     public boolean isUserOnline(String userId) {
-        Channel channel = userChannelMap.get(userId);
-        return channel != null && channel.isActive();
+        return getChannel(userId) != null;
     }
-    
+
     /**
      * 获取Channel中存储的用户ID
-     * 
+     *
      * @param channel 用户的Channel
      * @return 用户ID，如果不存在则返回null
      */
@@ -110,6 +198,19 @@ public class UserChannelManager {
         return channel.attr(USER_ID_ATTR).get();
     }
 
+    /**
+     * 获取Channel中存储的设备ID
+     *
+     * @param channel 设备的Channel
+     * @return 设备ID，未绑定时返回默认设备
+     */
+    public String getDeviceId(Channel channel) {
+        if (channel == null) {
+            return DEFAULT_DEVICE_ID;
+        }
+        return normalizeDeviceId(channel.attr(DEVICE_ID_ATTR).get());
+    }
+
     /**
      * 获取当前在线用户数量
      * @return 在线用户数量
@@ -118,13 +219,32 @@ public class UserChannelManager {
         return userChannelMap.size();
     }
 
+    /**
+     * 获取当前在线设备数量
+     * @return 在线设备数量
+     */
+    public int getOnlineDeviceCount() {
+        int count = 0;
+        for (Map<String, Channel> devices : userChannelMap.values()) {
+            count += devices.size();
+        }
+        return count;
+    }
+
     /**
      * 打印当前所有在线用户信息（用于调试）
      */
     public void printOnlineUsers() {
         log.info("当前在线用户数: {}", userChannelMap.size());
-        userChannelMap.forEach((userId, channel) -> {
-            log.info("用户: {}, Channel: {}, 活跃状态: {}", userId, channel.id().asShortText(), channel.isActive());
-        });
+        userChannelMap.forEach((userId, devices) -> devices.forEach((deviceId, channel) ->
+                log.info("用户: {}, 设备: {}, Channel: {}, 活跃状态: {}",
+                        userId, deviceId, channel.id().asShortText(), channel.isActive())));
+    }
+
+    /**
+     * 规范化设备ID，空值视为默认设备
+     */
+    public static String normalizeDeviceId(String deviceId) {
+        return deviceId == null || deviceId.isEmpty() ? DEFAULT_DEVICE_ID : deviceId;
     }
-}
\ No newline at end of file
+}
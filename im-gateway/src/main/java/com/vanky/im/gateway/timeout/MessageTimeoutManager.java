@@ -1,7 +1,8 @@
 package com.vanky.im.gateway.timeout;
 
-import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
 import com.vanky.im.gateway.session.MsgSender;
+import com.vanky.im.gateway.session.UserChannelManager;
 import com.vanky.im.gateway.timeout.config.TimeoutConfig;
 import com.vanky.im.gateway.timeout.model.TimeoutStats;
 import lombok.extern.slf4j.Slf4j;
@@ -36,7 +37,7 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
     private TimingWheel timingWheel;
     
     /**
-     * 待确认消息映射，用于快速取消任务
+     * 待确认消息映射（ackId#deviceId -> 任务句柄），ACK携带ackId并来自某个设备，取消时由此找到该设备的句柄
      */
     private final ConcurrentHashMap<String, TimerTask> pendingAckMap = new ConcurrentHashMap<>();
     
@@ -96,35 +97,28 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
      * 添加超时任务
      */
     @Override
-    public void addTask(String ackId, ChatMessage message, String userId, long timeoutMs) {
+    public void addTask(String ackId, EncodedChatMessage message, String userId, String deviceId, long timeoutMs) {
         if (!isEnabled() || ackId == null || message == null || userId == null) {
             return;
         }
         
-        // 检查是否已存在相同的任务
-        if (pendingAckMap.containsKey(ackId)) {
-            log.warn("重复添加超时任务 - 任务ID: {}, 用户: {}", ackId, userId);
-            return;
-        }
-        
         try {
-            // 计算圈数
-            long delayTicks = timeoutMs / timeoutConfig.getTickDuration();
-            int cycle = (int) (delayTicks / timeoutConfig.getWheelSize());
-            
-            // 创建超时任务
-            TimerTask task = new TimerTask(ackId, message, userId, cycle);
+            // 创建超时任务，任务对象即取消句柄
+            TimerTask task = new TimerTask(ackId, message, userId, deviceId);
             
-            // 添加到待确认映射
-            pendingAckMap.put(ackId, task);
+            // 添加到待确认映射（ackId#deviceId -> 句柄），已存在则视为重复
+            if (pendingAckMap.putIfAbsent(pendingKey(ackId, deviceId), task) != null) {
+                log.warn("重复添加超时任务 - 任务ID: {}, 用户: {}, 设备: {}", ackId, userId, deviceId);
+                return;
+            }
             
             // 添加到时间轮
             timingWheel.addTask(task, timeoutMs);
             
-            log.debug("添加超时任务成功 - 任务ID: {}, 用户: {}, 超时: {}ms", ackId, userId, timeoutMs);
+            log.debug("添加超时任务成功 - 任务ID: {}, 用户: {}, 设备: {}, 超时: {}ms", ackId, userId, deviceId, timeoutMs);
             
         } catch (Exception e) {
-            log.error("添加超时任务失败 - 任务ID: {}, 用户: {}", ackId, userId, e);
+            log.error("添加超时任务失败 - 任务ID: {}, 用户: {}, 设备: {}", ackId, userId, deviceId, e);
         }
     }
     
@@ -132,33 +126,35 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
      * 添加超时任务（使用默认超时时间）
      */
     @Override
-    public void addTask(String ackId, ChatMessage message, String userId) {
-        addTask(ackId, message, userId, timeoutConfig.getDefaultTimeout());
+    public void addTask(String ackId, EncodedChatMessage message, String userId, String deviceId) {
+        addTask(ackId, message, userId, deviceId, timeoutConfig.getDefaultTimeout());
     }
     
     /**
      * 取消超时任务
      */
     @Override
-    public boolean cancelTask(String ackId) {
+    public boolean cancelTask(String ackId, String deviceId) {
         if (!isEnabled() || ackId == null) {
             return false;
         }
         
-        // 从待确认映射中移除
-        TimerTask task = pendingAckMap.remove(ackId);
+        // 从待确认映射中移除，只影响发出ACK的设备
+        TimerTask task = pendingAckMap.remove(pendingKey(ackId, deviceId));
         if (task == null) {
-            log.debug("取消超时任务失败，任务不存在 - 任务ID: {}", ackId);
+            log.debug("取消超时任务失败，任务不存在 - 任务ID: {}, 设备: {}", ackId, deviceId);
             return false;
         }
         
-        // 取消任务
-        task.cancel();
+        // 通过句柄取消：只做状态CAS，时间轮在槽到期时丢弃已取消任务
+        if (task.cancel()) {
+            timingWheel.onTaskCancelled();
+        }
         
         // 更新统计
         totalTasksCancelled.incrementAndGet();
         
-        log.debug("取消超时任务成功 - 任务ID: {}, 用户: {}", ackId, task.getUserId());
+        log.debug("取消超时任务成功 - 任务ID: {}, 用户: {}, 设备: {}", ackId, task.getUserId(), deviceId);
         return true;
     }
     
@@ -169,16 +165,16 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
     public void processTimeout(TimerTask task) {
         String ackId = task.getAckId();
         String userId = task.getUserId();
-        
-        // 从待确认映射中移除
-        pendingAckMap.remove(ackId);
+        String deviceId = task.getDeviceId();
+        String pendingKey = pendingKey(ackId, deviceId);
         
         // 检查重试次数
         if (task.getRetryCount() >= timeoutConfig.getMaxRetryCount()) {
             // 达到最大重试次数，放弃重发
+            pendingAckMap.remove(pendingKey, task);
             totalTasksAbandoned.incrementAndGet();
-            log.warn("消息重发达到最大次数，放弃重发 - 任务ID: {}, 用户: {}, 重试次数: {}", 
-                    ackId, userId, task.getRetryCount());
+            log.warn("消息重发达到最大次数，放弃重发 - 任务ID: {}, 用户: {}, 设备: {}, 重试次数: {}", 
+                    ackId, userId, deviceId, task.getRetryCount());
             return;
         }
         
@@ -186,26 +182,30 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
         task.incrementRetryCount();
         totalRetries.incrementAndGet();
         
-        // 重新发送消息给客户端
-        boolean sent = msgSender.sendToUser(userId, task.getMessage());
+        // 只重发给未确认的设备
+        boolean sent = msgSender.sendToDevice(userId, deviceId, task.getMessage());
         
         if (sent) {
             // 计算下次超时时间（退避策略）
             long nextTimeout = timeoutConfig.calculateBackoffTimeout(task.getRetryCount());
             
-            // 重新添加到待确认映射
-            pendingAckMap.put(ackId, task);
+            // 重发期间收到ACK时任务已被取消，不再放回时间轮
+            if (!task.rearm()) {
+                log.debug("重发期间任务已被确认 - 任务ID: {}, 用户: {}", ackId, userId);
+                return;
+            }
             
-            // 重新添加到时间轮
+            // 重新添加到时间轮（待确认映射中仍是同一个句柄）
             timingWheel.addTask(task, nextTimeout);
             
             log.info("消息重发成功 - 任务ID: {}, 用户: {}, 重试次数: {}, 下次超时: {}ms", 
                     ackId, userId, task.getRetryCount(), nextTimeout);
         } else {
             // 用户离线，放弃重发
+            pendingAckMap.remove(pendingKey, task);
             totalTasksAbandoned.incrementAndGet();
-            log.warn("消息重发失败，用户离线 - 任务ID: {}, 用户: {}, 重试次数: {}", 
-                    ackId, userId, task.getRetryCount());
+            log.warn("消息重发失败，设备离线 - 任务ID: {}, 用户: {}, 设备: {}, 重试次数: {}", 
+                    ackId, userId, deviceId, task.getRetryCount());
         }
     }
     
@@ -225,7 +225,6 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
         stats.setTotalTasksCancelled(totalTasksCancelled.get());
         stats.setTotalRetries(totalRetries.get());
         stats.setTotalTasksAbandoned(totalTasksAbandoned.get());
-        stats.setCurrentPendingTasks(pendingAckMap.size());
         
         return stats;
     }
@@ -246,4 +245,8 @@ public class MessageTimeoutManager implements TimeoutManager, TimingWheel.TaskPr
     public int getPendingTaskCount() {
         return pendingAckMap.size();
     }
+
+    private static String pendingKey(String ackId, String deviceId) {
+        return ackId + "#" + UserChannelManager.normalizeDeviceId(deviceId);
+    }
 }
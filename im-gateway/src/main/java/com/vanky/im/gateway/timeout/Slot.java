@@ -1,212 +1,95 @@
 package com.vanky.im.gateway.timeout;
 
-import lombok.extern.slf4j.Slf4j;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 时间轮槽
- * 
+ *
  * @author vanky
  * @create 2025/7/27
- * @description 时间轮中的每个槽，管理一个双向链表的超时任务
+ * @description 时间轮中的一个桶，保存同一到期时间段内的超时任务。
+ *              任务通过无锁MPSC队列写入（多个推送线程并发写入，只有时间轮线程消费）；
+ *              桶本身按到期时间放入DelayQueue，时间轮线程只在桶到期时被唤醒。
  */
-@Slf4j
-public class Slot {
-    
-    /**
-     * 链表头节点（哨兵节点）
-     */
-    private final TimerTask head;
-    
-    /**
-     * 链表尾节点（哨兵节点）
-     */
-    private final TimerTask tail;
-    
-    /**
-     * 槽级别的锁，减少锁竞争
-     */
-    private final Object lock = new Object();
-    
+public class Slot implements Delayed {
+
     /**
-     * 当前槽中的任务数量
+     * 任务队列：多生产者单消费者
      */
-    private volatile int taskCount = 0;
-    
+    private final Queue<TimerTask> tasks = PlatformDependent.newMpscQueue();
+
     /**
-     * 构造函数，初始化哨兵节点
+     * 桶的到期时间（毫秒），-1 表示当前未放入DelayQueue
      */
-    public Slot() {
-        // 创建哨兵节点
-        this.head = new TimerTask(null, null, null, 0);
-        this.tail = new TimerTask(null, null, null, 0);
-        
-        // 连接哨兵节点
-        head.setNext(tail);
-        tail.setPrev(head);
-    }
-    
+    private final AtomicLong expiration = new AtomicLong(-1L);
+
     /**
-     * 添加任务到槽的末尾
-     * 
+     * 添加任务
+     *
      * @param task 要添加的任务
      */
     public void addTask(TimerTask task) {
-        if (task == null || task.isCancelled()) {
-            return;
-        }
-        
-        synchronized (lock) {
-            // 插入到尾部（tail前面）
-            TimerTask lastTask = tail.getPrev();
-            
-            task.setPrev(lastTask);
-            task.setNext(tail);
-            lastTask.setNext(task);
-            tail.setPrev(task);
-            
-            taskCount++;
-            
-            log.debug("添加任务到槽 - 任务ID: {}, 用户: {}, 槽任务数: {}", 
-                    task.getAckId(), task.getUserId(), taskCount);
-        }
-    }
-    
-    /**
-     * 从槽中移除任务
-     * 
-     * @param task 要移除的任务
-     * @return true if removed successfully
-     */
-    public boolean removeTask(TimerTask task) {
-        if (task == null) {
-            return false;
-        }
-        
-        synchronized (lock) {
-            // 检查任务是否在链表中
-            if (task.getPrev() == null || task.getNext() == null) {
-                return false;
-            }
-            
-            // 从链表中移除
-            task.getPrev().setNext(task.getNext());
-            task.getNext().setPrev(task.getPrev());
-            
-            // 清理任务的链表指针
-            task.setPrev(null);
-            task.setNext(null);
-            
-            taskCount--;
-            
-            log.debug("从槽中移除任务 - 任务ID: {}, 用户: {}, 槽任务数: {}", 
-                    task.getAckId(), task.getUserId(), taskCount);
-            
-            return true;
-        }
-    }
-    
-    /**
-     * 处理槽中的所有任务
-     * 
-     * @param taskHandler 任务处理器
-     */
-    public void processTasks(TaskHandler taskHandler) {
-        synchronized (lock) {
-            TimerTask current = head.getNext();
-            
-            while (current != tail) {
-                TimerTask next = current.getNext(); // 提前保存下一个节点
-                
-                try {
-                    if (current.isCancelled()) {
-                        // 移除已取消的任务
-                        removeTaskUnsafe(current);
-                    } else if (current.isReadyToExecute()) {
-                        // 任务准备执行
-                        removeTaskUnsafe(current);
-                        taskHandler.handle(current);
-                    } else {
-                        // 减少圈数
-                        current.decrementCycle();
-                    }
-                } catch (Exception e) {
-                    log.error("处理任务时发生异常 - 任务ID: {}, 用户: {}", 
-                            current.getAckId(), current.getUserId(), e);
-                    // 移除异常任务
-                    removeTaskUnsafe(current);
-                }
-                
-                current = next;
-            }
-        }
+        tasks.offer(task);
     }
-    
+
     /**
-     * 不加锁的移除任务（内部使用）
-     * 
-     * @param task 要移除的任务
+     * 设置桶的到期时间
+     *
+     * @param expirationMs 到期时间
+     * @return true 表示到期时间发生变化，需要（重新）放入DelayQueue
      */
-    private void removeTaskUnsafe(TimerTask task) {
-        if (task.getPrev() != null && task.getNext() != null) {
-            task.getPrev().setNext(task.getNext());
-            task.getNext().setPrev(task.getPrev());
-            task.setPrev(null);
-            task.setNext(null);
-            taskCount--;
-        }
+    public boolean setExpiration(long expirationMs) {
+        return expiration.getAndSet(expirationMs) != expirationMs;
     }
-    
+
     /**
-     * 获取槽中的任务数量
-     * 
-     * @return 任务数量
+     * 获取桶的到期时间
      */
-    public int getTaskCount() {
-        return taskCount;
+    public long getExpiration() {
+        return expiration.get();
     }
-    
+
     /**
-     * 检查槽是否为空
-     * 
-     * @return true if empty
+     * 取出桶中全部任务，已取消的任务直接丢弃，仅由时间轮线程调用
+     *
+     * @param consumer 任务处理函数（重新插入时间轮或执行超时）
      */
-    public boolean isEmpty() {
-        synchronized (lock) {
-            return head.getNext() == tail;
+    public void flush(Consumer<TimerTask> consumer) {
+        TimerTask task;
+        while ((task = tasks.poll()) != null) {
+            if (!task.isCancelled()) {
+                consumer.accept(task);
+            }
         }
+        expiration.set(-1L);
     }
-    
+
     /**
-     * 清空槽中的所有任务
+     * 清空桶中的所有任务
      */
     public void clear() {
-        synchronized (lock) {
-            TimerTask current = head.getNext();
-            
-            while (current != tail) {
-                TimerTask next = current.getNext();
-                current.cancel();
-                current = next;
-            }
-            
-            head.setNext(tail);
-            tail.setPrev(head);
-            taskCount = 0;
-            
-            log.debug("清空槽中的所有任务");
-        }
+        tasks.clear();
+        expiration.set(-1L);
     }
-    
-    /**
-     * 任务处理器接口
-     */
-    @FunctionalInterface
-    public interface TaskHandler {
-        void handle(TimerTask task);
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
     }
-    
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getExpiration(), ((Slot) other).getExpiration());
+    }
+
     @Override
     public String toString() {
-        return String.format("Slot{taskCount=%d, isEmpty=%s}", taskCount, isEmpty());
+        return String.format("Slot{expiration=%d}", getExpiration());
     }
 }
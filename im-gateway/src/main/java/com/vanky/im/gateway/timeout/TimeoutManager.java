@@ -1,6 +1,6 @@
 package com.vanky.im.gateway.timeout;
 
-import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
 import com.vanky.im.gateway.timeout.model.TimeoutStats;
 
 /**
@@ -18,9 +18,10 @@ public interface TimeoutManager {
      * @param ackId 消息唯一ID，用于取消任务
      * @param message 完整的消息体，用于重发
      * @param userId 目标用户ID
+     * @param deviceId 目标设备ID，同一消息在每个设备上分别跟踪
      * @param timeoutMs 超时时间（毫秒）
      */
-    void addTask(String ackId, ChatMessage message, String userId, long timeoutMs);
+    void addTask(String ackId, EncodedChatMessage message, String userId, String deviceId, long timeoutMs);
     
     /**
      * 添加超时任务（使用默认超时时间）
@@ -28,16 +29,18 @@ public interface TimeoutManager {
      * @param ackId 消息唯一ID
      * @param message 消息体
      * @param userId 目标用户ID
+     * @param deviceId 目标设备ID
      */
-    void addTask(String ackId, ChatMessage message, String userId);
+    void addTask(String ackId, EncodedChatMessage message, String userId, String deviceId);
     
     /**
      * 取消超时任务
      * 
      * @param ackId 消息唯一ID
+     * @param deviceId 发出ACK的设备ID
      * @return true if cancelled successfully
      */
-    boolean cancelTask(String ackId);
+    boolean cancelTask(String ackId, String deviceId);
     
     /**
      * 获取统计信息
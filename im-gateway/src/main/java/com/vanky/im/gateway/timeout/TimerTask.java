@@ -1,162 +1,163 @@
 package com.vanky.im.gateway.timeout;
 
-import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
 import lombok.Data;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 超时任务对象
- * 
+ *
  * @author vanky
  * @create 2025/7/27
- * @description 封装了超时后需要执行的所有信息，会被放入时间轮的槽中
+ * @description 封装了超时后需要执行的所有信息，会被放入时间轮的槽中。
+ *              任务本身即取消句柄：取消只做一次状态CAS，槽在到期时跳过已取消的任务，无需在槽中查找和摘除。
  */
 @Data
 public class TimerTask {
-    
+
+    /**
+     * 任务状态：等待超时
+     */
+    private static final int STATE_PENDING = 0;
+
+    /**
+     * 任务状态：已超时，正在处理（可能被重新放回时间轮）
+     */
+    private static final int STATE_EXPIRED = 1;
+
+    /**
+     * 任务状态：已取消
+     */
+    private static final int STATE_CANCELLED = 2;
+
     /**
      * 消息的唯一ID，用于取消任务
      */
     private String ackId;
-    
+
     /**
      * 当前重试次数
      */
     private int retryCount;
-    
+
     /**
-     * 完整的消息体，用于重发
+     * 已编码的消息体，重发时原样写出
      */
-    private ChatMessage message;
-    
+    private EncodedChatMessage message;
+
     /**
      * 目标用户ID
      */
     private String userId;
-    
+
     /**
-     * 圈数（当超时时间超过一轮时使用）
+     * 目标设备ID，多端登录时同一条消息在每个设备上各有一个任务，分别确认和重发
      */
-    private int cycle;
-    
+    private String deviceId;
+
     /**
      * 任务创建时间
      */
     private long createTime;
-    
+
     /**
-     * 下次执行时间
+     * 下次执行时间（绝对时间，毫秒）
      */
     private long nextExecuteTime;
-    
-    /**
-     * 是否已取消
-     */
-    private volatile boolean cancelled;
-    
-    /**
-     * 双向链表 - 前驱节点
-     */
-    private TimerTask prev;
-    
+
     /**
-     * 双向链表 - 后继节点
+     * 任务状态
      */
-    private TimerTask next;
-    
+    private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
     /**
      * 构造函数
-     * 
+     *
      * @param ackId 消息唯一ID
      * @param message 消息体
      * @param userId 目标用户ID
-     * @param cycle 圈数
+     * @param deviceId 目标设备ID
      */
-    public TimerTask(String ackId, ChatMessage message, String userId, int cycle) {
+    public TimerTask(String ackId, EncodedChatMessage message, String userId, String deviceId) {
         this.ackId = ackId;
         this.message = message;
         this.userId = userId;
-        this.cycle = cycle;
+        this.deviceId = deviceId;
         this.retryCount = 0;
         this.createTime = System.currentTimeMillis();
-        this.cancelled = false;
-        this.prev = null;
-        this.next = null;
     }
-    
+
     /**
      * 取消任务
-     * 将任务标记为已取消，并从链表中移除
+     * 等待中或正在处理的任务都可以被取消，正在处理的任务取消后不会再被放回时间轮
+     *
+     * @return true 表示取消前任务处于等待超时状态（需要扣减待处理计数）
+     */
+    public boolean cancel() {
+        while (true) {
+            int current = state.get();
+            if (current == STATE_CANCELLED) {
+                return false;
+            }
+            if (state.compareAndSet(current, STATE_CANCELLED)) {
+                return current == STATE_PENDING;
+            }
+        }
+    }
+
+    /**
+     * 标记为已超时，由时间轮线程在槽到期时调用
+     *
+     * @return true 表示抢在取消之前，需要执行超时处理
      */
-    public void cancel() {
-        this.cancelled = true;
-        removeFromList();
+    boolean markExpired() {
+        return state.compareAndSet(STATE_PENDING, STATE_EXPIRED);
     }
-    
+
     /**
-     * 从链表中移除自己
+     * 超时处理后重新放回时间轮前调用
+     *
+     * @return false 表示处理期间任务已被取消，不应再放回
      */
-    public void removeFromList() {
-        if (prev != null) {
-            prev.next = next;
-        }
-        if (next != null) {
-            next.prev = prev;
-        }
-        prev = null;
-        next = null;
+    public boolean rearm() {
+        return state.compareAndSet(STATE_EXPIRED, STATE_PENDING);
     }
-    
+
     /**
      * 增加重试次数
      */
     public void incrementRetryCount() {
         this.retryCount++;
     }
-    
+
     /**
      * 检查任务是否已取消
-     * 
+     *
      * @return true if cancelled
      */
     public boolean isCancelled() {
-        return cancelled;
+        return state.get() == STATE_CANCELLED;
     }
-    
-    /**
-     * 检查是否需要执行（圈数为0）
-     * 
-     * @return true if ready to execute
-     */
-    public boolean isReadyToExecute() {
-        return cycle == 0 && !cancelled;
-    }
-    
-    /**
-     * 减少圈数
-     */
-    public void decrementCycle() {
-        if (cycle > 0) {
-            cycle--;
-        }
-    }
-    
+
     /**
      * 获取任务运行时长（毫秒）
-     * 
+     *
      * @return 运行时长
      */
     public long getRunningTime() {
         return System.currentTimeMillis() - createTime;
     }
-    
+
     @Override
     public String toString() {
         return String.format(
-            "TimerTask{ackId='%s', userId='%s', retryCount=%d, cycle=%d, cancelled=%s, runningTime=%dms}",
-            ackId, userId, retryCount, cycle, cancelled, getRunningTime()
+            "TimerTask{ackId='%s', userId='%s', deviceId='%s', retryCount=%d, state=%d, runningTime=%dms}",
+            ackId, userId, deviceId, retryCount, state.get(), getRunningTime()
         );
     }
-    
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -166,11 +167,11 @@ public class TimerTask {
             return false;
         }
         TimerTask timerTask = (TimerTask) obj;
-        return ackId != null ? ackId.equals(timerTask.ackId) : timerTask.ackId == null;
+        return Objects.equals(ackId, timerTask.ackId) && Objects.equals(deviceId, timerTask.deviceId);
     }
-    
+
     @Override
     public int hashCode() {
-        return ackId != null ? ackId.hashCode() : 0;
+        return Objects.hash(ackId, deviceId);
     }
 }
@@ -4,99 +4,118 @@ import com.vanky.im.gateway.timeout.config.TimeoutConfig;
 import com.vanky.im.gateway.timeout.model.TimeoutStats;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 时间轮核心实现
- * 
+ *
  * @author vanky
  * @create 2025/7/27
- * @description 基于时间轮算法的高效超时任务管理器
+ * @description 分层时间轮（Kafka风格）：
+ *              - 底层轮的槽跨度为 tickDuration，超出一轮范围的任务放入按需创建的上层溢出轮；
+ *              - 非空的槽按到期时间放入 DelayQueue，tick线程只在有槽到期时醒来，空转时不扫描；
+ *              - 槽到期后其中的任务降级插入下层轮，最终在底层轮到期执行；
+ *              - 任务写入走读锁 + 槽内无锁MPSC队列，推送线程之间互不阻塞；
+ *              - 待处理任务数等统计均为增量计数，获取统计为O(1)。
  */
 @Slf4j
 public class TimingWheel {
-    
+
     /**
-     * 时间轮槽数组
+     * tick线程单次等待的最长时间，用于及时响应停止
      */
-    private final Slot[] wheel;
-    
+    private static final long MAX_POLL_WAIT_MS = 1000L;
+
     /**
      * 每个tick的时间间隔（毫秒）
      */
     private final long tickDuration;
-    
+
     /**
-     * 时间轮大小
+     * 每层时间轮大小
      */
     private final int wheelSize;
-    
+
+    /**
+     * 底层时间轮
+     */
+    private final WheelLevel rootWheel;
+
     /**
-     * 时间轮掩码，用于快速计算槽位
+     * 所有非空槽的到期队列
      */
-    private final int wheelMask;
-    
+    private final DelayQueue<Slot> delayQueue = new DelayQueue<>();
+
     /**
-     * 当前tick位置
+     * 任务写入持读锁，tick线程推进时钟持写锁
      */
-    private volatile long currentTick = 0;
-    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
     /**
      * 时间轮启动时间
      */
     private final long startTime;
-    
+
+    /**
+     * tick线程名称
+     */
+    private final String tickerThreadName;
+
     /**
      * 后台tick线程
      */
     private Thread tickerThread;
-    
+
     /**
      * 运行状态
      */
     private volatile boolean running = false;
-    
+
     /**
      * 任务处理器
      */
     private final TaskProcessor taskProcessor;
-    
+
     /**
      * 统计信息
      */
     private final TimeoutStats stats = new TimeoutStats();
-    
+
     /**
      * 统计计数器
      */
     private final AtomicLong totalTasksAdded = new AtomicLong(0);
     private final AtomicLong totalTasksTimeout = new AtomicLong(0);
-    
+    private final AtomicLong pendingTasks = new AtomicLong(0);
+    private final AtomicLong expiredBuckets = new AtomicLong(0);
+    private volatile long lastTickTime = 0;
+
     /**
      * 构造函数
-     * 
+     *
      * @param config 超时配置
      * @param taskProcessor 任务处理器
      */
     public TimingWheel(TimeoutConfig config, TaskProcessor taskProcessor) {
         this.wheelSize = config.getWheelSize();
-        this.wheelMask = config.getWheelMask();
         this.tickDuration = config.getTickDuration();
+        this.tickerThreadName = config.getTickerThreadName();
         this.taskProcessor = taskProcessor;
         this.startTime = System.currentTimeMillis();
-        
-        // 初始化时间轮槽
-        this.wheel = new Slot[wheelSize];
-        for (int i = 0; i < wheelSize; i++) {
-            wheel[i] = new Slot();
-        }
-        
+        this.rootWheel = new WheelLevel(tickDuration, wheelSize, startTime);
+
         // 初始化统计信息
         stats.setStartTime(startTime);
-        
-        log.info("时间轮初始化完成 - 槽数: {}, tick间隔: {}ms", wheelSize, tickDuration);
+
+        log.info("分层时间轮初始化完成 - 每层槽数: {}, tick间隔: {}ms, 底层轮跨度: {}ms",
+                wheelSize, tickDuration, tickDuration * wheelSize);
     }
-    
+
     /**
      * 启动时间轮
      */
@@ -105,15 +124,15 @@ public class TimingWheel {
             log.warn("时间轮已经在运行中");
             return;
         }
-        
+
         running = true;
-        tickerThread = new Thread(this::tickLoop, "message-timeout-ticker");
+        tickerThread = new Thread(this::tickLoop, tickerThreadName);
         tickerThread.setDaemon(true);
         tickerThread.start();
-        
+
         log.info("时间轮启动成功");
     }
-    
+
     /**
      * 停止时间轮
      */
@@ -121,9 +140,9 @@ public class TimingWheel {
         if (!running) {
             return;
         }
-        
+
         running = false;
-        
+
         if (tickerThread != null) {
             tickerThread.interrupt();
             try {
@@ -133,18 +152,23 @@ public class TimingWheel {
                 log.warn("等待时间轮线程停止时被中断");
             }
         }
-        
+
         // 清理所有槽
-        for (Slot slot : wheel) {
-            slot.clear();
+        lock.writeLock().lock();
+        try {
+            delayQueue.clear();
+            rootWheel.clear();
+            pendingTasks.set(0);
+        } finally {
+            lock.writeLock().unlock();
         }
-        
+
         log.info("时间轮停止完成");
     }
-    
+
     /**
      * 添加超时任务
-     * 
+     *
      * @param task 超时任务
      * @param timeoutMs 超时时间（毫秒）
      */
@@ -152,137 +176,239 @@ public class TimingWheel {
         if (task == null || task.isCancelled()) {
             return;
         }
-        
-        // 计算延迟的tick数
-        long delayTicks = timeoutMs / tickDuration;
-        if (delayTicks == 0) {
-            delayTicks = 1; // 至少延迟1个tick
-        }
-        
-        // 计算目标tick和圈数
-        long targetTick = currentTick + delayTicks;
-        int targetSlot = (int) (targetTick & wheelMask);
-        int cycle = (int) (delayTicks / wheelSize);
-        
-        // 设置任务参数
-        task.setCycle(cycle);
-        task.setNextExecuteTime(System.currentTimeMillis() + timeoutMs);
-        
-        // 添加到对应槽
-        wheel[targetSlot].addTask(task);
-        
-        // 更新统计
+
+        // 至少延迟1个tick
+        task.setNextExecuteTime(System.currentTimeMillis() + Math.max(timeoutMs, tickDuration));
+
         totalTasksAdded.incrementAndGet();
-        
-        log.debug("添加超时任务 - 任务ID: {}, 用户: {}, 超时: {}ms, 目标槽: {}, 圈数: {}", 
-                task.getAckId(), task.getUserId(), timeoutMs, targetSlot, cycle);
+        pendingTasks.incrementAndGet();
+
+        boolean added;
+        lock.readLock().lock();
+        try {
+            added = rootWheel.add(task);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!added) {
+            // 时间轮时钟已越过到期时间，直接执行
+            expire(task);
+        }
     }
-    
+
     /**
-     * 时间轮tick循环
+     * 时间轮tick循环：阻塞等待最近一个到期的槽
      */
     private void tickLoop() {
         log.info("时间轮tick线程启动");
-        
-        long nextTickTime = System.currentTimeMillis();
-        
+
+        List<TimerTask> expired = new ArrayList<>();
+
         while (running) {
             try {
-                // 等待到下一个tick时间
-                nextTickTime += tickDuration;
-                long sleepTime = nextTickTime - System.currentTimeMillis();
-                if (sleepTime > 0) {
-                    Thread.sleep(sleepTime);
+                Slot bucket = delayQueue.poll(MAX_POLL_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (bucket == null) {
+                    continue;
                 }
-                
-                // 执行tick
-                tick();
-                
+
+                lock.writeLock().lock();
+                try {
+                    while (bucket != null) {
+                        rootWheel.advanceClock(bucket.getExpiration());
+                        bucket.flush(task -> {
+                            if (!rootWheel.add(task)) {
+                                expired.add(task);
+                            }
+                        });
+                        expiredBuckets.incrementAndGet();
+                        bucket = delayQueue.poll();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+
+                lastTickTime = System.currentTimeMillis();
+
+                // 在锁外执行超时处理，处理中重新加入时间轮只需读锁
+                for (TimerTask task : expired) {
+                    expire(task);
+                }
+                expired.clear();
+
             } catch (InterruptedException e) {
                 log.info("时间轮tick线程被中断，准备退出");
                 break;
             } catch (Exception e) {
                 log.error("时间轮tick执行异常", e);
+                expired.clear();
                 // 继续运行，不因异常而停止
             }
         }
-        
+
         log.info("时间轮tick线程退出");
     }
-    
+
     /**
-     * 执行一次tick
+     * 任务到期：与取消竞争，抢到后交给任务处理器
+     *
+     * @param task 超时任务
      */
-    private void tick() {
-        // 移动指针
-        currentTick++;
-        int currentSlot = (int) (currentTick & wheelMask);
-        
-        // 更新统计
-        stats.setCurrentTick(currentTick);
-        stats.setLastTickTime(System.currentTimeMillis());
-        
-        // 处理当前槽的任务
-        Slot slot = wheel[currentSlot];
-        slot.processTasks(this::handleTimeoutTask);
-        
-        log.debug("时间轮tick - 当前tick: {}, 槽位: {}, 槽任务数: {}", 
-                currentTick, currentSlot, slot.getTaskCount());
+    private void expire(TimerTask task) {
+        if (!task.markExpired()) {
+            // 已被取消，取消时已扣减计数
+            return;
+        }
+        pendingTasks.decrementAndGet();
+        handleTimeoutTask(task);
     }
-    
+
     /**
      * 处理超时任务
-     * 
+     *
      * @param task 超时任务
      */
     private void handleTimeoutTask(TimerTask task) {
         try {
             // 更新统计
             totalTasksTimeout.incrementAndGet();
-            
+
             // 委托给任务处理器
             taskProcessor.processTimeout(task);
-            
-            log.debug("处理超时任务 - 任务ID: {}, 用户: {}, 重试次数: {}", 
+
+            log.debug("处理超时任务 - 任务ID: {}, 用户: {}, 重试次数: {}",
                     task.getAckId(), task.getUserId(), task.getRetryCount());
-            
+
         } catch (Exception e) {
-            log.error("处理超时任务异常 - 任务ID: {}, 用户: {}", 
+            log.error("处理超时任务异常 - 任务ID: {}, 用户: {}",
                     task.getAckId(), task.getUserId(), e);
         }
     }
-    
+
+    /**
+     * 任务被取消后调用，扣减待处理计数
+     */
+    public void onTaskCancelled() {
+        pendingTasks.decrementAndGet();
+    }
+
     /**
      * 获取统计信息
-     * 
+     *
      * @return 统计信息
      */
     public TimeoutStats getStats() {
-        // 更新当前统计
         stats.setTotalTasksAdded(totalTasksAdded.get());
         stats.setTotalTasksTimeout(totalTasksTimeout.get());
-        stats.setCurrentTick(currentTick);
-        stats.setLastTickTime(System.currentTimeMillis());
-        
-        // 计算当前待处理任务数
-        int currentPendingTasks = 0;
-        for (Slot slot : wheel) {
-            currentPendingTasks += slot.getTaskCount();
-        }
-        stats.setCurrentPendingTasks(currentPendingTasks);
-        
+        stats.setCurrentTick(expiredBuckets.get());
+        stats.setLastTickTime(lastTickTime);
+        stats.setCurrentPendingTasks((int) Math.max(0, pendingTasks.get()));
         return stats;
     }
-    
+
     /**
      * 检查时间轮是否在运行
-     * 
+     *
      * @return true if running
      */
     public boolean isRunning() {
         return running;
     }
-    
+
+    /**
+     * 单层时间轮
+     * 读写约定：add 在读锁（或写锁）下调用，advanceClock/clear 在写锁下调用
+     */
+    private final class WheelLevel {
+
+        private final long tickMs;
+        private final int size;
+        private final long interval;
+        private final Slot[] buckets;
+
+        /**
+         * 本层当前时间（tickMs 的整数倍）
+         */
+        private volatile long currentTime;
+
+        /**
+         * 上层溢出轮，按需创建
+         */
+        private volatile WheelLevel overflowWheel;
+
+        WheelLevel(long tickMs, int size, long startMs) {
+            this.tickMs = tickMs;
+            this.size = size;
+            this.interval = tickMs * size;
+            this.currentTime = startMs - (startMs % tickMs);
+            this.buckets = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new Slot();
+            }
+        }
+
+        /**
+         * 插入任务
+         *
+         * @return false 表示任务已到期，需要立即执行
+         */
+        boolean add(TimerTask task) {
+            long expiration = task.getNextExecuteTime();
+
+            if (expiration < currentTime + tickMs) {
+                return false;
+            }
+
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMs;
+                Slot bucket = buckets[(int) (virtualId % size)];
+                bucket.addTask(task);
+
+                // 槽首次使用或被复用到新的时间段时，放入到期队列
+                if (bucket.setExpiration(virtualId * tickMs)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+
+            return overflow().add(task);
+        }
+
+        void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tickMs) {
+                currentTime = timeMs - (timeMs % tickMs);
+                WheelLevel overflow = overflowWheel;
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+
+        void clear() {
+            for (Slot bucket : buckets) {
+                bucket.clear();
+            }
+            WheelLevel overflow = overflowWheel;
+            if (overflow != null) {
+                overflow.clear();
+            }
+        }
+
+        private WheelLevel overflow() {
+            WheelLevel overflow = overflowWheel;
+            if (overflow == null) {
+                synchronized (this) {
+                    overflow = overflowWheel;
+                    if (overflow == null) {
+                        overflow = new WheelLevel(interval, size, currentTime);
+                        overflowWheel = overflow;
+                    }
+                }
+            }
+            return overflow;
+        }
+    }
+
     /**
      * 任务处理器接口
      */
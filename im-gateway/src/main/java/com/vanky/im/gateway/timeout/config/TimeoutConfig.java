@@ -99,15 +99,8 @@ public class TimeoutConfig {
         if (retryBackoffMax <= 0) {
             throw new IllegalArgumentException("retryBackoffMax must be positive, but was: " + retryBackoffMax);
         }
-        
-        // 验证默认超时时间不能超过一轮的时间
-        long maxSingleRoundTimeout = wheelSize * tickDuration;
-        if (defaultTimeout > maxSingleRoundTimeout) {
-            throw new IllegalArgumentException(
-                String.format("defaultTimeout (%d ms) exceeds maximum single round timeout (%d ms). " +
-                    "Consider increasing wheelSize or decreasing tickDuration.", 
-                    defaultTimeout, maxSingleRoundTimeout));
-        }
+
+        // 超过底层时间轮一轮跨度的超时由上层溢出轮承接，无需限制
     }
     
     /**
@@ -0,0 +1,285 @@
+package com.vanky.im.gateway.trace;
+
+import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.EncodedChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息链路追踪器
+ *
+ * @author vanky
+ * @create 2025/9/3
+ * @description 替代热路径上逐条INFO日志的采样追踪：
+ *              - 按收发双方哈希采样（默认1/1000），强制名单中的用户/会话全部追踪；
+ *                采样键由 fromId、toId 按字典序组合，与方向无关，相当于按私聊会话（群聊按发送方+群）采样：
+ *                两者从入站第一个节点到下行推送都不变（uid 上行是客户端ID、下行换成服务端消息ID，
+ *                会话ID要到转发时才由网关补齐，都不能作为采样键），同一会话的消息在各节点上要么全部记录要么全部跳过；
+ *              - 未命中采样时只做一次哈希取模，不构造任何字符串；
+ *              - 命中的事件写入有界环形缓冲，由后台线程批量输出到 IM_TRACE 日志，缓冲满时丢弃，不阻塞IO线程。
+ */
+@Slf4j
+@Component
+public class MessageTracer {
+
+    /**
+     * 追踪事件专用日志，可在日志配置中单独路由
+     */
+    private static final Logger TRACE_LOG = LoggerFactory.getLogger("IM_TRACE");
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    @Autowired
+    private TraceConfig traceConfig;
+
+    private volatile boolean enabled;
+    private volatile int sampleOneIn;
+    private final Set<String> forcedUsers = ConcurrentHashMap.newKeySet();
+    private final Set<String> forcedConversations = ConcurrentHashMap.newKeySet();
+
+    private ArrayBlockingQueue<TraceEvent> buffer;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong emittedEvents = new AtomicLong(0);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        enabled = traceConfig.isEnabled();
+        sampleOneIn = Math.max(1, traceConfig.getSampleOneIn());
+        forcedUsers.addAll(traceConfig.getForcedUsers());
+        forcedConversations.addAll(traceConfig.getForcedConversations());
+        buffer = new ArrayBlockingQueue<>(Math.max(64, traceConfig.getBufferSize()));
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "im-trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("消息追踪启动 - 启用: {}, 采样: 1/{}, 强制用户: {}, 强制会话: {}",
+                enabled, sampleOneIn, forcedUsers.size(), forcedConversations.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+    }
+
+    /**
+     * 消息是否命中追踪
+     *
+     * @param msg 消息
+     * @return true 表示需要追踪
+     */
+    public boolean isTraced(ChatMessage msg) {
+        if (!enabled || msg == null) {
+            return false;
+        }
+        return isTraced(msg.getFromId(), msg.getToId(), msg.getConversationId());
+    }
+
+    private boolean isTraced(String fromId, String toId, String conversationId) {
+        if (!forcedUsers.isEmpty()
+                && (forcedUsers.contains(fromId) || forcedUsers.contains(toId))) {
+            return true;
+        }
+        if (!forcedConversations.isEmpty() && forcedConversations.contains(conversationId)) {
+            return true;
+        }
+        return (pairHash(fromId, toId) & Integer.MAX_VALUE) % sampleOneIn == 0;
+    }
+
+    /**
+     * 收发双方组合哈希，与顺序无关且不拼接字符串
+     */
+    private static int pairHash(String fromId, String toId) {
+        String a = fromId != null ? fromId : "";
+        String b = toId != null ? toId : "";
+        if (a.compareTo(b) > 0) {
+            String tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return a.hashCode() * 31 + b.hashCode();
+    }
+
+    /**
+     * 记录一个链路节点
+     *
+     * @param stage 链路节点名称，如 gateway.inbound / gateway.push
+     * @param msg 消息
+     */
+    public void trace(String stage, ChatMessage msg) {
+        trace(stage, msg, null);
+    }
+
+    /**
+     * 记录一个链路节点
+     *
+     * @param stage 链路节点名称
+     * @param msg 消息
+     * @param detail 附加信息（仅命中采样时才会被使用，调用方不要为此拼接字符串）
+     */
+    public void trace(String stage, ChatMessage msg, Object detail) {
+        if (!isTraced(msg)) {
+            return;
+        }
+        TraceEvent event = new TraceEvent(System.currentTimeMillis(), stage, msg.getType(), msg.getUid(),
+                msg.getClientSeq(), msg.getFromId(), msg.getToId(), msg.getConversationId(),
+                detail, Thread.currentThread().getName());
+        if (!buffer.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录一个链路节点（已编码的下行消息，只使用信封头中的字段，不解析消息体）
+     *
+     * @param stage 链路节点名称
+     * @param msg 已编码的消息
+     * @param detail 附加信息
+     */
+    public void trace(String stage, EncodedChatMessage msg, Object detail) {
+        if (!enabled || msg == null || !isTraced(msg.getFromId(), msg.getToId(), msg.getConversationId())) {
+            return;
+        }
+        TraceEvent event = new TraceEvent(System.currentTimeMillis(), stage, msg.getType(), msg.getUid(),
+                "", msg.getFromId(), msg.getToId(), msg.getConversationId(),
+                detail, Thread.currentThread().getName());
+        if (!buffer.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    // ========== 运行期调整 ==========
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        log.info("消息追踪开关变更 - 启用: {}", enabled);
+    }
+
+    public void setSampleOneIn(int sampleOneIn) {
+        this.sampleOneIn = Math.max(1, sampleOneIn);
+        log.info("消息追踪采样率变更 - 1/{}", this.sampleOneIn);
+    }
+
+    public boolean addForcedUser(String userId) {
+        return forcedUsers.add(userId);
+    }
+
+    public boolean removeForcedUser(String userId) {
+        return forcedUsers.remove(userId);
+    }
+
+    public boolean addForcedConversation(String conversationId) {
+        return forcedConversations.add(conversationId);
+    }
+
+    public boolean removeForcedConversation(String conversationId) {
+        return forcedConversations.remove(conversationId);
+    }
+
+    /**
+     * 获取追踪状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("sampleOneIn", sampleOneIn);
+        status.put("forcedUsers", new ArrayList<>(forcedUsers));
+        status.put("forcedConversations", new ArrayList<>(forcedConversations));
+        status.put("bufferSize", buffer.size());
+        status.put("bufferCapacity", buffer.size() + buffer.remainingCapacity());
+        status.put("emittedEvents", emittedEvents.get());
+        status.put("droppedEvents", droppedEvents.get());
+        return status;
+    }
+
+    /**
+     * 后台输出线程：批量取出事件写日志
+     */
+    private void writeLoop() {
+        List<TraceEvent> batch = new ArrayList<>(DRAIN_BATCH_SIZE);
+        while (running) {
+            try {
+                TraceEvent first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, DRAIN_BATCH_SIZE - 1);
+                for (TraceEvent event : batch) {
+                    TRACE_LOG.info("{}", event);
+                }
+                emittedEvents.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("追踪事件输出异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 追踪事件
+     */
+    private static final class TraceEvent {
+        final long timestamp;
+        final String stage;
+        final int type;
+        final String uid;
+        final String clientSeq;
+        final String fromId;
+        final String toId;
+        final String conversationId;
+        final Object detail;
+        final String thread;
+
+        TraceEvent(long timestamp, String stage, int type, String uid, String clientSeq,
+                   String fromId, String toId, String conversationId, Object detail, String thread) {
+            this.timestamp = timestamp;
+            this.stage = stage;
+            this.type = type;
+            this.uid = uid;
+            this.clientSeq = clientSeq;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.conversationId = conversationId;
+            this.detail = detail;
+            this.thread = thread;
+        }
+
+        @Override
+        public String toString() {
+            return "ts=" + timestamp + " stage=" + stage + " type=" + type + " uid=" + uid
+                    + " clientSeq=" + clientSeq + " from=" + fromId + " to=" + toId
+                    + " conv=" + conversationId + " thread=" + thread
+                    + (detail != null ? " detail=" + detail : "");
+        }
+    }
+}
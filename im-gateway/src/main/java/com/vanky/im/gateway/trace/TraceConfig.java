@@ -0,0 +1,46 @@
+package com.vanky.im.gateway.trace;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 消息链路追踪配置
+ *
+ * @author vanky
+ * @create 2025/9/3
+ * @description 采样率与强制追踪名单的初始值，运行期可通过 /api/monitor/trace 调整
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "message.trace")
+public class TraceConfig {
+
+    /**
+     * 是否启用追踪
+     */
+    private boolean enabled = true;
+
+    /**
+     * 采样比例的分母：每 N 条消息追踪 1 条（按收发双方组合哈希，同一会话的消息在链路各节点上要么全部追踪要么都不追踪）
+     */
+    private int sampleOneIn = 1000;
+
+    /**
+     * 强制追踪的用户ID（作为发送方或接收方）
+     */
+    private Set<String> forcedUsers = new HashSet<>();
+
+    /**
+     * 强制追踪的会话ID
+     */
+    private Set<String> forcedConversations = new HashSet<>();
+
+    /**
+     * 异步输出环形缓冲容量，写满后丢弃新事件
+     */
+    private int bufferSize = 8192;
+}
@@ -101,6 +101,40 @@ public class SequenceClient {
         return Collections.emptyMap();
     }
 
+    /**
+     * 租用一段连续的序列号区间
+     *
+     * @param businessKey 业务key，如 "user_12345" 或 "group_67890"
+     * @param count       期望租用的数量（服务端可能按上限截断）
+     * @return 区间结果（startSeq + count），失败时返回null
+     */
+    public SequenceResponse.SequenceResult leaseRange(String businessKey, int count) {
+        try {
+            SequenceRequest.Range request = new SequenceRequest.Range(businessKey, count);
+            ResponseEntity<SequenceResponse.SequenceResult> responseEntity = sequenceServiceFeignClient.leaseRange(request);
+
+            if (responseEntity.getStatusCode().is2xxSuccessful() && responseEntity.getBody() != null) {
+                SequenceResponse.SequenceResult result = responseEntity.getBody();
+                if (Boolean.TRUE.equals(result.getSuccess()) && result.getStartSeq() != null
+                        && result.getCount() != null && result.getCount() > 0) {
+                    log.debug("Leased sequence range for key: {}, startSeq: {}, count: {}",
+                            businessKey, result.getStartSeq(), result.getCount());
+                    return result;
+                } else {
+                    log.error("Sequence service returned error for range key: {}, error: {}",
+                            businessKey, result.getErrorMessage());
+                    return null;
+                }
+            } else {
+                log.error("Sequence range service returned HTTP {}: {}", responseEntity.getStatusCode(), responseEntity.getBody());
+                return null;
+            }
+        } catch (Exception e) {
+            log.error("Failed to lease sequence range for key: {}", businessKey, e);
+            return null;
+        }
+    }
+
     /**
      * 检查序列号服务健康状态
      *
@@ -0,0 +1,349 @@
+package com.vanky.im.message.client;
+
+import com.vanky.im.message.model.dto.SequenceResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 序列号区间缓存
+ * 从 im-sequence 租用连续的序列号区间，在本地内存中逐个分配；
+ * 剩余数量低于低水位时异步预取下一段区间，正常情况下序列号生成不再产生远程调用。
+ *
+ * 单调性：同一key后租到的区间一定大于先租到的区间（服务端HINCRBY + 持久化高水位），
+ * 本地只会按租用顺序消费区间，迟到的旧区间会被丢弃。
+ * 注意：多个 message-server 实例同时为同一key租用区间时，只能保证各实例内单调，
+ * 因此只对单写者的key（默认群会话，按会话顺序消费）启用，其余key仍逐个远程获取。
+ * 私聊不按会话取号，而是为收发双方各取一个 user_ 全局序列号；同一用户的不同会话会落在不同队列、
+ * 由不同实例消费，user_ key 是多写者，本地租用会破坏离线同步依赖的跨实例单调性，所以默认不启用。
+ *
+ * 单写者也会随队列重新分配而换人：队列 A→B→A 迁移后，A 若接着用旧区间，会发出比 B 已发出的更小的序列号。
+ * 因此队列分配变化时清空全部区间（{@link #invalidateAll}，由会话消费者的队列分配策略调用），
+ * 另外超过空闲时间未使用的区间一律作废重新租用，兜底分配回调感知不到的迁移（如长时间停顿后锁过期被接管）；
+ * 空闲的key由后台定时清理，本地缓存不会随会话数无限增长。
+ *
+ * 批量消费时由消费者先按会话调用 {@link #reserve} 预留整批所需数量，不足时一次租够，
+ * 批内逐条取号不会在区间边界上再触发同步远程调用。
+ *
+ * 序列号只保证同一会话内有序，不保证连续：分段计数器由落在同一分段的全部会话共享，
+ * 区间在空闲作废、队列重新分配时未用完的部分直接丢弃（不能归还，归还后再发出会破坏单调性）。
+ * 因此同一会话相邻两条消息的序列号之差可以很大，调用方不得对序列号做减法来计数
+ * （如未读数需统计 seq &gt; last_read_seq 的消息条数，而不是 max_seq - last_read_seq）。
+ *
+ * @author vanky
+ * @since 2025-09-02
+ */
+@Slf4j
+@Component
+public class SequenceRangeCache {
+
+    @Autowired
+    private SequenceClient sequenceClient;
+
+    @Value("${sequence.range.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每次租用的序列号数量
+     */
+    @Value("${sequence.range.lease-size:100}")
+    private int leaseSize;
+
+    /**
+     * 剩余数量低于该值时触发异步预取
+     */
+    @Value("${sequence.range.low-water-mark:20}")
+    private int lowWaterMark;
+
+    /**
+     * 启用区间租用的业务key前缀
+     */
+    @Value("${sequence.range.key-prefixes:group_}")
+    private String[] keyPrefixes;
+
+    /**
+     * 本地缓存的最大key数量，超过后新key直接远程获取
+     */
+    @Value("${sequence.range.max-cached-keys:100000}")
+    private int maxCachedKeys;
+
+    /**
+     * 区间空闲超过该时间（毫秒）后作废，需小于顺序消费队列锁的过期时间（60秒）
+     */
+    @Value("${sequence.range.idle-ttl-ms:30000}")
+    private long idleTtlMs;
+
+    private final ConcurrentHashMap<String, KeyRange> ranges = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService refillExecutor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "sequence-range-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong localHits = new AtomicLong(0);
+    private final AtomicLong remoteLeases = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        long sweepIntervalMs = Math.max(1000L, idleTtlMs);
+        refillExecutor.scheduleWithFixedDelay(this::evictIdle, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取下一个序列号
+     *
+     * @param businessKey 业务key，如 "user_12345" 或 "group_67890"
+     * @return 序列号，失败时返回null
+     */
+    public Long nextSequence(String businessKey) {
+        if (!enabled || !isLeasable(businessKey)) {
+            return sequenceClient.getNextSequence(businessKey);
+        }
+
+        KeyRange range = ranges.get(businessKey);
+        if (range == null) {
+            if (ranges.size() >= maxCachedKeys) {
+                return sequenceClient.getNextSequence(businessKey);
+            }
+            range = ranges.computeIfAbsent(businessKey, KeyRange::new);
+        }
+        return range.next();
+    }
+
+    /**
+     * 为接下来的一批消息预留序列号：本地剩余（含预取区间）不足时一次租用足够的区间作为预取区间，
+     * 之后的 {@link #nextSequence} 全部在本地分配。不启用区间租用的key直接忽略。
+     *
+     * @param businessKey 业务key
+     * @param count 本批需要的序列号数量
+     */
+    public void reserve(String businessKey, int count) {
+        if (!enabled || count <= 0 || !isLeasable(businessKey)) {
+            return;
+        }
+
+        KeyRange range = ranges.get(businessKey);
+        if (range == null) {
+            if (ranges.size() >= maxCachedKeys) {
+                return;
+            }
+            range = ranges.computeIfAbsent(businessKey, KeyRange::new);
+        }
+        range.reserve(count);
+    }
+
+    /**
+     * 作废全部本地区间，之后每个key的下一个序列号都重新远程租用
+     * 消费队列分配变化时调用：本实例可能失去过某些会话的写入权，其间其他实例已发出更大的序列号
+     *
+     * @param reason 原因，仅用于日志
+     */
+    public void invalidateAll(String reason) {
+        int size = ranges.size();
+        ranges.clear();
+        invalidations.incrementAndGet();
+        log.info("序列号区间缓存已清空 - 原因: {}, 清理key数: {}", reason, size);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public String getStatistics() {
+        return String.format("SequenceRangeCache[keys=%d, localHits=%d, remoteLeases=%d, invalidations=%d]",
+                ranges.size(), localHits.get(), remoteLeases.get(), invalidations.get());
+    }
+
+    /**
+     * 清理空闲的key，空闲区间下次使用时本来也会作废
+     */
+    private void evictIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            int before = ranges.size();
+            ranges.values().removeIf(range -> range.isIdle(now));
+            int evicted = before - ranges.size();
+            if (evicted > 0) {
+                log.debug("清理空闲序列号区间 - 清理key数: {}, 剩余key数: {}", evicted, ranges.size());
+            }
+        } catch (Exception e) {
+            log.warn("清理空闲序列号区间失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refillExecutor.shutdownNow();
+    }
+
+    private boolean isLeasable(String businessKey) {
+        if (businessKey == null || keyPrefixes == null) {
+            return false;
+        }
+        for (String prefix : keyPrefixes) {
+            if (!prefix.isEmpty() && businessKey.startsWith(prefix.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 远程租用区间
+     */
+    private SequenceResponse.SequenceResult lease(String businessKey, int count) {
+        remoteLeases.incrementAndGet();
+        return sequenceClient.leaseRange(businessKey, count);
+    }
+
+    /**
+     * 单个key的区间状态：当前区间 [cursor, end] + 预取区间
+     */
+    private class KeyRange {
+
+        private final String businessKey;
+
+        /**
+         * 下一个待分配的序列号，0 表示尚未租用
+         */
+        private long cursor = 0;
+
+        /**
+         * 当前区间的结束序列号（含）
+         */
+        private long end = -1;
+
+        /**
+         * 预取的下一段区间
+         */
+        private SequenceResponse.SequenceResult prefetched;
+
+        /**
+         * 是否有异步预取在进行中
+         */
+        private boolean refilling = false;
+
+        /**
+         * 最近一次分配的时间（毫秒）
+         */
+        private volatile long lastUsedAt = System.currentTimeMillis();
+
+        /**
+         * 区间作废次数，进行中的预取结果在作废后到达时丢弃
+         */
+        private int epoch = 0;
+
+        KeyRange(String businessKey) {
+            this.businessKey = businessKey;
+        }
+
+        boolean isIdle(long now) {
+            return now - lastUsedAt > idleTtlMs;
+        }
+
+        synchronized Long next() {
+            resetIfIdle();
+
+            if (cursor > end) {
+                if (prefetched != null) {
+                    install(prefetched);
+                    prefetched = null;
+                } else {
+                    // 没有可用区间，同步租用
+                    SequenceResponse.SequenceResult result = lease(businessKey, leaseSize);
+                    if (result == null) {
+                        return null;
+                    }
+                    install(result);
+                }
+            } else {
+                localHits.incrementAndGet();
+            }
+
+            long seq = cursor++;
+
+            if (end - seq < lowWaterMark && prefetched == null && !refilling) {
+                refilling = true;
+                int refillEpoch = epoch;
+                refillExecutor.execute(() -> refill(refillEpoch));
+            }
+            return seq;
+        }
+
+        /**
+         * 本地剩余不足 count 个时同步租用一段区间作为预取区间
+         */
+        synchronized void reserve(int count) {
+            resetIfIdle();
+
+            long available = Math.max(0L, end - cursor + 1);
+            if (prefetched != null) {
+                available += prefetched.getCount();
+            }
+            if (available >= count) {
+                return;
+            }
+
+            // 当前区间先用完，缺口部分由新区间补足；原预取区间（若不够）被新区间替换
+            long shortfall = count - Math.max(0L, end - cursor + 1);
+            SequenceResponse.SequenceResult result = lease(businessKey, (int) Math.max(leaseSize, shortfall));
+            if (result != null && result.getStartSeq() > end) {
+                prefetched = result;
+                log.debug("批量预留序列号区间 - key: {}, 预留: {}, 租用: [{}, {}]", businessKey, count,
+                        result.getStartSeq(), result.getStartSeq() + result.getCount() - 1);
+            }
+        }
+
+        /**
+         * 空闲期间写入权可能已迁移到其他实例，剩余区间不再可信
+         */
+        private void resetIfIdle() {
+            long now = System.currentTimeMillis();
+            if (isIdle(now) && (cursor <= end || prefetched != null)) {
+                cursor = 0;
+                end = -1;
+                prefetched = null;
+                epoch++;
+            }
+            lastUsedAt = now;
+        }
+
+        private void install(SequenceResponse.SequenceResult result) {
+            cursor = result.getStartSeq();
+            end = result.getStartSeq() + result.getCount() - 1;
+        }
+
+        /**
+         * 异步预取下一段区间
+         */
+        private void refill(int refillEpoch) {
+            SequenceResponse.SequenceResult result = null;
+            try {
+                result = lease(businessKey, leaseSize);
+            } catch (Exception e) {
+                log.warn("异步预取序列号区间失败 - key: {}", businessKey, e);
+            }
+
+            synchronized (this) {
+                refilling = false;
+                // 预取期间可能已同步租用了更新的区间、批量预留已放入预取区间，或区间已作废，旧区间丢弃以保证单调
+                if (result != null && refillEpoch == epoch && result.getStartSeq() > end && prefetched == null) {
+                    prefetched = result;
+                }
+            }
+        }
+    }
+}
@@ -19,4 +19,7 @@ public interface SequenceServiceFeignClient {
 
     @PostMapping("/next-batch")
     ResponseEntity<SequenceResponse.Batch> getBatchSequences(@RequestBody SequenceRequest.Batch request);
+
+    @PostMapping("/range")
+    ResponseEntity<SequenceResponse.SequenceResult> leaseRange(@RequestBody SequenceRequest.Range request);
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.vanky.im.message.config;
 
 import com.vanky.im.common.constant.TopicConstants;
+import com.vanky.im.message.client.SequenceRangeCache;
 import com.vanky.im.message.mq.ConversationMessageConsumer;
+import com.vanky.im.message.mq.SequenceAwareAllocateStrategy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.MQPushConsumer;
@@ -36,11 +38,17 @@ public class ConversationMessageConsumerConfig {
     @Value("${rocketmq.consumer.max-reconsume-times:3}")
     private int maxReconsumeTimes;
     
-    @Value("${rocketmq.consumer.consume-message-batch-max-size:1}")
+    /**
+     * 每次顺序消费的最大消息数，同一批消息在一个事务中处理（见 ConversationMessageConsumer）
+     */
+    @Value("${rocketmq.consumer.consume-message-batch-max-size:32}")
     private int consumeMessageBatchMaxSize;
     
     @Autowired
     private ConversationMessageConsumer conversationMessageConsumer;
+
+    @Autowired
+    private SequenceRangeCache sequenceRangeCache;
     
     @Bean(name = "conversationMQPushConsumer", destroyMethod = "shutdown")
     public MQPushConsumer conversationMQPushConsumer() throws MQClientException {
@@ -52,6 +60,8 @@ public class ConversationMessageConsumerConfig {
         consumer.setNamesrvAddr(nameServer);
         consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
         consumer.setMessageModel(MessageModel.CLUSTERING);
+        // 平均分配队列；本实例的队列变化时清空序列号区间缓存，避免队列迁回后沿用旧区间
+        consumer.setAllocateMessageQueueStrategy(new SequenceAwareAllocateStrategy(sequenceRangeCache));
         
         // 设置消费线程数
         consumer.setConsumeThreadMin(consumeThreadMin);
@@ -63,7 +73,7 @@ public class ConversationMessageConsumerConfig {
         // 设置最大重试次数
         consumer.setMaxReconsumeTimes(maxReconsumeTimes);
         
-        // 设置批量消费最大消息数
+        // 设置批量消费最大消息数（积压时一批一个事务）
         consumer.setConsumeMessageBatchMaxSize(consumeMessageBatchMaxSize);
         
         try {
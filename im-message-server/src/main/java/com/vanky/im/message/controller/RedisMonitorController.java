@@ -2,6 +2,7 @@ package com.vanky.im.message.controller;
 
 import com.vanky.im.common.model.ApiResponse;
 import com.vanky.im.common.monitor.RedisKeyMonitor;
+import com.vanky.im.common.util.CacheSafetyManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -28,6 +29,9 @@ public class RedisMonitorController {
     @Autowired
     private RedisKeyMonitor redisKeyMonitor;
 
+    @Autowired
+    private CacheSafetyManager cacheSafetyManager;
+
     /**
      * 获取Redis性能指标
      * 
@@ -46,6 +50,22 @@ public class RedisMonitorController {
         }
     }
 
+    /**
+     * 获取本地L1缓存统计（按缓存分区的命中率、加载次数、淘汰次数）
+     * 
+     * @return 本地缓存统计信息
+     */
+    @GetMapping("/local-cache")
+    public ApiResponse<Map<String, Object>> getLocalCacheStatistics() {
+        try {
+            return ApiResponse.success(cacheSafetyManager.getLocalCacheStatistics());
+            
+        } catch (Exception e) {
+            log.error("获取本地缓存统计失败", e);
+            return ApiResponse.error("获取本地缓存统计失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 手动触发大KEY清理
      * 
@@ -0,0 +1,85 @@
+package com.vanky.im.message.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 用户会话未读数增量
+ * 写后聚合器在内存中按 (userId, conversationId) 累积，批量刷入 user_conversation_list
+ *
+ * @author vanky
+ * @since 2025-09-03
+ */
+@Data
+@NoArgsConstructor
+public class UserConversationDelta {
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 会话ID
+     */
+    private String conversationId;
+
+    /**
+     * 未读数增量
+     */
+    private int unreadDelta;
+
+    /**
+     * 增量中最大的用户级seq（user_msg_list.seq），刷库时与行上的 last_read_seq 比较
+     */
+    private Long maxSeq;
+
+    /**
+     * 增量中最大的消息ID
+     */
+    private Long lastMsgId;
+
+    /**
+     * 增量中最新的消息时间
+     */
+    private Date lastUpdateTime;
+
+    public UserConversationDelta(Long userId, String conversationId) {
+        this.userId = userId;
+        this.conversationId = conversationId;
+    }
+
+    /**
+     * 累加一条消息
+     */
+    public void addMessage(Long msgId, Long seq, Date time) {
+        unreadDelta++;
+        if (seq != null && (maxSeq == null || seq > maxSeq)) {
+            maxSeq = seq;
+        }
+        if (msgId != null && (lastMsgId == null || msgId > lastMsgId)) {
+            lastMsgId = msgId;
+        }
+        if (time != null && (lastUpdateTime == null || time.after(lastUpdateTime))) {
+            lastUpdateTime = time;
+        }
+    }
+
+    /**
+     * 合并另一份增量（刷库失败回填时使用）
+     */
+    public void merge(UserConversationDelta other) {
+        unreadDelta += other.unreadDelta;
+        if (other.maxSeq != null && (maxSeq == null || other.maxSeq > maxSeq)) {
+            maxSeq = other.maxSeq;
+        }
+        if (other.lastMsgId != null && (lastMsgId == null || other.lastMsgId > lastMsgId)) {
+            lastMsgId = other.lastMsgId;
+        }
+        if (other.lastUpdateTime != null && (lastUpdateTime == null || other.lastUpdateTime.after(lastUpdateTime))) {
+            lastUpdateTime = other.lastUpdateTime;
+        }
+    }
+}
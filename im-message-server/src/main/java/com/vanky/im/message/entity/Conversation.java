@@ -47,6 +47,18 @@ public class Conversation {
     @TableField(value = "last_msg_time")
     private Date lastMsgTime;
 
+    /**
+     * 会话当前最大seq（群聊读扩散的会话头，成员未读数 = max_seq - last_read_seq）
+     */
+    @TableField(value = "max_seq")
+    private Long maxSeq;
+
+    /**
+     * 会话最新一条消息的ID (外键关联message表)
+     */
+    @TableField(value = "last_msg_id")
+    private Long lastMsgId;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,35 @@
+package com.vanky.im.message.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 会话消息消费记录
+ * 与消息行在同一事务中写入，mq_msg_id 唯一，用于识别 Broker 重投的已落库消息
+ *
+ * @TableName message_consume_record
+ */
+@TableName(value ="message_consume_record")
+@Data
+public class MessageConsumeRecord {
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * RocketMQ消息ID（重投时不变）
+     */
+    @TableField(value = "mq_msg_id")
+    private String mqMsgId;
+
+    /**
+     * 会话ID
+     */
+    @TableField(value = "conversation_id")
+    private String conversationId;
+}
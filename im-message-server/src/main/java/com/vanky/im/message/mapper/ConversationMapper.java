@@ -2,6 +2,9 @@ package com.vanky.im.message.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.vanky.im.message.entity.Conversation;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
 
 /**
  * @author vanky
@@ -11,4 +14,17 @@ import com.vanky.im.message.entity.Conversation;
  */
 public interface ConversationMapper extends BaseMapper<Conversation> {
 
+    /**
+     * 推进群聊会话头（读扩散）：只在新seq更大时更新，保证乱序写入不会回退
+     *
+     * @param conversationId 会话ID
+     * @param maxSeq 最新消息seq
+     * @param lastMsgId 最新消息ID
+     * @param lastMsgTime 最新消息时间
+     * @return 影响行数
+     */
+    int advanceConversationHead(@Param("conversationId") String conversationId,
+                                @Param("maxSeq") Long maxSeq,
+                                @Param("lastMsgId") Long lastMsgId,
+                                @Param("lastMsgTime") Date lastMsgTime);
 } 
\ No newline at end of file
@@ -2,6 +2,9 @@ package com.vanky.im.message.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.vanky.im.message.entity.ConversationMsgList;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * @author vanky
@@ -11,4 +14,11 @@ import com.vanky.im.message.entity.ConversationMsgList;
  */
 public interface ConversationMsgListMapper extends BaseMapper<ConversationMsgList> {
 
+    /**
+     * 多行INSERT批量写入会话消息记录
+     *
+     * @param records 会话消息记录列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("records") List<ConversationMsgList> records);
 } 
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.vanky.im.message.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.vanky.im.message.entity.MessageConsumeRecord;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * @author vanky
+ * @description 针对表【message_consume_record】的数据库操作Mapper
+ * @Entity com.vanky.im.message.entity.MessageConsumeRecord
+ */
+public interface MessageConsumeRecordMapper extends BaseMapper<MessageConsumeRecord> {
+
+    /**
+     * 多行INSERT批量写入消费记录，mq_msg_id 冲突时抛出 DuplicateKeyException 使事务回滚
+     *
+     * @param records 消费记录列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("records") List<MessageConsumeRecord> records);
+
+    /**
+     * 查询消息是否已随某个已提交的事务落库
+     *
+     * @param mqMsgId RocketMQ消息ID
+     * @return 记录数
+     */
+    @Select("SELECT COUNT(*) FROM message_consume_record WHERE mq_msg_id = #{mqMsgId}")
+    int countByMqMsgId(@Param("mqMsgId") String mqMsgId);
+}
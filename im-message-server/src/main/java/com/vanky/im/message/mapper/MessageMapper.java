@@ -2,6 +2,9 @@ package com.vanky.im.message.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.vanky.im.message.entity.Message;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 统一消息表数据库操作Mapper
@@ -17,5 +20,12 @@ import com.vanky.im.message.entity.Message;
 // {{START MODIFICATIONS}}
 public interface MessageMapper extends BaseMapper<Message> {
 
+    /**
+     * 多行INSERT批量写入消息
+     *
+     * @param messages 消息列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("messages") List<Message> messages);
 }
 // {{END MODIFICATIONS}}
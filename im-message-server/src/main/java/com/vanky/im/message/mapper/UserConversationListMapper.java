@@ -2,9 +2,11 @@ package com.vanky.im.message.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.vanky.im.message.dto.ConversationOverviewDTO;
+import com.vanky.im.message.dto.UserConversationDelta;
 import com.vanky.im.message.entity.UserConversationList;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -23,4 +25,33 @@ public interface UserConversationListMapper extends BaseMapper<UserConversationL
      * @return 会话概览列表
      */
     List<ConversationOverviewDTO> selectConversationOverviews(@Param("userId") Long userId, @Param("limit") Integer limit);
+
+    /**
+     * 批量累加未读数增量（INSERT ... ON DUPLICATE KEY UPDATE）
+     * 依赖 (user_id, conversation_id) 唯一索引；last_msg_id / last_update_time 只前进不后退，
+     * 增量的最大seq不超过行上的 last_read_seq 时（消息已被读过）不累加未读数
+     *
+     * @param deltas 增量列表
+     * @return 影响行数
+     */
+    int batchUpsertUnreadDeltas(@Param("deltas") List<UserConversationDelta> deltas);
+
+    /**
+     * 批量补建成员会话行，已存在的行保持不变（INSERT ... ON DUPLICATE KEY UPDATE 空操作）
+     * 并发补建撞上唯一索引时不报错，不会把外层事务标记为回滚
+     *
+     * @param rows 成员会话行
+     * @return 影响行数
+     */
+    int batchInsertIfAbsent(@Param("rows") List<UserConversationList> rows);
+
+    /**
+     * 查询尚未计入未读数的私聊消息（崩溃恢复）
+     * 以 user_conversation_list.last_msg_id 为水位，统计时间窗口内 msg_id 大于水位且 seq 大于已读序列号的 user_msg_list 记录
+     *
+     * @param since 窗口起始时间（包含）
+     * @param until 窗口结束时间（不包含）
+     * @return 按 (user_id, conversation_id) 聚合的待补偿增量
+     */
+    List<UserConversationDelta> selectUnappliedUnreadDeltas(@Param("since") Date since, @Param("until") Date until);
 }
\ No newline at end of file
@@ -54,4 +54,12 @@ public interface UserMsgListMapper extends BaseMapper<UserMsgList> {
     List<UserMsgList> selectUndeliveredByUserIdAndSeqRange(@Param("userId") String userId,
                                                           @Param("fromSeq") Long fromSeq,
                                                           @Param("limit") Integer limit);
+
+    /**
+     * 多行INSERT批量写入用户消息记录
+     *
+     * @param records 用户消息记录列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("records") List<UserMsgList> records);
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.vanky.im.message.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 群成员快照
+ * 进程内按群缓存的紧凑结构：成员ID以升序 String[] 保存（ID保持原样，不做数字转换），
+ * 成员判断为二分查找 O(log n)，不再为每个成员保存集合节点；ID字符串经 intern 后在各群快照间共享。
+ * version 为加载时Redis中的群成员版本号，成员变更时递增，用于发现本地快照是否过期。
+ * 成员数据不可变，可在多个线程间共享；一条消息的处理过程中只解析一次并贯穿整个流程。
+ *
+ * @author vanky
+ * @create 2025/9/7
+ */
+public final class GroupMemberSnapshot {
+
+    private final String groupId;
+
+    private final long version;
+
+    private final String[] memberIds;
+
+    /**
+     * 成员集合的64位指纹，构建时计算一次；成员数不变的换人（一人退群一人入群）也会改变指纹
+     */
+    private final long membersHash;
+
+    /**
+     * 最近一次确认版本号未变化的时间（毫秒）
+     */
+    private volatile long verifiedAt;
+
+    private GroupMemberSnapshot(String groupId, long version, String[] memberIds) {
+        this.groupId = groupId;
+        this.version = version;
+        this.memberIds = memberIds;
+        this.membersHash = hash(memberIds);
+        this.verifiedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 由成员ID集合构建快照，成员ID按原字符串保存，只跳过 null 和空串
+     *
+     * @param groupId 群组ID
+     * @param version 群成员版本号
+     * @param members 成员ID
+     * @return 快照
+     */
+    public static GroupMemberSnapshot of(String groupId, long version, Collection<?> members) {
+        String[] ids = new String[members.size()];
+        int count = 0;
+        for (Object member : members) {
+            if (member == null) {
+                continue;
+            }
+            String id = member.toString();
+            if (!id.isEmpty()) {
+                ids[count++] = id.intern();
+            }
+        }
+
+        Arrays.sort(ids, 0, count);
+        // 去重
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || !ids[i].equals(ids[distinct - 1])) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return new GroupMemberSnapshot(groupId, version, distinct == ids.length ? ids : Arrays.copyOf(ids, distinct));
+    }
+
+    /**
+     * 空群（群不存在或无成员）
+     */
+    public static GroupMemberSnapshot empty(String groupId, long version) {
+        return new GroupMemberSnapshot(groupId, version, new String[0]);
+    }
+
+    /**
+     * 判断用户是否为群成员，O(log n)
+     */
+    public boolean contains(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return false;
+        }
+        return Arrays.binarySearch(memberIds, userId) >= 0;
+    }
+
+    public int size() {
+        return memberIds.length;
+    }
+
+    public boolean isEmpty() {
+        return memberIds.length == 0;
+    }
+
+    /**
+     * 成员ID列表的只读视图（按ID字典序升序），直接包装内部数组，不额外复制
+     */
+    public List<String> getMemberIds() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return memberIds[index];
+            }
+
+            @Override
+            public int size() {
+                return memberIds.length;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && GroupMemberSnapshot.this.contains((String) o);
+            }
+        };
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getMembersHash() {
+        return membersHash;
+    }
+
+    public long getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    /**
+     * 记录版本号校验通过
+     */
+    public void markVerified(long now) {
+        this.verifiedAt = now;
+    }
+
+    private static long hash(String[] ids) {
+        long h = 1125899906842597L;
+        for (String id : ids) {
+            for (int i = 0; i < id.length(); i++) {
+                h = 31 * h + id.charAt(i);
+            }
+            // 分隔相邻ID，避免 "1","23" 与 "12","3" 得到相同指纹
+            h = 31 * h + 0x1F;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupMemberSnapshot{groupId='" + groupId + "', version=" + version + ", size=" + memberIds.length + '}';
+    }
+}
@@ -31,4 +31,16 @@ public class SequenceRequest {
             this.keys = keys;
         }
     }
-}
\ No newline at end of file
+
+    @Data
+    @NoArgsConstructor
+    public static class Range {
+        private String key;
+        private Integer count;
+
+        public Range(String key, Integer count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.vanky.im.message.mq;
 
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.message.client.SequenceRangeCache;
+import com.vanky.im.message.entity.MessageConsumeRecord;
 import com.vanky.im.message.handler.ImMessageHandler;
+import com.vanky.im.message.mapper.MessageConsumeRecordMapper;
+import com.vanky.im.message.service.impl.MessageBatchWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
@@ -9,14 +13,28 @@ import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 统一会话消息消费者
  * 处理私聊和群聊消息的统一消费逻辑
  * 使用顺序消费模式确保同一会话内消息的严格顺序性
  * 使用统一消息分发器处理消息路由和异常处理
+ *
+ * 批量消费：一次拉到的多条消息（同一队列，按队列内顺序）在一个事务中依次处理，
+ * 各处理器的 @Transactional 加入该事务，三张消息表的行由 MessageBatchWriter 在提交前合并为多行INSERT，
+ * 积压时每批只提交一次。整批失败会回滚，再逐条各自开事务重放，把问题消息隔离出来；
+ * 逐条重放仍失败时挂起队列重试。
+ * 每条消息的消费记录（RocketMQ消息ID唯一）与消息行在同一事务中写入：已提交的消息被重投时唯一键冲突、事务回滚，
+ * 失败后确认消费记录已存在即视为已处理并跳过，不会重复落库和推送（Redis中的 client_seq 幂等记录只用于识别客户端重发）。
+ * Redis缓存写入、推送和发送回执由各处理器注册到事务提交之后，回滚的批次不会对外发出任何消息，也不会在Redis中留下条目。
+ *
+ * 事务开始前按会话统计本批消息数，向 SequenceRangeCache 一次预留群会话的序列号区间。
+ * 私聊的序列号是收发双方的 user_ 全局序列号，多个实例会同时写同一个key，不走区间租用，也就不参与预留。
  */
 @Slf4j
 @Component
@@ -25,49 +43,141 @@ public class ConversationMessageConsumer implements MessageListenerOrderly {
     @Autowired
     private ImMessageHandler messageHandler;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SequenceRangeCache sequenceRangeCache;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private MessageConsumeRecordMapper messageConsumeRecordMapper;
+
     @Override
     public ConsumeOrderlyStatus consumeMessage(
             List<MessageExt> messages,
             ConsumeOrderlyContext context) {
+        if (messages.size() > 1) {
+            reserveSequences(messages);
+        }
+
         try {
-            for (MessageExt messageExt : messages) {
-                // 设置处理开始时间
-                MessageProcessingTimeHolder.setStartTime(System.currentTimeMillis());
-                // 解析消息体
-                byte[] body = messageExt.getBody();
-                if (body == null || body.length == 0) {
-                    log.error("消息体为空: {}", messageExt);
-                    continue;
+            transactionTemplate.executeWithoutResult(status -> messages.forEach(this::handleMessage));
+            return ConsumeOrderlyStatus.SUCCESS;
+        } catch (Exception e) {
+            if (messages.size() == 1) {
+                if (isAlreadyCommitted(messages.get(0))) {
+                    return ConsumeOrderlyStatus.SUCCESS;
                 }
+                log.error("消费消息时发生错误", e);
+                // 暂停当前队列一段时间后重试
+                return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            }
+            log.warn("批量消费失败，整批已回滚，改为逐条处理 - 消息数: {}", messages.size(), e);
+        }
 
-                // 将字节数组转换为ChatMessage对象
-                ChatMessage chatMessage = ChatMessage.parseFrom(body);
-
-                // 获取会话ID（从消息Key中）
-                String conversationId = getConversationId(messageExt);
-                if (conversationId == null || conversationId.isEmpty()) {
-                    log.error("会话消息缺少会话ID: {}", messageExt);
+        // 逐条处理，每条消息一个事务
+        for (MessageExt messageExt : messages) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> handleMessage(messageExt));
+            } catch (Exception e) {
+                if (isAlreadyCommitted(messageExt)) {
                     continue;
                 }
+                log.error("消费消息时发生错误 - MQ消息ID: {}, 会话ID: {}",
+                        messageExt.getMsgId(), getConversationId(messageExt), e);
+                // 暂停当前队列一段时间后重试
+                return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            }
+        }
+        return ConsumeOrderlyStatus.SUCCESS;
+    }
 
-                // 使用统一消息分发器处理消息
-                try {
-                    messageHandler.handleMessage(chatMessage, conversationId);
-                } finally {
-                    // 清理时间戳，避免内存泄漏
-                    MessageProcessingTimeHolder.clear();
-                }
+    /**
+     * 解析并处理单条消息，运行在调用方开启的事务中
+     * @param messageExt RocketMQ消息
+     */
+    private void handleMessage(MessageExt messageExt) {
+        // 设置处理开始时间
+        MessageProcessingTimeHolder.setStartTime(System.currentTimeMillis());
+        try {
+            // 解析消息体
+            byte[] body = messageExt.getBody();
+            if (body == null || body.length == 0) {
+                log.error("消息体为空: {}", messageExt);
+                return;
+            }
+
+            // 将字节数组转换为ChatMessage对象
+            ChatMessage chatMessage = ChatMessage.parseFrom(body);
+
+            // 获取会话ID（从消息Key中）
+            String conversationId = getConversationId(messageExt);
+            if (conversationId == null || conversationId.isEmpty()) {
+                log.error("会话消息缺少会话ID: {}", messageExt);
+                return;
+            }
+
+            // 消费记录与消息行同一事务提交，重投的已落库消息在提交时唯一键冲突
+            MessageConsumeRecord consumeRecord = new MessageConsumeRecord();
+            consumeRecord.setMqMsgId(messageExt.getMsgId());
+            consumeRecord.setConversationId(conversationId);
+            messageBatchWriter.addConsumeRecord(consumeRecord);
+
+            // 使用统一消息分发器处理消息
+            messageHandler.handleMessage(chatMessage, conversationId);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("处理会话消息失败: " + messageExt.getMsgId(), e);
+        } finally {
+            // 清理时间戳，避免内存泄漏
+            MessageProcessingTimeHolder.clear();
+        }
+    }
+
+    /**
+     * 消息处理失败后确认是否已由之前某次已提交的消费落库（Broker 重投），是则跳过
+     * 查询失败时按未落库处理，挂起队列重试
+     * @param messageExt RocketMQ消息
+     * @return 是否已落库
+     */
+    private boolean isAlreadyCommitted(MessageExt messageExt) {
+        try {
+            if (messageConsumeRecordMapper.countByMqMsgId(messageExt.getMsgId()) > 0) {
+                log.info("消息已在之前的消费中落库，跳过重投 - MQ消息ID: {}, 会话ID: {}",
+                        messageExt.getMsgId(), getConversationId(messageExt));
+                return true;
             }
-            
-            return ConsumeOrderlyStatus.SUCCESS;
         } catch (Exception e) {
-            log.error("消费消息时发生错误", e);
-            // 暂停当前队列一段时间后重试
-            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            log.warn("查询消费记录失败 - MQ消息ID: {}", messageExt.getMsgId(), e);
         }
+        return false;
     }
-    
 
+    /**
+     * 按会话为本批消息预留序列号，批内取号不再在区间边界上同步远程租用
+     * 预留失败不影响消费，取号时按原方式租用
+     * @param messages 本批消息
+     */
+    private void reserveSequences(List<MessageExt> messages) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (MessageExt messageExt : messages) {
+            String conversationId = getConversationId(messageExt);
+            if (conversationId != null && !conversationId.isEmpty()) {
+                counts.merge(conversationId, 1, Integer::sum);
+            }
+        }
+        counts.forEach((conversationId, count) -> {
+            try {
+                sequenceRangeCache.reserve(conversationId, count);
+            } catch (Exception e) {
+                log.warn("批量预留序列号失败，逐条取号 - 会话ID: {}, 数量: {}", conversationId, count, e);
+            }
+        });
+    }
 
     /**
      * 获取会话ID
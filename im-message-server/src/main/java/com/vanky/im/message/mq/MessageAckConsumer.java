@@ -1,8 +1,12 @@
 package com.vanky.im.message.mq;
 
 import com.vanky.im.common.constant.MessageTypeConstants;
+import com.vanky.im.common.constant.TopicConstants;
+import com.vanky.im.common.protocol.AckBatch;
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.message.handler.ImMessageHandler;
+import com.vanky.im.message.processor.MessageAckProcessor;
+import com.vanky.im.message.service.MessageStatusService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
@@ -11,28 +15,40 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * ACK消息专用消费者
- * 使用并发消费模式，专门处理各种ACK确认消息
- * 
+ * 使用并发消费模式，专门处理各种ACK确认消息；不保证同一用户ACK的处理顺序，各类ACK的处理均与顺序无关
+ *
  * @author vanky
  * @create 2025-08-09
- * @description 专门处理ACK消息的消费者，与业务消息分离，避免竞争条件
+ * @description 专门处理ACK消息的消费者，与业务消息分离，避免竞争条件。
+ *              网关投递的 AckBatch 批次会被展开，本次拉取到的所有单条消息ACK合并为一次批量状态更新，
+ *              其余类型（群聊会话ACK、已读回执）逐条交给统一消息处理器。
  */
 @Slf4j
 @Component
 public class MessageAckConsumer implements MessageListenerConcurrently {
-    
+
     @Autowired
     private ImMessageHandler messageHandler;
-    
+
+    @Autowired
+    private MessageStatusService messageStatusService;
+
+    @Autowired
+    private MessageAckProcessor messageAckProcessor;
+
     @Override
     public ConsumeConcurrentlyStatus consumeMessage(
             List<MessageExt> messages,
             ConsumeConcurrentlyContext context) {
         try {
+            // 本次消费中需要标记为已送达的消息ID
+            List<String> deliveredMsgIds = new ArrayList<>();
+
             for (MessageExt messageExt : messages) {
                 // 解析消息体
                 byte[] body = messageExt.getBody();
@@ -40,24 +56,25 @@ public class MessageAckConsumer implements MessageListenerConcurrently {
                     log.error("ACK消息体为空: {}", messageExt);
                     continue;
                 }
-                
-                // 将字节数组转换为ChatMessage对象
-                ChatMessage chatMessage = ChatMessage.parseFrom(body);
-                
-                // 验证是否为ACK类型消息
-                if (!isAckMessage(chatMessage.getType())) {
-                    log.error("非ACK消息类型被路由到ACK消费者 - 消息类型: {}, 消息ID: {}", 
-                            chatMessage.getType(), chatMessage.getUid());
+
+                if (TopicConstants.TAG_ACK_BATCH.equals(messageExt.getTags())) {
+                    AckBatch batch = AckBatch.parseFrom(body);
+                    for (ChatMessage ack : batch.getAcksList()) {
+                        dispatch(ack, deliveredMsgIds);
+                    }
+                    log.debug("ACK批次展开完成 - 网关: {}, 条数: {}", batch.getGatewayId(), batch.getAcksCount());
                     continue;
                 }
-                
-                // 处理ACK消息（ACK消息不需要会话ID）
-                messageHandler.handleMessage(chatMessage, null);
-                
-                log.debug("ACK消息处理完成 - 类型: {}, 消息ID: {}, 用户: {}", 
-                        chatMessage.getType(), chatMessage.getUid(), chatMessage.getFromId());
+
+                // 将字节数组转换为ChatMessage对象
+                dispatch(ChatMessage.parseFrom(body), deliveredMsgIds);
+            }
+
+            if (!deliveredMsgIds.isEmpty()) {
+                int updated = messageStatusService.batchUpdateMessageDelivered(deliveredMsgIds);
+                log.debug("ACK批量更新消息状态完成 - ACK数: {}, 更新记录数: {}", deliveredMsgIds.size(), updated);
             }
-            
+
             return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
         } catch (Exception e) {
             log.error("ACK消息消费时发生错误", e);
@@ -65,16 +82,49 @@ public class MessageAckConsumer implements MessageListenerConcurrently {
             return ConsumeConcurrentlyStatus.RECONSUME_LATER;
         }
     }
-    
+
+    /**
+     * 分发单条ACK：消息ACK收集到批量更新列表，其余类型交给统一消息处理器
+     *
+     * @param chatMessage ACK消息
+     * @param deliveredMsgIds 待批量更新为已送达的消息ID
+     */
+    private void dispatch(ChatMessage chatMessage, List<String> deliveredMsgIds) throws Exception {
+        // 验证是否为ACK类型消息
+        if (!isAckMessage(chatMessage.getType())) {
+            log.error("非ACK消息类型被路由到ACK消费者 - 消息类型: {}, 消息ID: {}",
+                    chatMessage.getType(), chatMessage.getUid());
+            return;
+        }
+
+        if (chatMessage.getType() == MessageTypeConstants.MESSAGE_ACK) {
+            // 与单条处理相同的校验，不合格的条目不进入批量更新
+            if (!messageAckProcessor.validateAckMessage(chatMessage)) {
+                log.warn("ACK消息验证失败 - 消息ID: {}, 序列号: {}, 用户: {}",
+                        chatMessage.getUid(), chatMessage.getSeq(), chatMessage.getFromId());
+                return;
+            }
+            deliveredMsgIds.add(chatMessage.getUid());
+            return;
+        }
+
+        // 处理ACK消息（ACK消息不需要会话ID）
+        messageHandler.handleMessage(chatMessage, null);
+
+        log.debug("ACK消息处理完成 - 类型: {}, 消息ID: {}, 用户: {}",
+                chatMessage.getType(), chatMessage.getUid(), chatMessage.getFromId());
+    }
+
     /**
      * 判断是否为ACK类型消息
-     * 
+     *
      * @param messageType 消息类型
      * @return true-ACK消息，false-其他消息
      */
     private boolean isAckMessage(int messageType) {
         return messageType == MessageTypeConstants.MESSAGE_ACK ||
                messageType == MessageTypeConstants.BATCH_MESSAGE_ACK ||
-               messageType == MessageTypeConstants.GROUP_CONVERSATION_ACK;
+               messageType == MessageTypeConstants.GROUP_CONVERSATION_ACK ||
+               messageType == MessageTypeConstants.MESSAGE_READ_RECEIPT;
     }
 }
@@ -0,0 +1,62 @@
+package com.vanky.im.message.mq;
+
+import com.vanky.im.message.client.SequenceRangeCache;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueAveragely;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话消息消费者的队列分配策略
+ * 分配算法与默认的平均分配相同，额外在本实例分到的队列发生变化时清空序列号区间缓存：
+ * 会话按队列顺序消费，队列迁走再迁回期间其他实例可能已为同一会话发出更大的序列号，旧区间不能继续使用。
+ *
+ * @author vanky
+ * @create 2025/9/9
+ */
+@Slf4j
+public class SequenceAwareAllocateStrategy implements AllocateMessageQueueStrategy {
+
+    private final AllocateMessageQueueStrategy delegate = new AllocateMessageQueueAveragely();
+
+    private final SequenceRangeCache sequenceRangeCache;
+
+    /**
+     * 每个主题上次分到的队列
+     */
+    private final Map<String, Set<MessageQueue>> lastAllocated = new ConcurrentHashMap<>();
+
+    public SequenceAwareAllocateStrategy(SequenceRangeCache sequenceRangeCache) {
+        this.sequenceRangeCache = sequenceRangeCache;
+    }
+
+    @Override
+    public List<MessageQueue> allocate(String consumerGroup, String currentCID, List<MessageQueue> mqAll,
+                                       List<String> cidAll) {
+        List<MessageQueue> allocated = delegate.allocate(consumerGroup, currentCID, mqAll, cidAll);
+        if (mqAll == null || mqAll.isEmpty()) {
+            return allocated;
+        }
+
+        String topic = mqAll.get(0).getTopic();
+        Set<MessageQueue> current = new HashSet<>(allocated);
+        Set<MessageQueue> previous = lastAllocated.put(topic, current);
+        if (previous != null && !previous.equals(current)) {
+            // 在新队列开始消费之前清空，重新分到的会话一定从新租用的区间取号
+            sequenceRangeCache.invalidateAll("队列分配变化 - 主题: " + topic
+                    + ", 队列数: " + previous.size() + " -> " + current.size());
+        }
+        return allocated;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+}
@@ -1,17 +1,18 @@
 package com.vanky.im.message.processor;
 
 import com.vanky.im.common.constant.RedisKeyConstants;
-import com.vanky.im.common.constant.SessionConstants;
-import com.vanky.im.common.model.UserSession;
 import com.vanky.im.common.protocol.ChatMessage;
 import com.vanky.im.message.constant.MessageConstants;
 import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.message.entity.ConversationMsgList;
 import com.vanky.im.message.entity.GroupMessage;
 import com.vanky.im.message.entity.Message;
+import com.vanky.im.message.model.GroupMemberSnapshot;
 import com.vanky.im.message.service.*;
+import com.vanky.im.message.service.impl.MessageBatchWriter;
+import com.vanky.im.message.util.AfterCommitExecutor;
 import com.vanky.im.message.util.MessageConverter;
-import com.vanky.im.message.client.SequenceClient;
+import com.vanky.im.message.client.SequenceRangeCache;
 import com.vanky.im.common.util.SnowflakeIdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 /**
  * 群聊消息处理器
  * 实现读扩散模式的消息存储逻辑
+ * 群成员每条消息只解析一次（{@link GroupMemberSnapshot}），成员校验、计数、会话视图和在线推送共用同一份快照
  */
 @Component
 public class GroupMessageProcessor {
@@ -39,11 +41,8 @@ public class GroupMessageProcessor {
     private GroupMessageService groupMessageService;
 
     @Autowired
-    private MessageService messageService;
-    
-    @Autowired
-    private ConversationMsgListService conversationMsgListService;
-    
+    private MessageBatchWriter messageBatchWriter;
+
     @Autowired
     private ConversationService conversationService;
     
@@ -72,7 +71,7 @@ public class GroupMessageProcessor {
     private MessageIdempotentService messageIdempotentService;
 
     @Autowired
-    private SequenceClient sequenceClient;
+    private SequenceRangeCache sequenceRangeCache;
 
     @Autowired
     private MessageSendReceiptService messageSendReceiptService;
@@ -109,14 +108,18 @@ public class GroupMessageProcessor {
                 if (idempotentResult != null) {
                     log.info("检测到重复群聊消息，重新发送ACK - 客户端序列号: {}, 消息ID: {}, 序列号: {}",
                             clientSeq, idempotentResult.getMsgId(), idempotentResult.getSeq());
-                    // 重新发送ACK给客户端
-                    resendReceiptForDuplicateMessage(chatMessage, idempotentResult);
+                    // 重新发送ACK给客户端（重复的可能是同一事务中尚未提交的消息，同样等提交后再发）
+                    ChatMessage duplicate = chatMessage;
+                    AfterCommitExecutor.execute("重复群聊消息回执", () -> resendReceiptForDuplicateMessage(duplicate, idempotentResult));
                     return;
                 }
             }
             
+            // 1. 解析群成员快照（本条消息后续步骤共用）
+            GroupMemberSnapshot groupMembers = groupMemberService.getGroupMembers(groupId);
+
             // 2. 校验发送者是否为群成员
-            if (!groupMemberService.isGroupMember(groupId, fromUserId)) {
+            if (!groupMembers.contains(fromUserId)) {
                 log.warn("非群成员发送消息 - 用户ID: {}, 群组ID: {}", fromUserId, groupId);
                 return;
             }
@@ -131,7 +134,6 @@ public class GroupMessageProcessor {
                     .build();
             
             // 4. 获取群成员数量
-            List<String> groupMembers = groupMemberService.getGroupMemberIds(groupId);
             int memberCount = groupMembers.size();
             
             // 5. 处理群聊会话信息（创建或更新）
@@ -140,7 +142,7 @@ public class GroupMessageProcessor {
                       conversationId, groupId, memberCount);
             
             // 6. 使用新的序列号服务生成会话级序列号
-            Long seq = sequenceClient.getNextSequence(conversationId);
+            Long seq = sequenceRangeCache.nextSequence(conversationId);
             if (seq == null) {
                 log.error("序列号服务生成失败 - 会话ID: {}", conversationId);
                 throw new RuntimeException("序列号服务生成会话序列号失败");
@@ -148,27 +150,27 @@ public class GroupMessageProcessor {
             log.debug("生成会话序列号 - 会话ID: {}, Seq: {}", conversationId, seq);
             
             // 7. 数据入库（读扩散模式）
-            saveMessageData(chatMessage, msgId, conversationId, seq);
+            saveMessageData(chatMessage, msgId, conversationId, seq, memberCount);
             
-            // 8. 更新缓存
-            updateCache(chatMessage, msgId, conversationId, seq);
-
             // 8. 简化更新会话视图（读扩散模式）
-            updateGroupConversationView(chatMessage, groupId, msgId);
+            updateGroupConversationView(conversationId, fromUserId, groupMembers, msgId, seq);
 
-            // 9. 推送轻量级通知给在线群成员（读扩散模式）
-            pushNotificationToOnlineMembers(chatMessage, groupId, seq, msgId);
+            // 9. 更新缓存和发送方的会话级seq（事务提交后执行，整批回滚或重投时Redis中不会留下未落库的消息；先于推送注册）
+            ChatMessage committedMessage = chatMessage;
+            AfterCommitExecutor.execute("群聊消息缓存", () -> updateCache(committedMessage, msgId, conversationId, seq));
+            AfterCommitExecutor.execute("发送方会话seq更新", () -> updateSenderConversationSeq(fromUserId, conversationId, seq));
 
-            // 10. 更新发送方的会话级seq（发送成功后更新）
-            updateSenderConversationSeq(fromUserId, conversationId, seq);
+            // 10. 推送轻量级通知给在线群成员（读扩散模式，事务提交后执行）
+            AfterCommitExecutor.execute("群聊通知推送", () ->
+                    pushNotificationToOnlineMembers(committedMessage, groupMembers, seq, msgId));
 
-            // 11. 记录幂等性结果（仅对包含client_seq的消息）
+            // 11. 记录幂等性结果（仅对包含client_seq的消息，事务提交后写入）
             if (clientSeq != null && !clientSeq.trim().isEmpty()) {
                 messageIdempotentService.recordIdempotent(clientSeq, msgId, seq);
             }
 
-            // 12. 发送消息发送确认回执给发送方（事务提交后异步执行）
-            sendGroupReceiptToSenderAsync(chatMessage, msgId, seq);
+            // 12. 发送消息发送确认回执给发送方（事务提交后执行）
+            AfterCommitExecutor.execute("群聊消息回执", () -> sendGroupReceiptToSenderAsync(committedMessage, msgId, seq));
 
             log.info("群聊消息处理完成 - 会话ID: {}, 消息ID: {}, Seq: {}", conversationId, msgId, seq);
             
@@ -182,13 +184,16 @@ public class GroupMessageProcessor {
     /**
      * 保存消息数据到数据库（纯读扩散模式）
      * 群聊采用纯读扩散模式，只保存消息内容和会话索引，不为每个用户创建记录
+     * 两行都交给批量写入器，在事务提交前与同批其他消息合并为多行INSERT
      *
      * @param chatMessage 原始消息
      * @param msgId 消息ID
      * @param conversationId 会话ID
      * @param seq 序列号
+     * @param memberCount 群成员数量
      */
-    private void saveMessageData(ChatMessage chatMessage, String msgId, String conversationId, Long seq) {
+    private void saveMessageData(ChatMessage chatMessage, String msgId, String conversationId, Long seq,
+                                 int memberCount) {
         // {{CHENGQI:
         // Action: Modified; Timestamp: 2025-08-02 21:41:41 +08:00; Reason: 改造为纯读扩散模式，移除写扩散逻辑，只保存消息内容和会话索引;
         // }}
@@ -196,7 +201,7 @@ public class GroupMessageProcessor {
         // 1. 保存消息主体到统一的message表（读扩散：只保存一份消息内容）
         Message message = MessageConverter.convertToMessage(chatMessage, msgId, conversationId, MessageTypeConstants.MSG_TYPE_GROUP);
         message.setStatus(MessageConstants.MESSAGE_STATUS_SENT); // 初始状态为已发送，等待客户端确认
-        messageService.save(message);
+        messageBatchWriter.addMessage(message);
         log.debug("保存群聊消息主体完成 - 消息ID: {}, 消息类型: {}", msgId, MessageTypeConstants.MSG_TYPE_GROUP);
 
         // 2. 保存一条会话消息记录到conversation_msg_list表（读扩散：群公告栏，只插入一条记录）
@@ -204,15 +209,13 @@ public class GroupMessageProcessor {
         conversationMsgList.setConversationId(conversationId);
         conversationMsgList.setMsgId(Long.valueOf(msgId)); // 直接使用雪花算法生成的ID
         conversationMsgList.setSeq(seq);
-        conversationMsgListService.save(conversationMsgList);
+        messageBatchWriter.addConversationMsg(conversationMsgList);
         log.debug("保存会话消息记录完成 - 会话ID: {}, Seq: {}", conversationId, seq);
 
         // 3. 读扩散模式：不再为每个群成员创建user_msg_list记录
         // 群聊消息的读取将通过conversation_msg_list表进行，用户主动拉取
-        String groupId = chatMessage.getToId();
-        List<String> groupMemberIds = groupMemberService.getGroupMemberIds(groupId);
         log.info("群聊消息存储完成（读扩散模式） - 群组ID: {}, 成员数量: {}, 写入成本: O(1)",
-                groupId, groupMemberIds.size());
+                chatMessage.getToId(), memberCount);
         // {{END MODIFICATIONS}}
     }
     
@@ -240,6 +243,7 @@ public class GroupMessageProcessor {
     /**
      * 为特定在线用户缓存消息
      * 这是读扩散模式的优化，为活跃用户提前缓存消息索引
+     * 调用方传入的已是在线成员，不再逐个检查会话
      * 
      * @param userId 用户ID
      * @param msgId 消息ID
@@ -247,15 +251,8 @@ public class GroupMessageProcessor {
      */
     private void cacheMessageForUser(String userId, String msgId, Long seq) {
         try {
-            // 检查用户是否在线
-            String userSessionKey = SessionConstants.getUserSessionKey(userId);
-            Boolean isOnline = redisTemplate.hasKey(userSessionKey);
-            
-            // 如果用户在线，为其缓存消息
-            if (Boolean.TRUE.equals(isOnline)) {
-                redisService.addToUserMsgList(userId, msgId, seq, USER_MSG_CACHE_MAX_SIZE);
-                log.debug("为在线用户缓存消息 - 用户ID: {}, 消息ID: {}, Seq: {}", userId, msgId, seq);
-            }
+            redisService.addToUserMsgList(userId, msgId, seq, USER_MSG_CACHE_MAX_SIZE);
+            log.debug("为在线用户缓存消息 - 用户ID: {}, 消息ID: {}, Seq: {}", userId, msgId, seq);
         } catch (Exception e) {
             // 缓存错误不影响主要流程
             log.warn("为用户缓存消息失败 - 用户ID: {}, 消息ID: {}", userId, msgId, e);
@@ -263,31 +260,24 @@ public class GroupMessageProcessor {
     }
     
     /**
-     * 简化更新群聊会话视图（读扩散模式）
-     * 只更新last_update_time，不计算unread_count
+     * 更新群聊会话视图
+     * 推进会话头（max_seq/last_msg_id），成员行按群规模选择写扩散或读扩散策略
      *
-     * @param chatMessage 原始消息
-     * @param groupId 群组ID
+     * @param conversationId 会话ID
+     * @param fromUserId 发送方ID
+     * @param groupMembers 本条消息已解析的群成员快照
      * @param msgId 消息ID
+     * @param seq 会话序列号
      */
-    private void updateGroupConversationView(ChatMessage chatMessage, String groupId, String msgId) {
+    private void updateGroupConversationView(String conversationId, String fromUserId,
+                                             GroupMemberSnapshot groupMembers, String msgId, Long seq) {
         try {
-            // {{CHENGQI:
-            // Action: Added; Timestamp: 2025-08-02 22:08:11 +08:00; Reason: 添加简化的群聊会话视图更新，支持读扩散模式;
-            // }}
-            // {{START MODIFICATIONS}}
-            // 获取群成员列表
-            List<String> groupMemberIds = groupMemberService.getGroupMemberIds(groupId);
-
-            // 简化更新群聊会话视图
             groupConversationUpdateService.updateGroupConversationView(
-                    "group_" + groupId, groupMemberIds, msgId);
-
-            log.debug("群聊会话视图更新完成 - 群组ID: {}, 成员数: {}", groupId, groupMemberIds.size());
-            // {{END MODIFICATIONS}}
+                    conversationId, fromUserId, groupMembers, msgId, seq);
 
+            log.debug("群聊会话视图更新完成 - 会话ID: {}, 成员数: {}", conversationId, groupMembers.size());
         } catch (Exception e) {
-            log.error("更新群聊会话视图失败 - 群组ID: {}", groupId, e);
+            log.error("更新群聊会话视图失败 - 会话ID: {}", conversationId, e);
             // 不抛出异常，不影响主流程
         }
     }
@@ -297,48 +287,29 @@ public class GroupMessageProcessor {
      * 不推送完整消息，只推送通知让客户端主动拉取
      *
      * @param chatMessage 原始消息
-     * @param groupId 群组ID
+     * @param groupMembers 本条消息已解析的群成员快照
      * @param seq 序列号
      * @param msgId 消息ID
      */
-    private void pushNotificationToOnlineMembers(ChatMessage chatMessage, String groupId, Long seq, String msgId) {
+    private void pushNotificationToOnlineMembers(ChatMessage chatMessage, GroupMemberSnapshot groupMembers,
+                                                 Long seq, String msgId) {
+        String groupId = groupMembers.getGroupId();
         try {
             // {{CHENGQI:
             // Action: Modified; Timestamp: 2025-08-02 22:08:11 +08:00; Reason: 改为推送轻量级通知，支持读扩散模式;
             // }}
             // {{START MODIFICATIONS}}
-            // 获取在线群成员及其网关信息
-            Set<String> onlineMembers = groupMemberService.getOnlineGroupMembers(groupId);
-            log.debug("准备推送群聊通知给在线成员 - 群组ID: {}, 在线成员数: {}", groupId, onlineMembers.size());
-
-            // 构建在线成员到网关的映射
-            java.util.Map<String, String> memberToGatewayMap = new java.util.HashMap<>();
+            // 获取在线群成员及其网关信息（在线状态复制表中求交集，不再逐个成员读取Redis会话）
+            // 统一推送逻辑：发送方也接收自己的消息作为发送确认
+            java.util.Map<String, java.util.Set<String>> memberToGatewayMap = groupMemberService.getOnlineGroupMemberGateways(groupMembers);
+            log.debug("准备推送群聊通知给在线成员 - 群组ID: {}, 在线成员数: {}", groupId, memberToGatewayMap.size());
 
-            for (String memberId : onlineMembers) {
+            for (String memberId : memberToGatewayMap.keySet()) {
                 try {
-                    // 统一推送逻辑：发送方也接收自己的消息作为发送确认
-                    // 移除跳过发送者的逻辑，让发送方也能收到群聊消息
-
-                    // 获取成员的会话信息
-                    String userSessionKey = SessionConstants.getUserSessionKey(memberId);
-                    UserSession userSession = (UserSession) redisTemplate.opsForValue().get(userSessionKey);
-
-                    if (userSession != null && userSession.getNodeId() != null) {
-                        memberToGatewayMap.put(memberId, userSession.getNodeId());
-
-                        // 为活跃用户添加消息缓存
-                        cacheMessageForUser(memberId, msgId, seq);
-
-                        // 群聊特殊处理：发送方作为群成员也需要收到完整消息
-                        // 注意：发送方会收到两种消息：
-                        // 1. 完整的群聊消息（作为群成员，需要在群聊界面显示）
-                        // 2. MESSAGE_SEND_RECEIPT回执（确认消息发送状态）
-                        if (memberId.equals(chatMessage.getFromId())) {
-                            log.debug("群聊消息将推送给发送方 - 发送方: {}, 群组: {} (发送方作为群成员需要看到消息)", memberId, groupId);
-                        }
-                    }
+                    // 为活跃用户添加消息缓存
+                    cacheMessageForUser(memberId, msgId, seq);
                 } catch (Exception e) {
-                    log.error("获取成员会话信息失败 - 成员ID: {}", memberId, e);
+                    log.error("缓存成员消息失败 - 成员ID: {}", memberId, e);
                 }
             }
 
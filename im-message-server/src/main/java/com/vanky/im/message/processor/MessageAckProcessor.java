@@ -135,10 +135,11 @@ public class MessageAckProcessor {
 
     /**
      * 验证ACK消息的有效性
+     * 单条处理和ACK消费者的批量合并更新共用此校验，两条路径接受的ACK保持一致
      * @param chatMessage ACK消息
      * @return 验证结果
      */
-    private boolean validateAckMessage(ChatMessage chatMessage) {
+    public boolean validateAckMessage(ChatMessage chatMessage) {
         // 检查必要字段
         if (chatMessage.getUid() == null || chatMessage.getUid().isEmpty()) {
             log.warn("ACK消息缺少消息ID");
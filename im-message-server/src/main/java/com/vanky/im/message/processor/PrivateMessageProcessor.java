@@ -7,16 +7,25 @@ import com.vanky.im.message.constant.MessageConstants;
 import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.message.entity.Message;
 import com.vanky.im.message.service.*;
+import com.vanky.im.message.service.impl.MessageBatchWriter;
+import com.vanky.im.message.util.AfterCommitExecutor;
 import com.vanky.im.message.util.MessageConverter;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.common.util.SnowflakeIdGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 /**
  * 私聊消息处理器
  * 负责私聊消息的完整处理流程：权限校验、消息持久化、序列号生成、消息推送和缓存更新
+ * Redis访问分为两个阶段：
+ * 读阶段一次管道往返预取幂等记录、发送方状态、拉黑关系和接收方会话；
+ * 写阶段在事务提交（消息行批量落库）后执行，先一次往返读取双方消息链元数据，再一次往返写入消息缓存和双方消息链
  */
 @Slf4j
 @Component
@@ -25,9 +34,6 @@ public class PrivateMessageProcessor {
     @Autowired
     private RedisService redisService;
 
-    @Autowired
-    private MessageService messageService;
-
     @Autowired
     private MessageReceiverService messageReceiverService;
     
@@ -43,9 +49,6 @@ public class PrivateMessageProcessor {
     @Autowired
     private MessageIdempotentService messageIdempotentService;
 
-    @Autowired
-    private OnlineStatusService onlineStatusService;
-
 
 
     @Autowired
@@ -54,6 +57,15 @@ public class PrivateMessageProcessor {
     @Autowired
     private MessageSendReceiptService messageSendReceiptService;
 
+    @Autowired
+    private UserSessionService userSessionService;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
     // 雪花算法ID生成器
     private final SnowflakeIdGenerator snowflakeIdGenerator = SnowflakeIdGenerator.getInstance();
 
@@ -75,22 +87,26 @@ public class PrivateMessageProcessor {
         log.info("处理私聊消息 - 发送方: {}, 接收方: {}, 客户端序列号: {}",
                 fromUserId, toUserId, clientSeq);
 
+        // 读阶段：一次管道往返预取本条消息需要的全部Redis数据
+        PrefetchedState prefetched = prefetch(clientSeq, fromUserId, toUserId);
+
         // 幂等性检查
         if (clientSeq != null && !clientSeq.trim().isEmpty()) {
             MessageIdempotentService.IdempotentResult idempotentResult =
-                    messageIdempotentService.checkIdempotent(clientSeq);
+                    messageIdempotentService.checkIdempotent(clientSeq, prefetched.idempotent);
             if (idempotentResult != null) {
                 log.info("检测到重复私聊消息，重新发送ACK - 客户端序列号: {}, 消息ID: {}",
                         clientSeq, idempotentResult.getMsgId());
-                // 重新发送ACK给客户端
-                resendReceiptForDuplicateMessage(chatMessage, idempotentResult);
+                // 重新发送ACK给客户端（重复的可能是同一事务中尚未提交的消息，同样等提交后再发）
+                ChatMessage duplicate = chatMessage;
+                AfterCommitExecutor.execute("重复私聊消息回执", () -> resendReceiptForDuplicateMessage(duplicate, idempotentResult));
                 return;
             }
         }
 
         try {
             // 1. 权限校验
-            validateUserPermissions(fromUserId, toUserId);
+            validateUserPermissions(fromUserId, toUserId, prefetched);
 
             // 2. 业务校验通过后，生成全局唯一的消息ID
             String msgId = snowflakeIdGenerator.nextIdString();
@@ -114,17 +130,21 @@ public class PrivateMessageProcessor {
             // 5. 会话处理
             handleConversation(conversationId, fromUserId, toUserId);
             
-            // 6. 消息推送
-            deliverMessage(chatMessage, msgId, receiverUserSeq, toUserId);
-            
-            // 7. 缓存更新 - 私聊使用各自的userSeq
-            updateCache(chatMessage, msgId, senderUserSeq, receiverUserSeq, fromUserId, toUserId);
+            // 6. 记录幂等性结果（事务中暂存，提交后写入；批内后续的重复消息可见）
+            messageIdempotentService.recordIdempotent(clientSeq, msgId, senderUserSeq);
 
-            // 8. 幂等性记录
-            recordIdempotentIfNeeded(clientSeq, msgId, senderUserSeq);
+            // 7. 写阶段：缓存更新（私聊使用各自的userSeq），一次管道往返；
+            //    事务提交后执行，整批回滚或重投时Redis中不会留下未落库消息的消息链条目。先于推送注册，推送时缓存已就绪
+            ChatMessage committedMessage = chatMessage;
+            AfterCommitExecutor.execute("私聊消息缓存", () -> updateCache(committedMessage, msgId, senderUserSeq,
+                    receiverUserSeq, fromUserId, toUserId));
 
-            // 9. 发送消息发送确认回执给发送方（事务提交后异步执行）
-            sendReceiptToSenderAsync(chatMessage, msgId, senderUserSeq);
+            // 8. 消息推送（事务提交后执行）
+            AfterCommitExecutor.execute("私聊消息推送", () ->
+                    deliverMessage(committedMessage, msgId, receiverUserSeq, toUserId, prefetched.receiverSessions));
+
+            // 9. 发送消息发送确认回执给发送方（事务提交后执行）
+            AfterCommitExecutor.execute("私聊消息回执", () -> sendReceiptToSenderAsync(committedMessage, msgId, senderUserSeq));
 
             log.info("私聊消息处理完成 - 消息ID: {}, 发送方seq: {}, 接收方seq: {}",
                     msgId, senderUserSeq, receiverUserSeq);
@@ -140,37 +160,49 @@ public class PrivateMessageProcessor {
     }
 
     /**
-     * 记录幂等性信息
+     * 读阶段：把幂等记录、发送方状态、拉黑关系和接收方会话的读取合并为一次管道往返
+     * 预取失败时各项保持未完成状态，后续按原有方式逐项查询
      */
-    private void recordIdempotentIfNeeded(String clientSeq, String msgId, Long senderUserSeq) {
-        if (clientSeq != null && !clientSeq.trim().isEmpty()) {
-            messageIdempotentService.recordIdempotent(clientSeq, msgId, senderUserSeq);
+    private PrefetchedState prefetch(String clientSeq, String fromUserId, String toUserId) {
+        RedisBatch batch = RedisBatch.of(redisTemplate);
+        PrefetchedState state = new PrefetchedState();
+        state.idempotent = messageIdempotentService.prefetchIdempotent(batch, clientSeq);
+        state.senderStatus = userStatusService.prefetchUserStatus(batch, fromUserId);
+        state.friendship = friendshipService.prefetchFriendship(batch, fromUserId, toUserId);
+        state.receiverSessions = userSessionService.prefetchUserSessions(batch, toUserId);
+
+        try {
+            batch.execute();
+            log.debug("私聊消息读阶段完成 - 发送方: {}, 接收方: {}, 命令数: {}", fromUserId, toUserId, batch.size());
+        } catch (Exception e) {
+            log.warn("私聊消息读阶段批量预取失败，回退为逐项查询 - 发送方: {}, 接收方: {}", fromUserId, toUserId, e);
         }
+        return state;
     }
 
     /**
      * 校验用户权限：发送者状态（封禁、禁言）+ 好友关系（拉黑）
      */
-    private void validateUserPermissions(String fromUserId, String toUserId) {
-        UserStatusService.UserStatusInfo senderStatus = userStatusService.getUserStatus(fromUserId);
+    private void validateUserPermissions(String fromUserId, String toUserId, PrefetchedState prefetched) {
+        UserStatusService.UserStatusInfo senderStatus = userStatusService.getUserStatus(fromUserId, prefetched.senderStatus);
         if (senderStatus.isBanned()) {
             throw new BusinessException(MessageConstants.ERROR_USER_BANNED + ": " + senderStatus.getReason());
         }
         if (senderStatus.isMuted()) {
             throw new BusinessException(MessageConstants.ERROR_USER_MUTED + ": " + senderStatus.getReason());
         }
-        if (friendshipService.isBlocked(fromUserId, toUserId)) {
+        if (friendshipService.isBlocked(fromUserId, toUserId, prefetched.friendship)) {
             throw new BusinessException(MessageConstants.ERROR_BLOCKED_BY_USER);
         }
     }
 
     /**
-     * 持久化消息主体到message表
+     * 持久化消息主体到message表（随事务提交前的批量INSERT写入）
      */
     private void persistMessage(ChatMessage chatMessage, String msgId, String conversationId) {
         Message message = MessageConverter.convertToMessage(chatMessage, msgId, conversationId, MessageTypeConstants.MSG_TYPE_PRIVATE);
         message.setStatus(MessageConstants.MESSAGE_STATUS_SENT);
-        messageService.save(message);
+        messageBatchWriter.addMessage(message);
     }
 
     /**
@@ -187,20 +219,21 @@ public class PrivateMessageProcessor {
     /**
      * 推送消息给接收方
      */
-    private void deliverMessage(ChatMessage chatMessage, String msgId, Long receiverUserSeq, String toUserId) {
-        pushToReceiver(chatMessage, msgId, receiverUserSeq, toUserId);
+    private void deliverMessage(ChatMessage chatMessage, String msgId, Long receiverUserSeq, String toUserId,
+                                RedisBatch.Result<List<Object>> receiverSessions) {
+        pushToReceiver(chatMessage, msgId, receiverUserSeq, toUserId, receiverSessions);
         log.debug("私聊消息推送完成 - 推送给接收方: {}", toUserId);
     }
 
     /**
      * 推送消息给在线接收方
      */
-    private void pushToReceiver(ChatMessage chatMessage, String msgId, Long userSeq, String toUserId) {
-        UserSession session = onlineStatusService.getUserOnlineStatus(toUserId);
-        if (session != null && session.getNodeId() != null) {
-            ChatMessage message = buildEnrichedMessage(chatMessage, msgId, userSeq);
-            gatewayMessagePushService.pushMessageToGateway(message, userSeq, toUserId);
-        }
+    private void pushToReceiver(ChatMessage chatMessage, String msgId, Long userSeq, String toUserId,
+                                RedisBatch.Result<List<Object>> receiverSessions) {
+        // 按接收方各设备所在网关推送，离线时由推送服务跳过；会话已在读阶段预取
+        ChatMessage message = buildEnrichedMessage(chatMessage, msgId, userSeq);
+        List<UserSession> sessions = userSessionService.getUserSessions(toUserId, receiverSessions);
+        gatewayMessagePushService.pushMessageToGateway(message, userSeq, toUserId, sessions);
     }
 
     /**
@@ -214,17 +247,43 @@ public class PrivateMessageProcessor {
     }
 
     /**
-     * 更新Redis缓存
+     * 写阶段：消息缓存、双方消息链合并为一次管道往返，在消息落库事务提交后执行
+     * 消息链元数据在写入前现读：批量消费时同一事务的多条消息依次在提交后执行，
+     * 每条都要基于前一条写入后的元数据计算总数与最大seq，不能沿用事务开始前预取的快照。
+     * 消息链超过保留条数时（少见）在批量写入后再单独清理旧页面
      */
     private void updateCache(ChatMessage chatMessage, String msgId, Long senderUserSeq, Long receiverUserSeq,
                            String fromUserId, String toUserId) {
         String conversationId = generateConversationId(fromUserId, toUserId);
         Message message = MessageConverter.convertToMessage(chatMessage, msgId, conversationId, MessageTypeConstants.MSG_TYPE_PRIVATE);
         String messageJson = MessageConverter.toJson(message);
-        
-        redisService.cacheMessage(msgId, messageJson, RedisKeyConstants.MESSAGE_CACHE_TTL_SECONDS);
-        redisService.addToUserMsgList(fromUserId, msgId, senderUserSeq, RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE);
-        redisService.addToUserMsgList(toUserId, msgId, receiverUserSeq, RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE);
+
+        RedisBatch metaBatch = RedisBatch.of(redisTemplate);
+        RedisBatch.Result<Object> senderMsgMeta = redisService.prefetchUserMsgMeta(metaBatch, fromUserId);
+        // 自己发给自己时共用同一份元数据，两次追加都计入总数
+        RedisBatch.Result<Object> receiverMsgMeta = toUserId.equals(fromUserId)
+                ? senderMsgMeta : redisService.prefetchUserMsgMeta(metaBatch, toUserId);
+        try {
+            metaBatch.execute();
+        } catch (Exception e) {
+            log.warn("读取消息链元数据失败，回退为逐项查询 - 消息ID: {}", msgId, e);
+        }
+
+        RedisBatch batch = RedisBatch.of(redisTemplate);
+        redisService.cacheMessage(batch, msgId, messageJson, RedisKeyConstants.MESSAGE_CACHE_TTL_SECONDS);
+        boolean trimSender = redisService.addToUserMsgList(batch, fromUserId, msgId, senderUserSeq,
+                RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE, senderMsgMeta);
+        boolean trimReceiver = redisService.addToUserMsgList(batch, toUserId, msgId, receiverUserSeq,
+                RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE, receiverMsgMeta);
+        batch.execute();
+        log.debug("私聊消息写阶段完成 - 消息ID: {}, 命令数: {}", msgId, batch.size());
+
+        if (trimSender) {
+            redisService.trimUserMsgList(fromUserId, RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE);
+        }
+        if (trimReceiver && !toUserId.equals(fromUserId)) {
+            redisService.trimUserMsgList(toUserId, RedisKeyConstants.MAX_USER_MSG_CACHE_SIZE);
+        }
     }
 
     /**
@@ -271,4 +330,14 @@ public class PrivateMessageProcessor {
                     originalMessage.getFromId(), originalMessage.getClientSeq(), idempotentResult.getMsgId(), e);
         }
     }
+
+    /**
+     * 读阶段预取的结果
+     */
+    private static class PrefetchedState {
+        private RedisBatch.Result<Object> idempotent;
+        private RedisBatch.Result<Object> senderStatus;
+        private RedisBatch.Result<Object> friendship;
+        private RedisBatch.Result<List<Object>> receiverSessions;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.vanky.im.message.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.vanky.im.common.util.RedisBatch;
 
 /**
  * 好友关系服务接口
@@ -24,6 +25,24 @@ public interface FriendshipService {
      */
     boolean isBlocked(String fromUserId, String toUserId);
 
+    /**
+     * 将好友关系缓存的读取加入批量操作
+     * @param batch Redis批量操作
+     * @param userId1 用户1的ID
+     * @param userId2 用户2的ID
+     * @return 预取结果
+     */
+    RedisBatch.Result<Object> prefetchFriendship(RedisBatch batch, String userId1, String userId2);
+
+    /**
+     * 检查用户是否被对方拉黑，优先使用批量预取的缓存值
+     * @param fromUserId 发送方用户ID
+     * @param toUserId 接收方用户ID
+     * @param prefetched 预取结果，未成功预取时按常规流程查询
+     * @return true-被拉黑，false-未被拉黑
+     */
+    boolean isBlocked(String fromUserId, String toUserId, RedisBatch.Result<Object> prefetched);
+
     /**
      * 获取好友关系详细信息
      * @param userId1 用户1的ID
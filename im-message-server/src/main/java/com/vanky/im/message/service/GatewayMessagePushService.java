@@ -1,8 +1,10 @@
 package com.vanky.im.message.service;
 
+import com.vanky.im.common.constant.MessageTypeConstants;
 import com.vanky.im.common.constant.TopicConstants;
 import com.vanky.im.common.model.UserSession;
 import com.vanky.im.common.protocol.ChatMessage;
+import com.vanky.im.common.protocol.codec.PushEnvelopeCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
@@ -12,8 +14,13 @@ import org.apache.rocketmq.common.message.Message;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * 网关消息推送服务
  * 负责将消息推送到指定的网关进行用户投递
@@ -28,13 +35,15 @@ public class GatewayMessagePushService {
     private DefaultMQProducer producer;
 
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private UserSessionService userSessionService;
 
     @Value("${rocketmq.topic.push-to-gateway:TOPIC_PUSH_TO_GATEWAY}")
     private String pushToGatewayTopic;
 
     /**
      * 推送消息到网关（支持指定目标用户ID）
+     * 消息Tag设置为目标用户所在网关的实例ID，只有该网关会消费；
+     * 多端登录时设备可能分布在多个网关，每个网关只发一条，由网关扇出到本机的全部设备
      *
      * @param chatMessage 聊天消息
      * @param seq 序列号
@@ -42,45 +51,73 @@ public class GatewayMessagePushService {
      */
     public void pushMessageToGateway(ChatMessage chatMessage, Long seq, String targetUserId) {
         String toId = targetUserId != null ? targetUserId : chatMessage.getToId();
-        UserSession userSession = (UserSession) redisTemplate.opsForValue().get(com.vanky.im.common.constant.SessionConstants.getUserSessionKey(toId));
+        pushMessageToGateway(chatMessage, seq, targetUserId, userSessionService.getUserSessions(toId));
+    }
+
+    /**
+     * 推送消息到网关，使用调用方已查询到的目标用户会话（如私聊流程中批量预取的会话），不再单独访问Redis
+     *
+     * @param chatMessage 聊天消息
+     * @param seq 序列号
+     * @param targetUserId 目标用户ID（群聊时使用，私聊时为null）
+     * @param userSessions 目标用户各设备的会话
+     */
+    public void pushMessageToGateway(ChatMessage chatMessage, Long seq, String targetUserId, List<UserSession> userSessions) {
+        String toId = targetUserId != null ? targetUserId : chatMessage.getToId();
 
-        if (userSession == null) {
+        if (userSessions.isEmpty()) {
             log.warn("用户 {} 不在线，消息将转为离线消息处理", toId);
             // TODO: 添加离线消息处理逻辑
             return;
         }
 
+        Set<String> gatewayIds = new LinkedHashSet<>();
+        for (UserSession userSession : userSessions) {
+            String gatewayId = userSession.getNodeId();
+            if (gatewayId == null || gatewayId.isEmpty()) {
+                log.warn("用户 {} 设备 {} 会话缺少网关实例ID，无法定向推送", toId, userSession.getDeviceId());
+                continue;
+            }
+            gatewayIds.add(gatewayId);
+        }
+
+        // 只编码一次，多个网关共用同一份信封字节
+        byte[] body = PushEnvelopeCodec.encode(chatMessage, List.of(toId), ackFlags(chatMessage));
+        for (String gatewayId : gatewayIds) {
+            sendToGateway(chatMessage, body, seq, targetUserId, gatewayId);
+        }
+    }
+
+    private void sendToGateway(ChatMessage chatMessage, byte[] body, Long seq, String targetUserId, String gatewayId) {
         try {
             Message message = new Message();
             message.setTopic(TopicConstants.TOPIC_PUSH_TO_GATEWAY);
-            message.setBody(chatMessage.toByteArray());
+            // 按网关实例ID打Tag，实现定向推送
+            message.setTags(gatewayId);
+            // 推送信封：目标用户写在信封头中，网关按头部路由，不再解析消息体
+            message.setBody(body);
 
             // 设置序列号作为消息键，方便追踪
             message.setKeys(String.valueOf(seq));
 
-            // 如果指定了目标用户ID，将其添加到消息属性中
-            if (targetUserId != null) {
-                message.putUserProperty("targetUserId", targetUserId);
-            }
-
             // 异步发送消息
             producer.send(message, new SendCallback() {
                 @Override
                 public void onSuccess(SendResult sendResult) {
-                    log.info("消息推送到共享Topic成功 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}, 消息结果: {}",
-                            chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, sendResult);
+                    log.info("消息推送到网关成功 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}, 网关: {}, 消息结果: {}",
+                            chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, gatewayId, sendResult);
                 }
 
                 @Override
                 public void onException(Throwable e) {
-                    log.error("消息推送到共享Topic失败 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}",
-                            chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, e);
+                    log.error("消息推送到网关失败 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}, 网关: {}",
+                            chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, gatewayId, e);
                 }
             });
 
         } catch (Exception e) {
-            log.error("推送消息到共享Topic异常 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}",
-                    chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, e);
+            log.error("推送消息到网关异常 - 接收方: {}, 目标用户: {}, 消息ID: {}, 序列号: {}, 网关: {}",
+                    chatMessage.getToId(), targetUserId, chatMessage.getUid(), seq, gatewayId, e);
         }
     }
 
@@ -93,47 +130,65 @@ public class GatewayMessagePushService {
      * @param gatewayId 网关ID
      */
     public void pushNotificationToGateway(ChatMessage notificationMessage, Long seq, String gatewayId) {
+        pushNotificationToGateway(notificationMessage, seq, gatewayId, List.of(notificationMessage.getToId()));
+    }
+
+    /**
+     * 批量推送群聊通知到指定网关（读扩散模式）
+     * 通知体只编码一次，目标用户列表写在信封头中，网关在本地展开为各用户连接的写出；
+     * 一个网关上的全部在线成员只产生一条MQ消息
+     *
+     * @param notificationMessage 通知消息（多个目标共用同一份消息体）
+     * @param seq 序列号
+     * @param gatewayId 网关ID
+     * @param targetUserIds 该网关上的目标用户
+     */
+    public void pushNotificationToGateway(ChatMessage notificationMessage, Long seq, String gatewayId,
+                                          Collection<String> targetUserIds) {
         try {
-            // {{CHENGQI:
-            // Action: Modified; Timestamp: 2025-08-02 22:32:38 +08:00; Reason: 简化群聊通知推送，移除不必要的消息属性，直接使用ChatMessage协议中的字段;
-            // }}
-            // {{START MODIFICATIONS}}
             // 创建消息并设置Tag为网关ID
             Message message = new Message();
             message.setTopic(pushToGatewayTopic);
             message.setTags(gatewayId);
-            message.setBody(notificationMessage.toByteArray());
+            message.setBody(PushEnvelopeCodec.encode(notificationMessage, targetUserIds, ackFlags(notificationMessage)));
 
             // 设置序列号作为消息键，方便追踪
             message.setKeys(String.valueOf(seq));
 
-            // 不需要额外的消息属性，ChatMessage协议中已包含所有必要信息：
+            // 不需要额外的消息属性，信封头和ChatMessage协议中已包含所有必要信息：
+            // - targetUserIds: 目标用户
             // - conversationId: 标识群聊会话
             // - fromId: 发送方用户ID
-            // - toId: 接收方用户ID（目标用户）
 
+            int targetCount = targetUserIds.size();
             // 异步发送消息
             producer.send(message, new SendCallback() {
                 @Override
                 public void onSuccess(SendResult sendResult) {
-                    log.info("群聊通知推送成功 - 会话ID: {}, 接收方: {}, 消息ID: {}, 序列号: {}, 网关: {}, 消息结果: {}",
-                            notificationMessage.getConversationId(), notificationMessage.getToId(),
+                    log.info("群聊通知推送成功 - 会话ID: {}, 目标用户数: {}, 消息ID: {}, 序列号: {}, 网关: {}, 消息结果: {}",
+                            notificationMessage.getConversationId(), targetCount,
                             notificationMessage.getUid(), seq, gatewayId, sendResult);
                 }
 
                 @Override
                 public void onException(Throwable e) {
-                    log.error("群聊通知推送失败 - 会话ID: {}, 接收方: {}, 消息ID: {}, 序列号: {}, 网关: {}",
-                            notificationMessage.getConversationId(), notificationMessage.getToId(),
+                    log.error("群聊通知推送失败 - 会话ID: {}, 目标用户数: {}, 消息ID: {}, 序列号: {}, 网关: {}",
+                            notificationMessage.getConversationId(), targetCount,
                             notificationMessage.getUid(), seq, gatewayId, e);
                 }
             });
-            // {{END MODIFICATIONS}}
 
         } catch (Exception e) {
-            log.error("推送群聊通知到网关异常 - 会话ID: {}, 接收方: {}, 消息ID: {}, 序列号: {}, 网关: {}",
-                    notificationMessage.getConversationId(), notificationMessage.getToId(),
+            log.error("推送群聊通知到网关异常 - 会话ID: {}, 目标用户数: {}, 消息ID: {}, 序列号: {}, 网关: {}",
+                    notificationMessage.getConversationId(), targetUserIds.size(),
                     notificationMessage.getUid(), seq, gatewayId, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 聊天消息需要客户端ACK，由网关登记超时重发
+     */
+    private static int ackFlags(ChatMessage chatMessage) {
+        return MessageTypeConstants.isChatMessage(chatMessage.getType()) ? PushEnvelopeCodec.FLAG_ACK_REQUIRED : 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com.vanky.im.message.service;
+
+import com.vanky.im.message.model.GroupMemberSnapshot;
+
+/**
+ * 群聊会话视图扩散策略
+ * 会话头（conversation.max_seq / last_msg_id）由调用方统一推进，
+ * 策略只决定成员的 user_conversation_list 行在消息写入时需要做什么
+ *
+ * @author vanky
+ * @create 2025-09-02
+ */
+public interface GroupConversationFanoutStrategy {
+
+    /**
+     * 是否适用于该规模的群
+     *
+     * @param memberCount 群成员数
+     * @return 是否适用
+     */
+    boolean supports(int memberCount);
+
+    /**
+     * 群聊消息写入后的成员会话视图扩散
+     *
+     * @param conversationId 会话ID
+     * @param groupMembers 群成员快照
+     * @param lastMsgId 最新消息ID
+     * @param seq 最新消息的会话seq
+     */
+    void fanout(String conversationId, GroupMemberSnapshot groupMembers, String lastMsgId, Long seq);
+}
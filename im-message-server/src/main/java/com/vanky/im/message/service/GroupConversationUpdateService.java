@@ -1,5 +1,7 @@
 package com.vanky.im.message.service;
 
+import com.vanky.im.message.model.GroupMemberSnapshot;
+
 import java.util.List;
 
 /**
@@ -16,14 +18,18 @@ import java.util.List;
 public interface GroupConversationUpdateService {
     
     /**
-     * 简化更新群聊会话视图（读扩散模式）
-     * 只更新last_update_time，不计算unread_count
-     * 
+     * 更新群聊会话视图
+     * 推进会话头（max_seq/last_msg_id），并按群规模选择成员行的扩散策略：
+     * 小群写扩散逐成员更新，大群读扩散只保存成员的 last_read_seq，未读数在同步时按 seq > last_read_seq 的消息条数计算
+     *
      * @param conversationId 会话ID
-     * @param groupMemberIds 群成员ID列表
+     * @param senderId 发送方ID
+     * @param groupMembers 群成员快照
      * @param lastMsgId 最新消息ID
+     * @param seq 最新消息的会话seq
      */
-    void updateGroupConversationView(String conversationId, List<String> groupMemberIds, String lastMsgId);
+    void updateGroupConversationView(String conversationId, String senderId, GroupMemberSnapshot groupMembers,
+                                     String lastMsgId, Long seq);
     
     /**
      * 为单个用户更新群聊会话视图
@@ -1,6 +1,9 @@
 package com.vanky.im.message.service;
 
+import com.vanky.im.message.model.GroupMemberSnapshot;
+
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -9,6 +12,14 @@ import java.util.Set;
  */
 public interface GroupMemberService {
 
+    /**
+     * 获取群成员快照（进程内缓存，按版本号校验）
+     * 处理一条消息时应只调用一次，之后的成员判断、计数和在线求交集都使用该快照
+     * @param groupId 群组ID
+     * @return 群成员快照，群不存在时为空快照
+     */
+    GroupMemberSnapshot getGroupMembers(String groupId);
+
     /**
      * 获取群组所有成员ID
      * @param groupId 群组ID
@@ -31,6 +42,20 @@ public interface GroupMemberService {
      */
     Set<String> getOnlineGroupMembers(String groupId);
 
+    /**
+     * 获取群组在线成员及其所在网关
+     * @param groupId 群组ID
+     * @return 在线成员ID -> 所在网关ID集合（多端登录时可能有多个）
+     */
+    Map<String, Set<String>> getOnlineGroupMemberGateways(String groupId);
+
+    /**
+     * 获取快照中在线成员及其所在网关
+     * @param members 已解析的群成员快照
+     * @return 在线成员ID -> 所在网关ID集合（多端登录时可能有多个）
+     */
+    Map<String, Set<String>> getOnlineGroupMemberGateways(GroupMemberSnapshot members);
+
     /**
      * 添加群组成员
      * @param groupId 群组ID
@@ -26,20 +26,21 @@ public interface GroupNotificationService {
 
     /**
      * 批量推送群聊消息通知给多个在线用户
+     * 在线成员按所在网关分桶，每个网关只发一条MQ消息（通知体一份 + 目标用户列表）
      *
      * @param originalMessage 原始群聊消息
      * @param conversationSeq 会话级序列号
-     * @param onlineMembers 在线成员列表（用户ID -> 网关节点ID）
+     * @param onlineMembers 在线成员列表（用户ID -> 所在网关节点ID集合）
      */
     void pushNotificationToOnlineMembers(ChatMessage originalMessage, Long conversationSeq,
-                                       java.util.Map<String, String> onlineMembers);
+                                       java.util.Map<String, java.util.Set<String>> onlineMembers);
 
     /**
      * 创建群聊消息通知（ChatMessage格式）
      * 通知消息的特点：
      * - type: 特殊的通知类型
      * - content: 简化的通知内容
-     * - toId: 目标用户ID（不是群组ID）
+     * - toId: 目标用户ID；多个成员共用的批量通知传入群组ID，目标用户由推送信封头给出
      * - conversationId: 会话ID
      * - seq: 会话级序列号
      *
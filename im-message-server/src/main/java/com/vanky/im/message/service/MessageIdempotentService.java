@@ -1,11 +1,16 @@
 package com.vanky.im.message.service;
 
 import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.common.util.RedisBatch;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,6 +45,11 @@ public class MessageIdempotentService {
             return null;
         }
         
+        IdempotentResult pending = getPendingResult(clientSeq);
+        if (pending != null) {
+            return pending;
+        }
+
         String redisKey = RedisKeyConstants.getMessageIdempotentKey(clientSeq);
         
         try {
@@ -63,8 +73,47 @@ public class MessageIdempotentService {
         }
     }
     
+    /**
+     * 将幂等性记录的读取加入批量操作
+     * @param batch Redis批量操作
+     * @param clientSeq 客户端序列号
+     * @return 预取结果，客户端序列号为空时返回null
+     */
+    public RedisBatch.Result<Object> prefetchIdempotent(RedisBatch batch, String clientSeq) {
+        if (clientSeq == null || clientSeq.trim().isEmpty()) {
+            return null;
+        }
+        return batch.get(RedisKeyConstants.getMessageIdempotentKey(clientSeq));
+    }
+
+    /**
+     * 检查消息是否已经处理过，优先使用批量预取的结果
+     * @param clientSeq 客户端序列号
+     * @param prefetched 预取结果，未成功预取时直接查询Redis
+     * @return 如果已处理过，返回之前的处理结果；否则返回null
+     */
+    public IdempotentResult checkIdempotent(String clientSeq, RedisBatch.Result<Object> prefetched) {
+        if (prefetched == null || !prefetched.isDone()) {
+            return checkIdempotent(clientSeq);
+        }
+        IdempotentResult pending = getPendingResult(clientSeq);
+        if (pending != null) {
+            return pending;
+        }
+        Object result = prefetched.get();
+        if (result instanceof IdempotentResult) {
+            IdempotentResult idempotentResult = (IdempotentResult) result;
+            log.info("检测到重复消息 - 客户端序列号: {}, 之前的消息ID: {}, 序列号: {}",
+                    clientSeq, idempotentResult.getMsgId(), idempotentResult.getSeq());
+            return idempotentResult;
+        }
+        return null;
+    }
+
     /**
      * 记录消息处理结果（用于幂等性）
+     * 处于消息落库事务中时推迟到事务提交后写入：消息行在提交前才批量INSERT，
+     * 若先写幂等记录而刷库失败，MQ重试时会被误判为重复消息，消息就丢了
      * @param clientSeq 客户端序列号
      * @param msgId 服务端消息ID
      * @param seq 服务端序列号
@@ -79,7 +128,92 @@ public class MessageIdempotentService {
             log.warn("消息ID或序列号为空，无法记录幂等性 - 客户端序列号: {}", clientSeq);
             return;
         }
-        
+
+        if (!deferUntilCommit(clientSeq, msgId, seq)) {
+            writeIdempotent(clientSeq, msgId, seq);
+        }
+    }
+
+    /**
+     * 处于事务中时把幂等记录暂存在事务上，提交后一次管道写入
+     * 批量消费时一个事务包含多条消息，暂存的记录对同一事务内后续的幂等性检查可见，同批内的重复消息照样能识别
+     * @return 是否已推迟
+     */
+    private boolean deferUntilCommit(String clientSeq, String msgId, Long seq) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, IdempotentResult> pending =
+                (Map<String, IdempotentResult>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<String, IdempotentResult> records = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, records);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MessageIdempotentService.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(MessageIdempotentService.this, records);
+                }
+
+                @Override
+                public void afterCommit() {
+                    writeIdempotent(records);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MessageIdempotentService.this);
+                }
+            });
+            pending = records;
+        }
+        pending.put(clientSeq, new IdempotentResult(msgId, seq, System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * 当前事务中已处理但尚未写入Redis的记录
+     */
+    private IdempotentResult getPendingResult(String clientSeq) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, IdempotentResult> pending =
+                (Map<String, IdempotentResult>) TransactionSynchronizationManager.getResource(this);
+        IdempotentResult result = pending != null ? pending.get(clientSeq) : null;
+        if (result != null) {
+            log.info("检测到同一事务内的重复消息 - 客户端序列号: {}, 之前的消息ID: {}, 序列号: {}",
+                    clientSeq, result.getMsgId(), result.getSeq());
+        }
+        return result;
+    }
+
+    private void writeIdempotent(Map<String, IdempotentResult> records) {
+        if (records.size() == 1) {
+            Map.Entry<String, IdempotentResult> record = records.entrySet().iterator().next();
+            writeIdempotent(record.getKey(), record.getValue().getMsgId(), record.getValue().getSeq());
+            return;
+        }
+        try {
+            RedisBatch batch = RedisBatch.of(redisTemplate);
+            records.forEach((clientSeq, result) -> batch.set(RedisKeyConstants.getMessageIdempotentKey(clientSeq),
+                    result, RedisKeyConstants.MESSAGE_IDEMPOTENT_TTL_SECONDS));
+            batch.execute();
+            log.info("批量记录消息幂等性成功 - 记录数: {}, TTL: {}秒",
+                    records.size(), RedisKeyConstants.MESSAGE_IDEMPOTENT_TTL_SECONDS);
+        } catch (Exception e) {
+            // Redis操作失败时记录错误，但不影响主流程
+            log.error("批量记录消息幂等性Redis操作失败 - 记录数: {}", records.size(), e);
+        }
+    }
+
+    private void writeIdempotent(String clientSeq, String msgId, Long seq) {
         String redisKey = RedisKeyConstants.getMessageIdempotentKey(clientSeq);
         IdempotentResult result = new IdempotentResult(msgId, seq, System.currentTimeMillis());
         
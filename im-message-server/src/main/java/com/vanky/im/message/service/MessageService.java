@@ -2,6 +2,7 @@ package com.vanky.im.message.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.vanky.im.message.entity.Message;
+import java.util.Collection;
 import java.util.Map;
 
 import java.util.List;
@@ -70,6 +71,15 @@ public interface MessageService extends IService<Message> {
      */
     boolean updateMessageStatus(Long msgId, Integer status);
 
+    /**
+     * 批量更新消息状态
+     * 按分块执行 UPDATE ... WHERE msg_id IN (...)，每块一条SQL
+     * @param msgIds 消息ID集合
+     * @param status 新状态
+     * @return 更新的记录数
+     */
+    int batchUpdateMessageStatus(Collection<Long> msgIds, Integer status);
+
     /**
      * 根据发送者ID和消息类型查询消息列表
      * @param senderId 发送者ID
@@ -1,5 +1,7 @@
 package com.vanky.im.message.service;
 
+import java.util.Collection;
+
 /**
  * 消息状态管理服务接口
  * 负责管理消息的推送状态和确认状态
@@ -23,6 +25,13 @@ public interface MessageStatusService {
      */
     int batchUpdateMessageDelivered(String[] msgIds, String userId);
 
+    /**
+     * 批量更新消息推送状态为已送达（可跨用户，用于网关ACK批次）
+     * @param msgIds 消息ID集合
+     * @return 成功更新的消息数量
+     */
+    int batchUpdateMessageDelivered(Collection<String> msgIds);
+
     /**
      * 更新消息状态为已读
      * @param msgId 消息ID
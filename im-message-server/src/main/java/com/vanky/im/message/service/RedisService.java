@@ -1,6 +1,7 @@
 package com.vanky.im.message.service;
 
 import com.vanky.im.common.model.UserSession;
+import com.vanky.im.common.util.RedisBatch;
 
 import java.util.List;
 import java.util.Set;
@@ -48,6 +49,43 @@ public interface RedisService {
      */
     void addToUserMsgList(String userId, String msgId, Long seq, int maxSize);
 
+    /**
+     * 将用户消息链元数据的读取加入批量操作
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @return 预取结果
+     */
+    RedisBatch.Result<Object> prefetchUserMsgMeta(RedisBatch batch, String userId);
+
+    /**
+     * 将消息缓存写入加入批量操作
+     * @param batch Redis批量操作
+     * @param msgId 消息ID
+     * @param messageJson 消息JSON
+     * @param ttlSeconds TTL秒数
+     */
+    void cacheMessage(RedisBatch batch, String msgId, String messageJson, long ttlSeconds);
+
+    /**
+     * 将添加消息到用户消息链的写入加入批量操作
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @param msgId 消息ID
+     * @param seq 序列号
+     * @param maxSize 最大保留条数
+     * @param prefetchedMeta 预取的消息链元数据
+     * @return 批量执行后是否需要调用 {@link #trimUserMsgList} 清理旧消息
+     */
+    boolean addToUserMsgList(RedisBatch batch, String userId, String msgId, Long seq, int maxSize,
+                             RedisBatch.Result<Object> prefetchedMeta);
+
+    /**
+     * 清理用户消息链中超出保留条数的旧消息
+     * @param userId 用户ID
+     * @param maxSize 最大保留条数
+     */
+    void trimUserMsgList(String userId, int maxSize);
+
     /**
      * 获取用户消息链
      * @param userId 用户ID
@@ -33,12 +33,14 @@ public interface UserConversationListService extends IService<UserConversationLi
     void updateUserConversationList(Long userId, String conversationId);
 
     /**
-     * 更新用户会话列表的消息相关信息
+     * 更新用户会话列表的消息相关信息（未读数+1、最新消息ID）
+     * 增量在内存中合并后批量写库，最迟 unread.write-behind.flush-interval-ms 后可见
      * @param userId 用户ID
      * @param conversationId 会话ID
      * @param msgId 最新消息ID
+     * @param seq 消息在该用户消息链中的seq，已读水位之前的消息不计入未读数
      */
-    void updateUserConversationMessage(Long userId, String conversationId, String msgId);
+    void updateUserConversationMessage(Long userId, String conversationId, String msgId, Long seq);
 
     /**
      * 简化更新群聊会话（读扩散模式）
@@ -61,4 +63,14 @@ public interface UserConversationListService extends IService<UserConversationLi
      * @param lastReadSeq 已读到的最大序列号
      */
     void updateUserReadStatus(String userId, String conversationId, long lastReadSeq);
+
+    /**
+     * 推进用户已读序列号（只增不减）
+     * 用于发送者自己发送的群消息视为已读，不影响未读数字段
+     *
+     * @param userId 用户ID
+     * @param conversationId 会话ID
+     * @param seq 已读到的序列号
+     */
+    void advanceLastReadSeq(Long userId, String conversationId, Long seq);
 }
\ No newline at end of file
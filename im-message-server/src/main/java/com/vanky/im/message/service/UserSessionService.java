@@ -1,14 +1,44 @@
 package com.vanky.im.message.service;
 
 import com.vanky.im.common.model.UserSession;
+import com.vanky.im.common.util.RedisBatch;
+
+import java.util.List;
 
 public interface UserSessionService {
 
     /**
      * 从 Redis 获取并反序列化用户会话信息
+     * 多端登录时返回任一设备的会话
      *
      * @param userId 用户ID
      * @return 用户会话信息，如果不存在或反序列化失败则返回 null
      */
     UserSession getUserSession(String userId);
+
+    /**
+     * 获取用户全部在线设备的会话（会话Hash：deviceId -> UserSession）
+     *
+     * @param userId 用户ID
+     * @return 各设备的会话，离线时为空列表
+     */
+    List<UserSession> getUserSessions(String userId);
+
+    /**
+     * 将用户会话Hash的读取加入批量操作
+     *
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @return 预取结果
+     */
+    RedisBatch.Result<List<Object>> prefetchUserSessions(RedisBatch batch, String userId);
+
+    /**
+     * 获取用户全部在线设备的会话，优先使用批量预取的结果
+     *
+     * @param userId 用户ID
+     * @param prefetched 预取结果，未成功预取时直接查询Redis
+     * @return 各设备的会话，离线时为空列表
+     */
+    List<UserSession> getUserSessions(String userId, RedisBatch.Result<List<Object>> prefetched);
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.vanky.im.message.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.constant.MessageConstants;
 
 /**
@@ -16,6 +17,22 @@ public interface UserStatusService {
      */
     UserStatusInfo getUserStatus(String userId);
 
+    /**
+     * 将用户状态缓存的读取加入批量操作
+     * @param batch Redis批量操作
+     * @param userId 用户ID
+     * @return 预取结果
+     */
+    RedisBatch.Result<Object> prefetchUserStatus(RedisBatch batch, String userId);
+
+    /**
+     * 获取用户状态信息，优先使用批量预取的缓存值
+     * @param userId 用户ID
+     * @param prefetched 预取结果，未成功预取时按常规流程查询
+     * @return 用户状态信息
+     */
+    UserStatusInfo getUserStatus(String userId, RedisBatch.Result<Object> prefetched);
+
     /**
      * 检查用户是否被封禁
      * @param userId 用户ID
@@ -3,6 +3,7 @@ package com.vanky.im.message.service.impl;
 import com.vanky.im.common.constant.RedisKeyConstants;
 import com.vanky.im.common.model.ApiResponse;
 import com.vanky.im.common.util.CacheSafetyManager;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.client.UserClient;
 import com.vanky.im.message.service.FriendshipService;
 import com.vanky.im.message.service.FriendshipService.FriendshipInfo;
@@ -45,6 +46,27 @@ public class FriendshipServiceImpl implements FriendshipService {
         return friendshipInfo.isBlocked(fromUserId, toUserId);
     }
 
+    @Override
+    public RedisBatch.Result<Object> prefetchFriendship(RedisBatch batch, String userId1, String userId2) {
+        return batch.get(generateCacheKey(userId1, userId2));
+    }
+
+    @Override
+    public boolean isBlocked(String fromUserId, String toUserId, RedisBatch.Result<Object> prefetched) {
+        String cacheKey = generateCacheKey(fromUserId, toUserId);
+        FriendshipInfo defaultInfo = new FriendshipInfo(fromUserId, toUserId, 0, System.currentTimeMillis(), System.currentTimeMillis());
+
+        FriendshipInfo friendshipInfo = cacheSafetyManager.safeGetFromCache(
+            cacheKey,
+            prefetched,
+            () -> fetchFriendshipInfoFromService(fromUserId, toUserId),
+            RedisKeyConstants.FRIENDSHIP_CACHE_TTL_SECONDS,
+            FriendshipInfo.class,
+            defaultInfo
+        );
+        return friendshipInfo.isBlocked(fromUserId, toUserId);
+    }
+
     @Override
     public FriendshipInfo getFriendshipInfo(String userId1, String userId2) {
         String cacheKey = generateCacheKey(userId1, userId2);
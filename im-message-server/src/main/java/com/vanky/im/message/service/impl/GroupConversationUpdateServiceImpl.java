@@ -1,11 +1,15 @@
 package com.vanky.im.message.service.impl;
 
+import com.vanky.im.message.mapper.ConversationMapper;
+import com.vanky.im.message.model.GroupMemberSnapshot;
+import com.vanky.im.message.service.GroupConversationFanoutStrategy;
 import com.vanky.im.message.service.GroupConversationUpdateService;
 import com.vanky.im.message.service.UserConversationListService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -25,26 +29,38 @@ public class GroupConversationUpdateServiceImpl implements GroupConversationUpda
     
     @Autowired
     private UserConversationListService userConversationListService;
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private List<GroupConversationFanoutStrategy> fanoutStrategies;
     
     @Override
-    public void updateGroupConversationView(String conversationId, List<String> groupMemberIds, String lastMsgId) {
-        log.debug("开始更新群聊会话视图 - 会话ID: {}, 成员数量: {}", conversationId, groupMemberIds.size());
-        
-        int successCount = 0;
-        int failureCount = 0;
-        
-        for (String memberId : groupMemberIds) {
-            try {
-                updateUserGroupConversation(memberId, conversationId, lastMsgId);
-                successCount++;
-            } catch (Exception e) {
-                log.error("更新用户群聊会话失败 - 用户ID: {}, 会话ID: {}", memberId, conversationId, e);
-                failureCount++;
+    public void updateGroupConversationView(String conversationId, String senderId, GroupMemberSnapshot groupMembers,
+                                            String lastMsgId, Long seq) {
+        // 1. 推进会话头：单行条件更新，与群规模无关
+        int advanced = conversationMapper.advanceConversationHead(
+                conversationId, seq, Long.valueOf(lastMsgId), new Date());
+        if (advanced == 0) {
+            log.debug("会话头未推进（乱序或会话不存在） - 会话ID: {}, seq: {}", conversationId, seq);
+        }
+
+        // 2. 按群规模选择成员行的扩散策略
+        int memberCount = groupMembers.size();
+        for (GroupConversationFanoutStrategy strategy : fanoutStrategies) {
+            if (strategy.supports(memberCount)) {
+                strategy.fanout(conversationId, groupMembers, lastMsgId, seq);
+                break;
             }
         }
-        
-        log.info("群聊会话视图更新完成 - 会话ID: {}, 成功: {}, 失败: {}", 
-                conversationId, successCount, failureCount);
+
+        // 3. 发送方自己发送的消息不计入未读
+        if (senderId != null) {
+            userConversationListService.advanceLastReadSeq(Long.valueOf(senderId), conversationId, seq);
+        }
+
+        log.debug("群聊会话视图更新完成 - 会话ID: {}, 成员数量: {}, seq: {}", conversationId, memberCount, seq);
     }
     
     @Override
@@ -2,13 +2,17 @@ package com.vanky.im.message.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.vanky.im.common.constant.RedisKeyConstants;
-import com.vanky.im.common.constant.SessionConstants;
+import com.vanky.im.common.model.UserSession;
 import com.vanky.im.common.util.CacheSafetyManager;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.entity.UserConversationList;
 import com.vanky.im.message.mapper.UserConversationListMapper;
+import com.vanky.im.message.model.GroupMemberSnapshot;
 import com.vanky.im.message.service.GroupMemberService;
+import com.vanky.im.message.service.UserSessionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
@@ -25,6 +29,10 @@ import java.util.stream.Collectors;
  * - 新增从user_conversation_list表查询群组成员的数据库兜底方案
  * - 优化缓存策略：数据库查询成功后自动回填Redis缓存
  * - 支持群组ID与会话ID的格式转换（group_前缀处理）
+ *
+ * 群成员以 {@link GroupMemberSnapshot}（升序 String[]）缓存在本地L1中：
+ * 成员变更时递增Redis中的版本号并广播失效通知；通知可能丢失，因此快照每隔
+ * group.member-cache.version-check-interval-ms 还会读取一次版本号，不一致时重新加载
  */
 @Slf4j
 @Service
@@ -39,113 +47,131 @@ public class GroupMemberServiceImpl implements GroupMemberService {
     @Autowired
     private CacheSafetyManager cacheSafetyManager;
 
+    @Autowired
+    private OnlinePresenceRegistry onlinePresenceRegistry;
+
+    @Autowired
+    private UserSessionService userSessionService;
+
+    /**
+     * 快照距上次校验超过该间隔（毫秒）时读取一次Redis中的版本号
+     */
+    @Value("${group.member-cache.version-check-interval-ms:1000}")
+    private long versionCheckIntervalMs;
+
     // 注意：Redis key前缀和缓存配置已迁移到RedisKeyConstants类
-    
+
     @Override
-    public List<String> getGroupMemberIds(String groupId) {
+    public GroupMemberSnapshot getGroupMembers(String groupId) {
         String cacheKey = RedisKeyConstants.getGroupMembersKey(groupId);
-        
-        // 使用缓存安全管理器，但由于需要特殊处理Set类型，这里保持原有逻辑并增强
-        return safeGetGroupMemberList(cacheKey, () -> getGroupMemberIdsFromDb(groupId));
+
+        // 本地L1缓存在前，未命中时同群的并发请求合并为一次Redis/数据库加载
+        GroupMemberSnapshot snapshot = getSnapshotWithLocalCache(groupId, cacheKey);
+
+        long now = System.currentTimeMillis();
+        if (now - snapshot.getVerifiedAt() < versionCheckIntervalMs) {
+            return snapshot;
+        }
+
+        Long currentVersion = readVersion(groupId);
+        if (currentVersion == null || currentVersion == snapshot.getVersion()) {
+            // 版本号读取失败时继续使用当前快照，由L1的TTL兜底
+            snapshot.markVerified(now);
+            return snapshot;
+        }
+
+        log.debug("群成员版本号已变化，重新加载 - 群组ID: {}, 本地版本: {}, 当前版本: {}",
+                groupId, snapshot.getVersion(), currentVersion);
+        cacheSafetyManager.evictLocal(cacheKey);
+        return getSnapshotWithLocalCache(groupId, cacheKey);
+    }
+
+    @Override
+    public List<String> getGroupMemberIds(String groupId) {
+        return getGroupMembers(groupId).getMemberIds();
+    }
+
+    private GroupMemberSnapshot getSnapshotWithLocalCache(String groupId, String cacheKey) {
+        return cacheSafetyManager.getWithLocalCache(cacheKey,
+                () -> loadGroupMemberSnapshot(groupId, cacheKey),
+                TimeUnit.HOURS.toSeconds(RedisKeyConstants.CACHE_EXPIRE_HOURS));
     }
 
     /**
-     * 安全获取群组成员列表，带缓存穿透和缓存击穿保护
-     * 由于群组成员使用Set类型存储，需要特殊处理
+     * 读取Redis中的群成员版本号
+     * @return 版本号，不存在时为0，读取失败时为null
      */
-    private List<String> safeGetGroupMemberList(String cacheKey, java.util.function.Supplier<List<String>> dataLoader) {
+    private Long readVersion(String groupId) {
         try {
-            // 1. 检查缓存是否存在
-            Boolean exists = redisTemplate.hasKey(cacheKey);
-            if (Boolean.TRUE.equals(exists)) {
-                Set<Object> members = redisTemplate.opsForSet().members(cacheKey);
-                if (members != null && !members.isEmpty()) {
-                    log.debug("从Redis缓存获取群组成员 - key: {}, 成员数: {}", cacheKey, members.size());
-                    return members.stream()
-                            .map(Object::toString)
-                            .collect(Collectors.toList());
-                }
+            return toVersion(redisTemplate.opsForValue().get(RedisKeyConstants.getGroupMembersVersionKey(groupId)));
+        } catch (Exception e) {
+            log.warn("读取群成员版本号失败 - 群组ID: {}", groupId, e);
+            return null;
+        }
+    }
+
+    private long toVersion(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException e) {
+                log.warn("群成员版本号格式错误 - 值: {}", value);
             }
+        }
+        return 0L;
+    }
 
-            // 2. 缓存未命中，使用分布式锁防止缓存击穿
-            String lockKey = "cache:lock:" + cacheKey;
-            String lockValue = String.valueOf(System.currentTimeMillis());
-            
-            Boolean lockAcquired = redisTemplate.opsForValue().setIfAbsent(
-                    lockKey, lockValue, java.time.Duration.ofSeconds(30));
-            
-            if (Boolean.TRUE.equals(lockAcquired)) {
-                try {
-                    // 双重检查缓存
-                    exists = redisTemplate.hasKey(cacheKey);
-                    if (Boolean.TRUE.equals(exists)) {
-                        Set<Object> members = redisTemplate.opsForSet().members(cacheKey);
-                        if (members != null && !members.isEmpty()) {
-                            return members.stream()
-                                    .map(Object::toString)
-                                    .collect(Collectors.toList());
-                        }
-                    }
-                    
-                    // 从数据库加载
-                    log.debug("从数据库查询群组成员 - key: {}", cacheKey);
-                    List<String> memberIds = dataLoader.get();
-                    
-                    if (memberIds != null && !memberIds.isEmpty()) {
-                        // 缓存正常数据
-                        String[] memberArray = memberIds.toArray(new String[0]);
-                        redisTemplate.opsForSet().add(cacheKey, (Object[]) memberArray);
-                        redisTemplate.expire(cacheKey, RedisKeyConstants.CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-                        log.debug("缓存群组成员成功 - key: {}, 成员数: {}", cacheKey, memberIds.size());
-                        return memberIds;
-                    } else {
-                        // 缓存空值标记
-                        cacheSafetyManager.setNullValueCache(cacheKey);
-                        log.debug("缓存群组空值标记 - key: {}", cacheKey);
-                        return new ArrayList<>();
-                    }
-                    
-                } finally {
-                    // 释放锁
-                    String luaScript = 
-                        "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
-                        "    return redis.call('DEL', KEYS[1]) " +
-                        "else " +
-                        "    return 0 " +
-                        "end";
-                    redisTemplate.execute((org.springframework.data.redis.core.RedisCallback<Object>) connection -> {
-                        return connection.eval(luaScript.getBytes(), 
-                                             org.springframework.data.redis.connection.ReturnType.INTEGER, 
-                                             1, lockKey.getBytes(), lockValue.getBytes());
-                    });
-                }
-            } else {
-                // 获取锁失败，等待后重试
-                for (int i = 0; i < 3; i++) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                    
-                    exists = redisTemplate.hasKey(cacheKey);
-                    if (Boolean.TRUE.equals(exists)) {
-                        Set<Object> members = redisTemplate.opsForSet().members(cacheKey);
-                        if (members != null && !members.isEmpty()) {
-                            return members.stream()
-                                    .map(Object::toString)
-                                    .collect(Collectors.toList());
-                        }
-                    }
-                }
-                
-                // 降级处理
-                log.warn("获取分布式锁失败，直接查询数据库 - key: {}", cacheKey);
-                List<String> result = dataLoader.get();
-                return result != null ? result : new ArrayList<>();
+    /**
+     * 加载群成员快照：版本号和成员Set在一次管道往返中读取（先读版本号，
+     * 成员变更先改Set再递增版本号，因此读到的版本号不会比成员数据新）
+     * Redis未命中时从数据库加载并回填
+     */
+    private GroupMemberSnapshot loadGroupMemberSnapshot(String groupId, String cacheKey) {
+        RedisBatch batch = RedisBatch.of(redisTemplate);
+        RedisBatch.Result<Object> version = batch.get(RedisKeyConstants.getGroupMembersVersionKey(groupId));
+        RedisBatch.Result<Set<Object>> members = batch.members(cacheKey);
+        try {
+            batch.execute();
+        } catch (Exception e) {
+            log.error("读取群组成员缓存失败 - key: {}", cacheKey, e);
+        }
+
+        long currentVersion = version.isDone() ? toVersion(version.get()) : 0L;
+        if (members.isDone() && members.get() != null && !members.get().isEmpty()) {
+            log.debug("从Redis缓存获取群组成员 - key: {}, 成员数: {}, 版本: {}",
+                    cacheKey, members.get().size(), currentVersion);
+            return GroupMemberSnapshot.of(groupId, currentVersion, members.get());
+        }
+
+        List<String> memberIds = safeGetGroupMemberList(cacheKey, () -> getGroupMemberIdsFromDb(groupId));
+        return memberIds.isEmpty()
+                ? GroupMemberSnapshot.empty(groupId, currentVersion)
+                : GroupMemberSnapshot.of(groupId, currentVersion, memberIds);
+    }
+
+    /**
+     * Redis未命中时从数据库加载群组成员并回填Set
+     * 缓存击穿由调用方的本地合并加载保护（同一实例同一群只有一个线程会走到这里）
+     */
+    private List<String> safeGetGroupMemberList(String cacheKey, java.util.function.Supplier<List<String>> dataLoader) {
+        try {
+            // 缓存未命中，从数据库加载
+            log.debug("从数据库查询群组成员 - key: {}", cacheKey);
+            List<String> memberIds = dataLoader.get();
+
+            if (memberIds != null && !memberIds.isEmpty()) {
+                // 缓存正常数据
+                String[] memberArray = memberIds.toArray(new String[0]);
+                redisTemplate.opsForSet().add(cacheKey, (Object[]) memberArray);
+                redisTemplate.expire(cacheKey, RedisKeyConstants.CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
+                log.debug("缓存群组成员成功 - key: {}, 成员数: {}", cacheKey, memberIds.size());
+                return memberIds;
             }
-            
+            return new ArrayList<>();
+
         } catch (Exception e) {
             log.error("安全获取群组成员失败 - key: {}", cacheKey, e);
             try {
@@ -161,9 +187,8 @@ public class GroupMemberServiceImpl implements GroupMemberService {
     @Override
     public boolean isGroupMember(String groupId, String userId) {
         try {
-            // 优化：直接获取群组成员列表（带缓存安全保护），然后检查用户是否在其中
-            List<String> memberIds = getGroupMemberIds(groupId);
-            boolean isMember = memberIds.contains(userId);
+            // 成员快照为有序数组，二分查找判断
+            boolean isMember = getGroupMembers(groupId).contains(userId);
             
             log.debug("检查群组成员身份 - 群组ID: {}, 用户ID: {}, 是否成员: {}", groupId, userId, isMember);
             return isMember;
@@ -183,11 +208,13 @@ public class GroupMemberServiceImpl implements GroupMemberService {
                 return new HashSet<>();
             }
             
-            // 2. 检查哪些成员在线
+            // 2. 检查哪些成员在线：优先在本地在线状态复制表中求交集
+            if (onlinePresenceRegistry.isReady()) {
+                return new HashSet<>(onlinePresenceRegistry.filterOnline(allMembers).keySet());
+            }
             Set<String> onlineMembers = new HashSet<>();
             for (String memberId : allMembers) {
-                String userSessionKey = SessionConstants.getUserSessionKey(memberId);
-                if (Boolean.TRUE.equals(redisTemplate.hasKey(userSessionKey))) {
+                if (!userSessionService.getUserSessions(memberId).isEmpty()) {
                     onlineMembers.add(memberId);
                 }
             }
@@ -202,6 +229,44 @@ public class GroupMemberServiceImpl implements GroupMemberService {
         }
     }
     
+    @Override
+    public Map<String, Set<String>> getOnlineGroupMemberGateways(String groupId) {
+        return getOnlineGroupMemberGateways(getGroupMembers(groupId));
+    }
+
+    @Override
+    public Map<String, Set<String>> getOnlineGroupMemberGateways(GroupMemberSnapshot members) {
+        String groupId = members.getGroupId();
+        try {
+            List<String> allMembers = members.getMemberIds();
+            if (allMembers.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            if (onlinePresenceRegistry.isReady()) {
+                return onlinePresenceRegistry.filterOnline(allMembers);
+            }
+
+            // 复制表未就绪时回退到逐个成员读取Redis会话
+            Map<String, Set<String>> memberToGateways = new HashMap<>();
+            for (String memberId : allMembers) {
+                Set<String> gatewayIds = new HashSet<>();
+                for (UserSession userSession : userSessionService.getUserSessions(memberId)) {
+                    if (userSession.getNodeId() != null) {
+                        gatewayIds.add(userSession.getNodeId());
+                    }
+                }
+                if (!gatewayIds.isEmpty()) {
+                    memberToGateways.put(memberId, gatewayIds);
+                }
+            }
+            return memberToGateways;
+        } catch (Exception e) {
+            log.error("获取群组在线成员网关失败 - 群组ID: {}", groupId, e);
+            return new HashMap<>();
+        }
+    }
+
     /**
      * 添加群组成员（管理方法）
      * @param groupId 群组ID
@@ -211,6 +276,9 @@ public class GroupMemberServiceImpl implements GroupMemberService {
         try {
             String key = RedisKeyConstants.getGroupMembersKey(groupId);
             redisTemplate.opsForSet().add(key, userId);
+            // 先改Set再递增版本号，读到新版本号的加载一定能看到新成员
+            redisTemplate.opsForValue().increment(RedisKeyConstants.getGroupMembersVersionKey(groupId));
+            cacheSafetyManager.invalidateLocal(key);
             log.info("添加群组成员 - 群组ID: {}, 用户ID: {}", groupId, userId);
         } catch (Exception e) {
             log.error("添加群组成员失败 - 群组ID: {}, 用户ID: {}", groupId, userId, e);
@@ -226,6 +294,8 @@ public class GroupMemberServiceImpl implements GroupMemberService {
         try {
             String key = RedisKeyConstants.getGroupMembersKey(groupId);
             redisTemplate.opsForSet().remove(key, userId);
+            redisTemplate.opsForValue().increment(RedisKeyConstants.getGroupMembersVersionKey(groupId));
+            cacheSafetyManager.invalidateLocal(key);
             log.info("移除群组成员 - 群组ID: {}, 用户ID: {}", groupId, userId);
         } catch (Exception e) {
             log.error("移除群组成员失败 - 群组ID: {}, 用户ID: {}", groupId, userId, e);
@@ -240,9 +310,7 @@ public class GroupMemberServiceImpl implements GroupMemberService {
     @Override
     public int getGroupMemberCount(String groupId) {
         try {
-            // 优化：直接获取群组成员列表（带缓存安全保护），然后返回数量
-            List<String> memberIds = getGroupMemberIds(groupId);
-            return memberIds.size();
+            return getGroupMembers(groupId).size();
         } catch (Exception e) {
             log.error("获取群组成员数量失败 - 群组ID: {}", groupId, e);
             return 0;
@@ -6,13 +6,19 @@ import com.vanky.im.message.service.GroupNotificationService;
 import com.vanky.im.message.service.GatewayMessagePushService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 群聊通知服务实现
  * 用于读扩散模式下的轻量级通知推送
+ * 在线成员按所在网关分桶，每个网关只发一条MQ消息（通知体一份 + 目标用户列表），由网关本地展开
  * 
  * @author vanky
  * @create 2025-08-02
@@ -27,6 +33,12 @@ public class GroupNotificationServiceImpl implements GroupNotificationService {
     
     @Autowired
     private GatewayMessagePushService gatewayMessagePushService;
+
+    /**
+     * 单条MQ消息携带的最多目标用户数，超过后拆为多条，限制消息体大小和网关单批处理量
+     */
+    @Value("${group.notification.max-targets-per-message:2000}")
+    private int maxTargetsPerMessage;
     
     @Override
     public void pushNotificationToUser(ChatMessage notificationMessage, Long conversationSeq, String gatewayNodeId) {
@@ -54,7 +66,7 @@ public class GroupNotificationServiceImpl implements GroupNotificationService {
     
     @Override
     public void pushNotificationToOnlineMembers(ChatMessage originalMessage, Long conversationSeq,
-                                              Map<String, String> onlineMembers) {
+                                              Map<String, Set<String>> onlineMembers) {
 
         // {{CHENGQI:
         // Action: Modified; Timestamp: 2025-08-04 21:00:00 +08:00; Reason: 修正批量推送逻辑，使用会话级seq;
@@ -63,38 +75,58 @@ public class GroupNotificationServiceImpl implements GroupNotificationService {
         log.info("开始批量推送群聊通知 - 会话ID: {}, 消息ID: {}, 会话seq: {}, 在线成员数: {}",
                 originalMessage.getConversationId(), originalMessage.getUid(), conversationSeq, onlineMembers.size());
 
-        int successCount = 0;
-        int failureCount = 0;
-
-        for (Map.Entry<String, String> entry : onlineMembers.entrySet()) {
-            String memberId = entry.getKey();
-            String gatewayNodeId = entry.getValue();
-
-            try {
-                // 统一推送逻辑：发送方也接收自己的消息作为发送确认
-                // 移除跳过发送者的逻辑，让发送方也能收到群聊通知
+        // 统一推送逻辑：发送方也接收自己的消息作为发送确认
+        // 发送方的通知带有客户端序列号，与其他成员的内容不同，单独推送
+        String senderId = originalMessage.getFromId();
+        Set<String> senderGateways = onlineMembers.get(senderId);
+        if (senderGateways != null) {
+            ChatMessage senderNotification = createNotificationMessage(originalMessage, senderId, conversationSeq);
+            for (String gatewayNodeId : senderGateways) {
+                pushNotificationToUser(senderNotification, conversationSeq, gatewayNodeId);
+            }
+            log.debug("群聊通知已推送给发送方作为发送确认 - 发送方: {}, 会话ID: {}",
+                    senderId, originalMessage.getConversationId());
+        }
 
-                // 为每个成员创建专门的通知消息，传递会话级seq
-                ChatMessage notificationMessage = createNotificationMessage(originalMessage, memberId, conversationSeq);
+        // 其他成员按所在网关分桶；多端登录时成员会出现在其每个所在网关的桶中，由网关扇出到设备
+        Map<String, List<String>> membersByGateway = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : onlineMembers.entrySet()) {
+            if (entry.getKey().equals(senderId)) {
+                continue;
+            }
+            for (String gatewayNodeId : entry.getValue()) {
+                membersByGateway.computeIfAbsent(gatewayNodeId, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        if (membersByGateway.isEmpty()) {
+            return;
+        }
 
-                // 推送通知，使用会话级seq
-                pushNotificationToUser(notificationMessage, conversationSeq, gatewayNodeId);
-                successCount++;
+        // 其他成员共用同一份通知体：toId为群组ID，目标用户由信封头给出
+        ChatMessage sharedNotification = createNotificationMessage(originalMessage, originalMessage.getToId(), conversationSeq);
 
-                // 如果是发送方，记录日志便于调试
-                if (memberId.equals(originalMessage.getFromId())) {
-                    log.debug("群聊通知已推送给发送方作为发送确认 - 发送方: {}, 会话ID: {}",
-                            memberId, originalMessage.getConversationId());
+        int messageCount = 0;
+        int failureCount = 0;
+        for (Map.Entry<String, List<String>> entry : membersByGateway.entrySet()) {
+            String gatewayNodeId = entry.getKey();
+            List<String> members = entry.getValue();
+            int batchSize = Math.max(1, maxTargetsPerMessage);
+            for (int from = 0; from < members.size(); from += batchSize) {
+                List<String> targets = members.subList(from, Math.min(from + batchSize, members.size()));
+                try {
+                    gatewayMessagePushService.pushNotificationToGateway(sharedNotification, conversationSeq,
+                            gatewayNodeId, targets);
+                    messageCount++;
+                } catch (Exception e) {
+                    log.error("推送群聊通知到网关失败 - 网关: {}, 目标用户数: {}, 会话ID: {}",
+                            gatewayNodeId, targets.size(), originalMessage.getConversationId(), e);
+                    failureCount++;
                 }
-
-            } catch (Exception e) {
-                log.error("推送群聊通知给成员失败 - 成员ID: {}, 会话ID: {}", memberId, originalMessage.getConversationId(), e);
-                failureCount++;
             }
         }
 
-        log.info("群聊通知批量推送完成 - 会话ID: {}, 会话seq: {}, 成功: {}, 失败: {}",
-                originalMessage.getConversationId(), conversationSeq, successCount, failureCount);
+        log.info("群聊通知批量推送完成 - 会话ID: {}, 会话seq: {}, 网关数: {}, MQ消息数: {}, 失败: {}",
+                originalMessage.getConversationId(), conversationSeq, membersByGateway.size(), messageCount, failureCount);
         // {{END MODIFICATIONS}}
     }
     
@@ -110,7 +142,7 @@ public class GroupNotificationServiceImpl implements GroupNotificationService {
         // 1. type: 特殊的通知类型，标识这是群聊通知
         // 2. content: 简化的通知内容
         // 3. fromId: 发送方用户ID
-        // 4. toId: 接收方用户ID（目标用户ID，不是群组ID）
+        // 4. toId: 发送方自己的那份为目标用户ID；其他成员共用的那份为群组ID，目标用户由推送信封头给出
         // 5. conversationId: 群聊会话ID，用于标识来源群聊
         // 6. seq: 会话级序列号，用于ACK确认
 
@@ -127,7 +159,7 @@ public class GroupNotificationServiceImpl implements GroupNotificationService {
                 .setType(MessageTypeConstants.GROUP_MESSAGE_NOTIFICATION) // 特殊的通知类型
                 .setContent(notificationContent) // 简化的通知内容
                 .setFromId(originalMessage.getFromId()) // 保持发送方ID
-                .setToId(targetUserId) // 关键修正：设置为目标用户ID，不是群组ID
+                .setToId(targetUserId) // 发送方那份为目标用户ID，共用通知体由调用方传入群组ID
                 .setUid(originalMessage.getUid()) // 使用原消息ID
                 .setSeq(String.valueOf(conversationSeq)) // 关键修正：使用会话级seq，不是原消息seq
                 .setTimestamp(originalMessage.getTimestamp()) // 使用原消息时间戳
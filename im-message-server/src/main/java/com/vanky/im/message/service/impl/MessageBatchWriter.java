@@ -0,0 +1,236 @@
+package com.vanky.im.message.service.impl;
+
+import com.vanky.im.message.entity.ConversationMsgList;
+import com.vanky.im.message.entity.Message;
+import com.vanky.im.message.entity.MessageConsumeRecord;
+import com.vanky.im.message.entity.UserMsgList;
+import com.vanky.im.message.mapper.ConversationMsgListMapper;
+import com.vanky.im.message.mapper.MessageConsumeRecordMapper;
+import com.vanky.im.message.mapper.MessageMapper;
+import com.vanky.im.message.mapper.UserMsgListMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 消息落库批量写入器
+ * message、user_msg_list、conversation_msg_list 三张表的插入不再逐条执行，而是缓存在当前事务上，
+ * 在事务提交前（beforeCommit）按表合并为多行 INSERT 一次写入。
+ *
+ * 缓冲区绑定在事务上，事务由消费线程开启，因此天然是每个消费线程一份，无需加锁；
+ * 一个事务内处理多条消息时（批量消费），这些消息的行会合并到同一批 INSERT 中。
+ * 刷库发生在提交之前，刷库失败会使整个事务回滚并向上抛出，RocketMQ 顺序消费随之返回挂起重试，
+ * 所以消费确认一定在数据落库之后。
+ * 没有事务时（或关闭批量写时）直接逐条插入，与原行为一致。
+ *
+ * 消费记录（message_consume_record）随同一批次最先写入：Broker 重投已提交的消息时唯一键冲突，
+ * 整个事务在写消息行之前就回滚，消息不会重复落库。
+ *
+ * 注意：同一事务内，缓存中的行在提交前查不到，需要回读时先调用 {@link #flush()}。
+ *
+ * @author vanky
+ * @create 2025/9/8
+ */
+@Slf4j
+@Component
+public class MessageBatchWriter {
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private UserMsgListMapper userMsgListMapper;
+
+    @Autowired
+    private ConversationMsgListMapper conversationMsgListMapper;
+
+    @Autowired
+    private MessageConsumeRecordMapper messageConsumeRecordMapper;
+
+    /**
+     * 是否启用批量写，关闭时每行直接插入
+     */
+    @Value("${message.batch-write.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 单条INSERT语句包含的最大行数
+     */
+    @Value("${message.batch-write.max-rows-per-statement:500}")
+    private int maxRowsPerStatement;
+
+    /**
+     * 写入一条消息主体
+     */
+    public void addMessage(Message message) {
+        PendingRows pending = currentPending();
+        if (pending == null) {
+            messageMapper.insert(message);
+            return;
+        }
+        pending.messages.add(message);
+    }
+
+    /**
+     * 写入一条用户消息记录
+     */
+    public void addUserMsg(UserMsgList record) {
+        PendingRows pending = currentPending();
+        if (pending == null) {
+            userMsgListMapper.insert(record);
+            return;
+        }
+        pending.userMsgs.add(record);
+    }
+
+    /**
+     * 写入一条会话消息记录
+     */
+    public void addConversationMsg(ConversationMsgList record) {
+        PendingRows pending = currentPending();
+        if (pending == null) {
+            conversationMsgListMapper.insert(record);
+            return;
+        }
+        pending.conversationMsgs.add(record);
+    }
+
+    /**
+     * 写入一条消费记录（幂等标记），与消息行同一事务提交
+     */
+    public void addConsumeRecord(MessageConsumeRecord record) {
+        PendingRows pending = currentPending();
+        if (pending == null) {
+            messageConsumeRecordMapper.insert(record);
+            return;
+        }
+        pending.consumeRecords.add(record);
+    }
+
+    /**
+     * 立即把当前事务中缓存的行写入数据库（仍在事务内，提交前对其他连接不可见）
+     */
+    public void flush() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        PendingRows pending = (PendingRows) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            flush(pending);
+        }
+    }
+
+    /**
+     * 取得当前事务的缓冲区，首次使用时绑定到事务并注册提交前刷库
+     *
+     * @return 缓冲区；无事务或未启用批量写时返回null
+     */
+    private PendingRows currentPending() {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingRows pending = (PendingRows) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingRows();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new BatchSynchronization(pending));
+        }
+        return pending;
+    }
+
+    private void flush(PendingRows pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int messages = pending.messages.size();
+        int userMsgs = pending.userMsgs.size();
+        int conversationMsgs = pending.conversationMsgs.size();
+
+        // 消费记录最先写入，重投的消息在唯一键冲突时尽早失败；其余按逐条处理时相同的表顺序写入
+        insertInChunks(pending.consumeRecords, messageConsumeRecordMapper::insertBatch);
+        insertInChunks(pending.messages, messageMapper::insertBatch);
+        insertInChunks(pending.userMsgs, userMsgListMapper::insertBatch);
+        insertInChunks(pending.conversationMsgs, conversationMsgListMapper::insertBatch);
+        pending.clear();
+
+        log.debug("消息批量落库完成 - message: {}, user_msg_list: {}, conversation_msg_list: {}, 耗时: {}ms",
+                messages, userMsgs, conversationMsgs, System.currentTimeMillis() - start);
+    }
+
+    private <T> void insertInChunks(List<T> rows, Function<List<T>, Integer> insertBatch) {
+        for (int from = 0; from < rows.size(); from += maxRowsPerStatement) {
+            int to = Math.min(from + maxRowsPerStatement, rows.size());
+            insertBatch.apply(rows.subList(from, to));
+        }
+    }
+
+    /**
+     * 提交前刷库；外层事务挂起（REQUIRES_NEW）期间解绑缓冲区，避免内层事务的行混入外层批次
+     */
+    private class BatchSynchronization implements TransactionSynchronization {
+
+        private final PendingRows pending;
+
+        private BatchSynchronization(PendingRows pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(MessageBatchWriter.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(MessageBatchWriter.this, pending);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            flush(pending);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(MessageBatchWriter.this);
+            if (status != STATUS_COMMITTED && !pending.isEmpty()) {
+                log.warn("事务未提交，丢弃未落库的消息行 - message: {}, user_msg_list: {}, conversation_msg_list: {}",
+                        pending.messages.size(), pending.userMsgs.size(), pending.conversationMsgs.size());
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * 当前事务待写入的行
+     */
+    private static class PendingRows {
+
+        private final List<Message> messages = new ArrayList<>();
+
+        private final List<UserMsgList> userMsgs = new ArrayList<>();
+
+        private final List<ConversationMsgList> conversationMsgs = new ArrayList<>();
+
+        private final List<MessageConsumeRecord> consumeRecords = new ArrayList<>();
+
+        private boolean isEmpty() {
+            return messages.isEmpty() && userMsgs.isEmpty() && conversationMsgs.isEmpty() && consumeRecords.isEmpty();
+        }
+
+        private void clear() {
+            consumeRecords.clear();
+            messages.clear();
+            userMsgs.clear();
+            conversationMsgs.clear();
+        }
+    }
+}
@@ -60,7 +60,7 @@ public class MessageReceiverServiceImpl implements MessageReceiverService {
 
             // 2. 更新 user_conversation_list 表中的会话记录
             userConversationListService.updateUserConversationMessage(
-                    Long.valueOf(userId), conversationId, msgId);
+                    Long.valueOf(userId), conversationId, msgId, userGlobalSeq);
 
             log.debug("单个接收者处理完成 - 用户ID: {}, 全局序列号: {}", userId, userGlobalSeq);
             return userGlobalSeq;
@@ -14,6 +14,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -35,6 +37,11 @@ import java.util.List;
 public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message>
     implements MessageService {
 
+    /**
+     * 批量更新状态时单条SQL的IN列表上限
+     */
+    private static final int STATUS_UPDATE_CHUNK_SIZE = 500;
+
     @Autowired
     private MessageMapper messageMapper;
 
@@ -126,6 +133,24 @@ public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message>
         return this.update(wrapper);
     }
 
+    @Override
+    public int batchUpdateMessageStatus(Collection<Long> msgIds, Integer status) {
+        if (msgIds == null || msgIds.isEmpty() || status == null) {
+            return 0;
+        }
+
+        List<Long> ids = new ArrayList<>(msgIds);
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += STATUS_UPDATE_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + STATUS_UPDATE_CHUNK_SIZE, ids.size()));
+            LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<Message>()
+                    .in(Message::getMsgId, chunk)
+                    .set(Message::getStatus, status);
+            updated += messageMapper.update(null, wrapper);
+        }
+        return updated;
+    }
+
     @Override
     public List<Message> getBySenderIdAndType(Long senderId, Integer msgType, Integer limit) {
         LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<Message>()
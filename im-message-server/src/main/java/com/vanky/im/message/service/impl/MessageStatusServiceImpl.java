@@ -10,6 +10,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * 消息状态管理服务实现类
  */
@@ -55,33 +60,43 @@ public class MessageStatusServiceImpl implements MessageStatusService {
         }
 
         try {
-            log.info("批量更新消息推送状态为已送达 - 用户: {}, 消息数量: {}", userId, msgIds.length);
-
-            int successCount = 0;
-            for (String msgId : msgIds) {
-                if (msgId != null && !msgId.trim().isEmpty()) {
-                    // 使用统一的MessageService更新消息状态
-                    boolean updated = messageService.updateMessageStatus(msgId.trim(),
-                            (int)MessageConstants.MESSAGE_STATUS_DELIVERED);
-                    if (updated) {
-                        successCount++;
-                        log.debug("消息状态更新成功 - 消息ID: {}", msgId.trim());
-                    } else {
-                        log.warn("未找到对应的消息记录 - 消息ID: {}", msgId.trim());
-                    }
-                }
-            }
-
-            log.info("批量更新消息推送状态完成 - 用户: {}, 总数: {}, 成功: {}",
-                    userId, msgIds.length, successCount);
-            return successCount;
-
+            int updated = batchUpdateMessageDelivered(Arrays.asList(msgIds));
+            log.info("批量更新消息推送状态完成 - 用户: {}, 总数: {}, 成功: {}", userId, msgIds.length, updated);
+            return updated;
         } catch (Exception e) {
             log.error("批量更新消息推送状态失败 - 用户: {}, 消息数量: {}", userId, msgIds.length, e);
             return 0;
         }
     }
 
+    @Override
+    public int batchUpdateMessageDelivered(Collection<String> msgIds) {
+        if (msgIds == null || msgIds.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> ids = new LinkedHashSet<>(msgIds.size() * 2);
+        for (String msgId : msgIds) {
+            if (msgId == null || msgId.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                ids.add(Long.valueOf(msgId.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("消息ID格式错误: {}", msgId);
+            }
+        }
+
+        try {
+            int updated = messageService.batchUpdateMessageStatus(ids, (int) MessageConstants.MESSAGE_STATUS_DELIVERED);
+            log.debug("批量更新消息推送状态 - 消息数量: {}, 更新记录数: {}", ids.size(), updated);
+            return updated;
+        } catch (Exception e) {
+            log.error("批量更新消息推送状态失败 - 消息数量: {}", ids.size(), e);
+            throw e;
+        }
+    }
+
     @Override
     public boolean updateMessageRead(String msgId, String userId) {
         try {
@@ -0,0 +1,356 @@
+package com.vanky.im.message.service.impl;
+
+import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.common.model.PresenceEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在线状态复制表
+ * 订阅各网关发布的上下线增量，在本地维护 userId -> 所在网关集合（多端登录时设备可能分布在多个网关），
+ * 群聊等批量场景直接在内存中与成员列表求交集，不再逐个成员查询Redis会话。
+ *
+ * 一致性：每个网关按 (epoch, seq) 发布增量，纪元变化（网关重启）或序号不连续（漏收）时，
+ * 从该网关的在线集合全量重载，之后继续应用后续增量；网关超过 gateway-timeout 未发心跳视为宕机，其用户全部离线。
+ * 所有事件和检测都在同一个线程中按到达顺序处理。
+ * 启动后需等待一个预热期收齐各网关心跳，预热结束前 isReady 为 false，调用方应回退到Redis查询。
+ *
+ * @author vanky
+ * @since 2025-09-04
+ */
+@Slf4j
+@Component
+public class OnlinePresenceRegistry {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 是否启用在线状态复制
+     */
+    @Value("${presence.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 网关心跳间隔（毫秒），需与网关一致
+     */
+    @Value("${presence.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * 网关心跳超时（毫秒），超时后其用户全部视为离线
+     */
+    @Value("${presence.gateway-timeout-ms:15000}")
+    private long gatewayTimeoutMs;
+
+    /**
+     * 在线用户 -> 所在网关集合（不可变集合，只由处理线程整体替换，读取方无需加锁）
+     */
+    private final ConcurrentHashMap<String, Set<String>> onlineUsers = new ConcurrentHashMap<>();
+
+    /**
+     * 各网关的复制状态，仅由处理线程访问
+     */
+    private final Map<String, GatewayState> gateways = new HashMap<>();
+
+    private final ScheduledExecutorService processor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "presence-registry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RedisMessageListenerContainer listener;
+
+    private volatile long readyAt = Long.MAX_VALUE;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong appliedDeltas = new AtomicLong(0);
+    private final AtomicLong reloads = new AtomicLong(0);
+    private final AtomicLong expiredGateways = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("在线状态复制已禁用，在线判断使用Redis会话");
+            return;
+        }
+
+        try {
+            listener = new RedisMessageListenerContainer();
+            listener.setConnectionFactory(redisTemplate.getConnectionFactory());
+            // 事件交给单线程处理，保证同一网关的增量按发布顺序应用
+            listener.setTaskExecutor(processor);
+            listener.addMessageListener((message, pattern) -> onEvent(message),
+                    new ChannelTopic(RedisKeyConstants.PRESENCE_CHANNEL));
+            listener.afterPropertiesSet();
+            listener.start();
+        } catch (Exception e) {
+            enabled = false;
+            log.error("订阅在线状态频道失败，在线判断回退到Redis会话", e);
+            return;
+        }
+
+        processor.scheduleWithFixedDelay(this::expireGateways,
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        // 预热期内收齐所有存活网关的心跳并完成全量重载
+        readyAt = System.currentTimeMillis() + 2 * heartbeatIntervalMs;
+        log.info("在线状态复制启动 - 心跳间隔: {}ms, 网关超时: {}ms", heartbeatIntervalMs, gatewayTimeoutMs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (listener != null) {
+            try {
+                listener.stop();
+                listener.destroy();
+            } catch (Exception e) {
+                log.warn("关闭在线状态订阅失败", e);
+            }
+        }
+        processor.shutdownNow();
+    }
+
+    /**
+     * 复制表是否可用，不可用时调用方应回退到Redis查询
+     */
+    public boolean isReady() {
+        return enabled && System.currentTimeMillis() >= readyAt;
+    }
+
+    /**
+     * 用户是否在线
+     */
+    public boolean isOnline(String userId) {
+        return onlineUsers.containsKey(userId);
+    }
+
+    /**
+     * 获取用户所在的全部网关，离线返回空集合
+     */
+    public Set<String> getGatewayIds(String userId) {
+        return onlineUsers.getOrDefault(userId, Set.of());
+    }
+
+    /**
+     * 在线用户与给定用户集合求交集
+     *
+     * @param userIds 用户ID集合（如群成员）
+     * @return 其中在线的用户 -> 所在网关集合
+     */
+    public Map<String, Set<String>> filterOnline(Collection<String> userIds) {
+        Map<String, Set<String>> result = new HashMap<>();
+        for (String userId : userIds) {
+            Set<String> gatewayIds = onlineUsers.get(userId);
+            if (gatewayIds != null) {
+                result.put(userId, gatewayIds);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在线用户总数
+     */
+    public int getOnlineUserCount() {
+        return onlineUsers.size();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", isReady());
+        stats.put("onlineUsers", onlineUsers.size());
+        stats.put("appliedDeltas", appliedDeltas.get());
+        stats.put("reloads", reloads.get());
+        stats.put("expiredGateways", expiredGateways.get());
+        return stats;
+    }
+
+    private void onEvent(Message message) {
+        try {
+            Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if (body instanceof PresenceEvent) {
+                handle((PresenceEvent) body);
+            }
+        } catch (Exception e) {
+            log.error("处理在线状态事件失败", e);
+        }
+    }
+
+    private void handle(PresenceEvent event) {
+        String gatewayId = event.getGatewayId();
+        if (PresenceEvent.TYPE_LEAVE.equals(event.getType())) {
+            GatewayState state = gateways.remove(gatewayId);
+            if (state != null) {
+                dropUsers(gatewayId, state);
+                log.info("网关下线，移除其在线用户 - 网关: {}, 用户数: {}", gatewayId, state.users.size());
+            }
+            return;
+        }
+
+        GatewayState state = gateways.get(gatewayId);
+        if (state == null || state.epoch != event.getEpoch()) {
+            if (state != null) {
+                dropUsers(gatewayId, state);
+                log.info("网关重启，重建在线状态 - 网关: {}", gatewayId);
+            }
+            state = new GatewayState(event.getEpoch());
+            gateways.put(gatewayId, state);
+            reload(gatewayId, state, event.getSeq());
+        } else if (PresenceEvent.TYPE_DELTA.equals(event.getType()) && event.getSeq() == state.seq + 1) {
+            apply(gatewayId, state, event);
+        } else if (event.getSeq() > state.seq) {
+            log.warn("在线状态增量不连续，全量重载 - 网关: {}, 本地序号: {}, 事件序号: {}",
+                    gatewayId, state.seq, event.getSeq());
+            reload(gatewayId, state, event.getSeq());
+        }
+        state.lastSeen = System.currentTimeMillis();
+    }
+
+    private void apply(String gatewayId, GatewayState state, PresenceEvent event) {
+        for (String userId : event.getOnline()) {
+            state.users.add(userId);
+            addGateway(userId, gatewayId);
+        }
+        for (String userId : event.getOffline()) {
+            state.users.remove(userId);
+            // 只移除该网关，用户在其他网关的设备仍在线
+            removeGateway(userId, gatewayId);
+        }
+        state.seq = event.getSeq();
+        appliedDeltas.incrementAndGet();
+    }
+
+    /**
+     * 从网关在线集合全量重载。网关先写集合再发布增量，因此快照已包含 seq 及之前的全部变化，
+     * 快照读取之后到达的增量仍会按序应用（集合操作幂等，同一用户以最后一次变化为准）。
+     */
+    private void reload(String gatewayId, GatewayState state, long seq) {
+        reloads.incrementAndGet();
+        Set<Object> members;
+        try {
+            members = redisTemplate.opsForSet().members(RedisKeyConstants.getPresenceGatewayKey(gatewayId));
+        } catch (Exception e) {
+            // 保留旧序号，下一次心跳再次触发重载
+            log.error("加载网关在线集合失败 - 网关: {}", gatewayId, e);
+            return;
+        }
+
+        Set<String> snapshot = new HashSet<>();
+        if (members != null) {
+            for (Object member : members) {
+                snapshot.add(member.toString());
+            }
+        }
+        for (Iterator<String> it = state.users.iterator(); it.hasNext(); ) {
+            String userId = it.next();
+            if (!snapshot.contains(userId)) {
+                it.remove();
+                removeGateway(userId, gatewayId);
+            }
+        }
+        for (String userId : snapshot) {
+            state.users.add(userId);
+            addGateway(userId, gatewayId);
+        }
+        state.seq = seq;
+        log.info("网关在线状态全量重载完成 - 网关: {}, 序号: {}, 在线用户: {}", gatewayId, seq, snapshot.size());
+    }
+
+    private void expireGateways() {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        gateways.forEach((gatewayId, state) -> {
+            if (now - state.lastSeen > gatewayTimeoutMs) {
+                expired.add(gatewayId);
+            }
+        });
+        for (String gatewayId : expired) {
+            GatewayState state = gateways.remove(gatewayId);
+            dropUsers(gatewayId, state);
+            expiredGateways.incrementAndGet();
+            log.warn("网关心跳超时，其用户视为离线 - 网关: {}, 用户数: {}", gatewayId, state.users.size());
+        }
+    }
+
+    private void dropUsers(String gatewayId, GatewayState state) {
+        for (String userId : state.users) {
+            removeGateway(userId, gatewayId);
+        }
+    }
+
+    private void addGateway(String userId, String gatewayId) {
+        onlineUsers.compute(userId, (key, gatewayIds) -> {
+            if (gatewayIds == null) {
+                return Set.of(gatewayId);
+            }
+            if (gatewayIds.contains(gatewayId)) {
+                return gatewayIds;
+            }
+            Set<String> updated = new HashSet<>(gatewayIds);
+            updated.add(gatewayId);
+            return Collections.unmodifiableSet(updated);
+        });
+    }
+
+    private void removeGateway(String userId, String gatewayId) {
+        onlineUsers.computeIfPresent(userId, (key, gatewayIds) -> {
+            if (!gatewayIds.contains(gatewayId)) {
+                return gatewayIds;
+            }
+            if (gatewayIds.size() == 1) {
+                return null;
+            }
+            Set<String> updated = new HashSet<>(gatewayIds);
+            updated.remove(gatewayId);
+            return Collections.unmodifiableSet(updated);
+        });
+    }
+
+    /**
+     * 单个网关的复制状态
+     */
+    private static final class GatewayState {
+
+        private final long epoch;
+
+        private long seq;
+
+        private long lastSeen;
+
+        private final Set<String> users = new HashSet<>();
+
+        GatewayState(long epoch) {
+            this.epoch = epoch;
+            this.lastSeen = System.currentTimeMillis();
+        }
+    }
+}
@@ -75,11 +75,17 @@ public class OnlineStatusServiceImpl implements OnlineStatusService {
     @Override
     public boolean isUserOnlineAtGateway(String userId, String gatewayId) {
         try {
-            String userGatewayId = getUserGatewayId(userId);
-            boolean atGateway = gatewayId != null && gatewayId.equals(userGatewayId);
+            // 多端登录时任一设备连在该网关即可
+            boolean atGateway = false;
+            for (UserSession userSession : userSessionService.getUserSessions(userId)) {
+                if (gatewayId != null && gatewayId.equals(userSession.getNodeId())) {
+                    atGateway = true;
+                    break;
+                }
+            }
             
-            log.debug("检查用户是否在指定网关在线 - 用户ID: {}, 目标网关: {}, 实际网关: {}, 结果: {}", 
-                    userId, gatewayId, userGatewayId, atGateway);
+            log.debug("检查用户是否在指定网关在线 - 用户ID: {}, 目标网关: {}, 结果: {}", 
+                    userId, gatewayId, atGateway);
             return atGateway;
             
         } catch (Exception e) {
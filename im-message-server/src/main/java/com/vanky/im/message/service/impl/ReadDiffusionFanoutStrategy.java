@@ -0,0 +1,189 @@
+package com.vanky.im.message.service.impl;
+
+import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.message.entity.UserConversationList;
+import com.vanky.im.message.mapper.UserConversationListMapper;
+import com.vanky.im.message.model.GroupMemberSnapshot;
+import com.vanky.im.message.service.GroupConversationFanoutStrategy;
+import com.vanky.im.message.service.UserConversationListService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读扩散策略（大群）
+ * 消息写入只推进会话头，成员行只保存 last_read_seq，未读数在同步时计算。
+ * 仅在群成员变化（快照版本号或成员指纹变化，含成员数不变的换人）或本实例首次处理该会话时补齐缺失的成员行，
+ * 正常消息写入不产生逐成员SQL
+ *
+ * @author vanky
+ * @create 2025-09-02
+ */
+@Slf4j
+@Component
+public class ReadDiffusionFanoutStrategy implements GroupConversationFanoutStrategy {
+
+    /**
+     * 单条补建语句的最大行数
+     */
+    private static final int INSERT_CHUNK_SIZE = 500;
+
+    @Autowired
+    private UserConversationListService userConversationListService;
+
+    @Autowired
+    private UserConversationListMapper userConversationListMapper;
+
+    /**
+     * 最多记录的已补齐会话数，超过后淘汰一部分（被淘汰的会话下次消息时重新核对一次成员行）
+     */
+    @Value("${group.read-diffusion.max-tracked-conversations:10000}")
+    private int maxTrackedConversations;
+
+    /**
+     * 已补齐成员行的会话 -> 补齐时的群成员快照标识
+     */
+    private final ConcurrentHashMap<String, MaterializedMembers> materialized = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean supports(int memberCount) {
+        return memberCount >= RedisKeyConstants.SMALL_GROUP_THRESHOLD;
+    }
+
+    @Override
+    public void fanout(String conversationId, GroupMemberSnapshot groupMembers, String lastMsgId, Long seq) {
+        MaterializedMembers current = new MaterializedMembers(groupMembers.getVersion(), groupMembers.getMembersHash());
+        if (current.equals(materialized.get(conversationId))) {
+            return;
+        }
+
+        ensureMemberRows(conversationId, groupMembers.getMemberIds(), seq);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 补建的行随消息事务回滚时不能记为已补齐
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markMaterialized(conversationId, current);
+                }
+            });
+        } else {
+            markMaterialized(conversationId, current);
+        }
+    }
+
+    private void markMaterialized(String conversationId, MaterializedMembers members) {
+        if (materialized.size() >= maxTrackedConversations) {
+            evictSome();
+        }
+        materialized.put(conversationId, members);
+    }
+
+    /**
+     * 为缺失会话行的成员补建记录（一次查询 + 批量 INSERT ... ON DUPLICATE KEY UPDATE）
+     * 新成员从当前消息开始计未读，避免把历史消息全部算作未读；
+     * 并发补建时已存在的行原样保留，不抛唯一键冲突，外层消息事务不受影响；
+     * 会话行以数字用户ID为键，无法解析为数字的成员ID记录日志后跳过，不让整条群消息回滚
+     */
+    private void ensureMemberRows(String conversationId, List<String> groupMemberIds, Long seq) {
+        List<UserConversationList> existing = userConversationListService.lambdaQuery()
+                .select(UserConversationList::getUserId)
+                .eq(UserConversationList::getConversationId, conversationId)
+                .list();
+
+        Set<Long> existingUserIds = new HashSet<>(existing.size() * 2);
+        for (UserConversationList row : existing) {
+            existingUserIds.add(row.getUserId());
+        }
+
+        Date now = new Date();
+        long initialReadSeq = seq != null && seq > 0 ? seq - 1 : 0L;
+        List<UserConversationList> missing = new ArrayList<>();
+        int skipped = 0;
+        for (String memberId : groupMemberIds) {
+            Long userId;
+            try {
+                userId = Long.valueOf(memberId);
+            } catch (NumberFormatException e) {
+                log.warn("成员ID不是数字，跳过补建会话行 - 会话ID: {}, 成员ID: {}", conversationId, memberId);
+                skipped++;
+                continue;
+            }
+            if (existingUserIds.contains(userId)) {
+                continue;
+            }
+            UserConversationList row = new UserConversationList();
+            row.setUserId(userId);
+            row.setConversationId(conversationId);
+            row.setLastReadSeq(initialReadSeq);
+            row.setUnreadCount(0);
+            row.setCreateTime(now);
+            row.setUpdateTime(now);
+            row.setLastUpdateTime(now);
+            missing.add(row);
+        }
+
+        if (!missing.isEmpty()) {
+            for (int from = 0; from < missing.size(); from += INSERT_CHUNK_SIZE) {
+                int to = Math.min(from + INSERT_CHUNK_SIZE, missing.size());
+                userConversationListMapper.batchInsertIfAbsent(missing.subList(from, to));
+            }
+            log.info("读扩散补齐成员会话行 - 会话ID: {}, 新增: {}, 跳过: {}, 成员总数: {}",
+                    conversationId, missing.size(), skipped, groupMemberIds.size());
+        }
+    }
+
+    /**
+     * 淘汰约十分之一的记录（不区分冷热，被淘汰的会话只多一次成员行查询）
+     */
+    private void evictSome() {
+        int toEvict = Math.max(1, maxTrackedConversations / 10);
+        Iterator<String> iterator = materialized.keySet().iterator();
+        while (toEvict-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 补齐成员行时的群成员快照标识
+     */
+    private static final class MaterializedMembers {
+
+        private final long version;
+
+        private final long membersHash;
+
+        private MaterializedMembers(long version, long membersHash) {
+            this.version = version;
+            this.membersHash = membersHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MaterializedMembers)) {
+                return false;
+            }
+            MaterializedMembers that = (MaterializedMembers) o;
+            return version == that.version && membersHash == that.membersHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(version) * 31 + Long.hashCode(membersHash);
+        }
+    }
+}
@@ -4,11 +4,12 @@ import com.vanky.im.common.constant.RedisKeyConstants;
 import com.vanky.im.common.constant.SessionConstants;
 import com.vanky.im.common.model.UserSession;
 import com.vanky.im.common.service.PaginatedUserMessageManager;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.constant.MessageConstants;
 import com.vanky.im.message.mapper.UserMsgListMapper;
 import com.vanky.im.message.service.ConversationMsgListService;
 import com.vanky.im.message.service.RedisService;
-import com.vanky.im.message.client.SequenceClient;
+import com.vanky.im.message.client.SequenceRangeCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -18,7 +19,6 @@ import org.springframework.stereotype.Service;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Redis服务实现类
@@ -37,7 +37,7 @@ public class RedisServiceImpl implements RedisService {
     private UserMsgListMapper userMsgListMapper;
 
     @Autowired
-    private SequenceClient sequenceClient;
+    private SequenceRangeCache sequenceRangeCache;
 
     @Autowired
     private PaginatedUserMessageManager paginatedUserMessageManager;
@@ -50,7 +50,7 @@ public class RedisServiceImpl implements RedisService {
         // {{START MODIFICATIONS}}
         try {
             // 使用新的序列号服务生成会话级序列号
-            Long seq = sequenceClient.getNextSequence(conversationId);
+            Long seq = sequenceRangeCache.nextSequence(conversationId);
             
             if (seq != null) {
                 log.debug("使用序列号服务生成会话seq - 会话ID: {}, seq: {}", conversationId, seq);
@@ -76,7 +76,7 @@ public class RedisServiceImpl implements RedisService {
         try {
             // 使用新的序列号服务生成用户级全局序列号
             String businessKey = "user_" + userId;
-            Long seq = sequenceClient.getNextSequence(businessKey);
+            Long seq = sequenceRangeCache.nextSequence(businessKey);
 
             if (seq != null) {
                 log.debug("使用序列号服务生成用户全局seq - 用户ID: {}, seq: {}", userId, seq);
@@ -131,6 +131,27 @@ public class RedisServiceImpl implements RedisService {
         }
     }
 
+    @Override
+    public RedisBatch.Result<Object> prefetchUserMsgMeta(RedisBatch batch, String userId) {
+        return paginatedUserMessageManager.prefetchMetadata(batch, userId);
+    }
+
+    @Override
+    public void cacheMessage(RedisBatch batch, String msgId, String messageJson, long ttlSeconds) {
+        batch.set(RedisKeyConstants.getMessageCacheKey(msgId), messageJson, ttlSeconds);
+    }
+
+    @Override
+    public boolean addToUserMsgList(RedisBatch batch, String userId, String msgId, Long seq, int maxSize,
+                                    RedisBatch.Result<Object> prefetchedMeta) {
+        return paginatedUserMessageManager.addMessage(batch, userId, msgId, seq, maxSize, prefetchedMeta);
+    }
+
+    @Override
+    public void trimUserMsgList(String userId, int maxSize) {
+        paginatedUserMessageManager.cleanupOldMessages(userId, maxSize);
+    }
+
     @Override
     public Set<String> getUserMsgList(String userId, long start, long end) {
         // 使用新的分页管理器替代原有实现（遵循SOLID-O原则）
@@ -356,16 +377,13 @@ public class RedisServiceImpl implements RedisService {
     public UserSession getUserSession(String userId) {
         String key = RedisKeyConstants.getUserSessionKey(userId);
         try {
-            Map<Object, Object> sessionMap = redisTemplate.opsForHash().entries(key);
-            if (sessionMap == null || sessionMap.isEmpty()) {
-                return null;
+            // 会话Hash：deviceId -> UserSession，多端登录时返回任一设备的会话
+            for (Object value : redisTemplate.opsForHash().values(key)) {
+                if (value instanceof UserSession) {
+                    return (UserSession) value;
+                }
             }
-            UserSession session = new UserSession();
-            session.setUserId((String) sessionMap.get("userId"));
-            session.setNodeId((String) sessionMap.get("nodeId"));
-            session.setClientType((Integer) sessionMap.get("clientType"));
-            session.setVersion((Integer) sessionMap.get("version"));
-            return session;
+            return null;
         } catch (Exception e) {
             log.error("获取用户会话失败, userId: {}", userId, e);
             return null;
@@ -0,0 +1,321 @@
+package com.vanky.im.message.service.impl;
+
+import com.vanky.im.message.dto.UserConversationDelta;
+import com.vanky.im.message.mapper.UserConversationListMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户会话未读数写后聚合器
+ * 私聊消息不再逐条 SELECT + UPDATE user_conversation_list，而是在内存中按 (userId, conversationId)
+ * 累积未读增量，定时用一条 INSERT ... ON DUPLICATE KEY UPDATE 批量刷库。
+ *
+ * 崩溃恢复：每批增量在同一条语句里同时推进 last_msg_id，因此 last_msg_id 之后的 user_msg_list 记录
+ * 就是尚未计入的消息。启动后先等其他实例完成一轮刷库，再按该水位从 user_msg_list 补偿，
+ * 补偿完成前本实例只累积不刷库，避免自己的新消息先推进水位；多实例同时重启时用Redis锁串行执行。
+ * 补偿期间同样受最大累积数限制，超出部分直接写库（这些会话的丢失增量可能补不回）；
+ * 等锁超过最大次数后放弃补偿，恢复正常刷库。
+ * 注意：若宕机实例的会话在补偿前已被其他实例处理并刷入更新的消息，该会话的丢失增量无法补回（未读数偏少）。
+ *
+ * 已读回执直接把行上的 unread_count 清零并推进 last_read_seq，不经过本聚合器。增量带着其中最大的seq，
+ * 刷库时整批都不超过 last_read_seq（回执之前的消息已被读过）就不再计入，包括回执提交时正在写库的批次；
+ * 只有部分被读过的增量仍整批计入，多出的条数在下一次已读回执时清零。
+ *
+ * @author vanky
+ * @since 2025-09-03
+ */
+@Slf4j
+@Component
+public class UnreadCounterAggregator {
+
+    private static final String RECOVERY_LOCK_KEY = "unread:recovery:lock";
+
+    @Autowired
+    private UserConversationListMapper userConversationListMapper;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 是否启用写后聚合，关闭时每条消息直接执行一次增量upsert
+     */
+    @Value("${unread.write-behind.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 刷库间隔（毫秒）
+     */
+    @Value("${unread.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    /**
+     * 单条upsert语句包含的最大行数
+     */
+    @Value("${unread.write-behind.max-batch-size:500}")
+    private int maxBatchSize;
+
+    /**
+     * 内存中最多累积的 (用户, 会话) 数量，超过后新增量直接写库
+     */
+    @Value("${unread.write-behind.max-pending:100000}")
+    private int maxPending;
+
+    /**
+     * 崩溃恢复回放的时间窗口（分钟）
+     */
+    @Value("${unread.write-behind.recovery-window-minutes:30}")
+    private long recoveryWindowMinutes;
+
+    /**
+     * 其他实例持有恢复锁时的最大重试次数，超过后放弃补偿
+     */
+    @Value("${unread.write-behind.recovery-max-attempts:12}")
+    private int recoveryMaxAttempts;
+
+    private final ConcurrentHashMap<String, UserConversationDelta> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "unread-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 实例启动时间，早于该时间写入的 user_msg_list 记录才参与恢复
+     */
+    private final Date startupTime = new Date();
+
+    /**
+     * 崩溃恢复是否已结束，结束前不刷库
+     */
+    private volatile boolean recovered = false;
+
+    /**
+     * 已尝试获取恢复锁的次数，仅在刷库线程中访问
+     */
+    private int recoveryAttempts = 0;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong recordedMessages = new AtomicLong(0);
+    private final AtomicLong flushedRows = new AtomicLong(0);
+    private final AtomicLong flushStatements = new AtomicLong(0);
+    private final AtomicLong flushFailures = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            // 逐条写库时不存在未刷库的增量，无需恢复
+            recovered = true;
+            log.info("未读数写后聚合已禁用，逐条增量写库");
+            return;
+        }
+
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        // 等其他实例把本实例启动前收到的增量刷完，再按 last_msg_id 水位补偿
+        flusher.schedule(this::recover, recoveryDelayMs(), TimeUnit.MILLISECONDS);
+        log.info("未读数写后聚合启动 - 刷库间隔: {}ms, 批大小: {}, 最大累积: {}",
+                flushIntervalMs, maxBatchSize, maxPending);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdownNow();
+        if (!recovered) {
+            // 补偿未完成时刷库会推进水位，丢弃后由下次启动的补偿按 user_msg_list 重新计入
+            log.warn("未读数崩溃恢复未完成即停机，丢弃未刷库的增量 - 会话数: {}", pending.size());
+            return;
+        }
+        // 正常停机时把剩余增量刷完
+        flushSafely();
+    }
+
+    /**
+     * 记录一条计入未读数的消息
+     *
+     * @param userId 用户ID
+     * @param conversationId 会话ID
+     * @param msgId 消息ID
+     * @param seq 消息在该用户消息链中的seq
+     */
+    public void record(Long userId, String conversationId, Long msgId, Long seq) {
+        Date now = new Date();
+        recordedMessages.incrementAndGet();
+
+        String key = key(userId, conversationId);
+        // 补偿完成前同样受累积上限约束，避免恢复迟迟不结束时内存无限增长
+        if (!enabled || (pending.size() >= maxPending && !pending.containsKey(key))) {
+            UserConversationDelta delta = new UserConversationDelta(userId, conversationId);
+            delta.addMessage(msgId, seq, now);
+            write(Collections.singletonList(delta));
+            return;
+        }
+
+        pending.compute(key, (k, delta) -> {
+            if (delta == null) {
+                delta = new UserConversationDelta(userId, conversationId);
+            }
+            delta.addMessage(msgId, seq, now);
+            return delta;
+        });
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("recovered", recovered);
+        stats.put("pending", pending.size());
+        stats.put("recordedMessages", recordedMessages.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("flushStatements", flushStatements.get());
+        stats.put("flushFailures", flushFailures.get());
+        return stats;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("未读数增量刷库异常", e);
+        }
+    }
+
+    /**
+     * 摘下当前所有增量并分批写库，失败的批次合并回内存等待下次重试
+     */
+    private void flush() {
+        if (!recovered || pending.isEmpty()) {
+            return;
+        }
+
+        List<UserConversationDelta> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        for (String key : pending.keySet()) {
+            UserConversationDelta delta = pending.remove(key);
+            if (delta == null) {
+                continue;
+            }
+            batch.add(delta);
+            if (batch.size() >= maxBatchSize) {
+                flushBatch(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+        }
+    }
+
+    private void flushBatch(List<UserConversationDelta> batch) {
+        if (write(batch)) {
+            return;
+        }
+        for (UserConversationDelta delta : batch) {
+            pending.merge(key(delta.getUserId(), delta.getConversationId()), delta, (current, failed) -> {
+                current.merge(failed);
+                return current;
+            });
+        }
+    }
+
+    private boolean write(List<UserConversationDelta> deltas) {
+        try {
+            userConversationListMapper.batchUpsertUnreadDeltas(deltas);
+            flushStatements.incrementAndGet();
+            flushedRows.addAndGet(deltas.size());
+            return true;
+        } catch (Exception e) {
+            flushFailures.incrementAndGet();
+            log.error("未读数增量写库失败 - 行数: {}", deltas.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 从 user_msg_list 补偿上次异常退出时未刷库的增量
+     */
+    private void recover() {
+        String owner = UUID.randomUUID().toString();
+        Boolean locked;
+        try {
+            locked = redisTemplate.opsForValue().setIfAbsent(RECOVERY_LOCK_KEY, owner, 5, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.error("获取未读数恢复锁失败，跳过崩溃恢复", e);
+            recovered = true;
+            return;
+        }
+        if (!Boolean.TRUE.equals(locked)) {
+            if (++recoveryAttempts >= recoveryMaxAttempts) {
+                log.warn("未读数恢复锁持续被其他实例占用，放弃崩溃恢复 - 尝试次数: {}, 累积会话数: {}",
+                        recoveryAttempts, pending.size());
+                recovered = true;
+                return;
+            }
+            // 其他实例正在补偿，稍后基于它推进后的水位重新计算
+            flusher.schedule(this::recover, recoveryDelayMs(), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        try {
+            Date since = new Date(startupTime.getTime() - TimeUnit.MINUTES.toMillis(recoveryWindowMinutes));
+            List<UserConversationDelta> deltas =
+                    userConversationListMapper.selectUnappliedUnreadDeltas(since, startupTime);
+            if (deltas.isEmpty()) {
+                log.info("未读数无需补偿 - 窗口: [{}, {})", since, startupTime);
+                return;
+            }
+
+            int applied = 0;
+            for (int from = 0; from < deltas.size(); from += maxBatchSize) {
+                List<UserConversationDelta> batch = deltas.subList(from, Math.min(from + maxBatchSize, deltas.size()));
+                userConversationListMapper.batchUpsertUnreadDeltas(batch);
+                applied += batch.size();
+            }
+            log.warn("未读数崩溃恢复完成 - 补偿会话数: {}, 窗口: [{}, {})", applied, since, startupTime);
+        } catch (Exception e) {
+            log.error("未读数崩溃恢复失败", e);
+        } finally {
+            recovered = true;
+            releaseRecoveryLock(owner);
+        }
+    }
+
+    private void releaseRecoveryLock(String owner) {
+        try {
+            if (owner.equals(redisTemplate.opsForValue().get(RECOVERY_LOCK_KEY))) {
+                redisTemplate.delete(RECOVERY_LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.warn("释放未读数恢复锁失败，等待自动过期", e);
+        }
+    }
+
+    private long recoveryDelayMs() {
+        return Math.max(5000L, flushIntervalMs * 10);
+    }
+
+    private static String key(Long userId, String conversationId) {
+        return userId + ":" + conversationId;
+    }
+}
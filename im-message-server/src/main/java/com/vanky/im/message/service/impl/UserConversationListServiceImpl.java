@@ -5,7 +5,11 @@ import com.vanky.im.message.entity.UserConversationList;
 import com.vanky.im.message.mapper.UserConversationListMapper;
 import com.vanky.im.message.service.UserConversationListService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Date;
 
@@ -19,6 +23,9 @@ import java.util.Date;
 public class UserConversationListServiceImpl extends ServiceImpl<UserConversationListMapper, UserConversationList>
     implements UserConversationListService {
 
+    @Autowired
+    private UnreadCounterAggregator unreadCounterAggregator;
+
     @Override
     public UserConversationList getByUserIdAndConversationId(Long userId, String conversationId) {
         return this.lambdaQuery()
@@ -39,8 +46,14 @@ public class UserConversationListServiceImpl extends ServiceImpl<UserConversatio
         userConversation.setLastUpdateTime(now); // 初始更新时间
         userConversation.setCreateTime(now);
         userConversation.setUpdateTime(now);
-        this.save(userConversation);
-        
+        try {
+            this.save(userConversation);
+        } catch (DuplicateKeyException e) {
+            // 未读数upsert可能已先建好该行
+            log.debug("用户会话记录已存在 - 用户ID: {}, 会话ID: {}", userId, conversationId);
+            return;
+        }
+
         log.debug("创建用户会话记录 - 用户ID: {}, 会话ID: {}", userId, conversationId);
     }
 
@@ -54,43 +67,26 @@ public class UserConversationListServiceImpl extends ServiceImpl<UserConversatio
     }
 
     @Override
-    public void updateUserConversationMessage(Long userId, String conversationId, String msgId) {
-        // {{CHENGQI:
-        // Action: Added; Timestamp: 2025-07-28 23:08:31 +08:00; Reason: 实现用户会话列表的消息相关信息更新;
-        // }}
-        // {{START MODIFICATIONS}}
+    public void updateUserConversationMessage(Long userId, String conversationId, String msgId, Long seq) {
         try {
-            UserConversationList userConversation = this.getByUserIdAndConversationId(userId, conversationId);
-            if (userConversation != null) {
-                Date now = new Date();
-
-                // 更新未读数 +1
-                Integer currentUnreadCount = userConversation.getUnreadCount();
-                if (currentUnreadCount == null) {
-                    currentUnreadCount = 0;
-                }
-                userConversation.setUnreadCount(currentUnreadCount + 1);
-
-                // 更新最新消息ID
-                userConversation.setLastMsgId(Long.valueOf(msgId));
-
-                // 更新最后更新时间
-                userConversation.setLastUpdateTime(now);
-                userConversation.setUpdateTime(now);
-
-                this.updateById(userConversation);
-
-                log.debug("更新用户会话消息信息完成 - 用户ID: {}, 会话ID: {}, 消息ID: {}, 新未读数: {}",
-                        userId, conversationId, msgId, userConversation.getUnreadCount());
+            // 未读数 +1、最新消息ID、最后更新时间 交给写后聚合器，按 (用户, 会话) 合并后批量 upsert
+            Long messageId = Long.valueOf(msgId);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 处于消息落库事务中时，提交后才计入，避免回滚后未读数多算
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        unreadCounterAggregator.record(userId, conversationId, messageId, seq);
+                    }
+                });
             } else {
-                log.warn("用户会话记录不存在 - 用户ID: {}, 会话ID: {}", userId, conversationId);
+                unreadCounterAggregator.record(userId, conversationId, messageId, seq);
             }
         } catch (Exception e) {
             log.error("更新用户会话消息信息失败 - 用户ID: {}, 会话ID: {}, 消息ID: {}",
                     userId, conversationId, msgId, e);
             throw new RuntimeException("更新用户会话消息信息失败", e);
         }
-        // {{END MODIFICATIONS}}
     }
 
     @Override
@@ -145,16 +141,20 @@ public class UserConversationListServiceImpl extends ServiceImpl<UserConversatio
             UserConversationList userConversation = this.getByUserIdAndConversationId(userIdLong, conversationId);
 
             if (userConversation != null) {
-                // 更新现有记录
-                userConversation.setUnreadCount(0); // 清零未读数
-                userConversation.setLastReadSeq(lastReadSeq); // 更新已读序列号
-                userConversation.setLastUpdateTime(new Date());
-                userConversation.setUpdateTime(new Date());
-
-                this.updateById(userConversation);
-
-                log.debug("更新用户已读状态 - 用户ID: {}, 会话ID: {}, 已读序列号: {}",
-                        userId, conversationId, lastReadSeq);
+                // 只向前推进：ACK并发消费，晚到的旧回执不能把已读序列号改小
+                Date now = new Date();
+                boolean updated = this.lambdaUpdate()
+                        .set(UserConversationList::getUnreadCount, 0)
+                        .set(UserConversationList::getLastReadSeq, lastReadSeq)
+                        .set(UserConversationList::getLastUpdateTime, now)
+                        .set(UserConversationList::getUpdateTime, now)
+                        .eq(UserConversationList::getId, userConversation.getId())
+                        .and(w -> w.isNull(UserConversationList::getLastReadSeq)
+                                .or().lt(UserConversationList::getLastReadSeq, lastReadSeq))
+                        .update();
+
+                log.debug("更新用户已读状态 - 用户ID: {}, 会话ID: {}, 已读序列号: {}, 已更新: {}",
+                        userId, conversationId, lastReadSeq, updated);
             } else {
                 // 创建新的会话记录
                 UserConversationList newConversation = new UserConversationList();
@@ -182,4 +182,21 @@ public class UserConversationListServiceImpl extends ServiceImpl<UserConversatio
             throw new RuntimeException("更新用户已读状态失败", e);
         }
     }
+
+    @Override
+    public void advanceLastReadSeq(Long userId, String conversationId, Long seq) {
+        if (seq == null) {
+            return;
+        }
+        boolean updated = this.lambdaUpdate()
+                .set(UserConversationList::getLastReadSeq, seq)
+                .eq(UserConversationList::getUserId, userId)
+                .eq(UserConversationList::getConversationId, conversationId)
+                .and(w -> w.isNull(UserConversationList::getLastReadSeq)
+                        .or().lt(UserConversationList::getLastReadSeq, seq))
+                .update();
+
+        log.debug("推进用户已读序列号 - 用户ID: {}, 会话ID: {}, seq: {}, 已更新: {}",
+                userId, conversationId, seq, updated);
+    }
 }
\ No newline at end of file
@@ -26,6 +26,9 @@ public class UserMsgListServiceImpl extends ServiceImpl<UserMsgListMapper, UserM
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
     @Override
     public void saveWriteExpandRecords(String msgId, String conversationId, Long seq, String fromUserId, String toUserId) {
         Date now = new Date();
@@ -63,7 +66,7 @@ public class UserMsgListServiceImpl extends ServiceImpl<UserMsgListMapper, UserM
             // 1. 生成用户级全局seq
             Long userGlobalSeq = redisService.generateUserGlobalSeq(userId);
 
-            // 2. 插入用户消息记录
+            // 2. 插入用户消息记录（处于事务中时随提交前的批量INSERT写入）
             Date now = new Date();
             UserMsgList userMsgRecord = new UserMsgList();
             userMsgRecord.setUserId(Long.valueOf(userId));
@@ -72,7 +75,7 @@ public class UserMsgListServiceImpl extends ServiceImpl<UserMsgListMapper, UserM
             userMsgRecord.setSeq(userGlobalSeq); // 使用用户级全局seq
             userMsgRecord.setCreateTime(now);
 
-            this.save(userMsgRecord);
+            messageBatchWriter.addUserMsg(userMsgRecord);
 
             log.debug("保存用户消息记录完成 - 用户ID: " + userId + ", 消息ID: " + msgId + ", 用户全局Seq: " + userGlobalSeq);
 
@@ -2,12 +2,17 @@ package com.vanky.im.message.service.impl;
 
 import com.vanky.im.common.constant.SessionConstants;
 import com.vanky.im.common.model.UserSession;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.service.UserSessionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 @Slf4j
 @Service
 public class UserSessionServiceImpl implements UserSessionService {
@@ -17,19 +22,46 @@ public class UserSessionServiceImpl implements UserSessionService {
 
     @Override
     public UserSession getUserSession(String userId) {
+        List<UserSession> sessions = getUserSessions(userId);
+        return sessions.isEmpty() ? null : sessions.get(0);
+    }
+
+    @Override
+    public List<UserSession> getUserSessions(String userId) {
         String sessionKey = SessionConstants.getUserSessionKey(userId);
-        log.info("DIAGNOSE: Attempting to get session from Redis with key: [{}]", sessionKey);
         try {
-            Object sessionObject = redisTemplate.opsForValue().get(sessionKey);
-            log.info("DIAGNOSE: Got object from Redis for key [{}]: [{}]", sessionKey, sessionObject);
-            if (sessionObject instanceof UserSession) {
-                return (UserSession) sessionObject;
-            } else if (sessionObject != null) {
-                log.warn("Redis中获取的对象类型不是UserSession - userId: {}, type: {}", userId, sessionObject.getClass().getName());
-            }
+            return toSessions(userId, redisTemplate.opsForHash().values(sessionKey));
         } catch (Exception e) {
             log.error("从Redis获取UserSession失败 - userId: {}", userId, e);
         }
-        return null;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public RedisBatch.Result<List<Object>> prefetchUserSessions(RedisBatch batch, String userId) {
+        return batch.hashValues(SessionConstants.getUserSessionKey(userId));
+    }
+
+    @Override
+    public List<UserSession> getUserSessions(String userId, RedisBatch.Result<List<Object>> prefetched) {
+        if (prefetched == null || !prefetched.isDone()) {
+            return getUserSessions(userId);
+        }
+        return toSessions(userId, prefetched.get());
+    }
+
+    private List<UserSession> toSessions(String userId, List<Object> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<UserSession> sessions = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value instanceof UserSession) {
+                sessions.add((UserSession) value);
+            } else if (value != null) {
+                log.warn("Redis中获取的对象类型不是UserSession - userId: {}, type: {}", userId, value.getClass().getName());
+            }
+        }
+        return sessions;
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package com.vanky.im.message.service.impl;
 import com.vanky.im.common.constant.RedisKeyConstants;
 import com.vanky.im.common.model.ApiResponse;
 import com.vanky.im.common.util.CacheSafetyManager;
+import com.vanky.im.common.util.RedisBatch;
 import com.vanky.im.message.client.UserClient;
 import com.vanky.im.message.constant.MessageConstants;
 import com.vanky.im.message.service.UserStatusService;
@@ -50,6 +51,26 @@ public class UserStatusServiceImpl implements UserStatusService {
         );
     }
 
+    @Override
+    public RedisBatch.Result<Object> prefetchUserStatus(RedisBatch batch, String userId) {
+        return batch.get(RedisKeyConstants.getUserStatusKey(userId));
+    }
+
+    @Override
+    public UserStatusInfo getUserStatus(String userId, RedisBatch.Result<Object> prefetched) {
+        String cacheKey = RedisKeyConstants.getUserStatusKey(userId);
+        UserStatusInfo defaultStatus = new UserStatusInfo(userId, MessageConstants.USER_STATUS_NORMAL, "正常", 0);
+
+        return cacheSafetyManager.safeGetFromCache(
+            cacheKey,
+            prefetched,
+            () -> fetchUserStatusFromService(userId),
+            RedisKeyConstants.USER_STATUS_CACHE_TTL_SECONDS,
+            UserStatusInfo.class,
+            defaultStatus
+        );
+    }
+
     @Override
     public boolean isUserBanned(String userId) {
         UserStatusInfo statusInfo = getUserStatus(userId);
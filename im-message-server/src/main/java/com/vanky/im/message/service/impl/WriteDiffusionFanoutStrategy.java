@@ -0,0 +1,49 @@
+package com.vanky.im.message.service.impl;
+
+import com.vanky.im.common.constant.RedisKeyConstants;
+import com.vanky.im.message.model.GroupMemberSnapshot;
+import com.vanky.im.message.service.GroupConversationFanoutStrategy;
+import com.vanky.im.message.service.UserConversationListService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 写扩散策略（小群）
+ * 逐成员更新 user_conversation_list 的最新消息与更新时间，成员数小于 SMALL_GROUP_THRESHOLD 时使用
+ *
+ * @author vanky
+ * @create 2025-09-02
+ */
+@Slf4j
+@Component
+public class WriteDiffusionFanoutStrategy implements GroupConversationFanoutStrategy {
+
+    @Autowired
+    private UserConversationListService userConversationListService;
+
+    @Override
+    public boolean supports(int memberCount) {
+        return memberCount < RedisKeyConstants.SMALL_GROUP_THRESHOLD;
+    }
+
+    @Override
+    public void fanout(String conversationId, GroupMemberSnapshot groupMembers, String lastMsgId, Long seq) {
+        int successCount = 0;
+        int failureCount = 0;
+
+        for (String memberId : groupMembers.getMemberIds()) {
+            try {
+                userConversationListService.updateGroupConversationSimple(
+                        Long.valueOf(memberId), conversationId, Long.valueOf(lastMsgId));
+                successCount++;
+            } catch (Exception e) {
+                log.error("写扩散更新成员会话失败 - 用户ID: {}, 会话ID: {}", memberId, conversationId, e);
+                failureCount++;
+            }
+        }
+
+        log.debug("写扩散群聊会话视图更新完成 - 会话ID: {}, 成功: {}, 失败: {}",
+                conversationId, successCount, failureCount);
+    }
+}
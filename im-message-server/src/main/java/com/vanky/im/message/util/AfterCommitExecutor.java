@@ -0,0 +1,46 @@
+package com.vanky.im.message.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务提交后执行工具类
+ * 消息处理器中对外可见的动作（Redis消息缓存与消息链、网关推送、发送回执）推迟到消息落库事务提交之后，
+ * 批量消费时整批回滚的消息不会被推送出去，也不会在Redis中留下未落库的条目；无事务时立即执行。
+ * 同一事务中按注册顺序执行。
+ *
+ * @author vanky
+ * @create 2025/9/10
+ */
+@Slf4j
+public class AfterCommitExecutor {
+
+    private AfterCommitExecutor() {
+    }
+
+    /**
+     * 当前事务提交后执行，无事务时立即执行
+     * 提交后执行的异常只记录日志：事务已提交，异常向上抛出会让消费者误判整批失败并重放，
+     * 还会中断同一事务中其他消息的推送
+     *
+     * @param action 动作描述，仅用于日志
+     * @param task 要执行的动作
+     */
+    public static void execute(String action, Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("事务提交后执行{}失败", action, e);
+                }
+            }
+        });
+    }
+}
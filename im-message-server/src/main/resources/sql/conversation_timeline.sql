@@ -0,0 +1,39 @@
+-- IM Plus 群聊读扩散会话头字段
+-- conversation 表保存群聊的最大seq和最新消息指针，成员行只保存 last_read_seq，
+-- 未读数在同步时按 conversation_msg_list 中 seq > last_read_seq 的条数计算，消息写入不再逐成员更新 user_conversation_list
+-- 注意：会话seq只保证有序、不保证连续，不能用 max_seq - last_read_seq 相减代替计数
+
+ALTER TABLE `conversation`
+    ADD COLUMN `max_seq` BIGINT DEFAULT NULL COMMENT '会话当前最大seq（群聊读扩散会话头）' AFTER `last_msg_time`,
+    ADD COLUMN `last_msg_id` BIGINT DEFAULT NULL COMMENT '会话最新一条消息ID' AFTER `max_seq`;
+
+-- 未读计数按 (conversation_id, seq) 做索引范围扫描
+ALTER TABLE `conversation_msg_list`
+    ADD INDEX `idx_conversation_seq` (`conversation_id`, `seq`);
+
+-- 存量数据回填（需在新版本上线前执行）
+-- 1. 群会话头：取 conversation_msg_list 中的最大 seq 及对应消息
+UPDATE `conversation` c
+    JOIN (SELECT `conversation_id`, MAX(`seq`) AS `max_seq`
+          FROM `conversation_msg_list`
+          WHERE `conversation_id` LIKE 'group\_%'
+          GROUP BY `conversation_id`) t ON t.`conversation_id` = c.`conversation_id`
+    LEFT JOIN `conversation_msg_list` last_msg
+        ON last_msg.`conversation_id` = t.`conversation_id` AND last_msg.`seq` = t.`max_seq`
+SET c.`max_seq` = t.`max_seq`,
+    c.`last_msg_id` = last_msg.`msg_id`
+WHERE c.`max_seq` IS NULL OR c.`max_seq` < t.`max_seq`;
+
+-- 2. 存量群成员的已读位置：未读数改为按 seq > last_read_seq 计数后，
+--    last_read_seq 为空或为0的老成员会把整个历史算作未读；按原 unread_count 保留未读数，其余历史视为已读：
+--    last_read_seq 取该会话倒数第 (unread_count + 1) 条消息的 seq（消息总数不足时保持不变，全部计为未读）
+UPDATE `user_conversation_list` ucl
+    JOIN (SELECT `conversation_id`, `seq`,
+                 ROW_NUMBER() OVER (PARTITION BY `conversation_id` ORDER BY `seq` DESC) AS `rn`
+          FROM `conversation_msg_list`
+          WHERE `conversation_id` LIKE 'group\_%') ranked
+        ON ranked.`conversation_id` = ucl.`conversation_id`
+       AND ranked.`rn` = IFNULL(ucl.`unread_count`, 0) + 1
+SET ucl.`last_read_seq` = ranked.`seq`
+WHERE ucl.`conversation_id` LIKE 'group\_%'
+  AND IFNULL(ucl.`last_read_seq`, 0) < ranked.`seq`;
@@ -0,0 +1,17 @@
+-- IM Plus 会话消息消费记录
+-- 与 message / user_msg_list / conversation_msg_list 在同一事务中写入，mq_msg_id 唯一：
+-- Broker 重投已提交的消息时，唯一键冲突使该事务回滚，消费者确认记录存在后跳过该消息，不会重复落库和推送
+-- 只需覆盖重投窗口，可按 create_time 定期清理（如保留7天）
+
+CREATE TABLE `message_consume_record` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '自增主键',
+  `mq_msg_id` varchar(64) NOT NULL COMMENT 'RocketMQ消息ID',
+  `conversation_id` varchar(64) DEFAULT NULL COMMENT '会话ID',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_mq_msg_id` (`mq_msg_id`),
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='会话消息消费记录';
+
+-- 定期清理示例
+-- DELETE FROM message_consume_record WHERE create_time < DATE_SUB(NOW(), INTERVAL 7 DAY) LIMIT 10000;
@@ -0,0 +1,10 @@
+-- IM Plus 用户会话未读数写后聚合
+-- 未读增量通过 INSERT ... ON DUPLICATE KEY UPDATE 批量累加，需要 (user_id, conversation_id) 唯一索引；
+-- 执行前请先清理重复行（保留 id 最小的一条）
+-- 崩溃恢复按 create_time 窗口扫描 user_msg_list，补充时间索引
+
+ALTER TABLE `user_conversation_list`
+    ADD UNIQUE KEY `uk_user_conversation` (`user_id`, `conversation_id`);
+
+ALTER TABLE `user_msg_list`
+    ADD INDEX `idx_create_time` (`create_time`);
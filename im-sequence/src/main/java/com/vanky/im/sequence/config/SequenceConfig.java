@@ -54,6 +54,11 @@ public class SequenceConfig {
          * 每个分段的步长
          */
         private int stepSize = 10000;
+
+        /**
+         * 单次区间租用的最大数量
+         */
+        private int maxLeaseSize = 1000;
     }
 
     @Data
@@ -79,6 +79,28 @@ public class SequenceController {
         }
     }
 
+    /**
+     * 租用一段连续的序列号区间
+     * 
+     * @param request 租用请求
+     * @return 区间结果
+     */
+    @PostMapping("/range")
+    public ResponseEntity<SequenceResponse.SequenceResult> leaseRange(@RequestBody SequenceRequest.Range request) {
+        log.debug("Received sequence range request for key: {}, count: {}", request.getKey(), request.getCount());
+        
+        SequenceResponse.SequenceResult result = sequenceService.leaseRange(request);
+        
+        if (result.getSuccess()) {
+            log.debug("Leased sequence range for key: {}, startSeq: {}, count: {}", 
+                     request.getKey(), result.getStartSeq(), result.getCount());
+            return ResponseEntity.ok(result);
+        } else {
+            log.warn("Failed to lease sequence range for key: {}, error: {}", request.getKey(), result.getErrorMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
     /**
      * 健康检查
      * 
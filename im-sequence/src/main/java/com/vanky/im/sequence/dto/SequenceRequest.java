@@ -39,4 +39,20 @@ public class SequenceRequest {
          */
         private Integer count = 1;
     }
+
+    /**
+     * 序列号区间租用请求
+     */
+    @Data
+    public static class Range {
+        /**
+         * 业务key，如 "user_12345" 或 "group_67890"
+         */
+        private String key;
+
+        /**
+         * 租用的序列号数量
+         */
+        private Integer count;
+    }
 }
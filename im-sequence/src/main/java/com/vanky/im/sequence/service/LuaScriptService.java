@@ -37,6 +37,11 @@ public class LuaScriptService {
      */
     private DefaultRedisScript<List> getNextSeqScript;
 
+    /**
+     * 租用序列号区间的Lua脚本
+     */
+    private DefaultRedisScript<List> leaseSeqRangeScript;
+
     /**
      * 初始化Lua脚本
      */
@@ -49,6 +54,13 @@ public class LuaScriptService {
             String scriptContent = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
             getNextSeqScript.setScriptText(scriptContent);
             getNextSeqScript.setResultType(List.class);
+
+            // 加载租用序列号区间的脚本
+            leaseSeqRangeScript = new DefaultRedisScript<>();
+            ClassPathResource rangeResource = new ClassPathResource("lua/lease_seq_range.lua");
+            leaseSeqRangeScript.setScriptText(
+                    StreamUtils.copyToString(rangeResource.getInputStream(), StandardCharsets.UTF_8));
+            leaseSeqRangeScript.setResultType(List.class);
             
             log.info("Lua scripts initialized successfully");
         } catch (Exception e) {
@@ -105,13 +117,49 @@ public class LuaScriptService {
         }
     }
 
+    /**
+     * 执行租用序列号区间的脚本
+     *
+     * @param sectionKey Redis Hash key
+     * @param stepSize 步长
+     * @param initialValue 初始值
+     * @param count 租用数量
+     * @return 脚本执行结果 [起始序列号, 结束序列号, 操作类型, 最大序列号(可选)]
+     */
+    public List<String> executeLeaseRange(String sectionKey, int stepSize, long initialValue, int count) {
+        try {
+            List<String> keys = Collections.singletonList(sectionKey);
+            Object[] args = {String.valueOf(stepSize), String.valueOf(initialValue), String.valueOf(count)};
+
+            @SuppressWarnings("unchecked")
+            List<String> result = (List<String>) stringRedisTemplate.execute(leaseSeqRangeScript, keys, args);
+
+            if (result == null || result.size() < 3) {
+                log.error("Lease range script returned invalid result for key: {}, result: {}", sectionKey, result);
+                return Collections.singletonList("-1");
+            }
+
+            if ("-1".equals(result.get(0))) {
+                log.error("Lease range script execution failed for key: {}, result: {}", sectionKey, result);
+            } else {
+                log.debug("Lease range script executed successfully for key: {}, range: [{}, {}], action: {}",
+                         sectionKey, result.get(0), result.get(1), result.get(2));
+            }
+
+            return result;
+        } catch (Exception e) {
+            log.error("Failed to execute lease range script for key: {}, count: {}", sectionKey, count, e);
+            return Collections.singletonList("-1");
+        }
+    }
+
     /**
      * 检查脚本是否已初始化
      * 
      * @return 是否已初始化
      */
     public boolean isScriptsInitialized() {
-        return getNextSeqScript != null;
+        return getNextSeqScript != null && leaseSeqRangeScript != null;
     }
 
     /**
@@ -51,6 +51,18 @@ public class SequencePersistenceService {
         });
     }
 
+    /**
+     * 同步持久化单个分段的最大序列号
+     * 用于区间租约：必须在租约返回给调用方前落库，保证重启恢复后不会回退到已租出的区间内
+     *
+     * @param sectionKey 分段键
+     * @param maxSeq 最大序列号
+     * @return 是否成功
+     */
+    public boolean persistMaxSeq(String sectionKey, Long maxSeq) {
+        return persistMaxSeqWithRetry(sectionKey, maxSeq, 0);
+    }
+
     /**
      * 带重试的持久化逻辑
      * 使用 INSERT ... ON DUPLICATE KEY UPDATE 实现高效的原子操作
@@ -20,6 +20,7 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * 序列号生成服务
  * 核心业务逻辑，负责序列号的生成和管理
+ * 同一业务key的序列号单调递增但不保证连续：同一分段的计数器由多个key共享，租出的区间也可能未用完即被调用方丢弃
  * 
  * @author vanky
  * @since 2025-08-11
@@ -176,34 +177,94 @@ public class SequenceService {
 
     /**
      * 为单个key生成批量序列号
+     * 通过一次区间租用获取连续的序列号
      * 
      * @param businessKey 业务key
      * @param count 数量
      * @return 序列号结果
      */
     private SequenceResponse.SequenceResult generateBatchSequenceForKey(String businessKey, Integer count) {
-        // 对于批量请求，我们连续调用Lua脚本获取连续的序列号
-        Long startSeq = null;
-        
-        for (int i = 0; i < count; i++) {
-            SequenceRequest.Single singleRequest = new SequenceRequest.Single();
-            singleRequest.setKey(businessKey);
-            
-            SequenceResponse.Single singleResponse = getNextSequence(singleRequest);
-            
-            if (!singleResponse.getSuccess()) {
-                return SequenceResponse.SequenceResult.failure(singleResponse.getErrorMessage());
-            }
-            
-            if (startSeq == null) {
-                startSeq = singleResponse.getSeq();
-            }
+        return leaseRangeForKey(businessKey, count);
+    }
+
+    /**
+     * 租用一段连续的序列号区间
+     * 调用方（如im-message-server）在本地内存中逐个分配，避免每个序列号一次远程调用
+     *
+     * @param request 租用请求
+     * @return 区间结果，startSeq为起始序列号，count为实际租用数量
+     */
+    public SequenceResponse.SequenceResult leaseRange(SequenceRequest.Range request) {
+        totalRequests.incrementAndGet();
+
+        String businessKey = request.getKey();
+        if (businessKey == null || businessKey.trim().isEmpty()) {
+            totalErrors.incrementAndGet();
+            return SequenceResponse.SequenceResult.failure("Business key cannot be empty");
         }
-        
-        return SequenceResponse.SequenceResult.success(startSeq, count);
+
+        int count = request.getCount() == null || request.getCount() <= 0 ? 1 : request.getCount();
+        count = Math.min(count, sequenceConfig.getSection().getMaxLeaseSize());
+
+        SequenceResponse.SequenceResult result = leaseRangeForKey(businessKey, count);
+        if (result.getSuccess()) {
+            totalGenerated.addAndGet(result.getCount());
+        } else {
+            totalErrors.incrementAndGet();
+        }
+        return result;
     }
 
+    /**
+     * 执行区间租用
+     *
+     * @param businessKey 业务key
+     * @param count 租用数量
+     * @return 区间结果
+     */
+    private SequenceResponse.SequenceResult leaseRangeForKey(String businessKey, int count) {
+        try {
+            // 生成分段键
+            String sectionKey = SectionIdGenerator.generateSectionKey(businessKey);
+
+            // 生成Redis Key
+            String redisKey = sequenceConfig.getRedis().getKeyPrefix() + sectionKey;
+
+            // 检查是否需要恢复序列号
+            long initialValue = 0L;
+            if (sequenceConfig.getRecovery().isEnabled()) {
+                initialValue = checkAndRecoverSequence(redisKey, sectionKey);
+            }
 
+            List<String> luaResult = luaScriptService.executeLeaseRange(
+                    redisKey, sequenceConfig.getSection().getStepSize(), initialValue, count);
+
+            if (luaResult == null || luaResult.size() < 3 || "-1".equals(luaResult.get(0))) {
+                String errorMsg = luaResult != null && luaResult.size() > 3 ? luaResult.get(3) : "Unknown error";
+                return SequenceResponse.SequenceResult.failure("Lua script error: " + errorMsg);
+            }
+
+            long startSeq = Long.parseLong(luaResult.get(0));
+            long endSeq = Long.parseLong(luaResult.get(1));
+
+            // 租约的高水位必须在返回前落库：调用方会在本地持有整段区间，
+            // 若Redis丢失后从数据库恢复到更小的值，同一key的序列号将出现回退
+            if (SequenceConstants.LuaResult.PERSIST.equals(luaResult.get(2)) && luaResult.size() > 3
+                    && sequenceConfig.getPersistence().isEnabled()) {
+                Long maxSeq = Long.parseLong(luaResult.get(3));
+                if (!persistenceService.persistMaxSeq(sectionKey, maxSeq)) {
+                    return SequenceResponse.SequenceResult.failure("Failed to persist lease high-water mark");
+                }
+            }
+
+            log.debug("Leased sequence range for key: {}, range: [{}, {}]", businessKey, startSeq, endSeq);
+            return SequenceResponse.SequenceResult.success(startSeq, (int) (endSeq - startSeq + 1));
+
+        } catch (Exception e) {
+            log.error("Failed to lease sequence range for key: {}, count: {}", businessKey, count, e);
+            return SequenceResponse.SequenceResult.failure("Internal error: " + e.getMessage());
+        }
+    }
 
     /**
      * 获取统计信息
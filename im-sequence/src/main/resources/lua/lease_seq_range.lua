@@ -0,0 +1,56 @@
+-- 租用一段连续序列号的Lua脚本
+-- 通过一次 HINCRBY 为调用方预留 [start, end] 区间，由调用方在本地内存中逐个分配
+--
+-- KEYS[1]: Redis Hash key, 格式: "seq:section:u_17" 或 "seq:section:c_456"
+-- ARGV[1]: step size, 步长，如 10000
+-- ARGV[2]: initial value, 初始值（可选，默认为0）
+-- ARGV[3]: count, 租用的序列号数量
+--
+-- 返回值:
+-- 成功: {起始序列号, 结束序列号, "PERSIST", 新的最大序列号} 或 {起始序列号, 结束序列号, "NOP"}
+-- 失败: {"-1", "-1", "ERROR", 错误信息}
+
+local section_key = KEYS[1]
+local step = tonumber(ARGV[1])
+local initial_value = tonumber(ARGV[2]) or 0
+local count = tonumber(ARGV[3])
+
+-- 参数验证
+if not section_key or section_key == "" then
+    return {"-1", "-1", "ERROR", "section_key is empty"}
+end
+
+if not step or step <= 0 then
+    return {"-1", "-1", "ERROR", "invalid step size"}
+end
+
+if not count or count <= 0 then
+    return {"-1", "-1", "ERROR", "invalid count"}
+end
+
+if initial_value < 0 then
+    return {"-1", "-1", "ERROR", "invalid initial value"}
+end
+
+-- 初始化逻辑：如果Hash或字段不存在
+redis.call('HSETNX', section_key, 'cur_seq', initial_value)
+redis.call('HSETNX', section_key, 'max_seq', initial_value)
+
+-- 一次性预留count个序列号
+local end_seq = redis.call('HINCRBY', section_key, 'cur_seq', count)
+local start_seq = end_seq - count + 1
+local max_seq = tonumber(redis.call('HGET', section_key, 'max_seq'))
+
+-- 租约高水位超过上限时，按步长整数倍抬高上限，保证持久化的上限始终覆盖已租出的区间
+if end_seq > max_seq then
+    local steps = math.ceil((end_seq - max_seq) / step)
+    max_seq = max_seq + steps * step
+    redis.call('HSET', section_key, 'max_seq', max_seq)
+
+    -- 设置过期时间（7天 = 604800秒）
+    redis.call('EXPIRE', section_key, 604800)
+
+    return {tostring(start_seq), tostring(end_seq), "PERSIST", tostring(max_seq)}
+end
+
+return {tostring(start_seq), tostring(end_seq), "NOP"}
@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestHeader;
 
 /**
  * @author vanky
@@ -68,14 +69,32 @@ public class UserController {
     }
     
     /**
-     * 用户退出登录 (GET方式)
+     * 用户退出登录 (GET方式)，只退出出示token的设备
      * @param userId 用户ID
+     * @param authorization 当前设备的token（Authorization: Bearer {token}）
      * @return 退出结果
      */
     @GetMapping("/logout/{userId}")
-    public ApiResponse<String> logout(@PathVariable("userId") String userId) {
+    public ApiResponse<String> logout(@PathVariable("userId") String userId,
+                                      @RequestHeader(value = "Authorization", required = false) String authorization) {
         try {
-            return ApiResponse.success(usersService.logout(userId));
+            return ApiResponse.success(usersService.logout(userId, extractToken(authorization)));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 退出全部设备
+     * @param userId 用户ID
+     * @param authorization 发起请求设备的token（Authorization: Bearer {token}）
+     * @return 退出结果
+     */
+    @PostMapping("/logout-all/{userId}")
+    public ApiResponse<String> logoutAllDevices(@PathVariable("userId") String userId,
+                                                @RequestHeader(value = "Authorization", required = false) String authorization) {
+        try {
+            return ApiResponse.success(usersService.logoutAllDevices(userId, extractToken(authorization)));
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
@@ -192,4 +211,15 @@ public class UserController {
             return ApiResponse.error("检查好友关系失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 从Authorization请求头中取出token，兼容带或不带 Bearer 前缀
+     */
+    private String extractToken(String authorization) {
+        if (authorization == null) {
+            return null;
+        }
+        String value = authorization.trim();
+        return value.regionMatches(true, 0, "Bearer ", 0, 7) ? value.substring(7).trim() : value;
+    }
+}
@@ -30,11 +30,20 @@ public interface UsersService extends IService<Users> {
     UserLoginResponse login(UserLoginRequest request);
     
     /**
-     * 用户退出登录
+     * 用户退出登录，只使当前设备出示的token失效
      * @param userId 用户ID
+     * @param token 当前设备的token，必须属于该用户
      * @return 退出结果
      */
-    String logout(String userId);
+    String logout(String userId, String token);
+
+    /**
+     * 退出该用户的全部设备，吊销此前签发的全部token
+     * @param userId 用户ID
+     * @param token 发起请求设备的token，必须属于该用户
+     * @return 退出结果
+     */
+    String logoutAllDevices(String userId, String token);
 
     /**
      * 根据用户ID获取用户信息
@@ -100,19 +100,40 @@ public class UsersServiceImpl extends ServiceImpl<UsersMapper, Users> implements
     }
     
     @Override
-    public String logout(String userId) {
-        // 根据用户ID查询用户
-        Users user = this.lambdaQuery()
-                .eq(Users::getUserId, userId)
-                .one();
-                
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
+    public String logout(String userId, String token) {
+        verifyTokenOwner(userId, token);
+
+        // 只吊销当前设备的token（签名token写入吊销集合，随机token从Redis删除），同一用户的其他设备不受影响
+        tokenUtil.removeToken(token);
 
         return "退出成功";
     }
 
+    @Override
+    public String logoutAllDevices(String userId, String token) {
+        verifyTokenOwner(userId, token);
+
+        // 签名token在网关本地验签，写入用户级吊销项使此前签发的全部token失效；
+        // 随机token无法按用户枚举，只删除发起请求的这一个
+        tokenUtil.revokeUserTokens(userId);
+        tokenUtil.removeToken(token);
+
+        return "已退出全部设备";
+    }
+
+    /**
+     * 校验token有效且属于该用户，防止凭用户ID吊销他人的登录态
+     */
+    private void verifyTokenOwner(String userId, String token) {
+        if (token == null || token.isBlank()) {
+            throw new RuntimeException("缺少token");
+        }
+        String tokenUserId = tokenUtil.verifyToken(token);
+        if (tokenUserId == null || !tokenUserId.equals(userId)) {
+            throw new RuntimeException("token无效或与用户不匹配");
+        }
+    }
+
     @Override
     public UserInfoDTO getUserInfoById(String userId) {
         Users user = this.lambdaQuery()